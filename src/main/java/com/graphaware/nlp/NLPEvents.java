@@ -19,6 +19,8 @@ import com.graphaware.nlp.event.Events;
 
 public enum NLPEvents implements Events {
     TRANSACTION_BEFORE_COMMIT,
+    TRANSACTION_AFTER_COMMIT,
+    TRANSACTION_AFTER_ROLLBACK,
     PRE_TEXT_ANNOTATION,
     POST_TEXT_ANNOTATION,
     PRE_ANNOTATION_STORAGE,
@@ -16,6 +16,7 @@
 package com.graphaware.nlp;
 
 import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.common.util.Pair;
 import com.graphaware.nlp.annotation.NLPModuleExtension;
 import com.graphaware.nlp.annotation.NLPSummarizer;
 import com.graphaware.nlp.annotation.NLPVectorComputationProcess;
@@ -24,23 +25,27 @@ import com.graphaware.nlp.configuration.SettingsConstants;
 import com.graphaware.nlp.domain.AnnotatedText;
 import com.graphaware.nlp.domain.VectorContainer;
 import com.graphaware.nlp.dsl.request.*;
+import com.graphaware.nlp.dsl.result.BatchResult;
 import com.graphaware.nlp.dsl.result.TextProcessorItem;
 import com.graphaware.nlp.enrich.Enricher;
 import com.graphaware.nlp.enrich.EnrichmentRegistry;
 import com.graphaware.nlp.enrich.conceptnet5.ConceptNet5Enricher;
 import com.graphaware.nlp.enrich.microsoft.MicrosoftConceptEnricher;
+import com.graphaware.nlp.event.DatabaseTransactionEvent;
 import com.graphaware.nlp.event.EventDispatcher;
 import com.graphaware.nlp.event.TextAnnotationEvent;
 import com.graphaware.nlp.extension.NLPExtension;
 import com.graphaware.nlp.language.LanguageManager;
 import com.graphaware.nlp.ml.textrank.TextRankSummarizer;
 import com.graphaware.nlp.ml.word2vec.Word2VecProcessor;
+import com.graphaware.nlp.persistence.DocumentFrequencyStatistics;
 import com.graphaware.nlp.persistence.PersistenceRegistry;
 import com.graphaware.nlp.persistence.constants.Properties;
 import com.graphaware.nlp.persistence.persisters.Persister;
 import com.graphaware.nlp.processor.TextProcessor;
 import com.graphaware.nlp.processor.TextProcessorsManager;
 import com.graphaware.nlp.summatization.Summarizer;
+import com.graphaware.nlp.util.BatchPipeline;
 import com.graphaware.nlp.util.ServiceLoader;
 import com.graphaware.nlp.vector.VectorComputation;
 import com.graphaware.nlp.vector.VectorHandler;
@@ -70,6 +75,8 @@ public final class NLPManager {
 
     private PersistenceRegistry persistenceRegistry;
 
+    private DocumentFrequencyStatistics documentFrequencyStatistics;
+
     private EnrichmentRegistry enrichmentRegistry;
 
     private Map<String, VectorComputation> vectorComputationProcesses = new HashMap<>();
@@ -108,8 +115,12 @@ public final class NLPManager {
         this.languageManager = new LanguageManager();
         this.database = database;
         this.persistenceRegistry = new PersistenceRegistry(database);
+        this.documentFrequencyStatistics = new DocumentFrequencyStatistics(database);
         this.enrichmentRegistry = buildAndRegisterEnrichers();
         this.eventDispatcher = new EventDispatcher();
+        eventDispatcher.registerListener(NLPEvents.TRANSACTION_BEFORE_COMMIT, (event) -> {
+            documentFrequencyStatistics.onTransaction(((DatabaseTransactionEvent) event).getTransactionData());
+        });
         loadExtensions();
         if (textProcessorsManager == null) {
             this.textProcessorsManager = new TextProcessorsManager(configuration);
@@ -134,6 +145,10 @@ public final class NLPManager {
         return database;
     }
 
+    public DocumentFrequencyStatistics getDocumentFrequencyStatistics() {
+        return documentFrequencyStatistics;
+    }
+
     public Node annotateTextAndPersist(AnnotationRequest annotationRequest) {
         return annotateTextAndPersist(annotationRequest.getText(), annotationRequest.getId(),
                 annotationRequest.getPipeline());
@@ -169,6 +184,36 @@ public final class NLPManager {
         return getPersister(annotatedText.getClass()).persist(annotatedText, id, txId);
     }
 
+    public BatchResult annotateTextsAndPersist(BulkAnnotationRequest request) {
+        PipelineSpecification pipelineSpecification = textProcessorsManager.getPipelineSpecification(request.getPipeline());
+        return new BatchPipeline<Map<String, Object>, Pair<String, AnnotatedText>>(database, "Bulk annotation", request.getBatchSize(), request.getConcurrency())
+                .run(() -> getDocuments(request),
+                        document -> {
+                            Object id = document.get(request.getIdField());
+                            Object text = document.get(request.getTextField());
+                            if (id == null || text == null) {
+                                LOG.warn("Skipping document without " + (id == null ? "ID" : "text for ID " + id));
+                                return null;
+                            }
+                            try {
+                                AnnotatedText annotatedText = textProcessorsManager.annotate(text.toString(), pipelineSpecification);
+                                annotatedText.setText(text.toString());
+                                return new Pair<>(id.toString(), annotatedText);
+                            } catch (Exception e) {
+                                LOG.error("Error while annotating document with ID " + id, e);
+                                return null;
+                            }
+                        },
+                        batch -> batch.forEach(item -> processAnnotationPersist(item.first(), item.second().getText(), item.second(), pipelineSpecification)));
+    }
+
+    private Iterator<Map<String, Object>> getDocuments(BulkAnnotationRequest request) {
+        if (request.getDocuments() != null) {
+            return request.getDocuments().iterator();
+        }
+        return database.execute(request.getQuery(), request.getQueryParams());
+    }
+
     public DynamicConfiguration getConfiguration() {
         return configuration;
     }
@@ -217,24 +262,24 @@ public final class NLPManager {
                 request.getSourcePath(),
                 request.getDestinationPath(),
                 request.getModelName(),
-                request.getLanguage());
+                request.getLanguage()).join();
         configuration.storeWord2VecModel(request);
     }
 
     private void registerWord2VecModelFromConfig() {
 
         configuration.loadWord2VecModel().forEach(word2VecModelSpecification -> {
-            try {
-                Word2VecProcessor word2VecProcessor = (Word2VecProcessor) getExtension(Word2VecProcessor.class);
-                word2VecProcessor.getWord2VecModel().createModelFromPaths(
-                        word2VecModelSpecification.getSourcePath(),
-                        word2VecModelSpecification.getDestinationPath(),
-                        word2VecModelSpecification.getModelName(),
-                        word2VecModelSpecification.getLanguage());
-            } catch (Exception ex) {
-                LOG.error("Error while loading the model: " + word2VecModelSpecification.getModelName(), ex);
-                configuration.removeWord2VecModel(word2VecModelSpecification.getModelName());
-            }
+            // models are imported and opened in the background, startup does not wait for them
+            Word2VecProcessor word2VecProcessor = (Word2VecProcessor) getExtension(Word2VecProcessor.class);
+            word2VecProcessor.getWord2VecModel().createModelFromPaths(
+                    word2VecModelSpecification.getSourcePath(),
+                    word2VecModelSpecification.getDestinationPath(),
+                    word2VecModelSpecification.getModelName(),
+                    word2VecModelSpecification.getLanguage()).exceptionally((ex) -> {
+                        LOG.error("Error while loading the model: " + word2VecModelSpecification.getModelName(), ex);
+                        configuration.removeWord2VecModel(word2VecModelSpecification.getModelName());
+                        return null;
+                    });
         });
 
     }
@@ -264,6 +309,16 @@ public final class NLPManager {
         return null;
     }
 
+    public void shutdown() {
+        extensions.values().forEach(extension -> {
+            try {
+                extension.shutdown();
+            } catch (Exception ex) {
+                LOG.error("Error while shutting down extension " + extension.getClass().getName(), ex);
+            }
+        });
+    }
+
     public Node computeVectorAndPersist(ComputeVectorRequest request) {
         try {
             VectorComputation vectorComputation = vectorComputationProcesses.get(request.getType());
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.configuration;
+
+import com.graphaware.nlp.dsl.request.PipelineSpecification;
+import com.graphaware.nlp.dsl.request.Word2VecModelSpecification;
+import com.graphaware.nlp.dsl.result.WorkflowInstanceItemInfo;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.graphaware.nlp.configuration.DynamicConfiguration.*;
+
+/**
+ * Read-only view of the configuration key value store at a given version. A new snapshot is built every time
+ * {@link DynamicConfiguration} changes the store, lookups never touch the database. Stored JSON values are
+ * deserialised on first access only, so that legacy entries can still be migrated after startup.
+ */
+final class ConfigurationSnapshot {
+
+    private final long version;
+    private final ObjectMapper mapper;
+    private final Map<String, Object> values;
+    private final Map<String, String> modelPaths;
+    private volatile Map<String, PipelineSpecification> pipelines;
+    private volatile List<Word2VecModelSpecification> word2VecModels;
+    private final Map<String, List<WorkflowInstanceItemInfo>> workflowItems = new ConcurrentHashMap<>();
+
+    ConfigurationSnapshot(long version, Map<String, Object> values, ObjectMapper mapper) {
+        this.version = version;
+        this.mapper = mapper;
+        this.values = Collections.unmodifiableMap(new HashMap<>(values));
+        Map<String, String> modelPaths = new HashMap<>();
+        values.forEach((k, v) -> {
+            if (k.startsWith(MODEL_KEY_PREFIX)) {
+                modelPaths.put(k.substring(MODEL_KEY_PREFIX.length()), v.toString());
+            }
+        });
+        this.modelPaths = Collections.unmodifiableMap(modelPaths);
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    Object get(String key) {
+        return values.get(key);
+    }
+
+    PipelineSpecification getPipeline(String name) {
+        return pipelines().get(name);
+    }
+
+    Collection<PipelineSpecification> getPipelines() {
+        return pipelines().values();
+    }
+
+    String getModelPath(String key) {
+        return modelPaths.get(key);
+    }
+
+    Map<String, String> getModelPaths() {
+        return modelPaths;
+    }
+
+    List<Word2VecModelSpecification> getWord2VecModels() {
+        List<Word2VecModelSpecification> result = word2VecModels;
+        if (result == null) {
+            List<Word2VecModelSpecification> models = new ArrayList<>();
+            values.forEach((k, v) -> {
+                if (k.startsWith(WORD2VEC_KEY_PREFIX)) {
+                    models.add(read(v, Word2VecModelSpecification.class));
+                }
+            });
+            word2VecModels = result = Collections.unmodifiableList(models);
+        }
+
+        return result;
+    }
+
+    List<WorkflowInstanceItemInfo> getWorkflowItems(String prefix) {
+        return workflowItems.computeIfAbsent(prefix, p -> {
+            List<WorkflowInstanceItemInfo> items = new ArrayList<>();
+            values.forEach((k, v) -> {
+                if (k.startsWith(p)) {
+                    items.add(read(v, WorkflowInstanceItemInfo.class));
+                }
+            });
+            return Collections.unmodifiableList(items);
+        });
+    }
+
+    private Map<String, PipelineSpecification> pipelines() {
+        Map<String, PipelineSpecification> result = pipelines;
+        if (result == null) {
+            Map<String, PipelineSpecification> specifications = new LinkedHashMap<>();
+            values.forEach((k, v) -> {
+                if (k.startsWith(PIPELINE_KEY_PREFIX)) {
+                    PipelineSpecification pipelineSpecification = read(v, PipelineSpecification.class);
+                    specifications.put(pipelineSpecification.getName(), pipelineSpecification);
+                }
+            });
+            pipelines = result = Collections.unmodifiableMap(specifications);
+        }
+
+        return result;
+    }
+
+    private <T> T read(Object value, Class<T> type) {
+        try {
+            return mapper.readValue(value.toString(), type);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
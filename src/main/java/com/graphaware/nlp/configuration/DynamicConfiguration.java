@@ -33,7 +33,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.codehaus.jackson.annotate.JsonTypeInfo;
 
@@ -50,8 +50,9 @@ public class DynamicConfiguration {
 
     protected final GraphDatabaseService database;
     protected final GraphKeyValueStore keyValueStore;
-    protected Map<String, Object> userProvidedConfiguration;
     protected final ObjectMapper mapper = new ObjectMapper();
+    private final AtomicLong version = new AtomicLong();
+    private volatile ConfigurationSnapshot snapshot;
 
     public DynamicConfiguration(GraphDatabaseService database) {
         this.database = database;
@@ -61,39 +62,39 @@ public class DynamicConfiguration {
     }
 
     public Label getLabelFor(Label label) {
-        if (!userProvidedConfiguration.containsKey(LABEL_KEY_PREFIX + label.toString())) {
+        if (!snapshot.contains(LABEL_KEY_PREFIX + label.toString())) {
             return label;
         }
 
-        return Label.label(userProvidedConfiguration.get(LABEL_KEY_PREFIX + label.toString()).toString());
+        return Label.label(snapshot.get(LABEL_KEY_PREFIX + label.toString()).toString());
     }
 
     public RelationshipType getRelationshipFor(RelationshipType relationship) {
-        if (!userProvidedConfiguration.containsKey(RELATIONSHIP_TYPE_KEY_PREFIX + relationship.name())) {
+        if (!snapshot.contains(RELATIONSHIP_TYPE_KEY_PREFIX + relationship.name())) {
             return relationship;
         }
 
-        return RelationshipType.withName(userProvidedConfiguration.get(RELATIONSHIP_TYPE_KEY_PREFIX + relationship.name()).toString());
+        return RelationshipType.withName(snapshot.get(RELATIONSHIP_TYPE_KEY_PREFIX + relationship.name()).toString());
     }
 
     public String getPropertyKeyFor(String key) {
-        if (!userProvidedConfiguration.containsKey(PROPERTY_KEY_PREFIX + key)) {
+        if (!snapshot.contains(PROPERTY_KEY_PREFIX + key)) {
             return key;
         }
 
-        return userProvidedConfiguration.get(PROPERTY_KEY_PREFIX + key).toString();
+        return snapshot.get(PROPERTY_KEY_PREFIX + key).toString();
     }
 
     public Object getSettingValueFor(String key) {
-        if (!userProvidedConfiguration.containsKey(SETTING_KEY_PREFIX + key)) {
+        if (!snapshot.contains(SETTING_KEY_PREFIX + key)) {
             return null;
         }
 
-        return userProvidedConfiguration.get(SETTING_KEY_PREFIX + key);
+        return snapshot.get(SETTING_KEY_PREFIX + key);
     }
 
     public boolean hasSettingValue(String key) {
-        return userProvidedConfiguration.containsKey(SETTING_KEY_PREFIX + key);
+        return snapshot.contains(SETTING_KEY_PREFIX + key);
     }
 
     public boolean hasStoreValue(String k) {
@@ -108,20 +109,13 @@ public class DynamicConfiguration {
 
     public void removeSettingValue(String key) {
         String k = SETTING_KEY_PREFIX + key;
-        if (userProvidedConfiguration.containsKey(k)) {
+        if (snapshot.contains(k)) {
             removeKey(STORE_KEY + k);
-            userProvidedConfiguration.remove(k);
         }
     }
 
     public void removeValue(String k) {
-        try (Transaction tx = database.beginTx()) {
-            String ck = STORE_KEY + k;
-            if (keyValueStore.hasKey(ck)) {
-                keyValueStore.remove(ck);
-            }
-            tx.success();
-        }
+        removeKey(STORE_KEY + k);
     }
 
     public void update(String key, Object value) {
@@ -143,20 +137,7 @@ public class DynamicConfiguration {
     }
 
     public List<PipelineSpecification> loadCustomPipelines() {
-        List<PipelineSpecification> list = new ArrayList<>();
-        Map<String, Object> config = getAllConfigValuesFromStore();
-        config.keySet().forEach(k -> {
-            if (k.startsWith(PIPELINE_KEY_PREFIX)) {
-                try {
-                    PipelineSpecification pipelineSpecification = mapper.readValue(config.get(k).toString(), PipelineSpecification.class);
-                    list.add(pipelineSpecification);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        });
-
-        return list;
+        return new ArrayList<>(snapshot.getPipelines());
     }
 
     public void storeWorkflowInstanceItem(WorkflowItem item) {
@@ -175,55 +156,18 @@ public class DynamicConfiguration {
     }
 
     public List<WorkflowInstanceItemInfo> loadWorkflowInstanceItems(String prefix) {
-        List<WorkflowInstanceItemInfo> list = new ArrayList<>();
-        Map<String, Object> config = getAllConfigValuesFromStore();
-        config.keySet().forEach(k -> {
-            if (k.startsWith(prefix)) {
-                try {
-                    WorkflowInstanceItemInfo pipelineSpecification = mapper.readValue(config.get(k).toString(), WorkflowInstanceItemInfo.class);
-                    list.add(pipelineSpecification);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        });
-        return list;
+        return new ArrayList<>(snapshot.getWorkflowItems(prefix));
     }
 
     public PipelineSpecification loadPipeline(String name) {
-        Map<String, Object> config = getAllConfigValuesFromStore();
-        AtomicReference<PipelineSpecification> result = new AtomicReference<>();
-        config.keySet().forEach(k -> {
-            if (k.startsWith(PIPELINE_KEY_PREFIX)) {
-                try {
-                    String s = config.get(k).toString();
-                    PipelineSpecification pipelineSpecification = mapper.readValue(config.get(k).toString(), PipelineSpecification.class);
-                    if (pipelineSpecification.getName().equals(name)) {
-                        result.set(pipelineSpecification);
-                    }
-                } catch (Exception e) {
-                    throw new RuntimeException(e.getMessage());
-                }
-            }
-        });
-
-        return result.get();
+        return snapshot.getPipeline(name);
     }
 
     public void removePipeline(String name, String textProcessor) {
-        Map<String, Object> config = getAllConfigValuesFromStore();
-        config.keySet().forEach(k -> {
-            if (k.startsWith(PIPELINE_KEY_PREFIX)) {
-                try {
-                    PipelineSpecification pipelineSpecification = mapper.readValue(config.get(k).toString(), PipelineSpecification.class);
-                    if (pipelineSpecification.getName().equals(name) && pipelineSpecification.getTextProcessor().equals(textProcessor)) {
-                        removeKey(STORE_KEY + k);
-                    }
-                } catch (Exception e) {
-                    throw new RuntimeException(e.getMessage());
-                }
-            }
-        });
+        PipelineSpecification pipelineSpecification = snapshot.getPipeline(name);
+        if (pipelineSpecification != null && pipelineSpecification.getTextProcessor().equals(textProcessor)) {
+            removeKey(STORE_KEY + PIPELINE_KEY_PREFIX + name);
+        }
     }
 
     public void updateInternalSetting(String key, Object value) {
@@ -241,6 +185,7 @@ public class DynamicConfiguration {
             }
             tx.success();
         }
+        loadUserConfiguration();
     }
 
     public Map<String, Object> getAllConfigValuesFromStore() {
@@ -263,31 +208,22 @@ public class DynamicConfiguration {
     }
 
     public String getModelPaths(String key) {
-        String value = null;
-        if (hasStoreValue(MODEL_KEY_PREFIX + key)) {
-            value = getAllConfigValuesFromStore().get(MODEL_KEY_PREFIX + key).toString();
-        }
-
-        return value;
+        return snapshot.getModelPath(key);
     }
 
     public Map<String, String> getAllModelPaths() {
-        Map<String, String> result = new HashMap<>();
-        try (Transaction tx = database.beginTx()) {
-            Map<String, Object> config = getAllConfigValuesFromStore();
-            config.keySet().forEach(k -> {
-                if (k.startsWith(MODEL_KEY_PREFIX)) {
-                    result.put(k.replace(MODEL_KEY_PREFIX, ""), config.get(k).toString());
-                }
-            });
-            tx.success();
-        }
+        return new HashMap<>(snapshot.getModelPaths());
+    }
 
-        return result;
+    /**
+     * @return the version of the configuration, incremented every time the configuration store is changed
+     */
+    public long getVersion() {
+        return snapshot.getVersion();
     }
 
-    private void loadUserConfiguration() {
-        userProvidedConfiguration = getAllConfigValuesFromStore();
+    private synchronized void loadUserConfiguration() {
+        snapshot = new ConfigurationSnapshot(version.incrementAndGet(), getAllConfigValuesFromStore(), mapper);
     }
 
     public void storeWord2VecModel(Word2VecModelSpecification request) {
@@ -301,20 +237,7 @@ public class DynamicConfiguration {
     }
 
     public List<Word2VecModelSpecification> loadWord2VecModel() {
-        List<Word2VecModelSpecification> list = new ArrayList<>();
-        Map<String, Object> config = getAllConfigValuesFromStore();
-        config.keySet().forEach(k -> {
-            if (k.startsWith(WORD2VEC_KEY_PREFIX)) {
-                try {
-                    Word2VecModelSpecification word2VecAddModel = mapper.readValue(config.get(k).toString(), Word2VecModelSpecification.class);
-                    list.add(word2VecAddModel);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        });
-
-        return list;
+        return new ArrayList<>(snapshot.getWord2VecModels());
     }
 
     public void removeWord2VecModel(String modelName) {
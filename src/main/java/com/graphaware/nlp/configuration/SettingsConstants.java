@@ -6,4 +6,7 @@ public final class SettingsConstants {
     public static final String DEFAULT_TEXT_PROCESSOR = "defaultProcessor";
     public static final String DEFAULT_PIPELINE = "defaultPipeline";
     public static final String DEFAULT_MODEL_WORKDIR = "defaultModelWorkdir";
+    public static final String BATCHED_PERSISTENCE = "batchedPersistence";
+    public static final String INCREMENTAL_SIMILARITY = "incrementalSimilarity";
+    public static final String TEXTRANK_NE_CACHE_SIZE = "textRankNamedEntityCacheSize";
 }
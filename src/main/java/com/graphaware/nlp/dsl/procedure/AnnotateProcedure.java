@@ -17,7 +17,9 @@ package com.graphaware.nlp.dsl.procedure;
 
 import com.graphaware.nlp.dsl.AbstractDSL;
 import com.graphaware.nlp.dsl.request.AnnotationRequest;
+import com.graphaware.nlp.dsl.request.BulkAnnotationRequest;
 import com.graphaware.nlp.dsl.request.FilterRequest;
+import com.graphaware.nlp.dsl.result.BatchResult;
 import com.graphaware.nlp.dsl.result.NodeResult;
 import com.graphaware.nlp.dsl.result.SingleResult;
 import org.neo4j.graphdb.Node;
@@ -42,6 +44,13 @@ public class AnnotateProcedure extends AbstractDSL {
             throw new RuntimeException(e);
         }
     }
+
+    @Procedure(name = "ga.nlp.annotate.bulk", mode = Mode.WRITE)
+    @Description("Annotates many texts in parallel and stores them into the graph in batches")
+    public Stream<BatchResult> annotateBulk(@Name("bulkAnnotationRequest") Map<String, Object> bulkAnnotationRequest) {
+        BulkAnnotationRequest request = BulkAnnotationRequest.fromMap(bulkAnnotationRequest);
+        return Stream.of(getNLPManager().annotateTextsAndPersist(request));
+    }
     
     @Procedure(name = "ga.nlp.filter", mode = Mode.WRITE)
     @Description("Boolean filter for text accordingly to complex filter definition")
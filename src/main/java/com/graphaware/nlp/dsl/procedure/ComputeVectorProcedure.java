@@ -54,4 +54,13 @@ public class ComputeVectorProcedure extends AbstractDSL {
             throw new RuntimeException(e);
         }
     }
+
+    @Procedure(name = "ga.nlp.vector.documentFrequency.rebuild", mode = Mode.WRITE)
+    @Description("Recompute the document frequency stored on every tag, for graphs annotated before it was maintained")
+    public Stream<SingleResult> rebuildDocumentFrequency(@Name(value = "batchSize", defaultValue = "10000") long batchSize) {
+        if (batchSize < 1 || batchSize > Integer.MAX_VALUE) {
+            throw new RuntimeException("Invalid batchSize: " + batchSize);
+        }
+        return Stream.of(new SingleResult(getNLPManager().getDocumentFrequencyStatistics().rebuild((int) batchSize)));
+    }
 }
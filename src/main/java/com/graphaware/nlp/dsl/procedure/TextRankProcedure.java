@@ -16,8 +16,10 @@
 package com.graphaware.nlp.dsl.procedure;
 
 import com.graphaware.nlp.dsl.AbstractDSL;
+import com.graphaware.nlp.dsl.request.TextRankBatchRequest;
 import com.graphaware.nlp.dsl.request.TextRankPostprocessRequest;
 import com.graphaware.nlp.dsl.request.TextRankRequest;
+import com.graphaware.nlp.dsl.result.BatchResult;
 import com.graphaware.nlp.dsl.result.SingleResult;
 import com.graphaware.nlp.ml.textrank.TextRankProcessor;
 import com.graphaware.nlp.ml.textrank.TextRankResult;
@@ -48,6 +50,19 @@ public class TextRankProcedure extends AbstractDSL {
         }
     }
 
+    @Procedure(name = "ga.nlp.ml.textRank.batch", mode = Mode.WRITE)
+    @Description("Keywords Extraction using TextRank algorithm over many AnnotatedText nodes, computed in parallel and stored in batches")
+    public Stream<BatchResult> computeAndStoreTextRankBatch(@Name("textRankRequest") Map<String, Object> textRankRequest) {
+        try {
+            TextRankBatchRequest request = TextRankBatchRequest.fromMap(textRankRequest);
+            TextRankProcessor processor = (TextRankProcessor) getNLPManager().getExtension(TextRankProcessor.class);
+            return Stream.of(processor.computeAndStoreBatch(request));
+        } catch (Exception e) {
+            LOG.error("ERROR in TextRank batch", e);
+            throw new RuntimeException(e);
+        }
+    }
+
     @Procedure(name = "ga.nlp.ml.textRank.compute", mode = Mode.WRITE)
     @Description("Keywords Extraction using TextRank algorithm ( without storage )")
     public Stream<KeywordResult> computeTextRank(@Name("textRankRequest") Map<String, Object> textRankRequest) {
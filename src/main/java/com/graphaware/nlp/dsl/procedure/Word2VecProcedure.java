@@ -15,6 +15,7 @@
  */
 package com.graphaware.nlp.dsl.procedure;
 
+import com.google.common.cache.CacheStats;
 import com.graphaware.nlp.dsl.AbstractDSL;
 import com.graphaware.nlp.dsl.request.Word2VecModelSpecification;
 import com.graphaware.nlp.dsl.request.Word2VecRequest;
@@ -51,11 +52,18 @@ public class Word2VecProcedure extends AbstractDSL {
         List<Word2VecModelResult> results = new ArrayList<>();
         models.keySet().forEach(s -> {
             try {
-                results.add(new Word2VecModelResult(s, models.get(s).getStorePath(), models.get(s).countIndex()));
+                Word2VecIndexLookup model = models.get(s);
+                CacheStats stats = model.getCacheStats();
+                results.add(new Word2VecModelResult(s, model.getStorePath(), model.countIndex(), model.getCacheSize(), stats.hitCount(), stats.missCount()));
             } catch (IOException e) {
                 //
             }
         });
+        word2VecProcessor.getWord2VecModel().getLoadingModels().forEach((name, progress) -> {
+            if (!models.containsKey(name)) {
+                results.add(new Word2VecModelResult(name, progress.getStatus()));
+            }
+        });
 
         return results.stream();
     }
@@ -90,10 +98,10 @@ public class Word2VecProcedure extends AbstractDSL {
 
     @Procedure(name = "ga.nlp.ml.word2vec.nn")
     @Description("Retrieve the nearest neighbors of the given word")
-    public Stream<NearestNeighbor> getNearestNeighbors(@Name("word") String word, @Name(value = "limit") Long limit, @Name(value = "modelName", defaultValue = "") String modelName) {
+    public Stream<NearestNeighbor> getNearestNeighbors(@Name("word") String word, @Name(value = "limit") Long limit, @Name(value = "modelName", defaultValue = "") String modelName, @Name(value = "probes", defaultValue = "0") Long probes) {
         Word2VecProcessor word2VecProcessor = (Word2VecProcessor) getNLPManager().getExtension(Word2VecProcessor.class);
 
-        return word2VecProcessor.getNearestNeighbors(word, limit.intValue(), modelName)
+        return word2VecProcessor.getNearestNeighbors(word, limit.intValue(), modelName, probes.intValue())
                 .stream()
                 .filter(pair -> null != pair)
                 .map(pair -> {
@@ -114,6 +122,15 @@ public class Word2VecProcedure extends AbstractDSL {
         }
     }
 
+    @Procedure(name = "ga.nlp.ml.word2vec.buildNNIndex")
+    @Description("Build and store the approximate nearest neighbors index of a model")
+    public Stream<SingleResult> buildNNIndex(@Name(value = "modelName", defaultValue = "") String modelName) {
+        Word2VecProcessor word2VecProcessor = (Word2VecProcessor) getNLPManager().getExtension(Word2VecProcessor.class);
+        word2VecProcessor.buildNearestNeighborsIndex(modelName);
+
+        return Stream.of(SingleResult.success());
+    }
+
     @Procedure(name = "ga.nlp.ml.word2vec.clearCache")
     @Description("Clear the word embeddings cache")
     public Stream<SingleResult> clearCache(@Name(value = "modelName") String modelName) {
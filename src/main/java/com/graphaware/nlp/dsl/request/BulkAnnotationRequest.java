@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.dsl.request;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BulkAnnotationRequest {
+
+    private final static String PARAMETER_QUERY = "query";
+    private final static String PARAMETER_QUERY_PARAMS = "params";
+    private final static String PARAMETER_DOCUMENTS = "documents";
+    private final static String PARAMETER_PIPELINE = "pipeline";
+    private final static String PARAMETER_BATCH_SIZE = "batchSize";
+    private final static String PARAMETER_CONCURRENCY = "concurrency";
+    private final static String PARAMETER_ID_FIELD = "idField";
+    private final static String PARAMETER_TEXT_FIELD = "textField";
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final String DEFAULT_ID_FIELD = "id";
+    private static final String DEFAULT_TEXT_FIELD = "text";
+
+    private String query;
+    private Map<String, Object> queryParams;
+    private List<Map<String, Object>> documents;
+    private String pipeline;
+    private int batchSize;
+    private int concurrency;
+    private String idField;
+    private String textField;
+
+    public static BulkAnnotationRequest fromMap(Map<String, Object> bulkRequest) {
+        if (!bulkRequest.containsKey(PARAMETER_QUERY) && !bulkRequest.containsKey(PARAMETER_DOCUMENTS)) {
+            throw new RuntimeException("Missing parameter, you should specify '" + PARAMETER_QUERY + "' or '" + PARAMETER_DOCUMENTS + "'");
+        }
+        BulkAnnotationRequest result = new BulkAnnotationRequest();
+        result.setQuery((String) bulkRequest.get(PARAMETER_QUERY));
+        result.setQueryParams((Map<String, Object>) bulkRequest.getOrDefault(PARAMETER_QUERY_PARAMS, new HashMap<>()));
+        if (bulkRequest.containsKey(PARAMETER_DOCUMENTS)) {
+            result.setDocuments(new ArrayList<>((List<Map<String, Object>>) bulkRequest.get(PARAMETER_DOCUMENTS)));
+        }
+        result.setPipeline((String) bulkRequest.get(PARAMETER_PIPELINE));
+        result.setBatchSize(((Number) bulkRequest.getOrDefault(PARAMETER_BATCH_SIZE, DEFAULT_BATCH_SIZE)).intValue());
+        result.setConcurrency(((Number) bulkRequest.getOrDefault(PARAMETER_CONCURRENCY, Runtime.getRuntime().availableProcessors())).intValue());
+        result.setIdField((String) bulkRequest.getOrDefault(PARAMETER_ID_FIELD, DEFAULT_ID_FIELD));
+        result.setTextField((String) bulkRequest.getOrDefault(PARAMETER_TEXT_FIELD, DEFAULT_TEXT_FIELD));
+
+        return result;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    public Map<String, Object> getQueryParams() {
+        return queryParams;
+    }
+
+    public void setQueryParams(Map<String, Object> queryParams) {
+        this.queryParams = queryParams;
+    }
+
+    public List<Map<String, Object>> getDocuments() {
+        return documents;
+    }
+
+    public void setDocuments(List<Map<String, Object>> documents) {
+        this.documents = documents;
+    }
+
+    public String getPipeline() {
+        return pipeline;
+    }
+
+    public void setPipeline(String pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new RuntimeException("Invalid " + PARAMETER_BATCH_SIZE + ": " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new RuntimeException("Invalid " + PARAMETER_CONCURRENCY + ": " + concurrency);
+        }
+        this.concurrency = concurrency;
+    }
+
+    public String getIdField() {
+        return idField;
+    }
+
+    public void setIdField(String idField) {
+        this.idField = idField;
+    }
+
+    public String getTextField() {
+        return textField;
+    }
+
+    public void setTextField(String textField) {
+        this.textField = textField;
+    }
+}
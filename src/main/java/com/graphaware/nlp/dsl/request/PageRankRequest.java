@@ -21,6 +21,8 @@ public class PageRankRequest {
     private static final double DEFAULT_DUMPING_FACTOR = 0.85;
     private static final double DEFAULT_THRESHOLD = 0.0001;
     private static final boolean DEFAULT_RESPECT_DIRECTIONS = true;
+    private static final String DEFAULT_PROPERTY_NAME = "pagerank";
+    private static final long DEFAULT_BATCH_SIZE = 10000;
     /*private static final String DEFAULT_NODE_TYPE = "Tag";
     private static final String DEFAULT_CO_OCCURRENCE_RELATIONTHIP = "CO_OCCURRENCE";
     private static final String DEFAULT_WEIGHT_PROPERTY = "weight";*/
@@ -33,6 +35,8 @@ public class PageRankRequest {
     private Double damp = DEFAULT_DUMPING_FACTOR;
     private Double threshold = DEFAULT_THRESHOLD;
     private Boolean respectDirections = DEFAULT_RESPECT_DIRECTIONS;
+    private String propertyName = DEFAULT_PROPERTY_NAME;
+    private Long batchSize = DEFAULT_BATCH_SIZE;
     
     public PageRankRequest() {
     }
@@ -76,5 +80,24 @@ public class PageRankRequest {
     public void setQuery(String query) {
         this.query = query;
     }
+
+    public String getPropertyName() {
+        return propertyName;
+    }
+
+    public void setPropertyName(String propertyName) {
+        this.propertyName = propertyName;
+    }
+
+    public Long getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(Long batchSize) {
+        if (batchSize == null || batchSize < 1 || batchSize > Integer.MAX_VALUE) {
+            throw new RuntimeException("Invalid batchSize: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
     
 }
@@ -28,6 +28,10 @@ public final class RequestConstants {
     public static final String RELATIONSHIP_TYPE_KEY = "relationshipType";
     public static final String DIRECTION_KEY = "relDirection";
     public static final String K_SIZE_KEY = "kSize";
+    public static final String INVERTED_INDEX_KEY = "invertedIndex";
+    public static final String PRUNING_KEY = "pruning";
+    public static final String WAIT_FOR_STORE_KEY = "waitForStore";
+    public static final String PRELOAD_VECTORS_KEY = "preloadVectors";
     public static final String ANNOTATORS = "annotators";
     public static final String EXCLUDED_NER = "excludedNER";
     public static final String EXCLUDED_POS = "excludedPOS";
@@ -35,6 +35,10 @@ public class SimilarityRequest extends AbstractProcedureRequest {
     private String relationshipType;
     private String propertyName;
     private int kSize;
+    private boolean invertedIndex;
+    private boolean pruning;
+    private boolean waitForStore;
+    private boolean preloadVectors;
 
     public SimilarityRequest() {
     }
@@ -96,7 +100,11 @@ public class SimilarityRequest extends AbstractProcedureRequest {
                 DEPTH_KEY,
                 LABEL_KEY,
                 RELATIONSHIP_TYPE_KEY,
-                K_SIZE_KEY
+                K_SIZE_KEY,
+                INVERTED_INDEX_KEY,
+                PRUNING_KEY,
+                WAIT_FOR_STORE_KEY,
+                PRELOAD_VECTORS_KEY
         );
     }
 
@@ -125,6 +133,10 @@ public class SimilarityRequest extends AbstractProcedureRequest {
             request.setkSize(DEFAULT_K_SIZE);
         }
         request.setLabel((String)map.getOrDefault(LABEL_KEY, DEFAULT_LABEL));
+        request.setInvertedIndex((Boolean) map.getOrDefault(INVERTED_INDEX_KEY, false));
+        request.setPruning((Boolean) map.getOrDefault(PRUNING_KEY, false));
+        request.setWaitForStore((Boolean) map.getOrDefault(WAIT_FOR_STORE_KEY, false));
+        request.setPreloadVectors((Boolean) map.getOrDefault(PRELOAD_VECTORS_KEY, false));
         request.validateMap(map);
         return request;
     }
@@ -137,4 +149,36 @@ public class SimilarityRequest extends AbstractProcedureRequest {
         this.kSize = kSize;
     }
 
+    public boolean isInvertedIndex() {
+        return invertedIndex;
+    }
+
+    public void setInvertedIndex(boolean invertedIndex) {
+        this.invertedIndex = invertedIndex;
+    }
+
+    public boolean isPruning() {
+        return pruning;
+    }
+
+    public void setPruning(boolean pruning) {
+        this.pruning = pruning;
+    }
+
+    public boolean isWaitForStore() {
+        return waitForStore;
+    }
+
+    public void setWaitForStore(boolean waitForStore) {
+        this.waitForStore = waitForStore;
+    }
+
+    public boolean isPreloadVectors() {
+        return preloadVectors;
+    }
+
+    public void setPreloadVectors(boolean preloadVectors) {
+        this.preloadVectors = preloadVectors;
+    }
+
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.dsl.request;
+
+import org.neo4j.graphdb.Node;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TextRankBatchRequest {
+
+    private final static String PARAMETER_QUERY = "query";
+    private final static String PARAMETER_QUERY_PARAMS = "params";
+    private final static String PARAMETER_ANNOTATED_TEXTS = "annotatedTexts";
+    private final static String PARAMETER_BATCH_SIZE = "batchSize";
+    private final static String PARAMETER_CONCURRENCY = "concurrency";
+    private final static String PARAMETER_ANNOTATED_TEXT = "annotatedText";
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    private String query;
+    private Map<String, Object> queryParams;
+    private List<Node> annotatedTexts;
+    private int batchSize;
+    private int concurrency;
+    private Map<String, Object> textRankParameters;
+
+    public static TextRankBatchRequest fromMap(Map<String, Object> batchRequest) {
+        if (!batchRequest.containsKey(PARAMETER_QUERY) && !batchRequest.containsKey(PARAMETER_ANNOTATED_TEXTS)) {
+            throw new RuntimeException("Missing parameter, you should specify '" + PARAMETER_QUERY + "' or '" + PARAMETER_ANNOTATED_TEXTS + "'");
+        }
+        TextRankBatchRequest result = new TextRankBatchRequest();
+        result.setQuery((String) batchRequest.get(PARAMETER_QUERY));
+        result.setQueryParams((Map<String, Object>) batchRequest.getOrDefault(PARAMETER_QUERY_PARAMS, new HashMap<>()));
+        if (batchRequest.containsKey(PARAMETER_ANNOTATED_TEXTS)) {
+            result.setAnnotatedTexts(new ArrayList<>((List<Node>) batchRequest.get(PARAMETER_ANNOTATED_TEXTS)));
+        }
+        result.setBatchSize(((Number) batchRequest.getOrDefault(PARAMETER_BATCH_SIZE, DEFAULT_BATCH_SIZE)).intValue());
+        result.setConcurrency(((Number) batchRequest.getOrDefault(PARAMETER_CONCURRENCY, Runtime.getRuntime().availableProcessors())).intValue());
+
+        Map<String, Object> textRankParameters = new HashMap<>(batchRequest);
+        textRankParameters.remove(PARAMETER_QUERY);
+        textRankParameters.remove(PARAMETER_QUERY_PARAMS);
+        textRankParameters.remove(PARAMETER_ANNOTATED_TEXTS);
+        textRankParameters.remove(PARAMETER_BATCH_SIZE);
+        textRankParameters.remove(PARAMETER_CONCURRENCY);
+        result.textRankParameters = textRankParameters;
+
+        return result;
+    }
+
+    public TextRankRequest toTextRankRequest(Node annotatedText) {
+        Map<String, Object> parameters = new HashMap<>(textRankParameters);
+        parameters.put(PARAMETER_ANNOTATED_TEXT, annotatedText);
+        return TextRankRequest.fromMap(parameters);
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    public Map<String, Object> getQueryParams() {
+        return queryParams;
+    }
+
+    public void setQueryParams(Map<String, Object> queryParams) {
+        this.queryParams = queryParams;
+    }
+
+    public List<Node> getAnnotatedTexts() {
+        return annotatedTexts;
+    }
+
+    public void setAnnotatedTexts(List<Node> annotatedTexts) {
+        this.annotatedTexts = annotatedTexts;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new RuntimeException("Invalid " + PARAMETER_BATCH_SIZE + ": " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new RuntimeException("Invalid " + PARAMETER_CONCURRENCY + ": " + concurrency);
+        }
+        this.concurrency = concurrency;
+    }
+}
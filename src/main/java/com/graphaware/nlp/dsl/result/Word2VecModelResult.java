@@ -23,9 +23,30 @@ public class Word2VecModelResult {
 
     public long indexCount;
 
+    public long cacheSize;
+
+    public long cacheHits;
+
+    public long cacheMisses;
+
+    public String status;
+
     public Word2VecModelResult(String name, String path, long indexCount) {
         this.name = name;
         this.path = path;
         this.indexCount = indexCount;
+        this.status = "ready";
+    }
+
+    public Word2VecModelResult(String name, String status) {
+        this.name = name;
+        this.status = status;
+    }
+
+    public Word2VecModelResult(String name, String path, long indexCount, long cacheSize, long cacheHits, long cacheMisses) {
+        this(name, path, indexCount);
+        this.cacheSize = cacheSize;
+        this.cacheHits = cacheHits;
+        this.cacheMisses = cacheMisses;
     }
 }
@@ -22,4 +22,7 @@ public interface NLPExtension {
 
     void registerEventListeners(EventDispatcher eventDispatcher);
     void postLoaded();
+
+    default void shutdown() {
+    }
 }
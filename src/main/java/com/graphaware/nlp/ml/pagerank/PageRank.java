@@ -15,23 +15,27 @@
  */
 package com.graphaware.nlp.ml.pagerank;
 
-import com.google.common.util.concurrent.AtomicDouble;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Result;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.logging.Log;
 import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.nlp.util.TransactionBatches;
 import static com.graphaware.nlp.util.TypeConverter.getDoubleValue;
 
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 public class PageRank {
 
     private static final Log LOG = LoggerFactory.getLogger(PageRank.class);
 
+    public static final String DEFAULT_PROPERTY_NAME = "pagerank";
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+
     protected final GraphDatabaseService database;
     private Map<Long, Double> nodeWeights;
 
@@ -45,49 +49,42 @@ public class PageRank {
 
     public Map<Long, Double> run(Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences, int iter, double dampFactor, double threshold) {
         nodeWeights = initializeNodeWeights(coOccurrences);
-        Map<Long, Double> pagerank = getInitializedPageRank(nodeWeights, dampFactor);
-        int nNodes = pagerank.size();
+        PageRankGraph graph = PageRankGraph.fromCoOccurrences(coOccurrences, nodeWeights.keySet());
+        return graph.toMap(run(graph, iter, dampFactor, threshold));
+    }
+
+    public double[] run(PageRankGraph graph, int iter, double dampFactor, double threshold) {
+        int nNodes = graph.getNodeCount();
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        double[] weights = graph.getWeights();
+        double[] pagerank = new double[nNodes];
+        double[] prTemp = new double[nNodes];
+        Arrays.fill(pagerank, (1. - dampFactor) / nNodes);
         boolean thresholdHit = false;
-        Map<Long, Double> prTemp = new HashMap<>();
         for (int iteration = 0; iteration < iter && !thresholdHit; iteration++) {
-            //Map<Long, Double> prTemp = new HashMap<>();
-            // calculate main part of the PR calculation, include weights of nodes and relationships
-            nodeWeights.entrySet().stream().forEach(enExt -> {
-                Long nodeIdExt = enExt.getKey();
-                Double nodeWExt = enExt.getValue();
-                AtomicDouble internalSum = new AtomicDouble(0.0);
-                //AtomicDouble internalNodeWSum = new AtomicDouble(0.0);
-                nodeWeights.entrySet().stream()
-                        .filter(enInt -> coOccurrences.containsKey(enInt.getKey()) && coOccurrences.get(enInt.getKey()).containsKey(nodeIdExt))
-                        .forEach(enInt -> {
-                            Long nodeIdInt = enInt.getKey();
-                            Double nodeWInt = enInt.getValue();
-                            //internalNodeWSum.addAndGet(nodeWInt);
-                            Map<Long, CoOccurrenceItem> coOccurrentTags = coOccurrences.get(nodeIdInt);
-                            //Can be optimized
-                            double totalWeightSum = coOccurrentTags.values().stream().map(item -> item.getCount()).mapToDouble(Number::doubleValue).sum();
-                            //internalSum.addAndGet(1.0d/coOccurrentTags.size() * pagerank.get(nodeIdInt)); // no relationship weights
-                            internalSum.addAndGet(((1.0d * coOccurrentTags.get(nodeIdExt).getCount()) / totalWeightSum) * pagerank.get(nodeIdInt)); // with relationship weights
-                            //internalSum.addAndGet(((1.0d * coOccurrentTags.get(nodeIdExt).getCount()) / totalWeightSum) * pagerank.get(nodeIdInt) * nodeWInt); // with relationship & node weights
-                        });
-                double newPrValue = (1 - dampFactor) / nNodes + dampFactor * internalSum.get(); // PR is a probability (PR values add up to 1)
-
-                // PageRank with node weights
-                //long nInt = nodeWeights.entrySet().stream()
-                //        .filter(enInt -> coOccurrences.containsKey(enInt.getKey()) && coOccurrences.get(enInt.getKey()).containsKey(nodeIdExt))
-                //        .count();
-                //double newPrValue = (1 - dampFactor) / nNodes + dampFactor * internalSum.get() * (nInt / internalNodeWSum.get()); // PR is a probability (PR values add up to 1); WITH node weights
-                prTemp.put(nodeIdExt, newPrValue);
-            });
-            thresholdHit = checkThreshold(pagerank, prTemp, threshold);
+            // push the rank of every node along its outgoing (normalised) relationships
+            Arrays.fill(prTemp, 0.0d);
+            for (int source = 0; source < nNodes; source++) {
+                double sourceRank = pagerank[source];
+                for (int e = offsets[source]; e < offsets[source + 1]; e++) {
+                    prTemp[targets[e]] += weights[e] * sourceRank;
+                }
+            }
+            thresholdHit = true;
+            for (int node = 0; node < nNodes; node++) {
+                double newPrValue = (1 - dampFactor) / nNodes + dampFactor * prTemp[node]; // PR is a probability (PR values add up to 1)
+                if (Math.abs(newPrValue - pagerank[node]) > threshold) {
+                    thresholdHit = false;
+                }
+                prTemp[node] = newPrValue;
+            }
             if (thresholdHit) {
                 LOG.info("Threshold hit after " + (iteration + 1) + " iterations");
             }
-            // finish page rank computation and store it to the final list
-            nodeWeights.keySet().stream().forEach((nodeIdExt) -> {
-                pagerank.put(nodeIdExt, prTemp.get(nodeIdExt));
-            });
-
+            double[] swap = pagerank;
+            pagerank = prTemp;
+            prTemp = swap;
         } // iterations
         return pagerank;
     }
@@ -113,15 +110,62 @@ public class PageRank {
         return results;
     }
 
+    public PageRankGraph loadGraph(String query, boolean respectDirections) {
+        LOG.info("Running query: " + query);
+        PageRankGraphBuilder builder = new PageRankGraphBuilder();
+        try (Transaction tx = database.beginTx();
+             Result res = database.execute(query)) {
+            res.accept(row -> {
+                long tag1 = row.getNumber("start").longValue();
+                long tag2 = row.getNumber("dest").longValue();
+                double w = getDoubleValue(row.get("weight"));
+                builder.addEdge(tag1, tag2, w);
+                if (!respectDirections) {
+                    builder.addEdge(tag2, tag1, w);
+                }
+                return true;
+            });
+            tx.success();
+        } catch (Exception e) {
+            LOG.error("loadGraph() failed: " + e.getMessage());
+        }
+        LOG.info("Loaded graph with " + builder.getNodeCount() + " nodes and " + builder.getEdgeCount() + " relationships");
+        return builder.build();
+    }
+
     public void storeOnGraph(Map<Long, Double> pageranks) {
-        pageranks.keySet().forEach((tag) -> {
-            try (Transaction tx = database.beginTx();) {
-                database.execute("MATCH (t) WHERE id(t)=" + tag + "\n SET t.pagerank = " + pageranks.get(tag));
-                tx.success();
-            } catch (Exception e) {
-                LOG.error("storeOnGraph() failed: " + e.getMessage());
-            }
-        });
+        storeOnGraph(pageranks, DEFAULT_PROPERTY_NAME, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Stores the scores on their nodes. Within a transaction (e.g. from a procedure) they are written in it and rolled
+     * back with it, otherwise every batchSize nodes are committed in their own transaction.
+     *
+     * @return the number of nodes updated
+     */
+    public long storeOnGraph(Map<Long, Double> pageranks, String propertyName, int batchSize) {
+        long[] nodeIds = new long[pageranks.size()];
+        double[] values = new double[pageranks.size()];
+        int i = 0;
+        for (Map.Entry<Long, Double> entry : pageranks.entrySet()) {
+            nodeIds[i] = entry.getKey();
+            values[i] = entry.getValue();
+            i++;
+        }
+        return storeOnGraph(nodeIds, values, propertyName, batchSize);
+    }
+
+    public long storeOnGraph(PageRankGraph graph, double[] pageranks, String propertyName, int batchSize) {
+        return storeOnGraph(graph.getNodeIds(), pageranks, propertyName, batchSize);
+    }
+
+    private long storeOnGraph(long[] nodeIds, double[] values, String propertyName, int batchSize) {
+        long start = System.currentTimeMillis();
+        long stored = TransactionBatches.write(database, "storeOnGraph()", IntStream.range(0, nodeIds.length).iterator(), batchSize,
+                i -> database.getNodeById(nodeIds[i]).setProperty(propertyName, values[i]));
+        LOG.info("Stored " + stored + " PageRank values in property " + propertyName + " in " + (System.currentTimeMillis() - start) + "ms");
+
+        return stored;
     }
 
     private void addTagToCoOccurrence(Map<Long, Map<Long, CoOccurrenceItem>> results, Long tag1, Long tag2, double w) {
@@ -154,26 +198,4 @@ public class PageRank {
         return nodeInitialWeights;
     }
 
-    private Map<Long, Double> getInitializedPageRank(Map<Long, Double> nodeWeights, double damp) {
-        Map<Long, Double> pageRank = new HashMap<>();
-        int n = nodeWeights.size();
-        nodeWeights.entrySet().stream().forEach((item) -> {
-            pageRank.put(item.getKey(), (1. - damp) / n);
-        });
-
-        return pageRank;
-    }
-
-    private boolean checkThreshold(Map<Long, Double> pagerank, Map<Long, Double> prTemp, double threshold) {
-        Iterator<Long> iterator = pagerank.keySet().iterator();
-        while (iterator.hasNext()) {
-            long nodeIdExt = iterator.next();
-            double diff = Math.abs(prTemp.get(nodeIdExt) - pagerank.get(nodeIdExt));
-            if (diff > threshold) {
-                return false;
-            }
-        }
-        return true;
-    }
-
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.pagerank;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compressed sparse row (CSR) representation of a weighted graph used by {@link PageRank}.
+ * Nodes are remapped to dense int indexes; outgoing edge weights are normalised by the
+ * total outgoing weight of their source node.
+ */
+public class PageRankGraph {
+
+    private final long[] nodeIds;
+    private final int[] offsets;
+    private final int[] targets;
+    private final double[] weights;
+
+    public PageRankGraph(long[] nodeIds, int[] offsets, int[] targets, double[] weights) {
+        this.nodeIds = nodeIds;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+    }
+
+    public static PageRankGraph fromCoOccurrences(Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences, Collection<Long> nodes) {
+        int n = nodes.size();
+        long[] nodeIds = new long[n];
+        Map<Long, Integer> nodeIndex = new HashMap<>(n * 2);
+        int i = 0;
+        for (Long node : nodes) {
+            nodeIds[i] = node;
+            nodeIndex.put(node, i);
+            i++;
+        }
+
+        int[] offsets = new int[n + 1];
+        for (i = 0; i < n; i++) {
+            Map<Long, CoOccurrenceItem> coOccurrentTags = coOccurrences.get(nodeIds[i]);
+            int degree = 0;
+            if (coOccurrentTags != null) {
+                for (Long destination : coOccurrentTags.keySet()) {
+                    if (nodeIndex.containsKey(destination)) {
+                        degree++;
+                    }
+                }
+            }
+            offsets[i + 1] = offsets[i] + degree;
+        }
+
+        int[] targets = new int[offsets[n]];
+        double[] weights = new double[offsets[n]];
+        for (i = 0; i < n; i++) {
+            Map<Long, CoOccurrenceItem> coOccurrentTags = coOccurrences.get(nodeIds[i]);
+            if (coOccurrentTags == null) {
+                continue;
+            }
+            double totalWeightSum = 0.0d;
+            for (CoOccurrenceItem item : coOccurrentTags.values()) {
+                totalWeightSum += item.getCount();
+            }
+            int pos = offsets[i];
+            for (Map.Entry<Long, CoOccurrenceItem> entry : coOccurrentTags.entrySet()) {
+                Integer target = nodeIndex.get(entry.getKey());
+                if (target == null) {
+                    continue;
+                }
+                targets[pos] = target;
+                weights[pos] = entry.getValue().getCount() / totalWeightSum;
+                pos++;
+            }
+        }
+        return new PageRankGraph(nodeIds, offsets, targets, weights);
+    }
+
+    public int getNodeCount() {
+        return nodeIds.length;
+    }
+
+    public int getEdgeCount() {
+        return targets.length;
+    }
+
+    public long getNodeId(int index) {
+        return nodeIds[index];
+    }
+
+    public long[] getNodeIds() {
+        return nodeIds;
+    }
+
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    public int[] getTargets() {
+        return targets;
+    }
+
+    public double[] getWeights() {
+        return weights;
+    }
+
+    public Map<Long, Double> toMap(double[] values) {
+        Map<Long, Double> result = new HashMap<>(nodeIds.length * 2);
+        for (int i = 0; i < nodeIds.length; i++) {
+            result.put(nodeIds[i], values[i]);
+        }
+        return result;
+    }
+}
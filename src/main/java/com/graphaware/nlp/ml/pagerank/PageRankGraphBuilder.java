@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.pagerank;
+
+import java.util.Arrays;
+
+/**
+ * Streams weighted edges into a {@link PageRankGraph} without building intermediate object maps. Node ids are
+ * remapped to dense int indexes as they arrive and edges are kept in primitive arrays until the CSR structure
+ * is built. Parallel edges are merged by summing their weights.
+ */
+public class PageRankGraphBuilder {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // open addressing table: node id -> dense index + 1 (0 marks an empty slot)
+    private long[] keys = new long[INITIAL_CAPACITY * 2];
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    private long[] nodeIds = new long[INITIAL_CAPACITY];
+    private int nodeCount;
+
+    private int[] sources = new int[INITIAL_CAPACITY];
+    private int[] targets = new int[INITIAL_CAPACITY];
+    private double[] weights = new double[INITIAL_CAPACITY];
+    private int edgeCount;
+
+    public PageRankGraphBuilder addEdge(long source, long destination, double weight) {
+        int sourceIndex = indexOf(source);
+        int destinationIndex = indexOf(destination);
+        if (edgeCount == sources.length) {
+            int capacity = grow(edgeCount);
+            sources = Arrays.copyOf(sources, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+        }
+        sources[edgeCount] = sourceIndex;
+        targets[edgeCount] = destinationIndex;
+        weights[edgeCount] = weight;
+        edgeCount++;
+        return this;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public PageRankGraph build() {
+        int n = nodeCount;
+        int[] offsets = new int[n + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            offsets[sources[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] csrTargets = new int[edgeCount];
+        double[] csrWeights = new double[edgeCount];
+        int[] next = Arrays.copyOf(offsets, n);
+        for (int e = 0; e < edgeCount; e++) {
+            int pos = next[sources[e]]++;
+            csrTargets[pos] = targets[e];
+            csrWeights[pos] = weights[e];
+        }
+        sources = null;
+        targets = null;
+        weights = null;
+
+        // merge parallel edges in place and normalise by the total outgoing weight
+        int[] lastSource = new int[n];
+        Arrays.fill(lastSource, -1);
+        int[] position = new int[n];
+        int write = 0;
+        for (int i = 0; i < n; i++) {
+            int rowStart = write;
+            double total = 0.0d;
+            for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                int target = csrTargets[e];
+                total += csrWeights[e];
+                if (lastSource[target] == i) {
+                    csrWeights[position[target]] += csrWeights[e];
+                } else {
+                    lastSource[target] = i;
+                    position[target] = write;
+                    csrTargets[write] = target;
+                    csrWeights[write] = csrWeights[e];
+                    write++;
+                }
+            }
+            if (total > 0.0d) {
+                for (int e = rowStart; e < write; e++) {
+                    csrWeights[e] /= total;
+                }
+            }
+            offsets[i] = rowStart;
+        }
+        offsets[n] = write;
+
+        return new PageRankGraph(Arrays.copyOf(nodeIds, n), offsets,
+                write == edgeCount ? csrTargets : Arrays.copyOf(csrTargets, write),
+                write == edgeCount ? csrWeights : Arrays.copyOf(csrWeights, write));
+    }
+
+    private int indexOf(long id) {
+        int mask = keys.length - 1;
+        int slot = hash(id) & mask;
+        while (slots[slot] != 0) {
+            if (keys[slot] == id) {
+                return slots[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (nodeCount == nodeIds.length) {
+            nodeIds = Arrays.copyOf(nodeIds, grow(nodeCount));
+        }
+        nodeIds[nodeCount] = id;
+        keys[slot] = id;
+        slots[slot] = ++nodeCount;
+        if (nodeCount * 2 > keys.length) {
+            rehash();
+        }
+        return nodeCount - 1;
+    }
+
+    private void rehash() {
+        long[] newKeys = new long[keys.length * 2];
+        int[] newSlots = new int[slots.length * 2];
+        int mask = newKeys.length - 1;
+        for (int i = 0; i < nodeCount; i++) {
+            int slot = hash(nodeIds[i]) & mask;
+            while (newSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newKeys[slot] = nodeIds[i];
+            newSlots[slot] = i + 1;
+        }
+        keys = newKeys;
+        slots = newSlots;
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int grow(int size) {
+        return size + (size >> 1) + 1;
+    }
+}
@@ -24,7 +24,7 @@ import com.graphaware.nlp.processor.TextProcessorsManager;
 import org.neo4j.logging.Log;
 import com.graphaware.common.log.LoggerFactory;
 
-import java.util.Map;
+import java.util.Arrays;
 
 @NLPModuleExtension(name = "PageRankProcessor")
 public class PageRankProcessor extends AbstractExtension implements NLPExtension {
@@ -39,17 +39,18 @@ public class PageRankProcessor extends AbstractExtension implements NLPExtension
         boolean respectDirections = request.getRespectDirections();
 
         PageRank pagerank = new PageRank(getDatabase());
-        Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences = pagerank.createGraph(query, respectDirections);
-        if (coOccurrences.isEmpty()) {
+        PageRankGraph graph = pagerank.loadGraph(query, respectDirections);
+        if (graph.getNodeCount() == 0) {
             return SingleResult.fail();
         }
-        Map<Long, Double> pageranks = pagerank.run(coOccurrences, iter, damp, threshold);
-        if (pageranks.isEmpty()) {
-            return SingleResult.fail();
+        double[] pageranks = pagerank.run(graph, iter, damp, threshold);
+        if (LOG.isDebugEnabled()) {
+            for (int i = 0; i < pageranks.length; i++) {
+                LOG.debug("PR(" + graph.getNodeId(i) + ") = " + pageranks[i]);
+            }
         }
-        pageranks.entrySet().stream().forEach(en -> LOG.info("PR(" + en.getKey() + ") = " + en.getValue()));
-        LOG.info("Sum of PageRanks: " + pageranks.values().stream().mapToDouble(Number::doubleValue).sum());
-        pagerank.storeOnGraph(pageranks);
+        LOG.info("Sum of PageRanks: " + Arrays.stream(pageranks).sum());
+        pagerank.storeOnGraph(graph, pageranks, request.getPropertyName(), request.getBatchSize().intValue());
 
         return SingleResult.success();
     }
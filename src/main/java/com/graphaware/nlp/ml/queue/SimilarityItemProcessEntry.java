@@ -15,6 +15,8 @@
  */
 package com.graphaware.nlp.ml.queue;
 
+import com.graphaware.nlp.util.TopKCollector;
+
 import java.util.ArrayList;
 
 public class SimilarityItemProcessEntry {
@@ -26,6 +28,15 @@ public class SimilarityItemProcessEntry {
         this.node = node;
     }
 
+    public SimilarityItemProcessEntry(long node, TopKCollector kNN, String similarityType) {
+        long[] ids = kNN.sortDescending();
+        this.kNN = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            this.kNN.add(new SimilarityItem(node, ids[i], kNN.getScore(i), similarityType));
+        }
+        this.node = node;
+    }
+
     public ArrayList<SimilarityItem> getkNN() {
         return kNN;
     }
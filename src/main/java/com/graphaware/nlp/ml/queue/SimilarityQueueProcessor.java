@@ -15,79 +15,230 @@
  */
 package com.graphaware.nlp.ml.queue;
 
-import com.graphaware.nlp.persistence.constants.Properties;
 import org.neo4j.graphdb.*;
 import org.neo4j.logging.Log;
 import com.graphaware.common.log.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Background writer for similarity relationships. The queue is bounded, so producers block
+ * when the writer falls behind; batches grow or shrink to keep each transaction close to
+ * {@link #TARGET_BATCH_MILLIS}.
+ */
 public class SimilarityQueueProcessor implements Runnable {
 
+    private static final Log LOG = LoggerFactory.getLogger(SimilarityQueueProcessor.class);
+
+    public static final int DEFAULT_CAPACITY = 10000;
+    public static final int MIN_BATCH_SIZE = 10;
+    public static final int MAX_BATCH_SIZE = 5000;
+    public static final long TARGET_BATCH_MILLIS = 500;
+    private static final long POLL_MILLIS = 100;
+
     private final BlockingQueue<SimilarityItemProcessEntry> queue;
     private final GraphDatabaseService database;
-    private static final Log LOG = LoggerFactory.getLogger(SimilarityQueueProcessor.class);
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final Object completion = new Object();
+    private volatile boolean closed = false;
+    private volatile boolean stopped = false;
+    private volatile int batchSize = 100;
+    private Thread worker;
 
     public SimilarityQueueProcessor(GraphDatabaseService database) {
-        this.queue = new LinkedBlockingQueue<>();
+        this(database, DEFAULT_CAPACITY);
+    }
+
+    public SimilarityQueueProcessor(GraphDatabaseService database, int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
         this.database = database;
     }
 
+    public synchronized void start() {
+        if (worker != null || closed) {
+            return;
+        }
+        worker = new Thread(this, "nlp-similarity-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
     @Override
     public void run() {
-        while (true) {
-            try {
-                List<SimilarityItemProcessEntry> items = new ArrayList<>();
-                items.add(queue.take());
-                queue.drainTo(items, 99);
-                LOG.warn("Processing: " + items.size() + " over " + queue.size() + " element at " + System.currentTimeMillis());
-                try (Transaction tx = database.beginTx()) {
-                    items.stream().filter((item) -> (item.getkNN() != null && item.getkNN().size() > 0))
-                            .forEach((item) -> {
-                                clearCurrentSimilarity(item);
-                                createRelationship(item);
-                            });
-                    tx.success();
+        List<SimilarityItemProcessEntry> items = new ArrayList<>();
+        try {
+            while (!closed || !queue.isEmpty()) {
+                try {
+                    SimilarityItemProcessEntry first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    items.add(first);
+                    queue.drainTo(items, batchSize - 1);
+                    long start = System.currentTimeMillis();
+                    store(items);
+                    adaptBatchSize(items.size(), System.currentTimeMillis() - start);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
                 } catch (Exception ex) {
-                    LOG.error("Errors occur during storing of similarity data. Reenqueing ...", ex);
-                    items.stream().filter((item) -> (item.getkNN() != null && item.getkNN().size() > 0))
-                            .forEach((item) -> {
-                                queue.offer(item);
-                            });
+                    LOG.error("Error while processing elements from queue", ex);
+                } finally {
+                    completed(items.size());
+                    items.clear();
                 }
-                LOG.warn("Completed processing : " + items.size() + " element at " + System.currentTimeMillis());
+            }
+        } finally {
+            stopped = true;
+            discardQueued();
+        }
+    }
 
-            } catch (InterruptedException ex) {
-                LOG.error("Error while getting elements from queue", ex);
+    private void store(List<SimilarityItemProcessEntry> items) {
+        try (Transaction tx = database.beginTx()) {
+            items.forEach(this::store);
+            tx.success();
+            stored.addAndGet(items.size());
+            LOG.debug("Stored " + items.size() + " similarity entries, " + queue.size() + " waiting");
+            return;
+        } catch (Exception ex) {
+            LOG.warn("Storing a batch of " + items.size() + " similarity entries failed, retrying them one by one", ex);
+        }
+        for (SimilarityItemProcessEntry item : items) {
+            try (Transaction tx = database.beginTx()) {
+                store(item);
+                tx.success();
+                stored.incrementAndGet();
             } catch (Exception ex) {
-                LOG.error("Error while processing elements from queue", ex);
+                failed.incrementAndGet();
+                LOG.error("Could not store similarity for node " + item.getNodeId(), ex);
             }
         }
     }
 
-    private void createRelationship(SimilarityItemProcessEntry item) throws QueryExecutionException {
-        final RelationshipType simType = RelationshipType.withName(item.getkNN().get(0).getSimilarityType());
+    private void store(SimilarityItemProcessEntry item) {
         Node node = database.getNodeById(item.getNodeId());
-        item.getkNN().stream().forEach((simItem) -> {
-            Relationship simRel = node.createRelationshipTo(database.getNodeById(simItem.getSecondNode()), simType);
-            simRel.setProperty(Properties.SIMILARITY_VALUE, simItem.getSimilarity());
-        });
+        RelationshipType type = RelationshipType.withName(item.getkNN().get(0).getSimilarityType());
+        SimilarityRelationships.replace(database, node, type, item.getkNN());
+    }
+
+    private void adaptBatchSize(int size, long elapsed) {
+        if (elapsed > TARGET_BATCH_MILLIS) {
+            batchSize = Math.max(MIN_BATCH_SIZE, batchSize / 2);
+        } else if (size == batchSize && elapsed < TARGET_BATCH_MILLIS / 2) {
+            batchSize = Math.min(MAX_BATCH_SIZE, batchSize * 2);
+        }
     }
 
-    private void clearCurrentSimilarity(SimilarityItemProcessEntry item) {
-        String similartyType = item.getkNN().get(0).getSimilarityType();
-        Map<String, Object> params = new HashMap<>();
-        params.put("id", item.getNodeId());
-        database.execute("MATCH (input:AnnotatedText)-[r:" + similartyType + "]->() WHERE id(input) = {id} DELETE r", params);
+    /**
+     * Drops the entries left in the queue once the writer has stopped, so that they are no
+     * longer counted as pending.
+     */
+    private void discardQueued() {
+        List<SimilarityItemProcessEntry> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (remaining.isEmpty()) {
+            return;
+        }
+        LOG.warn("Similarity writer stopped, " + remaining.size() + " entries not stored");
+        failed.addAndGet(remaining.size());
+        completed(remaining.size());
+    }
+
+    private void completed(int count) {
+        if (count == 0) {
+            return;
+        }
+        pending.addAndGet(-count);
+        synchronized (completion) {
+            completion.notifyAll();
+        }
     }
 
+    /**
+     * Enqueues an entry, blocking while the queue is full. An entry enqueued while the writer
+     * stops is dropped instead of being left pending.
+     */
     public void offer(SimilarityItemProcessEntry similarityItemProcessEntry) {
-        queue.offer(similarityItemProcessEntry);
+        if (closed) {
+            throw new IllegalStateException("Similarity writer has been shut down");
+        }
+        if (similarityItemProcessEntry.getkNN() == null || similarityItemProcessEntry.getkNN().isEmpty()) {
+            return;
+        }
+        pending.incrementAndGet();
+        try {
+            queue.put(similarityItemProcessEntry);
+        } catch (InterruptedException ex) {
+            completed(1);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the similarity writer", ex);
+        }
+        if (stopped) {
+            discardQueued();
+        }
     }
 
+    /**
+     * Waits until every entry offered so far has been stored or dropped.
+     *
+     * @return false if the timeout elapsed first
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (completion) {
+            while (pending.get() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(completion, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops accepting entries and lets the writer drain the queue, interrupting it if it does
+     * not finish within the timeout. Entries the writer did not store are dropped.
+     */
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        Thread current;
+        synchronized (this) {
+            closed = true;
+            current = worker;
+        }
+        if (current == null) {
+            stopped = true;
+            discardQueued();
+            return;
+        }
+        current.join(Math.max(1, unit.toMillis(timeout)));
+        if (current.isAlive()) {
+            current.interrupt();
+        }
+    }
+
+    public long getPendingCount() {
+        return pending.get();
+    }
+
+    public long getStoredCount() {
+        return stored.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
 }
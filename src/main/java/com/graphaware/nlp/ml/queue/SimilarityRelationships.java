@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.queue;
+
+import com.graphaware.nlp.persistence.constants.Properties;
+import org.neo4j.graphdb.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes neighbour lists as similarity relationships, touching only the relationships whose
+ * neighbour or value changed. Must be called within a transaction.
+ */
+public final class SimilarityRelationships {
+
+    private SimilarityRelationships() {
+    }
+
+    /**
+     * Makes the outgoing relationships of the given type match the list: existing relationships
+     * to a listed neighbour are kept and their value updated, the others are deleted.
+     */
+    public static void replace(GraphDatabaseService database, Node node, RelationshipType type, List<SimilarityItem> kNN) {
+        Map<Long, Relationship> existing = new HashMap<>();
+        for (Relationship relationship : node.getRelationships(Direction.OUTGOING, type)) {
+            Relationship duplicate = existing.put(relationship.getEndNodeId(), relationship);
+            if (duplicate != null) {
+                duplicate.delete();
+            }
+        }
+        for (SimilarityItem item : kNN) {
+            Relationship relationship = existing.remove(item.getSecondNode());
+            if (relationship == null) {
+                relationship = node.createRelationshipTo(database.getNodeById(item.getSecondNode()), type);
+            }
+            setValue(relationship, item.getSimilarity());
+        }
+        existing.values().forEach(Relationship::delete);
+    }
+
+    /**
+     * Offers a neighbour to the top k of the node. The neighbour enters the list if it is already
+     * there, the list is not full, or it scores above the current lowest entry, which is then
+     * dropped.
+     *
+     * @return true if a relationship was created or updated
+     */
+    public static boolean offer(Node node, Node neighbour, float similarity, RelationshipType type, int k) {
+        Relationship lowest = null;
+        float lowestValue = Float.MAX_VALUE;
+        int size = 0;
+        for (Relationship relationship : node.getRelationships(Direction.OUTGOING, type)) {
+            if (relationship.getEndNodeId() == neighbour.getId()) {
+                setValue(relationship, similarity);
+                return true;
+            }
+            float value = getValue(relationship);
+            if (value < lowestValue) {
+                lowestValue = value;
+                lowest = relationship;
+            }
+            size++;
+        }
+        if (size >= k) {
+            if (lowest == null || similarity <= lowestValue) {
+                return false;
+            }
+            lowest.delete();
+        }
+        setValue(node.createRelationshipTo(neighbour, type), similarity);
+        return true;
+    }
+
+    private static float getValue(Relationship relationship) {
+        Object value = relationship.getProperty(Properties.SIMILARITY_VALUE, null);
+        return value instanceof Number ? ((Number) value).floatValue() : 0.0f;
+    }
+
+    private static void setValue(Relationship relationship, float similarity) {
+        Object value = relationship.getProperty(Properties.SIMILARITY_VALUE, null);
+        if (!(value instanceof Number) || ((Number) value).floatValue() != similarity) {
+            relationship.setProperty(Properties.SIMILARITY_VALUE, similarity);
+        }
+    }
+}
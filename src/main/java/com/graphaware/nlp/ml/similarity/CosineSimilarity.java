@@ -17,9 +17,6 @@ package com.graphaware.nlp.ml.similarity;
 
 import java.util.List;
 import java.util.Map;
-import java.util.TreeSet;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.IntStream;
 
 public class CosineSimilarity implements Similarity {
 
@@ -47,7 +44,7 @@ public class CosineSimilarity implements Similarity {
     }
 
     public double getSimilarity(float[] xVector, float[] yVector) {
-        double a = getDotProduct(xVector, yVector);
+        double a = dot(xVector, yVector);
         double b = getNorm(xVector) * getNorm(yVector);
 
         if (b > 0) {
@@ -57,74 +54,64 @@ public class CosineSimilarity implements Similarity {
         }
     }
 
-    private float getDotProduct(final Map<Long, Float> xVector, final Map<Long, Float> yVector) {
-
-        final AtomicReference<Float> sum = new AtomicReference<>(0f);
-        TreeSet<Long> keys = new TreeSet<>(xVector.keySet());
-        keys.addAll(yVector.keySet());
-        keys.stream().forEach((key) -> {
-            if (xVector.containsKey(key) && yVector.containsKey(key)) {
-                float curValue = sum.get();
-                curValue += xVector.get(key) * yVector.get(key);
-                sum.set(curValue);
-            }
-        });
-        return sum.get();
+    public float getSimilarity(FeatureVector xVector, FeatureVector yVector) {
+        float b = xVector.norm() * yVector.norm();
+        if (b > 0) {
+            return xVector.dot(yVector) / b;
+        } else {
+            return 0;
+        }
     }
 
-    private double getDotProduct(final List<Double> xVector, final List<Double> yVector) {
-
-        final AtomicReference<Float> sum = new AtomicReference<>(0f);
-        IntStream.range(0, xVector.size())
-                .boxed().forEach((key) -> {
-                    float curValue = sum.get();
-                    curValue += xVector.get(key) * yVector.get(key);
-                    sum.set(curValue);
-                });
-        return sum.get();
+    public static float dot(final float[] xVector, final float[] yVector) {
+        int n = Math.min(xVector.length, yVector.length);
+        float sum = 0.0f;
+        for (int i = 0; i < n; i++) {
+            sum += xVector[i] * yVector[i];
+        }
+        return sum;
     }
 
+    private float getDotProduct(final Map<Long, Float> xVector, final Map<Long, Float> yVector) {
+        Map<Long, Float> smaller = xVector.size() <= yVector.size() ? xVector : yVector;
+        Map<Long, Float> larger = smaller == xVector ? yVector : xVector;
+        float sum = 0.0f;
+        for (Map.Entry<Long, Float> entry : smaller.entrySet()) {
+            Float other = larger.get(entry.getKey());
+            if (other != null) {
+                sum += entry.getValue() * other;
+            }
+        }
+        return sum;
+    }
 
-    private double getDotProduct(final float[] xVector, final float[] yVector) {
-
-        final AtomicReference<Float> sum = new AtomicReference<>(0f);
-        IntStream.range(0, xVector.length)
-                .boxed().forEach((key) -> {
-            float curValue = sum.get();
-            curValue += xVector[key] * yVector[key];
-            sum.set(curValue);
-        });
-        return sum.get();
+    private double getDotProduct(final List<Double> xVector, final List<Double> yVector) {
+        int n = xVector.size();
+        float sum = 0.0f;
+        for (int i = 0; i < n; i++) {
+            sum += xVector.get(i) * yVector.get(i);
+        }
+        return sum;
     }
 
     private float getNorm(Map<Long, Float> xVector) {
-        final AtomicReference<Float> sum = new AtomicReference<>(0f);
-        xVector.values().stream().forEach((value) -> {
-            float curValue = sum.get();
-            curValue += value * value;
-            sum.set(curValue);
-        });
-        return Double.valueOf(Math.sqrt(sum.get().doubleValue())).floatValue();
+        float sum = 0.0f;
+        for (Float value : xVector.values()) {
+            sum += value * value;
+        }
+        return (float) Math.sqrt(sum);
     }
-    
+
     private double getNorm(List<Double> xVector) {
-        final AtomicReference<Float> sum = new AtomicReference<>(0f);
-        xVector.stream().forEach((value) -> {
-            float curValue = sum.get();
-            curValue += value * value;
-            sum.set(curValue);
-        });
-        return Math.sqrt(sum.get().doubleValue());
+        float sum = 0.0f;
+        for (Double value : xVector) {
+            sum += value * value;
+        }
+        return Math.sqrt(sum);
     }
 
     private double getNorm(float[] xVector) {
-        final AtomicReference<Float> sum = new AtomicReference<>(0f);
-        for (float value: xVector) {
-            float curValue = sum.get();
-            curValue += value * value;
-            sum.set(curValue);
-        }
-        return Math.sqrt(sum.get().doubleValue());
+        return Math.sqrt(dot(xVector, xVector));
     }
 
     public double cosineSimilarity(float[] vectorA, float[] vectorB) {
@@ -22,7 +22,8 @@ import com.graphaware.nlp.ml.queue.SimilarityItemProcessEntry;
 import com.graphaware.nlp.ml.queue.SimilarityQueueProcessor;
 import com.graphaware.nlp.persistence.constants.Labels;
 import com.graphaware.nlp.persistence.constants.Relationships;
-import com.graphaware.nlp.util.FixedSizeOrderedList;
+import com.graphaware.nlp.util.TopKCollector;
+import com.graphaware.nlp.vector.QueryBasedVectorComputation;
 import org.neo4j.graphdb.*;
 import org.neo4j.logging.Log;
 import com.graphaware.common.log.LoggerFactory;
@@ -31,24 +32,18 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.graphaware.nlp.domain.Constants.KNN_SIZE;
 import static com.graphaware.nlp.util.TypeConverter.getFloatValue;
-import java.util.concurrent.Executors;
 
 public class FeatureBasedProcessLogic {
 
     private static final Log LOG = LoggerFactory.getLogger(FeatureBasedProcessLogic.class);
 
-    private final static String DEFAULT_VECTOR_QUERY = "MATCH (doc:AnnotatedText)\n"
-            + "WITH count(doc) as documentsCount\n"
-            + "MATCH (input:AnnotatedText)-[:CONTAINS_SENTENCE]->(s:Sentence)-[ht:HAS_TAG]->(tag:Tag)\n"
-            + "WHERE id(input) = {id}\n"
-            + "MATCH (tag)<-[:HAS_TAG]-(:Sentence)<-[:CONTAINS_SENTENCE]-(document:AnnotatedText)\n"
-            + "WITH tag, ht.tf as tf, count(distinct document) as documentsCountForTag, documentsCount\n"
-            + "RETURN distinct id(tag) as tagId, sum(tf) as tf, (1.0f + 1.0f*documentsCount)/documentsCountForTag as idf";
+    private final static String DEFAULT_VECTOR_QUERY = QueryBasedVectorComputation.DEFAULT_VECTOR_QUERY;
 
     private final static String DEFAULT_VECTOR_QUERY_WITH_CONCEPT = "MATCH (doc:AnnotatedText)\n"
             + "WITH count(doc) as documentsCount\n"
@@ -62,50 +57,62 @@ public class FeatureBasedProcessLogic {
             + "RETURN id(tag) as tagId, tf, (1.0f*documentsCount)/count(distinct a) as idf, nTerms, (case cn5_l1_tag when null then -1 else cn5_l1_tag end) as cn5_l1_tag, cn5_l1_tag_w\n"
             + "ORDER BY tagId, cn5_l1_tag";
     
-    protected final Similarity similarityFunction;
+    protected final CosineSimilarity similarityFunction;
     protected final GraphDatabaseService database;
 
     protected final SimilarityQueueProcessor queueProcessor;
 
     public FeatureBasedProcessLogic(GraphDatabaseService database) {
+        this(database, new SimilarityQueueProcessor(database));
+    }
+
+    public FeatureBasedProcessLogic(GraphDatabaseService database, SimilarityQueueProcessor queueProcessor) {
         this.similarityFunction = new CosineSimilarity();
-        this.queueProcessor = new SimilarityQueueProcessor(database);
+        this.queueProcessor = queueProcessor;
         this.database = database;
     }
     
     public void start() {
-        Executors.newSingleThreadExecutor().execute(queueProcessor);
+        queueProcessor.start();
+    }
+
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        return queueProcessor.flush(timeout, unit);
+    }
+
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        queueProcessor.shutdown(timeout, unit);
     }
 
-    private final Cache<Long, Map<Long, Float>> tfCache
+    private final Cache<Long, FeatureVector> tfCache
             = CacheBuilder.newBuilder().maximumSize(10000).expireAfterAccess(30, TimeUnit.MINUTES).build();
 
     public float getFeatureCosine(long firstNode, long secondNode, String query) {
-        return similarityFunction.getSimilarity(getTFMap(firstNode, query), getTFMap(secondNode, query));
+        return similarityFunction.getSimilarity(getFeatureVector(firstNode, query), getFeatureVector(secondNode, query));
     }
 
     public float getFeatureCosine(long firstNode, long secondNode, int depth) {
-        return similarityFunction.getSimilarity(getTFMap(firstNode, depth), getTFMap(secondNode, depth));
+        return similarityFunction.getSimilarity(getFeatureVector(firstNode, depth), getFeatureVector(secondNode, depth));
     }
 
-    private Map<Long, Float> getTFMap(long node, String query) throws QueryExecutionException {
-        Map<Long, Float> tfMap = tfCache.getIfPresent(node);
-        if (tfMap != null) {
-            return tfMap;
+    private FeatureVector getFeatureVector(long node, String query) throws QueryExecutionException {
+        FeatureVector vector = tfCache.getIfPresent(node);
+        if (vector != null) {
+            return vector;
         }
-        tfMap = createFeatureMap(node, query);
-        tfCache.put(node, tfMap);
-        return tfMap;
+        vector = FeatureVector.fromMap(createFeatureMap(node, query));
+        tfCache.put(node, vector);
+        return vector;
     }
 
-    private Map<Long, Float> getTFMap(long node, int depth) throws QueryExecutionException {
-        Map<Long, Float> tfMap = tfCache.getIfPresent(node);
-        if (tfMap != null) {
-            return tfMap;
+    private FeatureVector getFeatureVector(long node, int depth) throws QueryExecutionException {
+        FeatureVector vector = tfCache.getIfPresent(node);
+        if (vector != null) {
+            return vector;
         }
-        tfMap = createFeatureMapWithCN5New(node);
-        tfCache.put(node, tfMap);
-        return tfMap;
+        vector = FeatureVector.fromMap(createFeatureMapWithCN5New(node));
+        tfCache.put(node, vector);
+        return vector;
     }
 
     private Map<Long, Float> createFeatureMap(long firstNode, String query) throws QueryExecutionException {
@@ -202,8 +209,59 @@ public class FeatureBasedProcessLogic {
         return countProcessed.get();
     }
 
+    public int computeFeatureSimilarityWithIndex(List<Long> firstNodeIds, String query, String similarityType, int depth, boolean pruning) {
+        long startTime = System.currentTimeMillis();
+        String vectorQuery = query != null ? query : DEFAULT_VECTOR_QUERY;
+        String type;
+        if (depth > 0) {
+            type = Relationships.SIMILARITY_COSINE_CN5.name();
+        } else if (query != null && similarityType != null) {
+            type = similarityType;
+        } else {
+            type = Relationships.SIMILARITY_COSINE.name();
+        }
+        List<Long> allNodeIds = new ArrayList<>();
+        try (Transaction tx = database.beginTx()) {
+            ResourceIterator<Node> nodes = database.findNodes(Labels.AnnotatedText);
+            while (nodes.hasNext()) {
+                allNodeIds.add(nodes.next().getId());
+            }
+            tx.success();
+        }
+        Map<Long, Map<Long, Float>> vectors = new ConcurrentHashMap<>();
+        allNodeIds.parallelStream().forEach((node) -> {
+            try (Transaction tx = database.beginTx()) {
+                vectors.put(node, depth > 0 ? createFeatureMapWithCN5New(node) : createFeatureMap(node, vectorQuery));
+                tx.success();
+            }
+        });
+        InvertedIndex index = InvertedIndex.build(vectors);
+        LOG.info("Inverted index built for " + index.getDocumentCount() + " documents and " + index.getFeatureCount()
+                + " features in " + (System.currentTimeMillis() - startTime) + "ms");
+
+        List<Long> nodeIds = firstNodeIds != null ? firstNodeIds : allNodeIds;
+        final AtomicInteger countStored = new AtomicInteger(0);
+        final AtomicInteger nodeAnalyzed = new AtomicInteger(0);
+        nodeIds.parallelStream().forEach((firstNode) -> {
+            int nodeProcessed = nodeAnalyzed.incrementAndGet();
+            if (nodeProcessed % 500 == 0) {
+                LOG.warn("Node Processed: " + nodeProcessed + " over " + nodeIds.size());
+            }
+            ArrayList<SimilarityItem> kNN = new ArrayList<>();
+            index.topK(firstNode, KNN_SIZE, pruning).forEach((neighbour) -> {
+                kNN.add(new SimilarityItem(firstNode, neighbour.getId(), neighbour.getScore(), type));
+            });
+            countStored.addAndGet(kNN.size());
+            queueProcessor.offer(new SimilarityItemProcessEntry(firstNode, kNN));
+        });
+        long totalTime = System.currentTimeMillis() - startTime;
+        LOG.warn("Total node processed: " + nodeAnalyzed.get() + " over " + nodeIds.size() + " in " + totalTime);
+        LOG.warn("Total relationships stored: " + countStored.get());
+        return countStored.get();
+    }
+
     private void computeFeatureSimilarityForNode(long firstNodeId, String query, String similarityType, AtomicInteger countProcessed, AtomicInteger countStored, Integer depth) {
-        FixedSizeOrderedList<SimilarityItem> kNN = new FixedSizeOrderedList<>(KNN_SIZE);
+        TopKCollector kNN = TopKCollector.forCurrentThread(KNN_SIZE);
         try (Transaction tx0 = database.beginTx()) {
             ResourceIterator<Node> otherProperties = database.findNodes(Labels.AnnotatedText);
             List<Long> secondNodeIds = new ArrayList<>();
@@ -222,7 +280,7 @@ public class FeatureBasedProcessLogic {
                             }
 
                             if (similarity > 0) {
-                                kNN.add(new SimilarityItem(firstNodeId, secondNode, similarity, similarityType));
+                                kNN.offer(secondNode, similarity);
                                 countStored.incrementAndGet();
                             }
                             int processed = countProcessed.incrementAndGet();
@@ -233,7 +291,7 @@ public class FeatureBasedProcessLogic {
                     });
             tx0.success();
         }
-        queueProcessor.offer(new SimilarityItemProcessEntry(firstNodeId, kNN));
+        queueProcessor.offer(new SimilarityItemProcessEntry(firstNodeId, kNN, similarityType));
     }
 
 }
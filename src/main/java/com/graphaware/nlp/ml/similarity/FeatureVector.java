@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.similarity;
+
+import com.graphaware.nlp.vector.DenseVector;
+import com.graphaware.nlp.vector.GenericVector;
+import com.graphaware.nlp.vector.SparseVector;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Primitive vector used by similarity computations: either sparse (indexes sorted ascending, values aligned
+ * with them) or dense (no indexes). The norm is computed once at construction.
+ */
+public final class FeatureVector {
+
+    private final long[] indexes;
+    private final float[] values;
+    private final float norm;
+
+    private FeatureVector(long[] indexes, float[] values) {
+        this.indexes = indexes;
+        this.values = values;
+        this.norm = (float) Math.sqrt(CosineSimilarity.dot(values, values));
+    }
+
+    public static FeatureVector dense(float[] values) {
+        return new FeatureVector(null, values);
+    }
+
+    public static FeatureVector sparse(long[] indexes, float[] values) {
+        if (indexes.length != values.length) {
+            throw new RuntimeException("Indexes and values of a sparse vector must have the same length");
+        }
+        for (int i = 1; i < indexes.length; i++) {
+            if (indexes[i - 1] >= indexes[i]) {
+                throw new RuntimeException("Indexes of a sparse vector must be strictly increasing");
+            }
+        }
+        return new FeatureVector(indexes, values);
+    }
+
+    public static FeatureVector fromMap(Map<Long, Float> map) {
+        long[] indexes = new long[map.size()];
+        int i = 0;
+        for (Long key : map.keySet()) {
+            indexes[i++] = key;
+        }
+        Arrays.sort(indexes);
+        float[] values = new float[indexes.length];
+        for (i = 0; i < indexes.length; i++) {
+            values[i] = map.get(indexes[i]);
+        }
+        return new FeatureVector(indexes, values);
+    }
+
+    public static FeatureVector fromList(List<Double> list) {
+        float[] values = new float[list.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = list.get(i).floatValue();
+        }
+        return new FeatureVector(null, values);
+    }
+
+    public static FeatureVector of(GenericVector vector) {
+        if (vector instanceof SparseVector) {
+            SparseVector sparseVector = (SparseVector) vector;
+            List<Long> index = sparseVector.getIndex();
+            List<Float> sparseValues = sparseVector.getValues();
+            int size = index != null ? index.size() : 0;
+            long[] indexes = new long[size];
+            float[] values = new float[size];
+            for (int i = 0; i < size; i++) {
+                indexes[i] = index.get(i);
+                values[i] = sparseValues.get(i);
+            }
+            return new FeatureVector(indexes, values);
+        } else if (vector instanceof DenseVector) {
+            float[] values = vector.getArray();
+            return new FeatureVector(null, values != null ? values : new float[0]);
+        }
+        throw new RuntimeException("Unsupported vector type: " + vector.getClass().getName());
+    }
+
+    public boolean isSparse() {
+        return indexes != null;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public long[] getIndexes() {
+        return indexes;
+    }
+
+    public float[] getValues() {
+        return values;
+    }
+
+    public float norm() {
+        return norm;
+    }
+
+    public float dot(FeatureVector other) {
+        if (isSparse() != other.isSparse()) {
+            throw new RuntimeException("Sparse and dense vectors cannot be multiplied");
+        }
+        if (!isSparse()) {
+            if (values.length != other.values.length && values.length > 0 && other.values.length > 0) {
+                throw new RuntimeException("The two vectors cannot be multiplied");
+            }
+            return CosineSimilarity.dot(values, other.values);
+        }
+        long[] otherIndexes = other.indexes;
+        float[] otherValues = other.values;
+        int x = 0;
+        int y = 0;
+        float sum = 0.0f;
+        while (x < indexes.length && y < otherIndexes.length) {
+            long xIndex = indexes[x];
+            long yIndex = otherIndexes[y];
+            if (xIndex == yIndex) {
+                sum += values[x++] * otherValues[y++];
+            } else if (xIndex < yIndex) {
+                x++;
+            } else {
+                y++;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.similarity;
+
+import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.nlp.ml.queue.SimilarityItemProcessEntry;
+import com.graphaware.nlp.ml.queue.SimilarityRelationships;
+import com.graphaware.nlp.persistence.DocumentFrequencyStatistics;
+import com.graphaware.nlp.persistence.constants.Labels;
+import com.graphaware.nlp.persistence.constants.Properties;
+import com.graphaware.nlp.persistence.constants.Relationships;
+import com.graphaware.nlp.util.TopKCollector;
+import com.graphaware.tx.event.improved.api.ImprovedTransactionData;
+import org.neo4j.graphdb.*;
+import org.neo4j.logging.Log;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps the SIMILARITY_COSINE neighbour lists up to date as documents are annotated. Term
+ * frequencies are held in memory in postings lists keyed by tag, so a new document is scored by
+ * walking the postings of its own tags only, and it is offered to the existing top k lists of the
+ * documents it scored against instead of recomputing the similarity of the whole corpus. Weights
+ * follow the default vector query of {@link FeatureBasedProcessLogic}: tf * log10((1 + N) / df),
+ * with N and df read from the {@link DocumentFrequencyStatistics} when given, the postings lists
+ * standing in for the tags without statistics.
+ * <p>
+ * The in-memory index is guarded by a read-write lock held only while the postings change or
+ * while scores are computed; graph reads and writes happen outside of it, so it never waits on a
+ * node lock. The norm of a document is cached and recomputed once the corpus changed by more than
+ * {@link #NORM_REFRESH_RATIO} of its size since then, scores are capped at 1 to absorb the drift.
+ * <p>
+ * Changes made by {@link #update(GraphDatabaseService, Node)} are visible to other transactions
+ * right away, their neighbours being skipped until they are committed, and are undone by
+ * {@link #rolledBack()}. Deleted documents are collected by {@link #onTransaction} and evicted by
+ * {@link #committed()}. Both are called on the committing thread, which is the one that made the
+ * changes.
+ */
+public class IncrementalSimilarity {
+
+    private static final Log LOG = LoggerFactory.getLogger(IncrementalSimilarity.class);
+
+    public static final double NORM_REFRESH_RATIO = 0.01d;
+
+    private final int kSize;
+    private final DocumentFrequencyStatistics statistics;
+    private final Map<Long, Map<Long, Float>> termFrequencies = new ConcurrentHashMap<>();
+    private final Map<Long, Map<Long, Float>> postings = new ConcurrentHashMap<>();
+    private final Map<Long, CachedNorm> norms = new ConcurrentHashMap<>();
+    private final AtomicLong modifications = new AtomicLong();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ThreadLocal<Map<Long, Map<Long, Float>>> uncommitted = ThreadLocal.withInitial(HashMap::new);
+    private final ThreadLocal<Set<Long>> deleted = ThreadLocal.withInitial(HashSet::new);
+    private final AtomicBoolean loading = new AtomicBoolean();
+    private volatile boolean loaded = false;
+
+    public IncrementalSimilarity(int kSize) {
+        this(kSize, null);
+    }
+
+    public IncrementalSimilarity(int kSize, DocumentFrequencyStatistics statistics) {
+        this.kSize = kSize;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Scores the annotated text against the documents sharing a tag with it, replaces its
+     * neighbour list and offers it to the neighbour lists of the documents it scored against.
+     * Must be called within the transaction that stored the annotation; neighbours are written
+     * in id order so that concurrent updates lock them in the same order. While the index is
+     * still being loaded, the text is only registered and no relationship is written.
+     *
+     * @return the number of neighbour lists of other documents that were updated
+     */
+    public int update(GraphDatabaseService database, Node annotatedText) {
+        long id = annotatedText.getId();
+        stage(id, readTermFrequencies(annotatedText));
+        if (!loaded) {
+            startLoading(database);
+            LOG.info("Term frequencies still loading, similarity of " + id + " not updated");
+            return 0;
+        }
+
+        RelationshipType type = Relationships.SIMILARITY_COSINE;
+        TopKCollector kNN = new TopKCollector(kSize);
+        int updated = 0;
+        for (Map.Entry<Long, Float> candidate : new TreeMap<>(score(id)).entrySet()) {
+            Node other = getAnnotatedText(database, candidate.getKey());
+            if (other == null) {
+                continue;
+            }
+            kNN.offer(candidate.getKey(), candidate.getValue());
+            if (SimilarityRelationships.offer(other, annotatedText, candidate.getValue(), type, kSize)) {
+                updated++;
+            }
+        }
+        SimilarityRelationships.replace(database, annotatedText, type,
+                new SimilarityItemProcessEntry(id, kNN, type.name()).getkNN());
+        return updated;
+    }
+
+    /**
+     * @return the node of the document, null if it is not committed yet, was deleted or its id
+     * was reused by another kind of node
+     */
+    private static Node getAnnotatedText(GraphDatabaseService database, long id) {
+        try {
+            Node node = database.getNodeById(id);
+            return node.hasLabel(Labels.AnnotatedText) ? node : null;
+        } catch (NotFoundException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Collects the annotated texts deleted by the transaction, to be evicted once it commits.
+     */
+    public void onTransaction(ImprovedTransactionData transactionData) {
+        for (Node node : transactionData.getAllDeletedNodes()) {
+            if (node.hasLabel(Labels.AnnotatedText)) {
+                stageRemoval(node.getId());
+            }
+        }
+    }
+
+    void stageRemoval(long document) {
+        deleted.get().add(document);
+    }
+
+    /**
+     * Evicts the documents deleted by the transaction that just committed on this thread and
+     * keeps the changes it made.
+     */
+    public void committed() {
+        Set<Long> documents = deleted.get();
+        documents.forEach(this::remove);
+        documents.clear();
+        uncommitted.get().clear();
+    }
+
+    /**
+     * Restores the term frequencies the transaction that rolled back on this thread replaced.
+     */
+    public void rolledBack() {
+        Map<Long, Map<Long, Float>> previous = uncommitted.get();
+        previous.forEach((document, tf) -> {
+            if (tf != null) {
+                add(document, tf);
+            } else {
+                remove(document);
+            }
+        });
+        previous.clear();
+        deleted.get().clear();
+    }
+
+    /**
+     * Registers the term frequencies of a document on behalf of the current transaction,
+     * remembering the previous ones in case it rolls back.
+     */
+    void stage(long document, Map<Long, Float> tf) {
+        Map<Long, Map<Long, Float>> previous = uncommitted.get();
+        if (!previous.containsKey(document)) {
+            previous.put(document, termFrequencies.get(document));
+        }
+        add(document, tf);
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Reads the term frequencies of the annotated texts from the graph on a background thread,
+     * unless they are already loaded or being loaded.
+     */
+    public void startLoading(GraphDatabaseService database) {
+        if (loaded || !loading.compareAndSet(false, true)) {
+            return;
+        }
+        Thread loader = new Thread(() -> {
+            try {
+                load(database);
+            } catch (Exception ex) {
+                LOG.error("Loading term frequencies failed", ex);
+            } finally {
+                loading.set(false);
+            }
+        }, "nlp-similarity-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Drops the in-memory statistics, they are read again from the graph on the next update.
+     */
+    public void reset() {
+        lock.writeLock().lock();
+        try {
+            termFrequencies.clear();
+            postings.clear();
+            norms.clear();
+            modifications.incrementAndGet();
+            loaded = false;
+            uncommitted.get().clear();
+            deleted.get().clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Registers the term frequencies of a document, replacing the ones previously registered for
+     * it.
+     */
+    public void add(long document, Map<Long, Float> tf) {
+        Map<Long, Float> copy = Collections.unmodifiableMap(new HashMap<>(tf));
+        lock.writeLock().lock();
+        try {
+            removeDocument(document);
+            termFrequencies.put(document, copy);
+            copy.forEach((tag, frequency) -> postings.computeIfAbsent(tag, k -> new ConcurrentHashMap<>()).put(document, frequency));
+            modifications.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long document) {
+        lock.writeLock().lock();
+        try {
+            if (removeDocument(document)) {
+                modifications.incrementAndGet();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean removeDocument(long document) {
+        norms.remove(document);
+        Map<Long, Float> previous = termFrequencies.remove(document);
+        if (previous == null) {
+            return false;
+        }
+        for (Long tag : previous.keySet()) {
+            Map<Long, Float> documents = postings.get(tag);
+            if (documents != null && documents.remove(document) != null && documents.isEmpty()) {
+                postings.remove(tag);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the cosine similarity between the document and every other document sharing at
+     * least one tag with it, zero scores excluded. Must be called within a transaction when
+     * statistics are used.
+     */
+    public Map<Long, Float> score(long document) {
+        lock.readLock().lock();
+        try {
+            return computeScores(document);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<Long, Float> computeScores(long document) {
+        Map<Long, Float> result = new HashMap<>();
+        Map<Long, Float> tf = termFrequencies.get(document);
+        if (tf == null) {
+            return result;
+        }
+        long documentCount = statistics != null ? statistics.getDocumentCount() : termFrequencies.size();
+        Map<Long, Float> idfs = new HashMap<>();
+        Map<Long, Float> dotProducts = new HashMap<>();
+        double sum = 0.0d;
+        for (Map.Entry<Long, Float> entry : tf.entrySet()) {
+            Map<Long, Float> documents = postings.get(entry.getKey());
+            float idf = idf(entry.getKey(), documentCount, idfs);
+            float weight = entry.getValue() * idf;
+            if (weight == 0.0f || documents == null) {
+                continue;
+            }
+            sum += weight * weight;
+            documents.forEach((other, frequency) -> {
+                if (other != document) {
+                    dotProducts.merge(other, weight * frequency * idf, Float::sum);
+                }
+            });
+        }
+        float norm = (float) Math.sqrt(sum);
+        if (norm == 0.0f) {
+            return result;
+        }
+        long version = modifications.get();
+        dotProducts.forEach((other, dotProduct) -> {
+            float otherNorm = norm(other, documentCount, version, idfs);
+            if (dotProduct > 0.0f && otherNorm > 0.0f) {
+                result.put(other, Math.min(1.0f, dotProduct / (norm * otherNorm)));
+            }
+        });
+        return result;
+    }
+
+    public int getDocumentCount() {
+        return termFrequencies.size();
+    }
+
+    public int getDocumentFrequency(long tag) {
+        Map<Long, Float> documents = postings.get(tag);
+        return documents != null ? documents.size() : 0;
+    }
+
+    private float norm(long document, long documentCount, long version, Map<Long, Float> idfs) {
+        CachedNorm cached = norms.get(document);
+        if (cached != null && version - cached.version <= documentCount * NORM_REFRESH_RATIO) {
+            return cached.norm;
+        }
+        double sum = 0.0d;
+        Map<Long, Float> tf = termFrequencies.get(document);
+        if (tf != null) {
+            for (Map.Entry<Long, Float> entry : tf.entrySet()) {
+                float weight = entry.getValue() * idf(entry.getKey(), documentCount, idfs);
+                sum += weight * weight;
+            }
+        }
+        float norm = (float) Math.sqrt(sum);
+        norms.put(document, new CachedNorm(norm, version));
+        return norm;
+    }
+
+    private float idf(long tag, long documentCount, Map<Long, Float> idfs) {
+        return idfs.computeIfAbsent(tag, k -> {
+            long documentFrequency = statistics != null ? statistics.getDocumentFrequency(tag) : 0L;
+            if (documentFrequency == 0L) {
+                documentFrequency = getDocumentFrequency(tag);
+            }
+            return documentFrequency > 0 ? (float) Math.log10((1.0d + documentCount) / documentFrequency) : 0.0f;
+        });
+    }
+
+    private void load(GraphDatabaseService database) {
+        long start = System.currentTimeMillis();
+        try (Transaction tx = database.beginTx()) {
+            // documents registered by update() in the meantime are more recent than the committed state
+            database.findNodes(Labels.AnnotatedText).forEachRemaining(node -> addIfAbsent(node.getId(), readTermFrequencies(node)));
+            tx.success();
+        }
+        loaded = true;
+        LOG.info("Loaded term frequencies of " + termFrequencies.size() + " documents in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private void addIfAbsent(long document, Map<Long, Float> tf) {
+        lock.writeLock().lock();
+        try {
+            if (!termFrequencies.containsKey(document)) {
+                add(document, tf);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static Map<Long, Float> readTermFrequencies(Node annotatedText) {
+        Map<Long, Float> tf = new HashMap<>();
+        for (Relationship containsSentence : annotatedText.getRelationships(Direction.OUTGOING, Relationships.CONTAINS_SENTENCE)) {
+            for (Relationship hasTag : containsSentence.getEndNode().getRelationships(Direction.OUTGOING, Relationships.HAS_TAG)) {
+                Object value = hasTag.getProperty(Properties.TF, null);
+                if (value instanceof Number) {
+                    tf.merge(hasTag.getEndNodeId(), ((Number) value).floatValue(), Float::sum);
+                }
+            }
+        }
+        return tf;
+    }
+
+    private static class CachedNorm {
+
+        private final float norm;
+        private final long version;
+
+        private CachedNorm(float norm, long version) {
+            this.norm = norm;
+            this.version = version;
+        }
+    }
+}
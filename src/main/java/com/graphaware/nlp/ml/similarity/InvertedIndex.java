@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.similarity;
+
+import com.graphaware.nlp.util.TopKCollector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * In-memory inverted index (feature id -> posting list of documents and weights) over L2-normalised
+ * sparse document vectors. The cosine top-k of a document is computed by accumulating scores only
+ * over the documents sharing at least one feature with it, optionally with MaxScore-style pruning.
+ */
+public class InvertedIndex {
+
+    private final long[] docIds;
+    private final Map<Long, Integer> docIndex;
+    private final int[][] docTerms;
+    private final float[][] docWeights;
+    private final int[][] postingDocs;
+    private final float[][] postingWeights;
+    private final float[] maxWeights;
+    // accumulators released by finished topK calls, so that at most one per concurrent caller is allocated
+    private final Queue<Accumulator> accumulators = new ConcurrentLinkedQueue<>();
+
+    private InvertedIndex(long[] docIds, Map<Long, Integer> docIndex, int[][] docTerms, float[][] docWeights,
+            int[][] postingDocs, float[][] postingWeights, float[] maxWeights) {
+        this.docIds = docIds;
+        this.docIndex = docIndex;
+        this.docTerms = docTerms;
+        this.docWeights = docWeights;
+        this.postingDocs = postingDocs;
+        this.postingWeights = postingWeights;
+        this.maxWeights = maxWeights;
+    }
+
+    public static InvertedIndex build(Map<Long, Map<Long, Float>> vectors) {
+        int n = vectors.size();
+        long[] docIds = new long[n];
+        Map<Long, Integer> docIndex = new HashMap<>(n * 2);
+        int[][] docTerms = new int[n][];
+        float[][] docWeights = new float[n][];
+        Map<Long, Integer> termIndex = new HashMap<>();
+        List<Integer> postingSizes = new ArrayList<>();
+        int d = 0;
+        for (Map.Entry<Long, Map<Long, Float>> vector : vectors.entrySet()) {
+            docIds[d] = vector.getKey();
+            docIndex.put(vector.getKey(), d);
+            double norm = 0.0d;
+            int size = 0;
+            for (Float value : vector.getValue().values()) {
+                if (value != null && value > 0) {
+                    norm += value * value;
+                    size++;
+                }
+            }
+            norm = Math.sqrt(norm);
+            int[] terms = new int[size];
+            float[] weights = new float[size];
+            int i = 0;
+            for (Map.Entry<Long, Float> feature : vector.getValue().entrySet()) {
+                if (feature.getValue() == null || feature.getValue() <= 0) {
+                    continue;
+                }
+                Integer term = termIndex.get(feature.getKey());
+                if (term == null) {
+                    term = termIndex.size();
+                    termIndex.put(feature.getKey(), term);
+                    postingSizes.add(0);
+                }
+                postingSizes.set(term, postingSizes.get(term) + 1);
+                terms[i] = term;
+                weights[i] = (float) (feature.getValue() / norm);
+                i++;
+            }
+            docTerms[d] = terms;
+            docWeights[d] = weights;
+            d++;
+        }
+
+        int termCount = termIndex.size();
+        int[][] postingDocs = new int[termCount][];
+        float[][] postingWeights = new float[termCount][];
+        float[] maxWeights = new float[termCount];
+        for (int t = 0; t < termCount; t++) {
+            postingDocs[t] = new int[postingSizes.get(t)];
+            postingWeights[t] = new float[postingSizes.get(t)];
+        }
+        int[] fill = new int[termCount];
+        for (d = 0; d < n; d++) {
+            for (int i = 0; i < docTerms[d].length; i++) {
+                int t = docTerms[d][i];
+                postingDocs[t][fill[t]] = d;
+                postingWeights[t][fill[t]] = docWeights[d][i];
+                fill[t]++;
+                maxWeights[t] = Math.max(maxWeights[t], docWeights[d][i]);
+            }
+        }
+
+        return new InvertedIndex(docIds, docIndex, docTerms, docWeights, postingDocs, postingWeights, maxWeights);
+    }
+
+    public int getDocumentCount() {
+        return docIds.length;
+    }
+
+    public int getFeatureCount() {
+        return postingDocs.length;
+    }
+
+    public List<ScoredDocument> topK(long docId, int k, boolean pruning) {
+        Integer d = docIndex.get(docId);
+        if (d == null || k < 1 || docTerms[d].length == 0) {
+            return new ArrayList<>();
+        }
+        int[] terms = docTerms[d];
+        float[] weights = docWeights[d];
+        int m = terms.length;
+
+        // process the features with the highest possible contribution first
+        float[] bounds = new float[m];
+        Integer[] order = new Integer[m];
+        for (int i = 0; i < m; i++) {
+            bounds[i] = weights[i] * maxWeights[terms[i]];
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(bounds[b], bounds[a]));
+        float[] remaining = new float[m + 1];
+        for (int i = m - 1; i >= 0; i--) {
+            remaining[i] = remaining[i + 1] + bounds[order[i]];
+        }
+
+        Accumulator acc = accumulators.poll();
+        if (acc == null) {
+            acc = new Accumulator(docIds.length);
+        }
+        try {
+            return topK(d, k, pruning, acc, order, remaining);
+        } finally {
+            accumulators.offer(acc);
+        }
+    }
+
+    private List<ScoredDocument> topK(int d, int k, boolean pruning, Accumulator acc, Integer[] order, float[] remaining) {
+        int[] terms = docTerms[d];
+        float[] weights = docWeights[d];
+        int m = terms.length;
+        acc.reset();
+        boolean essential = true;
+        float threshold = 0.0f;
+        for (int i = 0; i < m; i++) {
+            int t = terms[order[i]];
+            float w = weights[order[i]];
+            if (pruning && essential && acc.size > k && remaining[i] < acc.maxScore) {
+                // the k-th best partial score is a lower bound of the final k-th score: documents not
+                // seen yet cannot reach it with the remaining features only
+                if (remaining[i] <= threshold || remaining[i] <= (threshold = acc.kthScore(k))) {
+                    essential = false;
+                }
+            }
+            int[] docs = postingDocs[t];
+            float[] values = postingWeights[t];
+            if (essential) {
+                for (int p = 0; p < docs.length; p++) {
+                    if (docs[p] != d) {
+                        acc.add(docs[p], w * values[p]);
+                    }
+                }
+            } else if ((long) acc.size * 32 < docs.length) {
+                for (int c = 0; c < acc.size; c++) {
+                    int p = Arrays.binarySearch(docs, acc.touched[c]);
+                    if (p >= 0) {
+                        acc.scores[docs[p]] += w * values[p];
+                    }
+                }
+            } else {
+                for (int p = 0; p < docs.length; p++) {
+                    if (acc.contains(docs[p])) {
+                        acc.scores[docs[p]] += w * values[p];
+                    }
+                }
+            }
+        }
+
+        TopKCollector heap = TopKCollector.forCurrentThread(k);
+        for (int c = 0; c < acc.size; c++) {
+            int doc = acc.touched[c];
+            float score = acc.scores[doc];
+            if (score > 0 && score > heap.threshold()) {
+                heap.offer(docIds[doc], score);
+            }
+        }
+        return toScoredDocuments(heap);
+    }
+
+    static List<ScoredDocument> toScoredDocuments(TopKCollector heap) {
+        long[] ids = heap.sortDescending();
+        List<ScoredDocument> result = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            result.add(new ScoredDocument(ids[i], heap.getScore(i)));
+        }
+        return result;
+    }
+
+    public static class ScoredDocument implements Comparable<ScoredDocument> {
+
+        private final long id;
+        private final float score;
+
+        public ScoredDocument(long id, float score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public float getScore() {
+            return score;
+        }
+
+        @Override
+        public int compareTo(ScoredDocument o) {
+            return Float.compare(score, o.score);
+        }
+    }
+
+    private static class Accumulator {
+
+        private final float[] scores;
+        private final int[] stamps;
+        private final int[] touched;
+        private float[] heap = new float[0];
+        private int generation;
+        private int size;
+        private float maxScore;
+
+        private Accumulator(int n) {
+            this.scores = new float[n];
+            this.stamps = new int[n];
+            this.touched = new int[n];
+        }
+
+        private void reset() {
+            generation++;
+            size = 0;
+            maxScore = 0.0f;
+        }
+
+        private boolean contains(int doc) {
+            return stamps[doc] == generation;
+        }
+
+        private void add(int doc, float value) {
+            if (stamps[doc] != generation) {
+                stamps[doc] = generation;
+                scores[doc] = 0.0f;
+                touched[size++] = doc;
+            }
+            scores[doc] += value;
+            if (scores[doc] > maxScore) {
+                maxScore = scores[doc];
+            }
+        }
+
+        /**
+         * The k-th highest score accumulated so far, kept in a min-heap of k entries; requires size >= k.
+         */
+        private float kthScore(int k) {
+            if (heap.length != k) {
+                heap = new float[k];
+            }
+            for (int c = 0; c < k; c++) {
+                heap[c] = scores[touched[c]];
+            }
+            for (int c = k / 2 - 1; c >= 0; c--) {
+                siftDown(c, k);
+            }
+            for (int c = k; c < size; c++) {
+                float score = scores[touched[c]];
+                if (score > heap[0]) {
+                    heap[0] = score;
+                    siftDown(0, k);
+                }
+            }
+            return heap[0];
+        }
+
+        private void siftDown(int i, int k) {
+            float value = heap[i];
+            int child;
+            while ((child = 2 * i + 1) < k) {
+                if (child + 1 < k && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (heap[child] >= value) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = value;
+        }
+    }
+}
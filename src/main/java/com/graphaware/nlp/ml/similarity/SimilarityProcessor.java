@@ -16,52 +16,126 @@
 package com.graphaware.nlp.ml.similarity;
 
 import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.nlp.NLPEvents;
 import com.graphaware.nlp.annotation.NLPModuleExtension;
+import com.graphaware.nlp.configuration.SettingsConstants;
 import com.graphaware.nlp.dsl.request.SimilarityRequest;
+import com.graphaware.nlp.event.DatabaseTransactionEvent;
+import com.graphaware.nlp.event.EventDispatcher;
+import com.graphaware.nlp.event.TextAnnotationEvent;
 import com.graphaware.nlp.extension.AbstractExtension;
 import com.graphaware.nlp.extension.NLPExtension;
+import com.graphaware.nlp.ml.queue.SimilarityQueueProcessor;
 import org.neo4j.graphdb.Node;
 import org.neo4j.logging.Log;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import static com.graphaware.nlp.domain.Constants.KNN_SIZE;
+
 @NLPModuleExtension(name = "SimilarityProcessor")
 public class SimilarityProcessor extends AbstractExtension implements NLPExtension {
 
     private static final Log LOG = LoggerFactory.getLogger(SimilarityProcessor.class);
 
+    private static final long STORE_TIMEOUT_MINUTES = 30;
+
+    private SimilarityQueueProcessor queueProcessor;
     private FeatureBasedProcessLogic featureBusinessLogic;
     private VectorProcessLogic vectorBusinessLogic;
+    private IncrementalSimilarity incrementalSimilarity;
+
+    @Override
+    public void registerEventListeners(EventDispatcher eventDispatcher) {
+        eventDispatcher.registerListener(NLPEvents.POST_TEXT_ANNOTATION, (event) -> {
+            onTextAnnotation((TextAnnotationEvent) event);
+        });
+        eventDispatcher.registerListener(NLPEvents.TRANSACTION_BEFORE_COMMIT, (event) -> {
+            incrementalSimilarity.onTransaction(((DatabaseTransactionEvent) event).getTransactionData());
+        });
+        eventDispatcher.registerListener(NLPEvents.TRANSACTION_AFTER_COMMIT, (event) -> {
+            incrementalSimilarity.committed();
+        });
+        eventDispatcher.registerListener(NLPEvents.TRANSACTION_AFTER_ROLLBACK, (event) -> {
+            incrementalSimilarity.rolledBack();
+        });
+    }
 
     @Override
     public void postLoaded() {
+        incrementalSimilarity = new IncrementalSimilarity(KNN_SIZE, getNLPManager().getDocumentFrequencyStatistics());
         super.postLoaded();
-        featureBusinessLogic = new FeatureBasedProcessLogic(getDatabase());
-        featureBusinessLogic.start();
-        vectorBusinessLogic = new VectorProcessLogic(getDatabase());
-        vectorBusinessLogic.start();
+        queueProcessor = new SimilarityQueueProcessor(getDatabase());
+        featureBusinessLogic = new FeatureBasedProcessLogic(getDatabase(), queueProcessor);
+        vectorBusinessLogic = new VectorProcessLogic(getDatabase(), queueProcessor);
+        queueProcessor.start();
+        if (isIncrementalSimilarity()) {
+            incrementalSimilarity.startLoading(getDatabase());
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        try {
+            queueProcessor.shutdown(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void onTextAnnotation(TextAnnotationEvent event) {
+        if (!isIncrementalSimilarity() || event.getAnnotatedNode() == null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int updated = incrementalSimilarity.update(getDatabase(), event.getAnnotatedNode());
+        LOG.debug("Updated similarity of " + event.getId() + " and " + updated + " neighbours in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private boolean isIncrementalSimilarity() {
+        Object value = configuration().getSettingValueFor(SettingsConstants.INCREMENTAL_SIMILARITY);
+        return value != null && Boolean.parseBoolean(value.toString());
     }
 
     public int compute(SimilarityRequest request) {
 
         int processed;
         if (request.getPropertyName() != null) {
-            processed = computeUsingProperty(request.getInput(), request.getLabel(), request.getPropertyName(), request.getRelationshipType(), request.getkSize());
+            processed = computeUsingProperty(request.getInput(), request.getLabel(), request.getPropertyName(), request.getRelationshipType(), request.getkSize(), request.isPreloadVectors());
         } else {
             Long depth = request.getDepth();
-            if (depth != null && depth > 0) {
+            if (request.isInvertedIndex()) {
+                processed = featureBusinessLogic.computeFeatureSimilarityWithIndex(getNodesFromInput(request.getInput()), request.getQuery(),
+                        request.getRelationshipType(), depth != null ? depth.intValue() : 0, request.isPruning());
+            } else if (depth != null && depth > 0) {
                 processed = computeAllCn5(request.getInput(), depth.intValue());
             } else {
                 processed = computeAll(request.getInput(), request.getQuery(), request.getRelationshipType());
             }
         }
 
+        if (request.isWaitForStore()) {
+            awaitStored();
+        }
+
         return processed;
     }
 
+    private void awaitStored() {
+        try {
+            if (!queueProcessor.flush(STORE_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                LOG.warn("Similarity relationships still being stored after " + STORE_TIMEOUT_MINUTES + " minutes");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for similarity storage", ex);
+        }
+    }
+
     public int computeAll(List<Node> input, String query, String relationshipType) {
         int processed = 0;
         List<Long> firstNodeIds = getNodesFromInput(input);
@@ -107,7 +181,10 @@ public class SimilarityProcessor extends AbstractExtension implements NLPExtensi
         return processed;
     }
 
-    private int computeUsingProperty(List<Node> input, String label, String propertyName, String relationshipType, int kSize) {
+    private int computeUsingProperty(List<Node> input, String label, String propertyName, String relationshipType, int kSize, boolean preloadVectors) {
+        if (preloadVectors) {
+            return vectorBusinessLogic.computeFeatureSimilarityWithMatrix(input, label, propertyName, relationshipType, kSize);
+        }
         int processed = 0;
         processed = vectorBusinessLogic.computeFeatureSimilarityForNodes(input, label, propertyName, relationshipType, kSize);
         return processed;
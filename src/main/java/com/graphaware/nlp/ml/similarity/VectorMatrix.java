@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.similarity;
+
+import com.graphaware.nlp.ml.similarity.InvertedIndex.ScoredDocument;
+import com.graphaware.nlp.util.TopKCollector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dense vectors packed row by row into a single float[] with precomputed norms. The cosine top-k
+ * of a block of query rows is computed against blocks of candidate rows, so that a candidate block
+ * is read from memory once for the whole query block.
+ */
+public class VectorMatrix {
+
+    static final int QUERY_BLOCK = 16;
+    private static final int CANDIDATE_BLOCK = 256;
+
+    private final long[] ids;
+    private final Map<Long, Integer> index;
+    private final int dimension;
+    private final float[] data;
+    private final float[] norms;
+
+    private VectorMatrix(long[] ids, Map<Long, Integer> index, int dimension, float[] data, float[] norms) {
+        this.ids = ids;
+        this.index = index;
+        this.dimension = dimension;
+        this.data = data;
+        this.norms = norms;
+    }
+
+    /**
+     * Empty vectors are kept as zero rows and never match anything, as in {@link com.graphaware.nlp.vector.DenseVector#dot}.
+     */
+    public static VectorMatrix build(long[] ids, List<float[]> vectors) {
+        if (ids.length != vectors.size()) {
+            throw new RuntimeException("Each vector must have a node id");
+        }
+        int dimension = 0;
+        for (float[] vector : vectors) {
+            if (vector == null || vector.length == 0) {
+                continue;
+            }
+            if (dimension == 0) {
+                dimension = vector.length;
+            } else if (vector.length != dimension) {
+                throw new RuntimeException("The two vectors cannot be multiplied");
+            }
+        }
+        int n = ids.length;
+        long size = (long) n * dimension;
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new RuntimeException("Too many vectors to pack in a single matrix: " + n + " vectors of dimension " + dimension);
+        }
+        float[] data = new float[(int) size];
+        float[] norms = new float[n];
+        Map<Long, Integer> index = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            index.put(ids[i], i);
+            float[] vector = vectors.get(i);
+            if (vector != null && vector.length > 0) {
+                System.arraycopy(vector, 0, data, i * dimension, dimension);
+                norms[i] = (float) Math.sqrt(dot(data, i * dimension, data, i * dimension, dimension));
+            }
+        }
+        return new VectorMatrix(ids.clone(), index, dimension, data, norms);
+    }
+
+    public int getRowCount() {
+        return ids.length;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public long getId(int row) {
+        return ids[row];
+    }
+
+    public int indexOf(long id) {
+        Integer row = index.get(id);
+        return row != null ? row : -1;
+    }
+
+    /**
+     * Top-k cosine neighbours (similarity > 0, the row with the same node id excluded) among the
+     * rows of this matrix for the query rows [from, to) of {@code queries}, ordered by descending score.
+     */
+    public List<List<ScoredDocument>> topK(VectorMatrix queries, int from, int to, int k) {
+        if (queries.dimension != dimension && queries.dimension > 0 && dimension > 0) {
+            throw new RuntimeException("The two vectors cannot be multiplied");
+        }
+        int count = to - from;
+        TopKCollector[] heaps = new TopKCollector[count];
+        for (int q = 0; q < count; q++) {
+            heaps[q] = new TopKCollector(k);
+        }
+        int n = ids.length;
+        if (k > 0 && dimension > 0) {
+            for (int start = 0; start < n; start += CANDIDATE_BLOCK) {
+                int end = Math.min(n, start + CANDIDATE_BLOCK);
+                for (int q = 0; q < count; q++) {
+                    int query = from + q;
+                    float queryNorm = queries.norms[query];
+                    if (queryNorm == 0) {
+                        continue;
+                    }
+                    long queryId = queries.ids[query];
+                    int queryOffset = query * dimension;
+                    TopKCollector heap = heaps[q];
+                    for (int c = start; c < end; c++) {
+                        if (norms[c] == 0 || ids[c] == queryId) {
+                            continue;
+                        }
+                        float score = dot(queries.data, queryOffset, data, c * dimension, dimension) / (queryNorm * norms[c]);
+                        if (score > 0 && score > heap.threshold()) {
+                            heap.offer(ids[c], score);
+                        }
+                    }
+                }
+            }
+        }
+        List<List<ScoredDocument>> result = new ArrayList<>(count);
+        for (TopKCollector heap : heaps) {
+            result.add(InvertedIndex.toScoredDocuments(heap));
+        }
+        return result;
+    }
+
+    // four independent accumulators let the JIT pipeline (and unroll) the multiply-adds
+    static float dot(float[] x, int xOffset, float[] y, int yOffset, int length) {
+        float s0 = 0.0f;
+        float s1 = 0.0f;
+        float s2 = 0.0f;
+        float s3 = 0.0f;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += x[xOffset + i] * y[yOffset + i];
+            s1 += x[xOffset + i + 1] * y[yOffset + i + 1];
+            s2 += x[xOffset + i + 2] * y[yOffset + i + 2];
+            s3 += x[xOffset + i + 3] * y[yOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += x[xOffset + i] * y[yOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+}
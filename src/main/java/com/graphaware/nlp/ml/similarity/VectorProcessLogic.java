@@ -16,39 +16,55 @@
 package com.graphaware.nlp.ml.similarity;
 
 import com.graphaware.nlp.ml.queue.SimilarityItem;
+import com.graphaware.nlp.ml.similarity.InvertedIndex.ScoredDocument;
 import com.graphaware.nlp.ml.queue.SimilarityItemProcessEntry;
 import com.graphaware.nlp.ml.queue.SimilarityQueueProcessor;
-import com.graphaware.nlp.util.FixedSizeOrderedList;
+import com.graphaware.nlp.util.TopKCollector;
 import org.neo4j.graphdb.*;
 import org.neo4j.logging.Log;
 import com.graphaware.common.log.LoggerFactory;
 import com.graphaware.nlp.NLPManager;
 import com.graphaware.nlp.domain.VectorContainer;
+import com.graphaware.nlp.vector.DenseVector;
 import com.graphaware.nlp.vector.GenericVector;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
-import java.util.concurrent.Executors;
 
 public class VectorProcessLogic {
 
     private static final Log LOG = LoggerFactory.getLogger(VectorProcessLogic.class);
 
-    protected final Similarity similarityFunction;
+    protected final CosineSimilarity similarityFunction;
     protected final GraphDatabaseService database;
 
     protected final SimilarityQueueProcessor queueProcessor;
 
     public VectorProcessLogic(GraphDatabaseService database) {
+        this(database, new SimilarityQueueProcessor(database));
+    }
+
+    public VectorProcessLogic(GraphDatabaseService database, SimilarityQueueProcessor queueProcessor) {
         this.similarityFunction = new CosineSimilarity();
-        this.queueProcessor = new SimilarityQueueProcessor(database);
+        this.queueProcessor = queueProcessor;
         this.database = database;
     }
 
     public void start() {
-        Executors.newSingleThreadExecutor().execute(queueProcessor);
+        queueProcessor.start();
+    }
+
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        return queueProcessor.flush(timeout, unit);
+    }
+
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        queueProcessor.shutdown(timeout, unit);
     }
 
 //    private List<Float> getVectorOld(Node node, String propertyName) {
@@ -92,9 +108,95 @@ public class VectorProcessLogic {
         return countProcessed.get();
     }
 
+    /**
+     * Loads the vectors of all the nodes with the label once and computes the top-k over the packed
+     * matrix; nodes without a dense vector are left out. Falls back to {@link #computeFeatureSimilarityForNodes}
+     * when the vectors are not dense.
+     */
+    public int computeFeatureSimilarityWithMatrix(List<Node> nodes, String label, String propertyName, String similarityType, int kSize) {
+        long startTime = System.currentTimeMillis();
+        VectorMatrix candidates;
+        VectorMatrix queries;
+        try (Transaction tx = database.beginTx()) {
+            candidates = loadMatrix(database.findNodes(Label.label(label)), propertyName);
+            queries = candidates != null && nodes != null ? loadMatrix(nodes.iterator(), propertyName) : candidates;
+            tx.success();
+        }
+        if (candidates == null || queries == null) {
+            LOG.warn("Vectors stored in " + propertyName + " are not dense, computing similarities node by node");
+            return computeFeatureSimilarityForNodes(nodes, label, propertyName, similarityType, kSize);
+        }
+        LOG.info("Loaded " + candidates.getRowCount() + " vectors of dimension " + candidates.getDimension()
+                + " in " + (System.currentTimeMillis() - startTime) + "ms");
+
+        final AtomicInteger countStored = new AtomicInteger(0);
+        int queryCount = queries.getRowCount();
+        int blocks = (queryCount + VectorMatrix.QUERY_BLOCK - 1) / VectorMatrix.QUERY_BLOCK;
+        IntStream.range(0, blocks).parallel().forEach((block) -> {
+            int from = block * VectorMatrix.QUERY_BLOCK;
+            int to = Math.min(queryCount, from + VectorMatrix.QUERY_BLOCK);
+            List<List<ScoredDocument>> neighbours = candidates.topK(queries, from, to, kSize);
+            for (int q = from; q < to; q++) {
+                long nodeId = queries.getId(q);
+                ArrayList<SimilarityItem> kNN = new ArrayList<>();
+                neighbours.get(q - from).forEach((neighbour) -> {
+                    kNN.add(new SimilarityItem(nodeId, neighbour.getId(), neighbour.getScore(), similarityType));
+                });
+                countStored.addAndGet(kNN.size());
+                queueProcessor.offer(new SimilarityItemProcessEntry(nodeId, kNN));
+            }
+        });
+        long processed = 0;
+        for (int q = 0; q < queryCount; q++) {
+            processed += candidates.getRowCount() - (candidates.indexOf(queries.getId(q)) >= 0 ? 1 : 0);
+        }
+        LOG.info("Total node processed: " + queryCount + " in " + (System.currentTimeMillis() - startTime) + "ms");
+        LOG.info("Total relationships computed: " + processed + " stored: " + countStored.get());
+        return (int) Math.min(Integer.MAX_VALUE, processed);
+    }
+
+    /**
+     * Nodes without a dense vector in the property are skipped. Returns null only when none of the nodes has a
+     * dense vector while some have another kind, i.e. when the property holds sparse vectors.
+     */
+    private VectorMatrix loadMatrix(Iterator<Node> nodes, String propertyName) {
+        List<Long> ids = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        int skipped = 0;
+        boolean otherVectors = false;
+        while (nodes.hasNext()) {
+            Node node = nodes.next();
+            GenericVector vector;
+            try {
+                vector = getVector(node, propertyName);
+            } catch (NotFoundException e) {
+                vector = null;
+            }
+            if (!(vector instanceof DenseVector)) {
+                skipped++;
+                otherVectors |= vector != null;
+                continue;
+            }
+            ids.add(node.getId());
+            vectors.add(vector.getArray());
+        }
+        if (ids.isEmpty() && otherVectors) {
+            return null;
+        }
+        if (skipped > 0) {
+            LOG.warn("Skipped " + skipped + " nodes without a dense vector in " + propertyName);
+        }
+        long[] nodeIds = new long[ids.size()];
+        for (int i = 0; i < nodeIds.length; i++) {
+            nodeIds[i] = ids.get(i);
+        }
+        return VectorMatrix.build(nodeIds, vectors);
+    }
+
     private void computeFeatureSimilarityForNode(Node node, String label, String propertyName, String similarityType, AtomicInteger countProcessed, AtomicInteger countStored, int kSize) {
-        FixedSizeOrderedList<SimilarityItem> kNN = new FixedSizeOrderedList<>(kSize);
+        TopKCollector kNN = TopKCollector.forCurrentThread(kSize);
         try (Transaction tx0 = database.beginTx()) {
+            FeatureVector vector = FeatureVector.of(getVector(node, propertyName));
             ResourceIterator<Node> otherProperties = database.findNodes(Label.label(label));
             List<Node> secondNodes = new ArrayList<>();
             otherProperties.stream().forEach((secondNode) -> {
@@ -103,9 +205,9 @@ public class VectorProcessLogic {
             secondNodes.stream()
                     .forEach((secondNode) -> {
                         if (secondNode.getId() != node.getId()) {
-                            float similarity = getSimilarity(getVector(node, propertyName), getVector(secondNode, propertyName));
+                            float similarity = similarityFunction.getSimilarity(vector, FeatureVector.of(getVector(secondNode, propertyName)));
                             if (similarity > 0) {
-                                kNN.add(new SimilarityItem(node.getId(), secondNode.getId(), similarity, similarityType));
+                                kNN.offer(secondNode.getId(), similarity);
                                 countStored.incrementAndGet();
                             }
                             int processed = countProcessed.incrementAndGet();
@@ -116,7 +218,7 @@ public class VectorProcessLogic {
                     });
             tx0.success();
         }
-        queueProcessor.offer(new SimilarityItemProcessEntry(node.getId(), kNN));
+        queueProcessor.offer(new SimilarityItemProcessEntry(node.getId(), kNN, similarityType));
     }
 
 //    public static float getSimilarity(List<Float> x, List<Float> y) {
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.textrank;
+
+import java.util.*;
+
+/**
+ * Aho-Corasick automaton over a set of key phrases. {@link #findIn(String)} returns all the phrases occurring in a text
+ * in a single pass over it, which lets keyword aggregation find which key phrases contain which others in time linear
+ * in the total length of the phrases, instead of testing every pair with {@link String#contains(CharSequence)}.
+ */
+public final class KeyphraseMatcher {
+
+    private final Map<Long, Integer> transitions = new HashMap<>();
+    private final List<int[]> phrasesByPattern = new ArrayList<>();
+    private final int[] terminal;
+    private final int[] fail;
+    private final int[] dictionaryLink;
+
+    public KeyphraseMatcher(List<String> phrases) {
+        Map<String, List<Integer>> patterns = new LinkedHashMap<>();
+        int capacity = 1;
+        for (int i = 0; i < phrases.size(); i++) {
+            String phrase = phrases.get(i);
+            if (phrase != null && !phrase.isEmpty()) {
+                patterns.computeIfAbsent(phrase, k -> new ArrayList<>()).add(i);
+                capacity += phrase.length();
+            }
+        }
+
+        int[] parent = new int[capacity];
+        char[] edge = new char[capacity];
+        int[] depth = new int[capacity];
+        terminal = new int[capacity];
+        Arrays.fill(terminal, -1);
+        int states = 1;
+        for (Map.Entry<String, List<Integer>> pattern : patterns.entrySet()) {
+            int state = 0;
+            for (char c : pattern.getKey().toCharArray()) {
+                Integer next = transitions.get(key(state, c));
+                if (next == null) {
+                    next = states++;
+                    transitions.put(key(state, c), next);
+                    parent[next] = state;
+                    edge[next] = c;
+                    depth[next] = depth[state] + 1;
+                }
+                state = next;
+            }
+            terminal[state] = phrasesByPattern.size();
+            phrasesByPattern.add(pattern.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        // failure links are resolved in order of depth, so that the links of shorter prefixes are always known
+        fail = new int[states];
+        dictionaryLink = new int[states];
+        Integer[] byDepth = new Integer[states];
+        for (int s = 0; s < states; s++) {
+            byDepth[s] = s;
+        }
+        Arrays.sort(byDepth, Comparator.comparingInt(s -> depth[s]));
+        for (int s : byDepth) {
+            if (s == 0 || parent[s] == 0) {
+                continue;
+            }
+            int f = fail[parent[s]];
+            Integer next;
+            while ((next = transitions.get(key(f, edge[s]))) == null && f != 0) {
+                f = fail[f];
+            }
+            fail[s] = next != null ? next : 0;
+            dictionaryLink[s] = terminal[fail[s]] >= 0 ? fail[s] : dictionaryLink[fail[s]];
+        }
+    }
+
+    /**
+     * @return indexes of the phrases occurring in the text, in increasing order
+     */
+    public int[] findIn(String text) {
+        BitSet found = new BitSet(phrasesByPattern.size());
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            Integer next;
+            while ((next = transitions.get(key(state, c))) == null && state != 0) {
+                state = fail[state];
+            }
+            state = next != null ? next : 0;
+            for (int s = terminal[state] >= 0 ? state : dictionaryLink[state]; s != 0; s = dictionaryLink[s]) {
+                found.set(terminal[s]);
+            }
+        }
+        return found.stream()
+                .flatMap(pattern -> Arrays.stream(phrasesByPattern.get(pattern)))
+                .sorted()
+                .toArray();
+    }
+
+    private static long key(int state, char c) {
+        return ((long) state << 16) | c;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.textrank;
+
+import com.graphaware.nlp.persistence.constants.Properties;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
+
+import java.util.*;
+
+/**
+ * Inverted index from the terms of keywords to the keywords containing them, used by the TextRank post-processing
+ * to find longer keyphrases containing a keyphrase by intersecting term posting lists instead of comparing the
+ * values of all pairs of keywords.
+ */
+public final class KeywordTokenIndex {
+
+    private final long[] ids;
+    private final String[] values;
+    private final int[] numTerms;
+    private final Map<Long, Integer> index;
+    private final Map<String, int[]> postings;
+    private final long nodeCount;
+
+    public KeywordTokenIndex(long[] ids, String[] values, int[] numTerms) {
+        this(ids, values, numTerms, ids.length);
+    }
+
+    KeywordTokenIndex(long[] ids, String[] values, int[] numTerms, long nodeCount) {
+        this.ids = ids;
+        this.nodeCount = nodeCount;
+        this.values = values;
+        this.numTerms = numTerms;
+        this.index = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i++) {
+            index.put(ids[i], i);
+        }
+
+        // two passes so that every posting list is allocated once and filled in increasing keyword order
+        Map<String, int[]> counts = new HashMap<>();
+        for (String value : values) {
+            for (String token : tokens(value)) {
+                counts.computeIfAbsent(token, k -> new int[1])[0]++;
+            }
+        }
+        this.postings = new HashMap<>(counts.size() * 2);
+        counts.forEach((token, count) -> postings.put(token, new int[count[0]]));
+        for (int i = 0; i < values.length; i++) {
+            for (String token : tokens(values[i])) {
+                counts.get(token)[0]--;
+                int[] posting = postings.get(token);
+                posting[posting.length - 1 - counts.get(token)[0]] = i;
+            }
+        }
+    }
+
+    /**
+     * Must be called within a transaction.
+     */
+    public static KeywordTokenIndex load(GraphDatabaseService database, Label keywordLabel) {
+        List<Long> ids = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        List<Integer> numTerms = new ArrayList<>();
+        long nodeCount = 0;
+        try (ResourceIterator<Node> keywords = database.findNodes(keywordLabel)) {
+            while (keywords.hasNext()) {
+                Node keyword = keywords.next();
+                nodeCount++;
+                Object value = keyword.getProperty(Properties.CONTENT_VALUE, null);
+                if (value == null) {
+                    continue;
+                }
+                ids.add(keyword.getId());
+                values.add(String.valueOf(value));
+                numTerms.add(((Number) keyword.getProperty(Properties.NUM_TERMS, 0)).intValue());
+            }
+        }
+        return new KeywordTokenIndex(
+                ids.stream().mapToLong(Long::longValue).toArray(),
+                values.toArray(new String[0]),
+                numTerms.stream().mapToInt(Integer::intValue).toArray(),
+                nodeCount);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Number of nodes with the keyword label when the index was loaded, including those without a value.
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    public long getId(int keyword) {
+        return ids[keyword];
+    }
+
+    public String getValue(int keyword) {
+        return values[keyword];
+    }
+
+    public int getNumTerms(int keyword) {
+        return numTerms[keyword];
+    }
+
+    public int indexOf(long id) {
+        Integer keyword = index.get(id);
+        return keyword != null ? keyword : -1;
+    }
+
+    /**
+     * Keywords with more terms whose value contains the value of the given keyword.
+     */
+    public int[] getSuperPhrases(int keyword) {
+        String value = values[keyword];
+        return Arrays.stream(getContaining(keyword))
+                .filter(other -> numTerms[other] > numTerms[keyword] && values[other].contains(value))
+                .toArray();
+    }
+
+    /**
+     * Keywords whose value starts or ends with the value of the given keyword as separate terms.
+     */
+    public int[] getSubGroups(int keyword) {
+        String prefix = values[keyword] + " ";
+        String suffix = " " + values[keyword];
+        return Arrays.stream(getContaining(keyword))
+                .filter(other -> values[other].startsWith(prefix) || values[other].endsWith(suffix))
+                .toArray();
+    }
+
+    /**
+     * Keywords, other than the given one, having all the terms of the given keyword.
+     */
+    public int[] getContaining(int keyword) {
+        Set<String> tokens = tokens(values[keyword]);
+        if (tokens.isEmpty()) {
+            return new int[0];
+        }
+        List<int[]> lists = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            lists.add(postings.get(token));
+        }
+        lists.sort(Comparator.comparingInt(list -> list.length));
+
+        int[] result = new int[lists.get(0).length];
+        int size = 0;
+        for (int candidate : lists.get(0)) {
+            if (candidate == keyword) {
+                continue;
+            }
+            boolean inAll = true;
+            for (int i = 1; i < lists.size() && inAll; i++) {
+                inAll = Arrays.binarySearch(lists.get(i), candidate) >= 0;
+            }
+            if (inAll) {
+                result[size++] = candidate;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static Set<String> tokens(String value) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String token : value.trim().split("\\s+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.textrank;
+
+import com.graphaware.nlp.ml.pagerank.PageRankGraph;
+import com.graphaware.nlp.ml.pagerank.PageRankGraphBuilder;
+
+import java.util.*;
+
+/**
+ * Undirected sentence similarity graph used by {@link TextRankSummarizer}. Two sentences are linked when they
+ * share tags, weighted by the number of shared tags over the sum of the logarithms of both sentence sizes.
+ */
+public final class SentenceGraph {
+
+    private final long[] sentenceIds;
+    private final int[][] sentenceTags;
+    private final double[] logSizes;
+    private final int tagCount;
+
+    private int[] edgeSources = new int[64];
+    private int[] edgeTargets = new int[64];
+    private double[] edgeWeights = new double[64];
+    private int edgeCount;
+
+    private SentenceGraph(Map<Long, ? extends Collection<Long>> sentences) {
+        int n = sentences.size();
+        sentenceIds = new long[n];
+        sentenceTags = new int[n][];
+        logSizes = new double[n];
+        Map<Long, Integer> tagIndex = new HashMap<>();
+        int i = 0;
+        for (Map.Entry<Long, ? extends Collection<Long>> entry : new TreeMap<>(sentences).entrySet()) {
+            sentenceIds[i] = entry.getKey();
+            int[] tags = entry.getValue().stream()
+                    .mapToInt(tag -> tagIndex.computeIfAbsent(tag, k -> tagIndex.size()))
+                    .distinct()
+                    .sorted()
+                    .toArray();
+            sentenceTags[i] = tags;
+            logSizes[i] = Math.log(1.0d * tags.length);
+            i++;
+        }
+        tagCount = tagIndex.size();
+    }
+
+    /**
+     * @param sentences tags of every sentence, by sentence number
+     * @param invertedIndex visit only sentence pairs sharing a tag (through a tag -> sentences index) instead of
+     *                      comparing every pair of sentences
+     * @param maxEdges if positive, keep an edge only if it is among the {@code maxEdges} heaviest edges of one
+     *                 of its sentences
+     */
+    public static PageRankGraph build(Map<Long, ? extends Collection<Long>> sentences, boolean invertedIndex, int maxEdges) {
+        SentenceGraph graph = new SentenceGraph(sentences);
+        if (invertedIndex) {
+            graph.computeFromInvertedIndex();
+        } else {
+            graph.computePairwise();
+        }
+        return graph.toPageRankGraph(maxEdges);
+    }
+
+    private void computePairwise() {
+        for (int i = 0; i < sentenceIds.length; i++) {
+            for (int j = i + 1; j < sentenceIds.length; j++) {
+                addEdge(i, j, intersectionSize(sentenceTags[i], sentenceTags[j]));
+            }
+        }
+    }
+
+    private void computeFromInvertedIndex() {
+        int n = sentenceIds.length;
+        int[][] postings = buildPostings();
+        int[] shared = new int[n];
+        int[] touched = new int[n];
+        for (int i = 0; i < n; i++) {
+            int touchedCount = 0;
+            for (int tag : sentenceTags[i]) {
+                int[] posting = postings[tag];
+                // postings are sorted: start right after sentence i, similarity is symmetric
+                int start = Arrays.binarySearch(posting, i) + 1;
+                for (int p = start; p < posting.length; p++) {
+                    int j = posting[p];
+                    if (shared[j]++ == 0) {
+                        touched[touchedCount++] = j;
+                    }
+                }
+            }
+            for (int t = 0; t < touchedCount; t++) {
+                int j = touched[t];
+                addEdge(i, j, shared[j]);
+                shared[j] = 0;
+            }
+        }
+    }
+
+    private int[][] buildPostings() {
+        int[] sizes = new int[tagCount];
+        for (int[] tags : sentenceTags) {
+            for (int tag : tags) {
+                sizes[tag]++;
+            }
+        }
+        int[][] postings = new int[tagCount][];
+        for (int tag = 0; tag < tagCount; tag++) {
+            postings[tag] = new int[sizes[tag]];
+        }
+        Arrays.fill(sizes, 0);
+        for (int i = 0; i < sentenceTags.length; i++) {
+            for (int tag : sentenceTags[i]) {
+                postings[tag][sizes[tag]++] = i;
+            }
+        }
+        return postings;
+    }
+
+    private void addEdge(int i, int j, int sharedTags) {
+        double denom = logSizes[i] + logSizes[j];
+        if (sharedTags == 0 || denom <= 0) {
+            return;
+        }
+        if (edgeCount == edgeSources.length) {
+            int capacity = edgeCount * 2;
+            edgeSources = Arrays.copyOf(edgeSources, capacity);
+            edgeTargets = Arrays.copyOf(edgeTargets, capacity);
+            edgeWeights = Arrays.copyOf(edgeWeights, capacity);
+        }
+        edgeSources[edgeCount] = i;
+        edgeTargets[edgeCount] = j;
+        edgeWeights[edgeCount] = sharedTags / denom;
+        edgeCount++;
+    }
+
+    private PageRankGraph toPageRankGraph(int maxEdges) {
+        double[] minWeights = maxEdges > 0 ? minimumWeights(maxEdges) : null;
+        PageRankGraphBuilder builder = new PageRankGraphBuilder();
+        for (int e = 0; e < edgeCount; e++) {
+            int i = edgeSources[e];
+            int j = edgeTargets[e];
+            double w = edgeWeights[e];
+            if (minWeights != null && w < minWeights[i] && w < minWeights[j]) {
+                continue;
+            }
+            builder.addEdge(sentenceIds[i], sentenceIds[j], w);
+            builder.addEdge(sentenceIds[j], sentenceIds[i], w);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return for every sentence, the weight of its k-th heaviest edge (0 if it has at most k edges)
+     */
+    private double[] minimumWeights(int k) {
+        int n = sentenceIds.length;
+        int[] offsets = new int[n + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            offsets[edgeSources[e] + 1]++;
+            offsets[edgeTargets[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        double[] incident = new double[offsets[n]];
+        int[] next = Arrays.copyOf(offsets, n);
+        for (int e = 0; e < edgeCount; e++) {
+            incident[next[edgeSources[e]]++] = edgeWeights[e];
+            incident[next[edgeTargets[e]]++] = edgeWeights[e];
+        }
+        double[] minWeights = new double[n];
+        for (int i = 0; i < n; i++) {
+            int degree = offsets[i + 1] - offsets[i];
+            if (degree > k) {
+                Arrays.sort(incident, offsets[i], offsets[i + 1]);
+                minWeights[i] = incident[offsets[i + 1] - k];
+            }
+        }
+        return minWeights;
+    }
+
+    private static int intersectionSize(int[] a, int[] b) {
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+}
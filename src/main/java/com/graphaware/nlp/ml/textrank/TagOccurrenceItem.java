@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.textrank;
+
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.List;
+
+class TagOccurrenceItem {
+
+    private final long tagOccurrenceNodeId;
+    private final long tagNodeId;
+    private final String tagId;
+    private final String tagValue;
+    private final Set<String> tagLabels;
+    private final int sentenceNumber;
+    private final int startPosition;
+    private final int endPosition;
+    private final String[] pos;
+    private final List<TagOccurrenceItem> dependents = new ArrayList<>();
+
+    TagOccurrenceItem(long tagOccurrenceNodeId, long tagNodeId, String tagId, String tagValue, Set<String> tagLabels, int sentenceNumber, int startPosition, int endPosition, String[] pos) {
+        this.tagOccurrenceNodeId = tagOccurrenceNodeId;
+        this.tagNodeId = tagNodeId;
+        this.tagId = tagId;
+        this.tagValue = tagValue;
+        this.tagLabels = tagLabels;
+        this.sentenceNumber = sentenceNumber;
+        this.startPosition = startPosition;
+        this.endPosition = endPosition;
+        this.pos = pos;
+    }
+
+    public long getTagOccurrenceNodeId() {
+        return tagOccurrenceNodeId;
+    }
+
+    public long getTagNodeId() {
+        return tagNodeId;
+    }
+
+    public String getTagId() {
+        return tagId;
+    }
+
+    public String getTagValue() {
+        return tagValue;
+    }
+
+    public Set<String> getTagLabels() {
+        return tagLabels;
+    }
+
+    public int getSentenceNumber() {
+        return sentenceNumber;
+    }
+
+    public int getStartPosition() {
+        return startPosition;
+    }
+
+    public int getEndPosition() {
+        return endPosition;
+    }
+
+    public String[] getPos() {
+        return pos;
+    }
+
+    /**
+     * @return tag occurrences related to this one through a COMPOUND or AMOD dependency
+     */
+    public List<TagOccurrenceItem> getDependents() {
+        return dependents;
+    }
+
+    public void addDependent(TagOccurrenceItem dependent) {
+        this.dependents.add(dependent);
+    }
+}
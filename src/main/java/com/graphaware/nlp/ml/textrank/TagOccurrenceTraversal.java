@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.textrank;
+
+import com.graphaware.nlp.persistence.constants.Properties;
+import com.graphaware.nlp.persistence.constants.Relationships;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Visits the AnnotatedText -> Sentence -> TagOccurrence -> Tag structure of a document once through the Core API
+ * and returns its tag occurrences ordered by start position (and by sentence number when sentences are respected).
+ */
+class TagOccurrenceTraversal {
+
+    private static final RelationshipType COMPOUND = RelationshipType.withName("COMPOUND");
+    private static final RelationshipType AMOD = RelationshipType.withName("AMOD");
+
+    private static final Comparator<TagOccurrenceItem> BY_POSITION = Comparator
+            .comparingInt(TagOccurrenceItem::getStartPosition)
+            .thenComparingInt(TagOccurrenceItem::getSentenceNumber);
+
+    private static final Comparator<TagOccurrenceItem> BY_SENTENCE = Comparator
+            .comparingInt(TagOccurrenceItem::getSentenceNumber)
+            .thenComparingInt(TagOccurrenceItem::getStartPosition);
+
+    public List<TagOccurrenceItem> traverse(Node annotatedText, boolean respectSentences) {
+        List<TagOccurrenceItem> occurrences = new ArrayList<>();
+        Map<Long, TagOccurrenceItem> occurrencesById = new HashMap<>();
+        Map<TagOccurrenceItem, List<Long>> dependentIds = new HashMap<>();
+        Map<Long, Set<String>> tagLabels = new HashMap<>();
+        for (Relationship sentenceRel : annotatedText.getRelationships(Direction.OUTGOING, Relationships.CONTAINS_SENTENCE)) {
+            Node sentence = sentenceRel.getEndNode();
+            int sentenceNumber = ((Number) sentence.getProperty(Properties.SENTENCE_NUMBER, 0)).intValue();
+            for (Relationship occurrenceRel : sentence.getRelationships(Direction.OUTGOING, Relationships.SENTENCE_TAG_OCCURRENCE)) {
+                Node tagOccurrence = occurrenceRel.getEndNode();
+                Relationship tagRel = tagOccurrence.getSingleRelationship(Relationships.TAG_OCCURRENCE_TAG, Direction.OUTGOING);
+                if (tagRel == null) {
+                    continue;
+                }
+                Node tag = tagRel.getEndNode();
+                TagOccurrenceItem item = new TagOccurrenceItem(tagOccurrence.getId(),
+                        tag.getId(),
+                        (String) tag.getProperty(Properties.PROPERTY_ID, null),
+                        (String) tag.getProperty(Properties.CONTENT_VALUE, null),
+                        tagLabels.computeIfAbsent(tag.getId(), k -> getLabels(tag)),
+                        sentenceNumber,
+                        ((Number) tagOccurrence.getProperty(Properties.OCCURRENCE_BEGIN)).intValue(),
+                        ((Number) tagOccurrence.getProperty(Properties.OCCURRENCE_END)).intValue(),
+                        (String[]) tagOccurrence.getProperty(Properties.PART_OF_SPEECH, null));
+                occurrences.add(item);
+                occurrencesById.put(item.getTagOccurrenceNodeId(), item);
+                List<Long> dependents = new ArrayList<>();
+                for (Relationship dependency : tagOccurrence.getRelationships(Direction.INCOMING, COMPOUND, AMOD)) {
+                    dependents.add(dependency.getStartNodeId());
+                }
+                if (!dependents.isEmpty()) {
+                    dependentIds.put(item, dependents);
+                }
+            }
+        }
+        dependentIds.forEach((item, ids) -> ids.forEach(id -> {
+            TagOccurrenceItem dependent = occurrencesById.get(id);
+            if (dependent != null) {
+                item.addDependent(dependent);
+            }
+        }));
+        occurrences.sort(respectSentences ? BY_SENTENCE : BY_POSITION);
+
+        return occurrences;
+    }
+
+    private static Set<String> getLabels(Node tag) {
+        Set<String> labels = new HashSet<>();
+        for (Label label : tag.getLabels()) {
+            labels.add(label.name());
+        }
+        return labels;
+    }
+}
@@ -21,50 +21,30 @@ import com.graphaware.nlp.ml.pagerank.PageRank;
 import com.graphaware.common.util.Pair;
 import com.graphaware.nlp.NLPManager;
 import com.graphaware.nlp.configuration.DynamicConfiguration;
+import com.graphaware.nlp.configuration.SettingsConstants;
 import com.graphaware.nlp.domain.Keyword;
 import com.graphaware.nlp.domain.TfIdfObject;
 import com.graphaware.nlp.persistence.constants.Labels;
 import com.graphaware.nlp.persistence.constants.Relationships;
 import com.graphaware.nlp.dsl.request.PipelineSpecification;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.graphaware.tx.event.improved.api.ImprovedTransactionData;
 import org.neo4j.graphdb.*;
 import org.neo4j.logging.Log;
 import com.graphaware.common.log.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
 
 public class TextRank {
 
     private static final Log LOG = LoggerFactory.getLogger(TextRank.class);
 
-    private static final String COOCCURRENCE_QUERY
-            = "MATCH (a:AnnotatedText)-[:CONTAINS_SENTENCE]->(s:Sentence)-[:SENTENCE_TAG_OCCURRENCE]->(to:TagOccurrence)\n"
-            + "WHERE id(a) = {id}\n"
-            + "WITH to\n"
-            + "ORDER BY to.startPosition\n"
-            + "MATCH (to)-[:TAG_OCCURRENCE_TAG]->(t:Tag)\n"
-            + "WHERE size(t.value) > 2 AND NOT(toLower(t.value) IN {stopwords}) AND NOT ANY(pos IN to.pos WHERE pos IN {forbiddenPOSs}) AND NOT ANY(l IN labels(t) WHERE l IN {forbiddenNEs})\n"
-            + "WITH collect(t) as tags, collect(to) as tagsPosition\n"
-            + "UNWIND range(0, size(tags) - 2, 1) as i\n"
-            + "RETURN id(tags[i]) as tag1, id(tags[i+1]) as tag2, tags[i].id as tag1_id, tags[i+1].id as tag2_id, "
-            + "tagsPosition[i].startPosition as sourceStartPosition, tagsPosition[i].endPosition as sourceEndPosition, "
-            + "tagsPosition[i+1].startPosition as destinationStartPosition, tagsPosition[i+1].endPosition as destinationEndPosition, tagsPosition[i].pos as pos1, tagsPosition[i+1].pos as pos2";
-
-    private static final String COOCCURRENCE_QUERY_BY_SENTENCE
-            = "MATCH (a:AnnotatedText)-[:CONTAINS_SENTENCE]->(s:Sentence)-[:SENTENCE_TAG_OCCURRENCE]->(to:TagOccurrence)\n"
-            + "WHERE id(a) = {id} \n"
-            + "WITH s, to\n"
-            + "ORDER BY s.sentenceNumber, to.startPosition\n"
-            + "MATCH (to)-[:TAG_OCCURRENCE_TAG]->(t:Tag)\n"
-            + "WHERE size(t.value) > 2 AND NOT(toLower(t.value) IN {stopwords}) AND NOT ANY(pos IN to.pos WHERE pos IN {forbiddenPOSs}) AND NOT ANY(l IN labels(t) WHERE l IN {forbiddenNEs})\n"
-            + "WITH s, collect(t) as tags, collect(to) as tagsPosition\n"
-            + "ORDER BY s.sentenceNumber\n"
-            + "UNWIND range(0, size(tags) - 2, 1) as i\n"
-            + "RETURN s, id(tags[i]) as tag1, id(tags[i+1]) as tag2, tags[i].id as tag1_id, tags[i+1].id as tag2_id, "
-            + "tagsPosition[i].startPosition as sourceStartPosition, tagsPosition[i].endPosition as sourceEndPosition, "
-            + "tagsPosition[i+1].startPosition as destinationStartPosition, tagsPosition[i+1].endPosition as destinationEndPosition, tagsPosition[i].pos as pos1, tagsPosition[i+1].pos as pos2";
-
     private static final String COOCCURRENCE_QUERY_FROM_DEPENDENCIES
             = "MATCH (a:AnnotatedText)-[:CONTAINS_SENTENCE]->(s:Sentence)-[:SENTENCE_TAG_OCCURRENCE]->(to:TagOccurrence)\n"
             + "WHERE id(a) = {id}\n"
@@ -81,15 +61,13 @@ public class TextRank {
             + "to.pos as pos1, to2.pos as pos2, collect(type(r))\n"
             + "ORDER BY sourceStartPosition, destinationStartPosition";
 
-    private static final String GET_TAG_QUERY = "MATCH (node:Tag)<-[:TAG_OCCURRENCE_TAG]-(to:TagOccurrence)<-[:SENTENCE_TAG_OCCURRENCE]-(:Sentence)<-[:CONTAINS_SENTENCE]-(a:AnnotatedText)\n"
-            + "WHERE id(a) = {id} AND NOT (toLower(node.value) IN {stopwords})"
-            + "OPTIONAL MATCH (to)<-[:COMPOUND|AMOD]-(to2:TagOccurrence)-[:TAG_OCCURRENCE_TAG]->(t2:Tag)\n"
-            + "WHERE NOT exists(to2.pos) OR size(to2.pos) = 0 OR ANY(p IN to2.pos WHERE p IN {posList}) AND NOT (toLower(t2.value) IN {stopwords})\n"
-            + "RETURN node.id as tag, to.startPosition as sP, to.endPosition as eP, id(node) as tagId, "
-            + "collect(id(t2)) as rel_tags, collect(to2.startPosition) as rel_tos,  collect(to2.endPosition) as rel_toe, labels(node) as labels\n"
-            + "ORDER BY sP asc";
-
     private static final String PIPELINE_WITHOUT_NER = "CORE.TEXTRANK_PIPELINE";
+    private static final long DEFAULT_NE_TOKENS_CACHE_SIZE = 100_000L;
+    private static final int POST_PROCESS_BATCH_SIZE = 1000;
+    private static final RelationshipType HAS_SUBGROUP = RelationshipType.withName("HAS_SUBGROUP");
+    private static final Map<GraphDatabaseService, Map<String, KeywordTokenIndex>> KEYWORD_TOKEN_INDEXES = Collections.synchronizedMap(new WeakHashMap<>());
+    // tokenisation of multi-word named entities per database, keyed by text processor, pipeline and NE value, shared across TextRank invocations
+    private static final Map<GraphDatabaseService, Pair<Long, Cache<String, List<Pair<Long, String>>>>> NE_TOKENS_CACHES = Collections.synchronizedMap(new WeakHashMap<>());
     public static final TfIdfObject TFIDF_1_1 = new TfIdfObject(1., 1.);
     public static final TfIdfObject TFIDF_0_0 = new TfIdfObject(0., 0.);
 
@@ -107,8 +85,12 @@ public class TextRank {
     private final List<String> admittedPOSs;
     private final List<String> forbiddenNEs;
     private final List<String> forbiddenPOSs;
+    private final Set<String> admittedPOSSet;
+    private final Set<String> forbiddenNESet;
+    private final Set<String> forbiddenPOSSet;
     private Map<Long, List<Long>> neExpanded;
     private final Map<Long, String> idToValue = new HashMap<>();
+    private final Map<Long, List<TagOccurrenceItem>> tagOccurrences = new HashMap<>();
 
     public TextRank(GraphDatabaseService database,
                     boolean removeStopWords,
@@ -137,10 +119,16 @@ public class TextRank {
         this.admittedPOSs = admittedPOSs;
         this.forbiddenNEs = forbiddenNEs;
         this.forbiddenPOSs = forbiddenPOSs;
-
+        this.admittedPOSSet = new HashSet<>(admittedPOSs);
+        this.forbiddenNESet = new HashSet<>(forbiddenNEs);
+        this.forbiddenPOSSet = new HashSet<>(forbiddenPOSs);
     }
 
-    private String getPipelineWithoutNEs(String language) {
+    /**
+     * Returns the name of the pipeline used to tokenise named entities, creating it on first use.
+     * Synchronised as parallel TextRank runs would otherwise all try to create it.
+     */
+    static synchronized String getPipelineWithoutNEs(String language) {
         String name = getPipelineWithoutNerKey(language);
         if (!NLPManager.getInstance().getTextProcessorsManager().hasPipeline(name)) {
             Map<String, Object> params = new HashMap<>();
@@ -154,38 +142,26 @@ public class TextRank {
         return name;
     }
 
-    private String getPipelineWithoutNerKey(String language) {
+    private static String getPipelineWithoutNerKey(String language) {
         return PIPELINE_WITHOUT_NER + "_" + language;
     }
 
     public Map<Long, Map<Long, CoOccurrenceItem>> createCooccurrences(List<Node> annotatedTexts, String language, boolean fromDependencies) {
-        String query;
-        if (fromDependencies)
-            query = COOCCURRENCE_QUERY_FROM_DEPENDENCIES;
-        else if (respectSentences) {
-            query = COOCCURRENCE_QUERY_BY_SENTENCE;
-        } else {
-            query = COOCCURRENCE_QUERY;
-        }
-
-        Map<String, Object> params = new HashMap<>();
-        params.put("stopwords", stopWords);
-        params.put("forbiddenPOSs", forbiddenPOSs);
-        params.put("forbiddenNEs", forbiddenNEs);
-        //params.put("forbiddenNEs", new ArrayList<String>());
-        //params.put("forbiddenNEs", Arrays.asList("NER_Number", "NER_Ordinal", "NER_Percent", "NER_Duration"));
-
+        LOG.debug("\n Number of annotated texts: " + annotatedTexts.size());
+        List<CoOccurrenceItem> prelim = new ArrayList<>();
         if (fromDependencies) {
+            Map<String, Object> params = new HashMap<>();
             params.put("stopwords", new ArrayList<>());
             params.put("forbiddenPOSs", new ArrayList<>());
             params.put("forbiddenNEs", new ArrayList<>());
-        }
-
-        LOG.debug("\n Number of annotated texts: " + annotatedTexts.size());
-        List<CoOccurrenceItem> prelim = new ArrayList<>();
-        for (Node node : annotatedTexts) {
-            params.put("id", node.getId());
-            processOneAnnotatedText(query, params, prelim);
+            for (Node node : annotatedTexts) {
+                params.put("id", node.getId());
+                processOneAnnotatedText(COOCCURRENCE_QUERY_FROM_DEPENDENCIES, params, prelim);
+            }
+        } else {
+            for (Node node : annotatedTexts) {
+                processOneAnnotatedText(getTagOccurrences(node), prelim);
+            }
         }
         if (prelim.isEmpty()) {
             LOG.warn("Nothing to do: no co-occurrence passing cleansing criteria found.");
@@ -242,12 +218,7 @@ public class TextRank {
     }
 
     private void processOneAnnotatedText(String query, Map<String, Object> params, List<CoOccurrenceItem> prelim) {
-        int offsetStart = 0;
-        if (!prelim.isEmpty()) {
-            // find the last word position from previous annotated text and add some number so we can merge previous text with the coming one
-            offsetStart = prelim.get(prelim.size() - 1).getEndPositions().get(0).second().intValue() + 2;
-            LOG.debug("\n Processing another AnnotatedText. Offset: " + offsetStart);
-        }
+        int offsetStart = getOffsetStart(prelim);
 
         Result res = null;
         try (Transaction tx = database.beginTx();) {
@@ -259,34 +230,104 @@ public class TextRank {
 
         while (res != null && res.hasNext()) {
             Map<String, Object> next = res.next();
-            Long tag1 = toLong(next.get("tag1"));
-            Long tag2 = toLong(next.get("tag2"));
-            String tagVal1 = (String) next.get("tag1_id");
-            String tagVal2 = (String) next.get("tag2_id");
-            Long tag1Start = offsetStart + toLong(next.get("sourceStartPosition"));
-            Long tag2Start = offsetStart + toLong(next.get("destinationStartPosition"));
-            Long tag1End = offsetStart + toLong(next.get("sourceEndPosition"));
-            Long tag2End = offsetStart + toLong(next.get("destinationEndPosition"));
             List<String> pos1 = next.get("pos1") != null ? Arrays.asList((String[]) next.get("pos1")) : new ArrayList<>();
             List<String> pos2 = next.get("pos2") != null ? Arrays.asList((String[]) next.get("pos2")) : new ArrayList<>();
+            addCoOccurrenceCandidate(prelim,
+                    toLong(next.get("tag1")),
+                    toLong(next.get("tag2")),
+                    (String) next.get("tag1_id"),
+                    (String) next.get("tag2_id"),
+                    offsetStart + toLong(next.get("sourceStartPosition")),
+                    offsetStart + toLong(next.get("destinationStartPosition")),
+                    offsetStart + toLong(next.get("sourceEndPosition")),
+                    offsetStart + toLong(next.get("destinationEndPosition")),
+                    pos1,
+                    pos2);
+        }
+    }
 
-            // check whether POS of both tags are admitted
-            boolean bPOS1 = pos1.stream().filter(pos -> admittedPOSs.contains(pos)).count() != 0 || pos1.size() == 0;
-            boolean bPOS2 = pos2.stream().filter(pos -> admittedPOSs.contains(pos)).count() != 0 || pos2.size() == 0;
+    private void processOneAnnotatedText(List<TagOccurrenceItem> occurrences, List<CoOccurrenceItem> prelim) {
+        int offsetStart = getOffsetStart(prelim);
+        TagOccurrenceItem previous = null;
+        for (TagOccurrenceItem current : occurrences) {
+            if (!isCoOccurrenceCandidate(current)) {
+                continue;
+            }
+            if (previous != null && (!respectSentences || previous.getSentenceNumber() == current.getSentenceNumber())) {
+                addCoOccurrenceCandidate(prelim,
+                        previous.getTagNodeId(),
+                        current.getTagNodeId(),
+                        previous.getTagId(),
+                        current.getTagId(),
+                        (long) offsetStart + previous.getStartPosition(),
+                        (long) offsetStart + current.getStartPosition(),
+                        (long) offsetStart + previous.getEndPosition(),
+                        (long) offsetStart + current.getEndPosition(),
+                        previous.getPos() != null ? Arrays.asList(previous.getPos()) : new ArrayList<>(),
+                        current.getPos() != null ? Arrays.asList(current.getPos()) : new ArrayList<>());
+            }
+            previous = current;
+        }
+    }
 
-            // fill tag co-occurrences (adjacency matrix)
-            if (bPOS1 && bPOS2 && tagVal1 != null && tagVal2 != null) {
-                CoOccurrenceItem co = new CoOccurrenceItem(tag1, tag1Start.intValue(), tag2, tag2Start.intValue());
-                co.addEndPositions(tag1End.intValue(), tag2End.intValue());
-                prelim.add(co);
+    private boolean isCoOccurrenceCandidate(TagOccurrenceItem occurrence) {
+        String value = occurrence.getTagValue();
+        if (value == null || value.length() <= 2 || stopWords.contains(value.toLowerCase())) {
+            return false;
+        }
+        if (occurrence.getPos() != null) {
+            for (String pos : occurrence.getPos()) {
+                if (forbiddenPOSSet.contains(pos)) {
+                    return false;
+                }
             }
+        }
+        for (String label : occurrence.getTagLabels()) {
+            if (forbiddenNESet.contains(label)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-            // for logging purposes and for `expandNamedEntities()`
-            if (tag1 != null)
-                idToValue.put(tag1, tagVal1);
-            if (tag2 != null)
-                idToValue.put(tag2, tagVal2);
+    private int getOffsetStart(List<CoOccurrenceItem> prelim) {
+        if (prelim.isEmpty()) {
+            return 0;
         }
+        // find the last word position from previous annotated text and add some number so we can merge previous text with the coming one
+        int offsetStart = prelim.get(prelim.size() - 1).getEndPositions().get(0).second().intValue() + 2;
+        LOG.debug("\n Processing another AnnotatedText. Offset: " + offsetStart);
+        return offsetStart;
+    }
+
+    private void addCoOccurrenceCandidate(List<CoOccurrenceItem> prelim, Long tag1, Long tag2, String tagVal1, String tagVal2,
+            Long tag1Start, Long tag2Start, Long tag1End, Long tag2End, List<String> pos1, List<String> pos2) {
+        // check whether POS of both tags are admitted
+        boolean bPOS1 = pos1.stream().anyMatch(pos -> admittedPOSSet.contains(pos)) || pos1.size() == 0;
+        boolean bPOS2 = pos2.stream().anyMatch(pos -> admittedPOSSet.contains(pos)) || pos2.size() == 0;
+
+        // fill tag co-occurrences (adjacency matrix)
+        if (bPOS1 && bPOS2 && tagVal1 != null && tagVal2 != null) {
+            CoOccurrenceItem co = new CoOccurrenceItem(tag1, tag1Start.intValue(), tag2, tag2Start.intValue());
+            co.addEndPositions(tag1End.intValue(), tag2End.intValue());
+            prelim.add(co);
+        }
+
+        // for logging purposes and for `expandNamedEntities()`
+        if (tag1 != null)
+            idToValue.put(tag1, tagVal1);
+        if (tag2 != null)
+            idToValue.put(tag2, tagVal2);
+    }
+
+    private List<TagOccurrenceItem> getTagOccurrences(Node annotatedText) {
+        return tagOccurrences.computeIfAbsent(annotatedText.getId(), id -> {
+            try (Transaction tx = database.beginTx()) {
+                List<TagOccurrenceItem> occurrences = new TagOccurrenceTraversal().traverse(annotatedText, respectSentences);
+                tx.success();
+                return occurrences;
+            }
+        });
     }
 
     private void addTagToCoOccurrence(Map<Long, Map<Long, CoOccurrenceItem>> results, Long source, int sourceStartPosition, Long destination, int destinationStartPosition) {
@@ -320,49 +361,46 @@ public class TextRank {
     }
 
     private Map<Long, List<Pair<Long, Long>>> expandNamedEntities(String language) {
+        String pipeline = getPipelineWithoutNEs(language);
         Map<String, Object> parameters = new HashMap<>();
-        parameters.put("name", getPipelineWithoutNEs(language));
+        parameters.put("name", pipeline);
 
         Map<String, Object> p = new HashMap<>();
         p.put("params", parameters);
 
+        Cache<String, List<Pair<Long, String>>> tokensCache = getNamedEntityTokensCache();
+        String cacheKeyPrefix = NLPManager.getInstance().getTextProcessorsManager().getPipelineSpecification(pipeline).getTextProcessor() + "_" + pipeline + "_";
+
         Map<Long, List<Pair<Long, Long>>> result = new HashMap<>();
         Map<Long, String> newIdsToVal = new HashMap<>();
+        Map<String, Long> valueToId = new HashMap<>();
+        idToValue.forEach((id, value) -> {
+            if (value != null) {
+                valueToId.putIfAbsent(value.toLowerCase(), id);
+            }
+        });
 
         long nextNewId = -2L;
         for (Long valueL : idToValue.keySet()) {
-            if (idToValue.get(valueL).trim().split(" ").length < 2)
+            String value = idToValue.get(valueL);
+            if (value == null || value.trim().split(" ").length < 2)
                 continue;
-            String str = idToValue.get(valueL).toLowerCase().split("_")[0].trim();
-            p.put("text", str);
+            String str = value.toLowerCase().split("_")[0].trim();
             List<Pair<Long, Long>> res = new ArrayList<>();
-            try (Transaction tx = database.beginTx()) {
-                Result r = database.execute(
-                        "WITH ga.nlp.processor.annotate({text}, {params}) AS annotated\n"
-                                + "with keys(annotated.sentences[0].tagOccurrences) as keys, annotated\n"
-                                + "unwind keys as k\n"
-                                + "with toInteger(k) as kInt, annotated\n"
-                                + "order by kInt asc\n"
-                                + "return kInt as start, annotated.sentences[0].tagOccurrences[toString(kInt)][0].element.id as tagVal"
-                        , p);
-                while (r.hasNext()) {
-                    Map<String, Object> next = r.next();
-                    Long start = (Long) next.get("start");
-                    String val = (String) next.get("tagVal");
-                    List<Long> lId = idToValue.entrySet().stream().filter(en -> en.getValue().equals(val) || en.getValue().equalsIgnoreCase(val)).map(Map.Entry::getKey).collect(Collectors.toList());
-                    List<Long> lIdNew = newIdsToVal.entrySet().stream().filter(en -> en.getValue().equals(val) || en.getValue().equalsIgnoreCase(val)).map(Map.Entry::getKey).collect(Collectors.toList());
-                    if (lId != null && lId.size() > 0) {
-                        res.add(new Pair<>(start, lId.get(0)));
-                    } else if (lIdNew != null && lIdNew.size() > 0) {
-                        res.add(new Pair<>(start, lIdNew.get(0)));
-                    } else {
-                        res.add(new Pair<>(start, nextNewId));
-                        newIdsToVal.put(nextNewId, val);
-                        nextNewId -= 1L;
+            for (Pair<Long, String> token : tokenizeNamedEntity(str, p, tokensCache, cacheKeyPrefix + str)) {
+                Long start = token.first();
+                String val = token.second();
+                Long id = val != null ? valueToId.get(val.toLowerCase()) : null;
+                if (id != null) {
+                    res.add(new Pair<>(start, id));
+                } else {
+                    res.add(new Pair<>(start, nextNewId));
+                    newIdsToVal.put(nextNewId, val);
+                    if (val != null) {
+                        valueToId.put(val.toLowerCase(), nextNewId);
                     }
+                    nextNewId -= 1L;
                 }
-                r.close();
-                tx.success();
             }
             if (res.size() > 0)
                 result.put(valueL, res); // map: id(NE) -> ListOfIndividualTags(Pair(startPostion, tagId))
@@ -375,6 +413,46 @@ public class TextRank {
         return result;
     }
 
+    private List<Pair<Long, String>> tokenizeNamedEntity(String text, Map<String, Object> p, Cache<String, List<Pair<Long, String>>> tokensCache, String key) {
+        List<Pair<Long, String>> tokens = tokensCache.getIfPresent(key);
+        if (tokens != null) {
+            return tokens;
+        }
+        tokens = new ArrayList<>();
+        p.put("text", text);
+        try (Transaction tx = database.beginTx()) {
+            Result r = database.execute(
+                    "WITH ga.nlp.processor.annotate({text}, {params}) AS annotated\n"
+                            + "with keys(annotated.sentences[0].tagOccurrences) as keys, annotated\n"
+                            + "unwind keys as k\n"
+                            + "with toInteger(k) as kInt, annotated\n"
+                            + "order by kInt asc\n"
+                            + "return kInt as start, annotated.sentences[0].tagOccurrences[toString(kInt)][0].element.id as tagVal"
+                    , p);
+            while (r.hasNext()) {
+                Map<String, Object> next = r.next();
+                tokens.add(new Pair<>((Long) next.get("start"), (String) next.get("tagVal")));
+            }
+            r.close();
+            tx.success();
+        }
+        tokens = Collections.unmodifiableList(tokens);
+        tokensCache.put(key, tokens);
+        return tokens;
+    }
+
+    private Cache<String, List<Pair<Long, String>>> getNamedEntityTokensCache() {
+        long size = getNamedEntityTokensCacheSize();
+        return NE_TOKENS_CACHES.compute(database, (db, current) -> current != null && current.first() == size
+                ? current
+                : new Pair<>(size, CacheBuilder.newBuilder().maximumSize(size).build())).second();
+    }
+
+    private static long getNamedEntityTokensCacheSize() {
+        Object value = NLPManager.getInstance().getConfiguration().getSettingValueFor(SettingsConstants.TEXTRANK_NE_CACHE_SIZE);
+        return value != null ? Long.parseLong(value.toString()) : DEFAULT_NE_TOKENS_CACHE_SIZE;
+    }
+
     public TextRankResult evaluate(List<Node> annotatedTexts, String language, int iter, double damp, double threshold) {
         Map<Long, Map<Long, CoOccurrenceItem>> coOccurrence = createCooccurrences(annotatedTexts, language, cooccurrencesFromDependencies);
         if (coOccurrence == null) {
@@ -394,68 +472,62 @@ public class TextRank {
         }
 
         int n_oneThird = (int) (pageRanks.size() * topxTags);
-        List<Long> topThird = getTopX(pageRanks, n_oneThird);
+        Set<Long> topThird = new HashSet<>(getTopX(pageRanks, n_oneThird));
 
         LOG.info("Keyword candidates are top " + n_oneThird + " tags from this list:");
         pageRanks.entrySet().stream()
                 .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
                 .forEach(en -> LOG.debug("   " + idToValue.get(en.getKey()) + ": " + en.getValue()));
 
-        Map<String, Object> params = new HashMap<>();
-        params.put("posList", admittedPOSs);
-        params.put("stopwords", removeStopWords ? stopWords : new ArrayList<>());
-
         // Detail tag analysis - get start & end positions and related tags (dependencies)
         List<KeywordExtractedItem> keywordsOccurrences = new ArrayList<>();
         Map<Long, KeywordExtractedItem> keywordMap = new HashMap<>();
         List<Long> wrongNEs = new ArrayList<>();
         for (Node node : annotatedTexts) {
-            params.put("id", node.getId());
-            detailedTagAnalysis(GET_TAG_QUERY, params, pageRanks, keywordsOccurrences, keywordMap, wrongNEs);
+            detailedTagAnalysis(getTagOccurrences(node), pageRanks, keywordsOccurrences, keywordMap, wrongNEs);
         }
 
         Map<String, Keyword> results = new HashMap<>();
 
-        while (!keywordsOccurrences.isEmpty()) {
-            final AtomicReference<KeywordExtractedItem> keywordOccurrence
-                    = new AtomicReference<>(keywordsOccurrences.remove(0));
-            final AtomicReference<String> currValue = new AtomicReference<>(keywordOccurrence.get().getValue());
-            final AtomicReference<Double> currRelevance = new AtomicReference<>(keywordOccurrence.get().getRelevance());
-            final AtomicReference<Integer> currNTopRated = new AtomicReference<>(0);
-            Set<Long> relTagIDs = getRelTagsIntoDepth(keywordOccurrence.get(), keywordsOccurrences);
-            relTagIDs.retainAll(topThird); // keep only those that are among top 1/3
-            if (!useDependencies && !topThird.contains(keywordOccurrence.get().getTagId())) // if useDependencies==false, keep only those keywords that are among top 1/3
-                continue;
-            if (useDependencies && !topThird.contains(keywordOccurrence.get().getTagId()) && relTagIDs.size() == 0)
-                continue;
+        // occurrences are consumed in order of position, merged with the following ones into key phrases
+        int next = 0;
+        while (next < keywordsOccurrences.size()) {
+            KeywordExtractedItem keywordOccurrence = keywordsOccurrences.get(next++);
+            String currValue = keywordOccurrence.getValue();
+            double currRelevance = keywordOccurrence.getRelevance();
+            int currNTopRated = 0;
+            if (topThird.contains(keywordOccurrence.getTagId())) {
+                currNTopRated++;
+            } else {
+                if (!useDependencies) // if useDependencies==false, keep only those keywords that are among top 1/3
+                    continue;
+                Set<Long> relTagIDs = getRelTagsIntoDepth(keywordOccurrence, keywordsOccurrences.subList(next, keywordsOccurrences.size()));
+                relTagIDs.retainAll(topThird); // keep only those that are among top 1/3
+                if (relTagIDs.isEmpty())
+                    continue;
+            }
             Map<String, Keyword> localResults;
-            if (topThird.contains(keywordOccurrence.get().getTagId()))
-                currNTopRated.set(currNTopRated.get() + 1);
             do {
-                int endPosition = keywordOccurrence.get().getEndPosition();
-                localResults = checkNextKeyword(keywordOccurrence.get(), coOccurrence, keywordMap);
-                if (localResults.size() > 0) {
-                    keywordOccurrence.set(null);
-                    localResults.entrySet().stream().forEach((item) -> {
-                        KeywordExtractedItem nextKeyword = keywordsOccurrences.get(0);
-                        if (nextKeyword != null && nextKeyword.getValue().equalsIgnoreCase(item.getKey())
-                                && (topThird.contains(nextKeyword.getTagId()) || useDependencies)
-                                && (nextKeyword.getStartPosition() - endPosition) == 1) // crucial condition for graphs from co-occurrences, but very useful also for graphs from dependencies
-                        {
-                            String newCurrValue = currValue.get().trim().split("_")[0] + " " + item.getKey();
-                            double newCurrRelevance = currRelevance.get() + item.getValue().getRelevance();
-                            if (topThird.contains(nextKeyword.getTagId()))
-                                currNTopRated.set(currNTopRated.get() + 1);
-                            currValue.set(newCurrValue);
-                            currRelevance.set(newCurrRelevance);
-                            keywordOccurrence.set(nextKeyword);
-                            keywordsOccurrences.remove(0);
-                        }
-                    });
+                int endPosition = keywordOccurrence.getEndPosition();
+                localResults = checkNextKeyword(keywordOccurrence, coOccurrence, keywordMap);
+                keywordOccurrence = null;
+                for (Map.Entry<String, Keyword> item : localResults.entrySet()) {
+                    KeywordExtractedItem nextKeyword = next < keywordsOccurrences.size() ? keywordsOccurrences.get(next) : null;
+                    if (nextKeyword != null && nextKeyword.getValue().equalsIgnoreCase(item.getKey())
+                            && (topThird.contains(nextKeyword.getTagId()) || useDependencies)
+                            && (nextKeyword.getStartPosition() - endPosition) == 1) // crucial condition for graphs from co-occurrences, but very useful also for graphs from dependencies
+                    {
+                        currValue = currValue.trim().split("_")[0] + " " + item.getKey();
+                        currRelevance += item.getValue().getRelevance();
+                        if (topThird.contains(nextKeyword.getTagId()))
+                            currNTopRated++;
+                        keywordOccurrence = nextKeyword;
+                        next++;
+                    }
                 }
-            } while (!localResults.isEmpty() && keywordOccurrence.get() != null);
-            if (currNTopRated.get() > 0)
-                addToResults(currValue.get(), currRelevance.get(), TFIDF_1_1, currNTopRated.get(), results, 1);
+            } while (!localResults.isEmpty() && keywordOccurrence != null);
+            if (currNTopRated > 0)
+                addToResults(currValue, currRelevance, TFIDF_1_1, currNTopRated, results, 1);
         }
 
         if (expandNEs) {
@@ -481,54 +553,77 @@ public class TextRank {
             }
         }
 
-        computeTotalOccurrence(results);
+        // for every keyword, the longer key phrases containing it
+        List<Keyword> keywords = new ArrayList<>(results.values());
+        List<int[]> containing = getContainingKeyphrases(keywords);
+        computeTotalOccurrence(keywords, containing);
         if (cleanKeywords) {
-            results = cleanFinalKeywords(results, n_oneThird);
+            results = cleanFinalKeywords(results, keywords, containing, n_oneThird);
         }
         return TextRankResult.SUCCESS(results);
     }
 
-    private void detailedTagAnalysis(String GET_TAG_QUERY, Map<String, Object> params, Map<Long, Double> pageRanks, List<KeywordExtractedItem> keywordsOccurrences, Map<Long, KeywordExtractedItem> keywordMap, List<Long> wrongNEs) {
+    void detailedTagAnalysis(List<TagOccurrenceItem> occurrences, Map<Long, Double> pageRanks, List<KeywordExtractedItem> keywordsOccurrences, Map<Long, KeywordExtractedItem> keywordMap, List<Long> wrongNEs) {
         // find the last word position from previous annotated text and add some number so we can merge previous text with the coming one
         final int offset_start = keywordsOccurrences.isEmpty() ? 0 : keywordsOccurrences.get(keywordsOccurrences.size() - 1).getEndPosition() + 2;
 
-        try (Transaction tx = database.beginTx()) {
-            Result res = database.execute(GET_TAG_QUERY, params);
-            while (res != null && res.hasNext()) {
-                Map<String, Object> next = res.next();
-                long tagId = (long) next.get("tagId");
-
-                // remove stop-NEs
-                if (iterableToList((Iterable<String>) next.get("labels")).stream().anyMatch(el -> forbiddenNEs.contains(el))) {
-                    wrongNEs.add(tagId);
-                    continue;
-                }
+        List<TagOccurrenceItem> byPosition = occurrences;
+        if (respectSentences) {
+            byPosition = new ArrayList<>(occurrences);
+            byPosition.sort(Comparator.comparingInt(TagOccurrenceItem::getStartPosition));
+        }
+        for (TagOccurrenceItem occurrence : byPosition) {
+            if (isStopWord(occurrence.getTagValue())) {
+                continue;
+            }
+            long tagId = occurrence.getTagNodeId();
 
-                KeywordExtractedItem item = new KeywordExtractedItem(tagId);
-                item.setValue(((String) next.get("tag")));
-                item.setStartPosition(((Number) next.get("sP")).intValue() + offset_start);
-                item.setEndPosition(((Number) next.get("eP")).intValue() + offset_start);
-                item.setRelatedTags(iterableToList((Iterable<Long>) next.get("rel_tags")));
-                item.setRelTagStartingPoints(iterableToList((Iterable<Number>) next.get("rel_tos")).stream().map(el -> Long.valueOf(el.intValue() + offset_start)).collect(Collectors.toList()));
-                item.setRelTagEndingPoints(iterableToList((Iterable<Number>) next.get("rel_toe")).stream().map(el -> Long.valueOf(el.intValue() + offset_start)).collect(Collectors.toList()));
-                item.setRelevance(pageRanks.containsKey(tagId) ? pageRanks.get(tagId) : 0);
-                keywordsOccurrences.add(item);
-                if (!keywordMap.containsKey(tagId)) {
-                    keywordMap.put(tagId, item);
-                } else {
-                    keywordMap.get(tagId).update(item);
+            // remove stop-NEs
+            if (occurrence.getTagLabels().stream().anyMatch(el -> forbiddenNESet.contains(el))) {
+                wrongNEs.add(tagId);
+                continue;
+            }
+
+            List<Long> relatedTags = new ArrayList<>();
+            List<Number> relTagStartingPoints = new ArrayList<>();
+            List<Number> relTagEndingPoints = new ArrayList<>();
+            for (TagOccurrenceItem dependent : occurrence.getDependents()) {
+                if (isRelatedTagAdmitted(dependent)) {
+                    relatedTags.add(dependent.getTagNodeId());
+                    relTagStartingPoints.add(Long.valueOf(dependent.getStartPosition() + offset_start));
+                    relTagEndingPoints.add(Long.valueOf(dependent.getEndPosition() + offset_start));
                 }
-                //LOG.debug(" Adding for " + item.getValue() + ": " + item.getRelatedTags());
             }
-            if (res != null) {
-                res.close();
+
+            KeywordExtractedItem item = new KeywordExtractedItem(tagId);
+            item.setValue(occurrence.getTagId());
+            item.setStartPosition(occurrence.getStartPosition() + offset_start);
+            item.setEndPosition(occurrence.getEndPosition() + offset_start);
+            item.setRelatedTags(relatedTags);
+            item.setRelTagStartingPoints(relTagStartingPoints);
+            item.setRelTagEndingPoints(relTagEndingPoints);
+            item.setRelevance(pageRanks.containsKey(tagId) ? pageRanks.get(tagId) : 0);
+            keywordsOccurrences.add(item);
+            if (!keywordMap.containsKey(tagId)) {
+                keywordMap.put(tagId, item);
+            } else {
+                keywordMap.get(tagId).update(item);
             }
-            tx.success();
-        } catch (Exception e) {
-            LOG.error("Error while running TextRank evaluation: ", e);
         }
     }
 
+    private boolean isStopWord(String value) {
+        return removeStopWords && value != null && stopWords.contains(value.toLowerCase());
+    }
+
+    private boolean isRelatedTagAdmitted(TagOccurrenceItem dependent) {
+        String[] pos = dependent.getPos();
+        if (pos == null || pos.length == 0) {
+            return true;
+        }
+        return Arrays.stream(pos).anyMatch(p -> admittedPOSSet.contains(p)) && !isStopWord(dependent.getTagValue());
+    }
+
     private Map<String, Keyword> checkNextKeyword(KeywordExtractedItem keywordOccurrence, Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences, Map<Long, KeywordExtractedItem> keywords) {
         long tagId = keywordOccurrence.getTagId();
         Map<String, Keyword> results = new HashMap<>();
@@ -603,72 +698,168 @@ public class TextRank {
         if (annotatedText != null && inputKeywordIds.size() < 1) {
             return true;
         }
+        if (!method.equals("direct") && !method.equals("subgroups")) {
+            throw new RuntimeException("Unknown post-processing method. Available methods: 'direct', 'subgroups'");
+        }
 
-        if (method.equals("direct")) {
-            String query = getQueryDirect(inputKeywordIds, keywordLabel.name());
+        KeywordTokenIndex index = getKeywordTokenIndex(inputKeywordIds);
+        int[] keywords = IntStream.range(0, index.size())
+                .filter(k -> index.getNumTerms(k) > 1)
+                .filter(k -> inputKeywordIds.isEmpty() || inputKeywordIds.contains(index.getId(k)))
+                .toArray();
 
-            try (Transaction tx = database.beginTx();) {
+        if (method.equals("direct")) {
+            try {
                 LOG.info("Running identification of sub-keyphrases ...");
-                database.execute(query, Collections.singletonMap("ids", inputKeywordIds));
-                tx.success();
+                postProcessInBatches(index, keywords, index::getSuperPhrases, this::describeWithSuperPhrases);
             } catch (Exception e) {
                 LOG.error("Error while running TextRank post-processing (identification of sub-keyphrases): ", e);
                 return false;
             }
-        } else if (method.equals("subgroups")) {
+        } else {
             // add HAS_SUBGROUP relationships between keywords, ex.: (station) -[HAS_SUBGROUP]-> (space station) -[HAS_SUBGROUP]-> (international space station)
-            String query = getQuerySubGroups(inputKeywordIds, keywordLabel.name());
-
-            try (Transaction tx = database.beginTx();) {
+            try {
                 if (annotatedText != null) {
                     LOG.info("input annotated text id : " + annotatedText.getId());
                 }
                 LOG.info("Discovering HAS_SUBGROUP relationships between keywords and keyphrases ...");
-                database.execute(query, Collections.singletonMap("ids", inputKeywordIds));
-                tx.success();
+                postProcessInBatches(index, keywords, index::getSubGroups, this::mergeSubGroups);
             } catch (Exception e) {
                 LOG.error("Error while running TextRank post-processing (discovering HAS_SUBGROUP relationships): ", e);
                 return false;
             }
-        } else {
-            throw new RuntimeException("Unknown post-processing method. Available methods: 'direct', 'subgroups'");
         }
 
         return true;
     }
 
-    private static String getQuerySubGroups(Set<Long> inputKeywordIds, String label) {
-        String query = "match (k:" + label + ")\n";
-        if (inputKeywordIds.size() > 0) {
-            query += " WHERE id(k) IN {ids}\n" +
-                    "AND ";
-        } else {
-            query += "WHERE ";
+    private KeywordTokenIndex getKeywordTokenIndex(Set<Long> inputKeywordIds) {
+        // the index is kept between calls, e.g. when post-processing document by document; it is dropped by
+        // invalidateKeywordTokenIndexes() when keywords are added or removed, the count check covers changes made
+        // while the module was not listening
+        try (Transaction tx = database.beginTx()) {
+            long count = (Long) database.execute("MATCH (k:`" + keywordLabel.name() + "`) RETURN count(k) AS count").next().get("count");
+            Map<String, KeywordTokenIndex> indexes = KEYWORD_TOKEN_INDEXES.computeIfAbsent(database, db -> new ConcurrentHashMap<>());
+            KeywordTokenIndex index = indexes.get(keywordLabel.name());
+            if (index == null || index.getNodeCount() != count || !containsAll(index, inputKeywordIds)) {
+                LOG.info("Building the term index of " + count + " " + keywordLabel.name() + " nodes ...");
+                index = KeywordTokenIndex.load(database, keywordLabel);
+                indexes.put(keywordLabel.name(), index);
+            }
+            tx.success();
+            return index;
         }
-        query += "k.numTerms > 1\n"
-                + "with k WHERE true \n"
-                + "match (k2:" + label + ")\n"
-                + "where k2.value STARTS WITH (k.value + ' ') OR k2.value ENDS WITH (' ' + k.value)\n"
-                + "merge (k)-[r:HAS_SUBGROUP]->(k2)";
-        return query;
     }
 
-    private static String getQueryDirect(Set<Long> inputKeywordIds, String label) {
-        String query = "match (k:" + label + ")\n";
-        if (inputKeywordIds.size() > 0) {
-            query += " WHERE id(k) IN {ids}\n" +
-                    "AND ";
-        } else {
-            query += "WHERE ";
+    private static boolean containsAll(KeywordTokenIndex index, Set<Long> keywordIds) {
+        for (Long id : keywordIds) {
+            if (index.indexOf(id) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drops the cached term indexes of the keyword labels of nodes created or deleted by the transaction, so that the
+     * next post-processing reloads them.
+     */
+    public static void invalidateKeywordTokenIndexes(GraphDatabaseService database, ImprovedTransactionData transactionData) {
+        Map<String, KeywordTokenIndex> indexes = KEYWORD_TOKEN_INDEXES.get(database);
+        if (indexes == null || indexes.isEmpty()) {
+            return;
+        }
+        for (String labelName : indexes.keySet()) {
+            Label label = Label.label(labelName);
+            if (transactionData.getAllCreatedNodes().stream().anyMatch(node -> node.hasLabel(label))
+                    || transactionData.getAllDeletedNodes().stream().anyMatch(node -> node.hasLabel(label))) {
+                indexes.remove(labelName);
+            }
+        }
+    }
+
+    /**
+     * Within a transaction (e.g. from the procedure) the relationships are written in it, as nested transactions join
+     * it: keywords it has not committed yet are visible and everything is rolled back with it. Batches are committed
+     * on their own only when there is no transaction on the calling thread.
+     */
+    private void postProcessInBatches(KeywordTokenIndex index, int[] keywords, IntFunction<int[]> candidates, BiConsumer<Node, List<Node>> writer) {
+        int missing = 0;
+        for (int from = 0; from < keywords.length; from += POST_PROCESS_BATCH_SIZE) {
+            int to = Math.min(from + POST_PROCESS_BATCH_SIZE, keywords.length);
+            int[][] batch = Arrays.stream(keywords, from, to).parallel()
+                    .mapToObj(candidates)
+                    .toArray(int[][]::new);
+            try (Transaction tx = database.beginTx()) {
+                for (int i = 0; i < batch.length; i++) {
+                    if (batch[i].length == 0) {
+                        continue;
+                    }
+                    Node keyword = getNodeIfExists(index.getId(keywords[from + i]));
+                    if (keyword == null) {
+                        missing++;
+                        continue;
+                    }
+                    List<Node> related = new ArrayList<>(batch[i].length);
+                    for (int candidate : batch[i]) {
+                        Node node = getNodeIfExists(index.getId(candidate));
+                        if (node != null) {
+                            related.add(node);
+                        } else {
+                            missing++;
+                        }
+                    }
+                    writer.accept(keyword, related);
+                }
+                tx.success();
+            }
+        }
+        if (missing > 0) {
+            LOG.warn("Skipped " + missing + " " + keywordLabel.name() + " nodes deleted since the term index was built");
+            Map<String, KeywordTokenIndex> indexes = KEYWORD_TOKEN_INDEXES.get(database);
+            if (indexes != null) {
+                indexes.remove(keywordLabel.name(), index);
+            }
+        }
+    }
+
+    private Node getNodeIfExists(long id) {
+        try {
+            return database.getNodeById(id);
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    private void describeWithSuperPhrases(Node keyword, List<Node> superPhrases) {
+        Set<Long> described = new HashSet<>();
+        keyword.getRelationships(Direction.OUTGOING, Relationships.DESCRIBES).forEach(r -> described.add(r.getEndNodeId()));
+        Map<Long, Relationship> created = new HashMap<>();
+        for (Node superPhrase : superPhrases) {
+            for (Relationship describes : superPhrase.getRelationships(Direction.OUTGOING, Relationships.DESCRIBES)) {
+                Node annotatedText = describes.getEndNode();
+                if (described.contains(annotatedText.getId()) || !annotatedText.hasLabel(Labels.AnnotatedText)) {
+                    continue;
+                }
+                Relationship relationship = created.computeIfAbsent(annotatedText.getId(),
+                        id -> keyword.createRelationshipTo(annotatedText, Relationships.DESCRIBES));
+                for (String property : Arrays.asList("count", "count_exactMatch")) {
+                    if (describes.hasProperty(property)) {
+                        relationship.setProperty(property, describes.getProperty(property));
+                    }
+                }
+            }
+        }
+    }
+
+    private void mergeSubGroups(Node keyword, List<Node> subGroups) {
+        Set<Long> existing = new HashSet<>();
+        keyword.getRelationships(Direction.OUTGOING, HAS_SUBGROUP).forEach(r -> existing.add(r.getEndNodeId()));
+        for (Node subGroup : subGroups) {
+            if (existing.add(subGroup.getId())) {
+                keyword.createRelationshipTo(subGroup, HAS_SUBGROUP);
+            }
         }
-        query += "k.numTerms > 1\n"
-                + "with k, k.value as ks_orig\n"
-                + "match (k2:" + label + ")\n"
-                + "where k2.numTerms > k.numTerms and k2.value CONTAINS ks_orig\n"
-                + "match (k2)-[r2:DESCRIBES]->(a:AnnotatedText)\n"
-                + "where not (k)-[:DESCRIBES]->(a)\n" +
-                "MERGE (k)-[rn:DESCRIBES]->(a) SET rn.count = k2.count, rn.count_exactMatch = k2.count_exactMatch";
-        return query;
     }
 
     private Set<Long> getKeywordIds(Node annotatedText) {
@@ -683,11 +874,28 @@ public class TextRank {
     }
 
     private List<Long> getTopX(Map<Long, Double> pageRanks, int x) {
-        List<Long> topx = pageRanks.entrySet().stream()
-                .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
-                .limit(x)
-                .map((item) -> item.getKey()).collect(Collectors.toList());
-        return topx;
+        return getTopKeys(pageRanks, x);
+    }
+
+    private static <K> List<K> getTopKeys(Map<K, Double> values, int x) {
+        if (x <= 0) {
+            return new ArrayList<>();
+        }
+        PriorityQueue<Map.Entry<K, Double>> heap = new PriorityQueue<>(Math.min(x, values.size()) + 1, Map.Entry.comparingByValue());
+        for (Map.Entry<K, Double> entry : values.entrySet()) {
+            if (heap.size() < x) {
+                heap.add(entry);
+            } else if (entry.getValue() > heap.peek().getValue()) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+        List<K> top = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            top.add(heap.poll().getKey());
+        }
+        Collections.reverse(top);
+        return top;
     }
 
     private Map<Integer, Set<Long>> createCoOccurrenceMapping(Map<Long, CoOccurrenceItem> coOccorrence) {
@@ -706,39 +914,46 @@ public class TextRank {
         return result;
     }
 
-    private void computeTotalOccurrence(Map<String, Keyword> results) {
-        results.entrySet().stream().forEach((entry) -> {
-            results.entrySet().stream().forEach((innerEntry) -> {
-                if (entry.getValue().getWordsCount() < innerEntry.getValue().getWordsCount()
-                        && innerEntry.getValue().getRawKeyword().contains(entry.getValue().getRawKeyword())) {
-                    entry.getValue().incTotalCountBy(innerEntry.getValue().getTotalCount());
+    private static List<int[]> getContainingKeyphrases(List<Keyword> keywords) {
+        KeyphraseMatcher matcher = new KeyphraseMatcher(keywords.stream().map(Keyword::getRawKeyword).collect(Collectors.toList()));
+        List<List<Integer>> containing = new ArrayList<>(keywords.size());
+        for (int i = 0; i < keywords.size(); i++) {
+            containing.add(new ArrayList<>());
+        }
+        for (int i = 0; i < keywords.size(); i++) {
+            for (int contained : matcher.findIn(keywords.get(i).getRawKeyword())) {
+                if (keywords.get(contained).getWordsCount() < keywords.get(i).getWordsCount()) {
+                    containing.get(contained).add(i);
                 }
-            });
-        });
+            }
+        }
+        return containing.stream()
+                .map(list -> list.stream().mapToInt(Integer::intValue).toArray())
+                .collect(Collectors.toList());
+    }
+
+    private void computeTotalOccurrence(List<Keyword> keywords, List<int[]> containing) {
+        int[] totalCounts = keywords.stream().mapToInt(Keyword::getTotalCount).toArray();
+        for (int i = 0; i < keywords.size(); i++) {
+            for (int keyphrase : containing.get(i)) {
+                keywords.get(i).incTotalCountBy(totalCounts[keyphrase]);
+            }
+        }
     }
 
-    private Map<String, Keyword> cleanFinalKeywords(Map<String, Keyword> results, int topx) {
+    private Map<String, Keyword> cleanFinalKeywords(Map<String, Keyword> results, List<Keyword> keywords, List<int[]> containing, int topx) {
         Map<String, Keyword> newResults = new HashMap<>(results);
-        results.entrySet().stream().forEach((entry) -> {
-            results.entrySet().stream().forEach((innerEntry) -> {
-                if (entry.getValue().getWordsCount() < innerEntry.getValue().getWordsCount()
-                        && innerEntry.getValue().getRawKeyword().contains(entry.getValue().getRawKeyword())
-                ) {
-                    if (entry.getValue().getWordsCount() == 1) // remove single-word keywords when they occur _within_ some key phrase
-                        newResults.remove(entry.getKey());
-                }
-            });
-        });
+        for (int i = 0; i < keywords.size(); i++) {
+            if (keywords.get(i).getWordsCount() == 1 && containing.get(i).length > 0) // remove single-word keywords when they occur _within_ some key phrase
+                newResults.remove(keywords.get(i).getKeyword());
+        }
 
         // Use (PR * tf*idf) for selecting top 1/3 of keywords / key phrases
         // Crucial piece of code for TextRank with dependencies enrichment, because the enrichment can cause more than 1/3 (topx) Keywords to be constructed
-        if (useDependencies) {
+        if (useDependencies && newResults.size() > topx) {
             Map<String, Double> pom = newResults.entrySet().stream()
                     .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().getRelevance()));
-            pom.entrySet().stream()
-                    .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
-                    .skip(topx)
-                    .forEach(entry -> newResults.remove(entry.getKey()));
+            newResults.keySet().retainAll(new HashSet<>(getTopKeys(pom, topx)));
         }
 
         return newResults;
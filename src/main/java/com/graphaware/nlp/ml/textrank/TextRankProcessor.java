@@ -15,17 +15,26 @@
  */
 package com.graphaware.nlp.ml.textrank;
 
+import com.graphaware.common.util.Pair;
+import com.graphaware.nlp.NLPEvents;
 import com.graphaware.nlp.annotation.NLPModuleExtension;
+import com.graphaware.nlp.dsl.request.TextRankBatchRequest;
 import com.graphaware.nlp.dsl.request.TextRankPostprocessRequest;
 import com.graphaware.nlp.dsl.request.TextRankRequest;
+import com.graphaware.nlp.dsl.result.BatchResult;
 import com.graphaware.nlp.dsl.result.SingleResult;
+import com.graphaware.nlp.event.DatabaseTransactionEvent;
+import com.graphaware.nlp.event.EventDispatcher;
 import com.graphaware.nlp.extension.AbstractExtension;
 import com.graphaware.nlp.extension.NLPExtension;
+import com.graphaware.nlp.util.BatchPipeline;
 import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Result;
 import org.neo4j.logging.Log;
 import com.graphaware.common.log.LoggerFactory;
 
+import java.util.Iterator;
 import java.util.stream.Collectors;
 
 @NLPModuleExtension(name = "TextRankProcessor")
@@ -33,6 +42,13 @@ public class TextRankProcessor extends AbstractExtension implements NLPExtension
 
     private static final Log LOG = LoggerFactory.getLogger(TextRankProcessor.class);
 
+    @Override
+    public void registerEventListeners(EventDispatcher eventDispatcher) {
+        eventDispatcher.registerListener(NLPEvents.TRANSACTION_BEFORE_COMMIT, (event) -> {
+            TextRank.invalidateKeywordTokenIndexes(getDatabase(), ((DatabaseTransactionEvent) event).getTransactionData());
+        });
+    }
+
     public SingleResult computeAndStore(TextRankRequest request) {
         TextRankResult result = compute(request);
         TextRankPersister persister = new TextRankPersister(Label.label(request.getKeywordLabel()));
@@ -74,6 +90,35 @@ public class TextRankProcessor extends AbstractExtension implements NLPExtension
         return result;
     }
 
+    public BatchResult computeAndStoreBatch(TextRankBatchRequest request) {
+        TextRankRequest parameters = request.toTextRankRequest(null);
+        if (!parameters.isUseDependenciesForCooccurrences()) {
+            // the workers share the named entity tokenisation pipeline, create it before they start
+            TextRank.getPipelineWithoutNEs(parameters.getLanguage());
+        }
+        return new BatchPipeline<Node, Pair<TextRankRequest, TextRankResult>>(getDatabase(), "TextRank batch", request.getBatchSize(), request.getConcurrency())
+                .run(() -> getAnnotatedTexts(request),
+                        annotatedText -> {
+                            TextRankRequest textRankRequest = request.toTextRankRequest(annotatedText);
+                            TextRankResult result = compute(textRankRequest);
+                            return result.getStatus().equals(TextRankResult.TextRankStatus.SUCCESS)
+                                    ? new Pair<>(textRankRequest, result)
+                                    : null;
+                        },
+                        batch -> batch.forEach(item -> {
+                            TextRankPersister persister = new TextRankPersister(Label.label(item.first().getKeywordLabel()));
+                            persister.persistKeywords(item.second().getResult(), item.first().getNode());
+                        }));
+    }
+
+    private Iterator<Node> getAnnotatedTexts(TextRankBatchRequest request) {
+        if (request.getAnnotatedTexts() != null) {
+            return request.getAnnotatedTexts().iterator();
+        }
+        Result result = getDatabase().execute(request.getQuery(), request.getQueryParams());
+        return result.columnAs(result.columns().get(0));
+    }
+
     public SingleResult postprocess(TextRankPostprocessRequest request) {
         LOG.info("Starting TextRank post-processing ...");
         TextRank.Builder textrankBuilder = new TextRank.Builder(getDatabase(), getNLPManager().getConfiguration());
@@ -17,8 +17,8 @@ package com.graphaware.nlp.ml.textrank;
 
 import static com.graphaware.nlp.util.TypeConverter.*;
 
-import com.graphaware.nlp.ml.pagerank.CoOccurrenceItem;
 import com.graphaware.nlp.ml.pagerank.PageRank;
+import com.graphaware.nlp.ml.pagerank.PageRankGraph;
 import com.graphaware.nlp.summatization.Summarizer;
 import org.neo4j.graphdb.*;
 import org.neo4j.logging.Log;
@@ -26,7 +26,6 @@ import com.graphaware.common.log.LoggerFactory;
 
 import java.util.*;
 
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 public class TextRankSummarizer implements Summarizer {
@@ -48,6 +47,14 @@ public class TextRankSummarizer implements Summarizer {
     public static final String PARAMETER_ITERATIONS = "iter";
     public static final String PARAMETER_DAMP = "damp";
     public static final String PARAMETER_THRESHOLD = "threshold";
+    public static final String PARAMETER_INVERTED_INDEX = "invertedIndex";
+    public static final String PARAMETER_MAX_EDGES = "maxEdges";
+
+    private static final String SAVE_SUMMARY_QUERY = "MATCH (a:AnnotatedText)-[:CONTAINS_SENTENCE]->(s:Sentence)\n"
+            + "WHERE id(a) = {id}\n"
+            + "WITH s, {ranks}[toString(s.sentenceNumber)] AS rank\n"
+            + "WHERE rank IS NOT NULL\n"
+            + "SET s.summaryRank = rank.rank, s.summaryRelevance = rank.relevance";
 
     private GraphDatabaseService database;
 
@@ -77,13 +84,15 @@ public class TextRankSummarizer implements Summarizer {
         int iter = getIntegerValue(params.getOrDefault(PARAMETER_ITERATIONS, DEFAULT_ITERATIONS));
         double damp = getDoubleValue(params.getOrDefault(PARAMETER_DAMP, DEFAULT_DUMPING_FACTOR));
         double threshold = getDoubleValue(params.getOrDefault(PARAMETER_THRESHOLD, DEFAULT_THRESHOLD));
-        return evaluate(annotatedText, iter, damp, threshold, stopWords, admittedPOSs, forbiddenPOSs);
+        boolean invertedIndex = (Boolean) params.getOrDefault(PARAMETER_INVERTED_INDEX, true);
+        int maxEdges = getIntegerValue(params.getOrDefault(PARAMETER_MAX_EDGES, 0));
+        return evaluate(annotatedText, iter, damp, threshold, stopWords, admittedPOSs, forbiddenPOSs, invertedIndex, maxEdges);
     }
 
-    private Map<Long, Map<Long, CoOccurrenceItem>> createGraph(Node annotatedText,
-                                                               Set<String> stopWords,
-                                                               List<String> admittedPOSs,
-                                                               List<String> forbiddenPOSs) {
+    private Map<Long, Set<Long>> loadSentences(Node annotatedText,
+                                               Set<String> stopWords,
+                                               List<String> admittedPOSs,
+                                               List<String> forbiddenPOSs) {
         String query =
                 "match (a:AnnotatedText)-[:CONTAINS_SENTENCE]->(s:Sentence)\n"
                         + "where id(a) = {id}\n"
@@ -99,107 +108,62 @@ public class TextRankSummarizer implements Summarizer {
         params.put("admittedPOSs", admittedPOSs);
         params.put("forbiddenPOSs", forbiddenPOSs);
 
-        Result res = null;
+        Map<Long, Set<Long>> sentences = new HashMap<>();
         try (Transaction tx = database.beginTx();) {
-            res = database.execute(query, params);
+            Result res = database.execute(query, params);
+            while (res.hasNext()) {
+                Map<String, Object> next = res.next();
+                Long num = toLong(next.get("sentenceNumber"));
+                Set<Long> tags = iterableToSet((Iterable<Long>) next.get("tags"));
+                sentences.put(num, tags);
+            }
             tx.success();
         } catch (Exception e) {
             LOG.error("Error while creating co-occurrences: ", e);
         }
 
-        Map<Long, Set<Long>> sentences = new HashMap<>();
-        while (res != null && res.hasNext()) {
-            Map<String, Object> next = res.next();
-            Long num = toLong(next.get("sentenceNumber"));
-            Set<Long> tags = iterableToSet((Iterable<Long>) next.get("tags"));
-            sentences.put(num, tags);
-        }
-
-        //System.out.println("\n >> Graph for AnnotatedText " + annotatedText.getId() + ":");
-        Map<Long, Map<Long, CoOccurrenceItem>> results = new HashMap<>();
-        sentences.entrySet().stream()
-                .forEach(entry -> {
-                    sentences.entrySet().stream()
-                            .filter(en -> en.getKey().longValue() > entry.getKey().longValue()) // similarity between two sentences is commutative (no need to calculate it twice)
-                            .forEach(innerEntry -> {
-                                Set<Long> tags = new HashSet<>(entry.getValue());
-                                tags.retainAll(innerEntry.getValue());
-                                int n = tags.size();
-                                double denom = Math.log(1.0d * innerEntry.getValue().size()) + Math.log(1.0d * entry.getValue().size());
-                                //double denom = innerEntry.getValue().size() + entry.getValue().size();
-                                //double denom = entry.getValue().size() * innerEntry.getValue().size(); // for cosine similarity
-                                if (n > 0 && denom > 0) {
-                                    double val = n / denom;
-                                    //double val = n / Math.sqrt(denom); // cosine similarity
-                                    addToCoOccurrence(results, entry.getKey(), innerEntry.getKey(), val);
-                                    addToCoOccurrence(results, innerEntry.getKey(), entry.getKey(), val); // needed because we want an undirected PageRank
-                                    //System.out.println(" " + entry.getKey() + " -> " + innerEntry.getKey() + ": " + val);
-                                }
-                            });
-                });
-
-        return results;
+        return sentences;
     }
 
-    private void addToCoOccurrence(Map<Long, Map<Long, CoOccurrenceItem>> results, Long source, Long destination, double w) {
-        Map<Long, CoOccurrenceItem> mapTag1;
-        if (!results.containsKey(source)) {
-            mapTag1 = new HashMap<>();
-            results.put(source, mapTag1);
-        } else {
-            mapTag1 = results.get(source);
-        }
-
-        if (mapTag1.containsKey(destination)) {
-            CoOccurrenceItem ccEntry = mapTag1.get(destination);
-            ccEntry.setCount(w);
-        } else {
-            mapTag1.put(destination, new CoOccurrenceItem(source, 0, destination, 0));
-            mapTag1.get(destination).setCount(w);
-        }
-    }
-
-
     private boolean evaluate(Node annotatedText,
                              int iter,
                              double damp,
                              double threshold,
                              Set<String> stopWords,
                              List<String> admittedPOSs,
-                             List<String> forbiddenPOSs) {
-        Map<Long, Map<Long, CoOccurrenceItem>> coOccurrence = createGraph(annotatedText, stopWords, admittedPOSs, forbiddenPOSs);
-        if (coOccurrence == null || coOccurrence.isEmpty()) {
+                             List<String> forbiddenPOSs,
+                             boolean invertedIndex,
+                             int maxEdges) {
+        Map<Long, Set<Long>> sentences = loadSentences(annotatedText, stopWords, admittedPOSs, forbiddenPOSs);
+        PageRankGraph graph = SentenceGraph.build(sentences, invertedIndex, maxEdges);
+        if (graph.getNodeCount() == 0) {
             LOG.info("Graph of co-occurrences is empty, aborting ...");
             return true;
         }
 
         PageRank pageRank = new PageRank(database);
-        Map<Long, Double> pageRanks = pageRank.run(coOccurrence, iter, damp, threshold);
-
-        if (pageRanks == null) {
-            LOG.error("Page ranks not retrieved, aborting evaluate() method ...");
-            return false;
+        Map<Long, Double> pageRanks = graph.toMap(pageRank.run(graph, iter, damp, threshold));
+
+        List<Map.Entry<Long, Double>> ranked = new ArrayList<>(pageRanks.entrySet());
+        ranked.sort(Map.Entry.comparingByValue(Comparator.reverseOrder()));
+        Map<String, Object> ranks = new HashMap<>();
+        for (int i = 0; i < ranked.size(); i++) {
+            Map.Entry<Long, Double> en = ranked.get(i);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Sentence " + en.getKey() + " ranked " + (i + 1) + ": " + en.getValue());
+            }
+            Map<String, Object> rank = new HashMap<>();
+            rank.put("rank", i + 1);
+            rank.put("relevance", en.getValue());
+            ranks.put(String.valueOf(en.getKey()), rank);
         }
 
-        System.out.println("\n >> Ranked sentences:");
-        AtomicReference<Integer> currOrder = new AtomicReference<>(1);
-        AtomicReference<String> saveQuery = new AtomicReference<>("MATCH (a:AnnotatedText) WHERE id(a) = {id}\n");
-        pageRanks.entrySet().stream()
-                .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
-                .forEach(en -> {
-                    System.out.println("  " + en.getKey() + ": " + en.getValue());
-                    saveQuery.set(saveQuery.get() + "WITH a\n"
-                            + "MATCH (a)-[:CONTAINS_SENTENCE]->(s:Sentence {sentenceNumber: " + en.getKey() + "})\n"
-                            + "SET s.summaryRank = " + currOrder.get() + ", s.summaryRelevance = " + en.getValue() + "\n");
-                    currOrder.set(currOrder.get() + 1);
-                });
-
         // Save results
-        //System.out.println(saveQuery.get());
         Map<String, Object> params = new HashMap<>();
         params.put("id", annotatedText.getId());
+        params.put("ranks", ranks);
         try (Transaction tx = database.beginTx();) {
-            database.execute(saveQuery.get(), params);
+            database.execute(SAVE_SUMMARY_QUERY, params);
             tx.success();
         } catch (Exception e) {
             LOG.error("Error while saving results: ", e);
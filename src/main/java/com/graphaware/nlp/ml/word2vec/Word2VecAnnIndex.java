@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.word2vec;
+
+import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.common.util.Pair;
+import com.graphaware.nlp.util.ComparablePair;
+import com.graphaware.nlp.util.TopKCollector;
+import org.neo4j.logging.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Approximate nearest neighbours index (inverted file over spherical k-means clusters) for a word2vec model.
+ * The index is built once, stored in a single file next to the Lucene store of the model and memory-mapped
+ * when opened. A search scores the query against the cluster centroids and then scans only the vectors of
+ * the {@code probes} closest clusters: more probes means better recall and higher latency.
+ */
+public class Word2VecAnnIndex implements Closeable {
+
+    private static final Log LOG = LoggerFactory.getLogger(Word2VecAnnIndex.class);
+
+    public static final String FILE_EXTENSION = ".ann";
+    public static final int DEFAULT_PROBES = 16;
+
+    private static final int MAGIC = 0x5732564e;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 5 * Integer.BYTES;
+    private static final int TRAINING_VECTORS_PER_CLUSTER = 32;
+    private static final int TRAINING_ITERATIONS = 8;
+    private static final long MAX_CHUNK_SIZE = Integer.MAX_VALUE;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final int dimension;
+    private final int count;
+    private final float[] centroids;
+    private final int[] offsets;
+    private final MappedVectors vectors;
+    private final IntBuffer wordOffsets;
+    private final ByteBuffer words;
+
+    private Word2VecAnnIndex(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        IntBuffer header = map(channel, 0, HEADER_SIZE).asIntBuffer();
+        if (header.get(0) != MAGIC || header.get(1) != VERSION) {
+            channel.close();
+            throw new IOException("Not a word2vec nearest neighbours index: " + path);
+        }
+        this.dimension = header.get(2);
+        this.count = header.get(3);
+        int clusterCount = header.get(4);
+        long position = HEADER_SIZE;
+        this.centroids = new float[clusterCount * dimension];
+        map(channel, position, centroids.length * (long) Float.BYTES).asFloatBuffer().get(centroids);
+        position += centroids.length * (long) Float.BYTES;
+        this.offsets = new int[clusterCount + 1];
+        map(channel, position, offsets.length * (long) Integer.BYTES).asIntBuffer().get(offsets);
+        position += offsets.length * (long) Integer.BYTES;
+        this.vectors = MappedVectors.map(channel, position, count, dimension);
+        position += count * (long) dimension * Float.BYTES;
+        this.wordOffsets = map(channel, position, (count + 1) * (long) Integer.BYTES).asIntBuffer();
+        position += (count + 1) * (long) Integer.BYTES;
+        this.words = map(channel, position, wordOffsets.get(count));
+    }
+
+    public static Path getIndexPath(String storePath) {
+        String path = storePath.endsWith("/") ? storePath.substring(0, storePath.length() - 1) : storePath;
+        return Paths.get(path + FILE_EXTENSION);
+    }
+
+    public static Word2VecAnnIndex open(Path path) throws IOException {
+        return new Word2VecAnnIndex(path);
+    }
+
+    public static void build(Iterator<Pair<String, float[]>> entries, Path path) throws IOException {
+        long start = System.currentTimeMillis();
+        Path directory = path.toAbsolutePath().getParent();
+        Path vectorsFile = Files.createTempFile(directory, "word2vec", ".vectors");
+        Path indexFile = Files.createTempFile(directory, "word2vec", FILE_EXTENSION);
+        try {
+            List<String> words = new ArrayList<>();
+            int dimension = 0;
+            try (FileChannel out = FileChannel.open(vectorsFile, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = newWriteBuffer();
+                while (entries.hasNext()) {
+                    Pair<String, float[]> entry = entries.next();
+                    float[] vector = entry.second().clone();
+                    if (dimension == 0) {
+                        dimension = vector.length;
+                    } else if (vector.length != dimension) {
+                        LOG.warn("Skipping '" + entry.first() + "': expected dimension " + dimension + ", got " + vector.length);
+                        continue;
+                    }
+                    normalize(vector);
+                    for (float value : vector) {
+                        buffer = ensureCapacity(out, buffer, Float.BYTES);
+                        buffer.putFloat(value);
+                    }
+                    words.add(entry.first());
+                }
+                flush(out, buffer);
+            }
+            int count = words.size();
+            if (count == 0) {
+                throw new IOException("Cannot build a nearest neighbours index for an empty model");
+            }
+
+            try (FileChannel in = FileChannel.open(vectorsFile, StandardOpenOption.READ)) {
+                MappedVectors source = MappedVectors.map(in, 0, count, dimension);
+                int clusterCount = Math.max(1, (int) Math.sqrt(count));
+                float[] centroids = train(source, clusterCount, dimension);
+                int[] assignments = assign(source, centroids, clusterCount, dimension);
+                LOG.info("Clustered " + count + " vectors into " + clusterCount + " clusters in " + (System.currentTimeMillis() - start) + "ms");
+
+                int[] offsets = new int[clusterCount + 1];
+                for (int assignment : assignments) {
+                    offsets[assignment + 1]++;
+                }
+                for (int c = 0; c < clusterCount; c++) {
+                    offsets[c + 1] += offsets[c];
+                }
+                int[] order = new int[count];
+                int[] fill = new int[clusterCount];
+                for (int i = 0; i < count; i++) {
+                    order[offsets[assignments[i]] + fill[assignments[i]]++] = i;
+                }
+                write(indexFile, source, words, centroids, offsets, order, dimension);
+            }
+            Files.move(indexFile, path, StandardCopyOption.REPLACE_EXISTING);
+            LOG.info("Nearest neighbours index stored in " + path + " in " + (System.currentTimeMillis() - start) + "ms");
+        } finally {
+            Files.deleteIfExists(indexFile);
+            try {
+                Files.deleteIfExists(vectorsFile);
+            } catch (IOException e) {
+                LOG.warn("Couldn't delete temporary file " + vectorsFile);
+            }
+        }
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getClusterCount() {
+        return offsets.length - 1;
+    }
+
+    public List<Pair> search(float[] vector, int limit, int probes) {
+        List<Pair> result = new ArrayList<>();
+        if (vector == null || vector.length != dimension || limit < 1) {
+            return result;
+        }
+        float[] query = vector.clone();
+        normalize(query);
+        int clusterCount = getClusterCount();
+        TopKCollector clusters = new TopKCollector(probes > 0 ? Math.min(probes, clusterCount) : Math.min(DEFAULT_PROBES, clusterCount));
+        for (int c = 0; c < clusterCount; c++) {
+            clusters.offer(c, dot(centroids, c * dimension, query));
+        }
+        TopKCollector neighbours = new TopKCollector(limit);
+        for (int k = 0; k < clusters.size(); k++) {
+            int cluster = (int) clusters.getId(k);
+            for (int i = offsets[cluster]; i < offsets[cluster + 1]; i++) {
+                neighbours.offer(i, vectors.dot(i, query));
+            }
+        }
+        long[] ids = neighbours.sortDescending();
+        for (int k = 0; k < ids.length; k++) {
+            result.add(new ComparablePair(getWord((int) ids[k]), (double) neighbours.getScore(k)));
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private String getWord(int i) {
+        int start = wordOffsets.get(i);
+        byte[] bytes = new byte[wordOffsets.get(i + 1) - start];
+        ByteBuffer word = words.duplicate();
+        word.position(start);
+        word.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static float[] train(MappedVectors source, int clusterCount, int dimension) {
+        int count = source.count;
+        int sampleSize = (int) Math.min(count, (long) clusterCount * TRAINING_VECTORS_PER_CLUSTER);
+        Random random = new Random(42);
+        int[] sampleIds = new int[sampleSize];
+        for (int i = 0; i < sampleSize; i++) {
+            sampleIds[i] = i;
+        }
+        for (int i = sampleSize; i < count; i++) {
+            int j = random.nextInt(i + 1);
+            if (j < sampleSize) {
+                sampleIds[j] = i;
+            }
+        }
+        float[] sample = new float[sampleSize * dimension];
+        for (int i = 0; i < sampleSize; i++) {
+            source.read(sampleIds[i], sample, i * dimension);
+        }
+
+        float[] centroids = new float[clusterCount * dimension];
+        for (int c = 0; c < clusterCount; c++) {
+            System.arraycopy(sample, random.nextInt(sampleSize) * dimension, centroids, c * dimension, dimension);
+        }
+        int[] assignments = new int[sampleSize];
+        for (int iteration = 0; iteration < TRAINING_ITERATIONS; iteration++) {
+            IntStream.range(0, sampleSize).parallel().forEach(i -> {
+                assignments[i] = nearest(centroids, clusterCount, dimension, sample, i * dimension);
+            });
+            float[] sums = new float[clusterCount * dimension];
+            int[] sizes = new int[clusterCount];
+            for (int i = 0; i < sampleSize; i++) {
+                int c = assignments[i];
+                sizes[c]++;
+                for (int j = 0; j < dimension; j++) {
+                    sums[c * dimension + j] += sample[i * dimension + j];
+                }
+            }
+            for (int c = 0; c < clusterCount; c++) {
+                if (sizes[c] > 0) {
+                    float norm = (float) Math.sqrt(dot(sums, c * dimension, sums, c * dimension, dimension));
+                    if (norm > 0) {
+                        for (int j = 0; j < dimension; j++) {
+                            centroids[c * dimension + j] = sums[c * dimension + j] / norm;
+                        }
+                    }
+                }
+            }
+        }
+        return centroids;
+    }
+
+    private static int[] assign(MappedVectors source, float[] centroids, int clusterCount, int dimension) {
+        int[] assignments = new int[source.count];
+        ThreadLocal<float[]> buffers = ThreadLocal.withInitial(() -> new float[dimension]);
+        IntStream.range(0, source.count).parallel().forEach(i -> {
+            float[] vector = buffers.get();
+            source.read(i, vector, 0);
+            assignments[i] = nearest(centroids, clusterCount, dimension, vector, 0);
+        });
+        return assignments;
+    }
+
+    private static int nearest(float[] centroids, int clusterCount, int dimension, float[] vector, int offset) {
+        int best = 0;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int c = 0; c < clusterCount; c++) {
+            float score = dot(centroids, c * dimension, vector, offset, dimension);
+            if (score > bestScore) {
+                bestScore = score;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private static void write(Path indexFile, MappedVectors source, List<String> words, float[] centroids,
+            int[] offsets, int[] order, int dimension) throws IOException {
+        int count = order.length;
+        try (FileChannel out = FileChannel.open(indexFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = newWriteBuffer();
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(count).putInt(offsets.length - 1);
+            for (float value : centroids) {
+                buffer = ensureCapacity(out, buffer, Float.BYTES);
+                buffer.putFloat(value);
+            }
+            for (int offset : offsets) {
+                buffer = ensureCapacity(out, buffer, Integer.BYTES);
+                buffer.putInt(offset);
+            }
+            float[] vector = new float[dimension];
+            for (int i : order) {
+                source.read(i, vector, 0);
+                for (float value : vector) {
+                    buffer = ensureCapacity(out, buffer, Float.BYTES);
+                    buffer.putFloat(value);
+                }
+            }
+            int wordOffset = 0;
+            buffer = ensureCapacity(out, buffer, Integer.BYTES);
+            buffer.putInt(wordOffset);
+            for (int i : order) {
+                wordOffset += words.get(i).getBytes(StandardCharsets.UTF_8).length;
+                buffer = ensureCapacity(out, buffer, Integer.BYTES);
+                buffer.putInt(wordOffset);
+            }
+            for (int i : order) {
+                byte[] bytes = words.get(i).getBytes(StandardCharsets.UTF_8);
+                buffer = ensureCapacity(out, buffer, bytes.length);
+                buffer.put(bytes);
+            }
+            flush(out, buffer);
+            out.force(true);
+        }
+    }
+
+    static ByteBuffer newWriteBuffer() {
+        return ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    static ByteBuffer ensureCapacity(FileChannel out, ByteBuffer buffer, int size) throws IOException {
+        if (buffer.remaining() >= size) {
+            return buffer;
+        }
+        flush(out, buffer);
+        return size > buffer.capacity() ? ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN) : buffer;
+    }
+
+    static void flush(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void normalize(float[] vector) {
+        float norm = (float) Math.sqrt(dot(vector, 0, vector, 0, vector.length));
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] /= norm;
+            }
+        }
+    }
+
+    private static float dot(float[] matrix, int offset, float[] vector) {
+        return dot(matrix, offset, vector, 0, vector.length);
+    }
+
+    private static float dot(float[] x, int xOffset, float[] y, int yOffset, int length) {
+        float sum = 0.0f;
+        for (int j = 0; j < length; j++) {
+            sum += x[xOffset + j] * y[yOffset + j];
+        }
+        return sum;
+    }
+
+    static class MappedVectors {
+
+        private final FloatBuffer[] chunks;
+        private final int vectorsPerChunk;
+        private final int dimension;
+        private final int count;
+
+        private MappedVectors(FloatBuffer[] chunks, int vectorsPerChunk, int dimension, int count) {
+            this.chunks = chunks;
+            this.vectorsPerChunk = vectorsPerChunk;
+            this.dimension = dimension;
+            this.count = count;
+        }
+
+        static MappedVectors map(FileChannel channel, long position, int count, int dimension) throws IOException {
+            long vectorSize = (long) dimension * Float.BYTES;
+            int vectorsPerChunk = (int) Math.max(1, MAX_CHUNK_SIZE / vectorSize);
+            FloatBuffer[] chunks = new FloatBuffer[(count + vectorsPerChunk - 1) / vectorsPerChunk];
+            for (int c = 0; c < chunks.length; c++) {
+                int size = Math.min(vectorsPerChunk, count - c * vectorsPerChunk);
+                chunks[c] = Word2VecAnnIndex.map(channel, position + c * vectorsPerChunk * vectorSize, size * vectorSize).asFloatBuffer();
+            }
+            return new MappedVectors(chunks, vectorsPerChunk, dimension, count);
+        }
+
+        private float dot(int i, float[] query) {
+            FloatBuffer chunk = chunks[i / vectorsPerChunk];
+            int base = (i % vectorsPerChunk) * dimension;
+            float sum = 0.0f;
+            for (int j = 0; j < dimension; j++) {
+                sum += chunk.get(base + j) * query[j];
+            }
+            return sum;
+        }
+
+        FloatBuffer slice(int i) {
+            FloatBuffer chunk = chunks[i / vectorsPerChunk].duplicate();
+            int base = (i % vectorsPerChunk) * dimension;
+            chunk.limit(base + dimension);
+            chunk.position(base);
+            return chunk.slice();
+        }
+
+        void read(int i, float[] destination, int offset) {
+            FloatBuffer chunk = chunks[i / vectorsPerChunk];
+            int base = (i % vectorsPerChunk) * dimension;
+            for (int j = 0; j < dimension; j++) {
+                destination[offset + j] = chunk.get(base + j);
+            }
+        }
+    }
+}
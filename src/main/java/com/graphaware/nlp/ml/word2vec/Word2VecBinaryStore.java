@@ -0,0 +1,465 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.word2vec;
+
+import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.common.util.Pair;
+import org.neo4j.logging.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Binary word2vec model: one contiguous little-endian float matrix, the vocabulary and an open addressing
+ * hash table (word -> row) stored in a single file next to the model directory. The file is memory-mapped
+ * when opened, so vectors are read straight from the page cache and shared across restarts.
+ */
+public class Word2VecBinaryStore implements Closeable {
+
+    private static final Log LOG = LoggerFactory.getLogger(Word2VecBinaryStore.class);
+
+    public static final String FILE_EXTENSION = ".w2v";
+
+    private static final int MAGIC = 0x57325642;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    private final FileChannel channel;
+    private final int dimension;
+    private final int count;
+    private final Word2VecAnnIndex.MappedVectors vectors;
+    private final IntBuffer wordOffsets;
+    private final ByteBuffer words;
+    private final IntBuffer table;
+    private final int mask;
+    private final long sourceChecksum;
+
+    private Word2VecBinaryStore(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer header = Word2VecAnnIndex.map(channel, 0, HEADER_SIZE);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("Not a binary word2vec model: " + path);
+        }
+        this.dimension = header.getInt(8);
+        this.count = header.getInt(12);
+        int tableSize = header.getInt(16);
+        this.mask = tableSize - 1;
+        this.vectors = Word2VecAnnIndex.MappedVectors.map(channel, header.getLong(24), count, dimension);
+        this.wordOffsets = Word2VecAnnIndex.map(channel, header.getLong(32), (count + 1) * (long) Integer.BYTES).asIntBuffer();
+        this.words = Word2VecAnnIndex.map(channel, header.getLong(40), wordOffsets.get(count));
+        this.table = Word2VecAnnIndex.map(channel, header.getLong(48), tableSize * (long) Integer.BYTES).asIntBuffer();
+        this.sourceChecksum = header.getLong(56);
+    }
+
+    public static Path getStorePath(String storePath) {
+        String path = storePath.endsWith("/") ? storePath.substring(0, storePath.length() - 1) : storePath;
+        return Paths.get(path + FILE_EXTENSION);
+    }
+
+    public static Word2VecBinaryStore open(Path path) throws IOException {
+        return new Word2VecBinaryStore(path);
+    }
+
+    /**
+     * Streams the entries to disk; only the vocabulary is kept in memory. Words seen more than once
+     * and vectors with a different dimension than the first one are skipped.
+     */
+    public static int build(Iterator<Pair<String, float[]>> entries, Path path) throws IOException {
+        Writer writer = Writer.create(path, 0);
+        try {
+            while (entries.hasNext()) {
+                Pair<String, float[]> entry = entries.next();
+                writer.add(entry.first(), entry.second());
+            }
+            return writer.finish();
+        } finally {
+            writer.discard();
+        }
+    }
+
+    /**
+     * Checksum of the source the store at {@code path} was built from, or -1 if there is no valid store.
+     */
+    public static long readSourceChecksum(Path path) {
+        if (!Files.exists(path)) {
+            return -1;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return -1;
+            }
+            ByteBuffer header = Word2VecAnnIndex.map(channel, 0, HEADER_SIZE);
+            return header.getInt(0) == MAGIC && header.getInt(4) == VERSION ? header.getLong(56) : -1;
+        } catch (IOException e) {
+            LOG.warn("Couldn't read " + path + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long getSourceChecksum() {
+        return sourceChecksum;
+    }
+
+    public int indexOf(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        int slot = hash(bytes) & mask;
+        int entry;
+        while ((entry = table.get(slot)) != 0) {
+            if (matches(entry - 1, bytes)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Read-only view of the vector of the word, backed by the mapped file, or null if the word is unknown.
+     */
+    public FloatBuffer getVector(String word) {
+        int i = indexOf(word);
+        return i >= 0 ? vectors.slice(i) : null;
+    }
+
+    public FloatBuffer getVector(int i) {
+        return vectors.slice(i);
+    }
+
+    public float[] getArray(String word) {
+        int i = indexOf(word);
+        if (i < 0) {
+            return null;
+        }
+        float[] vector = new float[dimension];
+        vectors.read(i, vector, 0);
+        return vector;
+    }
+
+    public void read(int i, float[] destination) {
+        vectors.read(i, destination, 0);
+    }
+
+    public String getWord(int i) {
+        int start = wordOffsets.get(i);
+        byte[] bytes = new byte[wordOffsets.get(i + 1) - start];
+        ByteBuffer word = words.duplicate();
+        word.position(start);
+        word.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public Iterator<Pair<String, float[]>> entries() {
+        return new Iterator<Pair<String, float[]>>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < count;
+            }
+
+            @Override
+            public Pair<String, float[]> next() {
+                if (i >= count) {
+                    throw new NoSuchElementException();
+                }
+                float[] vector = new float[dimension];
+                vectors.read(i, vector, 0);
+                return new Pair<>(getWord(i++), vector);
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private boolean matches(int i, byte[] bytes) {
+        int start = wordOffsets.get(i);
+        if (wordOffsets.get(i + 1) - start != bytes.length) {
+            return false;
+        }
+        for (int j = 0; j < bytes.length; j++) {
+            if (words.get(start + j) != bytes[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int tableSize(int count) {
+        int size = 16;
+        while (size < count * 2L) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    // FNV-1a, stable across JVMs since it is persisted with the table
+    private static int hash(byte[] bytes) {
+        int hash = 0x811c9dc5;
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Incremental builder. Vectors are appended to {@code <path>.partial} and words to {@code <path>.partial.words};
+     * {@link #checkpoint} makes both durable together with the position reached in the source, so that an
+     * interrupted import can be resumed with {@link #resume}. {@link #finish} appends the vocabulary and the hash
+     * table and moves the file to {@code path}.
+     */
+    public static class Writer implements Closeable {
+
+        private static final String PARTIAL_EXTENSION = ".partial";
+        private static final String WORDS_EXTENSION = ".words";
+        private static final String CHECKPOINT_EXTENSION = ".checkpoint";
+        private static final int CHECKPOINT_SIZE = 48;
+
+        private final Path path;
+        private final Path vectorsFile;
+        private final Path wordsFile;
+        private final Path checkpointFile;
+        private final long sourceChecksum;
+        private final FileChannel vectorsOut;
+        private final FileChannel wordsOut;
+        private final List<byte[]> words = new ArrayList<>();
+        private final Set<String> seen = new HashSet<>();
+        private ByteBuffer vectorBuffer = Word2VecAnnIndex.newWriteBuffer();
+        private ByteBuffer wordBuffer = Word2VecAnnIndex.newWriteBuffer();
+        private int dimension;
+        private long sourceOffset;
+        private boolean finished;
+
+        private Writer(Path path, long sourceChecksum) throws IOException {
+            this.path = path;
+            this.vectorsFile = Paths.get(path + PARTIAL_EXTENSION);
+            this.wordsFile = Paths.get(path + PARTIAL_EXTENSION + WORDS_EXTENSION);
+            this.checkpointFile = Paths.get(path + PARTIAL_EXTENSION + CHECKPOINT_EXTENSION);
+            this.sourceChecksum = sourceChecksum;
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            this.vectorsOut = FileChannel.open(vectorsFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+            this.wordsOut = FileChannel.open(wordsFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        }
+
+        public static Writer create(Path path, long sourceChecksum) throws IOException {
+            Writer writer = new Writer(path, sourceChecksum);
+            writer.vectorsOut.truncate(0);
+            writer.wordsOut.truncate(0);
+            writer.vectorsOut.position(HEADER_SIZE);
+            Files.deleteIfExists(writer.checkpointFile);
+            return writer;
+        }
+
+        /**
+         * Continues the build interrupted at the last checkpoint, or starts a new one if there is no checkpoint
+         * for a source with the same checksum.
+         */
+        public static Writer resume(Path path, long sourceChecksum) throws IOException {
+            Path checkpointFile = Paths.get(path + PARTIAL_EXTENSION + CHECKPOINT_EXTENSION);
+            if (!Files.exists(checkpointFile)) {
+                return create(path, sourceChecksum);
+            }
+            ByteBuffer checkpoint = ByteBuffer.wrap(Files.readAllBytes(checkpointFile)).order(ByteOrder.LITTLE_ENDIAN);
+            if (checkpoint.capacity() != CHECKPOINT_SIZE || checkpoint.getInt(0) != MAGIC || checkpoint.getLong(16) != sourceChecksum) {
+                LOG.info("Discarding the partial build of " + path + " made from a different source");
+                return create(path, sourceChecksum);
+            }
+            Writer writer = new Writer(path, sourceChecksum);
+            long vectorsLength = checkpoint.getLong(32);
+            long wordsLength = checkpoint.getLong(40);
+            if (writer.vectorsOut.size() < vectorsLength || writer.wordsOut.size() < wordsLength) {
+                writer.close();
+                return create(path, sourceChecksum);
+            }
+            writer.dimension = checkpoint.getInt(8);
+            writer.sourceOffset = checkpoint.getLong(24);
+            writer.vectorsOut.truncate(vectorsLength);
+            writer.vectorsOut.position(vectorsLength);
+            writer.wordsOut.truncate(wordsLength);
+            writer.wordsOut.position(wordsLength);
+            ByteBuffer stored = Word2VecAnnIndex.map(writer.wordsOut, 0, wordsLength);
+            while (stored.hasRemaining()) {
+                byte[] word = new byte[stored.getInt()];
+                stored.get(word);
+                writer.words.add(word);
+                writer.seen.add(new String(word, StandardCharsets.UTF_8));
+            }
+            LOG.info("Resuming the build of " + path + " after " + writer.words.size() + " words");
+            return writer;
+        }
+
+        /**
+         * Offset in the source up to which the entries have been added, as recorded by the last checkpoint.
+         */
+        public long getSourceOffset() {
+            return sourceOffset;
+        }
+
+        public int size() {
+            return words.size();
+        }
+
+        public boolean add(String word, float[] vector) throws IOException {
+            if (dimension == 0) {
+                dimension = vector.length;
+            } else if (vector.length != dimension) {
+                LOG.warn("Skipping '" + word + "': expected dimension " + dimension + ", got " + vector.length);
+                return false;
+            }
+            if (!seen.add(word)) {
+                return false;
+            }
+            for (float value : vector) {
+                vectorBuffer = Word2VecAnnIndex.ensureCapacity(vectorsOut, vectorBuffer, Float.BYTES);
+                vectorBuffer.putFloat(value);
+            }
+            byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+            wordBuffer = Word2VecAnnIndex.ensureCapacity(wordsOut, wordBuffer, Integer.BYTES + bytes.length);
+            wordBuffer.putInt(bytes.length);
+            wordBuffer.put(bytes);
+            words.add(bytes);
+            return true;
+        }
+
+        public void checkpoint(long sourceOffset) throws IOException {
+            Word2VecAnnIndex.flush(vectorsOut, vectorBuffer);
+            Word2VecAnnIndex.flush(wordsOut, wordBuffer);
+            vectorsOut.force(false);
+            wordsOut.force(false);
+            ByteBuffer checkpoint = ByteBuffer.allocate(CHECKPOINT_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            checkpoint.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(words.size())
+                    .putLong(sourceChecksum).putLong(sourceOffset).putLong(vectorsOut.position()).putLong(wordsOut.position());
+            Path temporary = Paths.get(checkpointFile + ".tmp");
+            Files.write(temporary, checkpoint.array());
+            Files.move(temporary, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.sourceOffset = sourceOffset;
+        }
+
+        public int finish() throws IOException {
+            int count = words.size();
+            if (count == 0) {
+                throw new IOException("No word vectors to store in " + path);
+            }
+            Word2VecAnnIndex.flush(vectorsOut, vectorBuffer);
+            long vectorsPosition = HEADER_SIZE;
+            long wordOffsetsPosition = vectorsPosition + count * (long) dimension * Float.BYTES;
+            if (vectorsOut.position() != wordOffsetsPosition) {
+                throw new IOException("Unexpected size of " + vectorsFile + ": " + vectorsOut.position());
+            }
+
+            ByteBuffer buffer = vectorBuffer;
+            int wordOffset = 0;
+            buffer = Word2VecAnnIndex.ensureCapacity(vectorsOut, buffer, Integer.BYTES);
+            buffer.putInt(wordOffset);
+            for (byte[] word : words) {
+                wordOffset += word.length;
+                buffer = Word2VecAnnIndex.ensureCapacity(vectorsOut, buffer, Integer.BYTES);
+                buffer.putInt(wordOffset);
+            }
+            long wordsPosition = wordOffsetsPosition + (count + 1) * (long) Integer.BYTES;
+            for (byte[] word : words) {
+                buffer = Word2VecAnnIndex.ensureCapacity(vectorsOut, buffer, word.length);
+                buffer.put(word);
+            }
+            long tablePosition = wordsPosition + wordOffset;
+
+            int tableSize = tableSize(count);
+            int[] slots = new int[tableSize];
+            for (int i = 0; i < count; i++) {
+                int slot = hash(words.get(i)) & (tableSize - 1);
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & (tableSize - 1);
+                }
+                slots[slot] = i + 1;
+            }
+            for (int slot : slots) {
+                buffer = Word2VecAnnIndex.ensureCapacity(vectorsOut, buffer, Integer.BYTES);
+                buffer.putInt(slot);
+            }
+            Word2VecAnnIndex.flush(vectorsOut, buffer);
+
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(count).putInt(tableSize).putInt(0)
+                    .putLong(vectorsPosition).putLong(wordOffsetsPosition).putLong(wordsPosition).putLong(tablePosition)
+                    .putLong(sourceChecksum);
+            buffer.flip();
+            long position = 0;
+            while (buffer.hasRemaining()) {
+                position += vectorsOut.write(buffer, position);
+            }
+            buffer.clear();
+            vectorsOut.force(true);
+            close();
+            Files.move(vectorsFile, path, StandardCopyOption.REPLACE_EXISTING);
+            finished = true;
+            discard();
+            LOG.info("Stored " + count + " word vectors in " + path);
+            return count;
+        }
+
+        /**
+         * Deletes the partial files, dropping any checkpoint.
+         */
+        public void discard() throws IOException {
+            close();
+            Files.deleteIfExists(checkpointFile);
+            Files.deleteIfExists(wordsFile);
+            if (!finished) {
+                Files.deleteIfExists(vectorsFile);
+            }
+        }
+
+        /**
+         * Closes the partial files, keeping them for {@link #resume} unless the build finished.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                vectorsOut.close();
+            } finally {
+                wordsOut.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.word2vec;
+
+import com.graphaware.common.log.LoggerFactory;
+import org.neo4j.logging.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Pipelined conversion of a text model (one {@code word v1 v2 ...} line per word) into a {@link Word2VecBinaryStore}.
+ * A reader thread splits the file into chunks of whole lines, a pool of workers parses them and the calling thread
+ * writes the parsed chunks in file order, checkpointing regularly so that an interrupted import can be resumed.
+ */
+public class Word2VecImporter {
+
+    private static final Log LOG = LoggerFactory.getLogger(Word2VecImporter.class);
+
+    private static final int DEFAULT_CHUNK_SIZE = 4 << 20;
+    private static final int CHECKPOINT_INTERVAL = 64;
+    private static final int CHECKSUM_BLOCK_SIZE = 1 << 20;
+    private static final ParsedChunk END = new ParsedChunk(new ArrayList<>(), new ArrayList<>(), -1);
+
+    private final String language;
+    private final int workers;
+    private final int chunkSize;
+
+    public Word2VecImporter(String language) {
+        this(language, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    public Word2VecImporter(String language, int workers) {
+        this(language, workers, DEFAULT_CHUNK_SIZE);
+    }
+
+    Word2VecImporter(String language, int workers, int chunkSize) {
+        this.language = language;
+        this.workers = workers;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * CRC32 of the whole file.
+     */
+    public static long checksum(Path source) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(CHECKSUM_BLOCK_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * {@link #checksum(Path)} of the source, cached next to the store with the size and modification time of the
+     * source, so that an unchanged multi-gigabyte model is not read again every time it is opened.
+     */
+    static long cachedChecksum(Path source, Path storePath) throws IOException {
+        Path cache = storePath.resolveSibling(storePath.getFileName() + ".source");
+        long size = Files.size(source);
+        long modified = Files.getLastModifiedTime(source).toMillis();
+        if (Files.exists(cache)) {
+            String[] fields = new String(Files.readAllBytes(cache), StandardCharsets.UTF_8).trim().split(" ");
+            try {
+                if (fields.length == 3 && Long.parseLong(fields[0]) == size && Long.parseLong(fields[1]) == modified) {
+                    return Long.parseLong(fields[2]);
+                }
+            } catch (NumberFormatException e) {
+                LOG.warn("Ignoring invalid checksum cache " + cache);
+            }
+        }
+        long start = System.currentTimeMillis();
+        long checksum = checksum(source);
+        LOG.info("Computed the checksum of " + source + " in " + (System.currentTimeMillis() - start) + "ms");
+        if (cache.getParent() != null) {
+            Files.createDirectories(cache.getParent());
+        }
+        Files.write(cache, (size + " " + modified + " " + checksum).getBytes(StandardCharsets.UTF_8));
+
+        return checksum;
+    }
+
+    /**
+     * Converts {@code source} into the store at {@code storePath}, unless the store was already built from the
+     * same source. Without {@code force}, an import interrupted earlier continues from its last checkpoint.
+     *
+     * @return false if the store was already up to date
+     */
+    public boolean importModel(Path source, Path storePath, boolean force, Progress progress) throws IOException {
+        long size = Files.size(source);
+        long checksum = cachedChecksum(source, storePath);
+        if (!force && Word2VecBinaryStore.readSourceChecksum(storePath) == checksum) {
+            LOG.info(storePath + " is up to date with " + source);
+            progress.advance(size);
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        Word2VecBinaryStore.Writer writer = force
+                ? Word2VecBinaryStore.Writer.create(storePath, checksum)
+                : Word2VecBinaryStore.Writer.resume(storePath, checksum);
+        ExecutorService reader = Executors.newSingleThreadExecutor(daemon("nlp-word2vec-reader"));
+        ExecutorService parsers = Executors.newFixedThreadPool(workers, daemon("nlp-word2vec-parser"));
+        BlockingQueue<Future<ParsedChunk>> chunks = new ArrayBlockingQueue<>(workers * 2);
+        boolean completed = false;
+        try {
+            long offset = writer.getSourceOffset();
+            progress.advance(offset);
+            reader.execute(() -> read(source, offset, chunks, parsers));
+            long done = offset;
+            int lastLogged = (int) (done * 10 / Math.max(1, size));
+            int sinceCheckpoint = 0;
+            while (true) {
+                ParsedChunk chunk = chunks.take().get();
+                if (chunk == END) {
+                    break;
+                }
+                for (int i = 0; i < chunk.words.size(); i++) {
+                    writer.add(chunk.words.get(i), chunk.vectors.get(i));
+                }
+                progress.advance(chunk.end - done);
+                done = chunk.end;
+                if (++sinceCheckpoint == CHECKPOINT_INTERVAL) {
+                    writer.checkpoint(done);
+                    sinceCheckpoint = 0;
+                }
+                int tenths = (int) (done * 10 / Math.max(1, size));
+                if (tenths > lastLogged) {
+                    lastLogged = tenths;
+                    LOG.info("Imported " + (tenths * 10) + "% of " + source + " (" + writer.size() + " words)");
+                }
+            }
+            int count = writer.finish();
+            completed = true;
+            LOG.info("Imported " + count + " words from " + source + " in " + (System.currentTimeMillis() - start) + "ms");
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import of " + source + " interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Error while importing " + source, e.getCause());
+        } finally {
+            reader.shutdownNow();
+            parsers.shutdownNow();
+            if (!completed) {
+                // keeps the partial files for the next attempt
+                writer.close();
+            }
+        }
+    }
+
+    private void read(Path source, long offset, BlockingQueue<Future<ParsedChunk>> chunks, ExecutorService parsers) {
+        try {
+            try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+                channel.position(offset);
+                ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
+                long position = offset;
+                boolean eof = false;
+                while (!eof) {
+                    eof = fill(channel, buffer);
+                    buffer.flip();
+                    int length = eof ? buffer.limit() : lastNewline(buffer) + 1;
+                    if (length == 0 && !eof) {
+                        // a single line longer than the buffer
+                        ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                        larger.put(buffer);
+                        buffer = larger;
+                        continue;
+                    }
+                    if (length > 0) {
+                        byte[] bytes = new byte[length];
+                        buffer.get(bytes);
+                        position += length;
+                        long end = position;
+                        chunks.put(parsers.submit(() -> parse(bytes, end)));
+                    }
+                    buffer.compact();
+                }
+            }
+            chunks.put(CompletableFuture.completedFuture(END));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            CompletableFuture<ParsedChunk> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            try {
+                chunks.put(failed);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static boolean fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int lastNewline(ByteBuffer buffer) {
+        for (int i = buffer.limit() - 1; i >= buffer.position(); i--) {
+            if (buffer.get(i) == '\n') {
+                return i - buffer.position();
+            }
+        }
+        return -1;
+    }
+
+    ParsedChunk parse(byte[] bytes, long end) {
+        List<String> words = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        int lineStart = 0;
+        while (lineStart < bytes.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < bytes.length && bytes[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int stop = lineEnd > lineStart && bytes[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+            parseLine(bytes, lineStart, stop, words, vectors);
+            lineStart = lineEnd + 1;
+        }
+        return new ParsedChunk(words, vectors, end);
+    }
+
+    private void parseLine(byte[] bytes, int start, int end, List<String> words, List<float[]> vectors) {
+        int wordEnd = start;
+        while (wordEnd < end && bytes[wordEnd] != ' ') {
+            wordEnd++;
+        }
+        int values = 0;
+        boolean inToken = false;
+        for (int i = wordEnd; i < end; i++) {
+            if (bytes[i] == ' ') {
+                inToken = false;
+            } else if (!inToken) {
+                inToken = true;
+                values++;
+            }
+        }
+        if (values < 2) {
+            return;
+        }
+        String word = normalizeWord(new String(bytes, start, wordEnd - start, StandardCharsets.UTF_8), language);
+        if (word == null) {
+            return;
+        }
+        float[] vector = new float[values];
+        int v = 0;
+        int i = wordEnd;
+        while (i < end) {
+            if (bytes[i] == ' ') {
+                i++;
+                continue;
+            }
+            int tokenStart = i;
+            while (i < end && bytes[i] != ' ') {
+                i++;
+            }
+            vector[v++] = Float.parseFloat(new String(bytes, tokenStart, i - tokenStart, StandardCharsets.ISO_8859_1));
+        }
+        words.add(word);
+        vectors.add(vector);
+    }
+
+    /**
+     * ConceptNet entries ({@code /c/<language>/<word>}) of other languages are skipped, the prefix is removed from
+     * the ones of {@code language}.
+     */
+    static String normalizeWord(String word, String language) {
+        String wordToUse = word.trim();
+        if (word.startsWith("/c/") && !word.startsWith("/c/" + language + "/")) {
+            return null;
+        }
+        if (word.startsWith("/c/" + language)) {
+            wordToUse = wordToUse.replace("/c/" + language + "/", "").trim();
+        }
+        return wordToUse;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicLong count = new AtomicLong();
+        return (runnable) -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    static class ParsedChunk {
+
+        private final List<String> words;
+        private final List<float[]> vectors;
+        private final long end;
+
+        private ParsedChunk(List<String> words, List<float[]> vectors, long end) {
+            this.words = words;
+            this.vectors = vectors;
+            this.end = end;
+        }
+
+        List<String> getWords() {
+            return words;
+        }
+
+        List<float[]> getVectors() {
+            return vectors;
+        }
+    }
+
+    /**
+     * Bytes of the source files processed so far, shared by the imports of one model.
+     */
+    public static class Progress {
+
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong done = new AtomicLong();
+        private volatile Throwable failure;
+
+        public Progress() {
+        }
+
+        public Progress(long total) {
+            this.total.set(total);
+        }
+
+        public void advance(long bytes) {
+            done.addAndGet(bytes);
+        }
+
+        public int getPercent() {
+            long size = total.get();
+            return size > 0 ? (int) Math.min(100, done.get() * 100 / size) : 0;
+        }
+
+        public Throwable getFailure() {
+            return failure;
+        }
+
+        public void fail(Throwable failure) {
+            this.failure = failure;
+        }
+
+        public String getStatus() {
+            Throwable error = failure;
+            return error != null ? "failed: " + error.getMessage() : "loading " + getPercent() + "%";
+        }
+    }
+}
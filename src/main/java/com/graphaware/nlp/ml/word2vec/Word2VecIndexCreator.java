@@ -17,28 +17,18 @@
 package com.graphaware.nlp.ml.word2vec;
 
 import com.graphaware.common.log.LoggerFactory;
-import com.graphaware.nlp.util.TypeConverter;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.LineIterator;
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.core.KeywordAnalyzer;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.StoredField;
-import org.apache.lucene.document.StringField;
-import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
-import org.apache.lucene.index.IndexWriterConfig.OpenMode;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
 import org.neo4j.logging.Log;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Word2VecIndexCreator {
     private static final Log LOG = LoggerFactory.getLogger(Word2VecIndexLookup.class);
@@ -50,90 +40,60 @@ public class Word2VecIndexCreator {
     public static final String NEAREST_NEIGHBORS_FIELD = "nn";
 
     public static boolean loadFromFile(String sourceFile, String indexPath, boolean create, String language) {
+        return loadFromFile(sourceFile, indexPath, create, language, new Word2VecImporter.Progress());
+    }
+
+    /**
+     * Converts a text model into a {@link Word2VecBinaryStore} next to {@code indexPath}. Without {@code create},
+     * a store already built from the same source (same checksum) or a Lucene index written by previous versions
+     * in {@code indexPath} is kept, and an interrupted import is resumed.
+     */
+    public static boolean loadFromFile(String sourceFile, String indexPath, boolean create, String language, Word2VecImporter.Progress progress) {
+        Path storePath = Word2VecBinaryStore.getStorePath(indexPath);
+        if (!create && !Files.exists(storePath) && new File(indexPath).isDirectory()) {
+            return true;
+        }
         try {
-            if (!create) {
-                File f = new File(indexPath);
-                if (f.exists()) {
-                    return true;
-                }
-            }
-            Directory dir = FSDirectory.open(Paths.get(indexPath));
-            Analyzer analyzer = new KeywordAnalyzer();
-            IndexWriterConfig iwc = new IndexWriterConfig(analyzer);
-            if (create) {
-                iwc.setOpenMode(OpenMode.CREATE);
-            } else {
-                iwc.setOpenMode(OpenMode.CREATE_OR_APPEND);
-            }
-            iwc.setRAMBufferSizeMB(256.0);
-            try (IndexWriter writer = new IndexWriter(dir, iwc)) {
-                LOG.info("Starting indexing in " + indexPath);
-                indexWord2Vec(writer, sourceFile, language);
-                writer.forceMerge(1);
-            }
-            
-        }   catch (IOException ex) {
+            new Word2VecImporter(language).importModel(Paths.get(sourceFile), storePath, create, progress);
+        } catch (IOException ex) {
             LOG.error("Error loading Word2Vec: " + sourceFile, ex);
+            progress.fail(ex);
             return false;
         }
         return true;
     }
 
-    private static void indexWord2Vec(IndexWriter writer, String sourceFile, String language) throws IOException {
+    public static List<String> inspectDirectoryAndLoad(String path, String destPath, String language) {
+        LOG.info("Inspect directories and LOAD");
 
-        LineIterator it = FileUtils.lineIterator(new File(sourceFile), "UTF-8");
-        try {
-            while (it.hasNext()) {
-                String line = it.nextLine();
-                String[] split = line.split(" ");
-                if (split != null && split.length > 2) {
-                    Document doc = new Document();
-                    String word = split[0];
-                    String wordToUse = split[0].trim();
-                    if (word.startsWith("/c/") && !word.startsWith("/c/" + language + "/")) {
-                        continue;
-                    }
-                    if (word.startsWith("/c/" + language)) {
-                        wordToUse = wordToUse.replace("/c/" + language + "/", "").trim();
-                    }
-                    // `[\p{L}]+` removes numbers and multi-word compounds (which contain "_" instead of a space)
-                    /*if (!wordToUse.matches("[\\p{L}]+") && !wordToUse.matches("[\\p{N}]+")
-                            && !PUNCTUATIONS.contains(wordToUse) && !wordToUse.contains("_")) {
-                        continue;
-                    }*/
-                    doc.add(new StringField(WORD_FIELD, wordToUse, Field.Store.YES));
-                    float[] vector = new float[split.length - 1];
-                    for (int i = 0; i < split.length - 1; i++) {
-                        vector[i] = Float.parseFloat(split[i + 1]);
-                    }
-                    doc.add(new StoredField(VECTOR_FIELD, TypeConverter.toByteArray(vector)));
-                    writer.addDocument(doc);
-                }
+        List<String> modelNames = new ArrayList<>();
+        for (Map.Entry<String, File> source : listSourceFiles(path).entrySet()) {
+            if (loadFromFile(source.getValue().getPath(), (destPath + source.getKey()), false, language)) {
+                modelNames.add(source.getKey());
             }
-        } finally {
-            it.close();
         }
+
+        return modelNames;
     }
-    
-    public static List<String> inspectDirectoryAndLoad(String path, String destPath, String language) {
-        LOG.info("Inspect directories and LOAD");
 
-        List<String> modelNames = new ArrayList<>();
+    /**
+     * Model files in the directory by model name (the part of the file name before the first "-").
+     */
+    public static Map<String, File> listSourceFiles(String path) {
+        Map<String, File> sources = new LinkedHashMap<>();
         if (path == null || path.length() == 0) {
             LOG.error("Scanning for word2Vec files: wrong path specified.");
-            return modelNames;
+            return sources;
         }
         File folder = new File(path);
         File[] listOfFiles = folder.listFiles();
         if (listOfFiles == null) {
             LOG.warn("No files in " + path + " for loading word2Vec");
-            return modelNames;
+            return sources;
         }
         LOG.info("path = " + path);
-        if (!path.endsWith("/")) {
-            path = path + "/";
-        }
-        
+        Arrays.sort(listOfFiles);
+
         for (File file : listOfFiles) {
             if (!file.isFile()) {
                 continue;
@@ -145,12 +105,10 @@ public class Word2VecIndexCreator {
             String[] sp = fileName.split("-");
             String modelName = sp[0];
             LOG.info("Custom models: Found file " + fileName + ". Assigned name: " + modelName);
-            if (loadFromFile((path + fileName), (destPath +  modelName), false, language)) {
-                modelNames.add(modelName);
-            }
+            sources.putIfAbsent(modelName, file);
         }
 
-        return modelNames;
+        return sources;
     }
 
     private static boolean isIgnorableFile(String filename) {
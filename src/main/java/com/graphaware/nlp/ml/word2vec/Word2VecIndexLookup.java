@@ -15,55 +15,122 @@
  */
 package com.graphaware.nlp.ml.word2vec;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.graphaware.common.util.Pair;
 import com.graphaware.nlp.ml.similarity.CosineSimilarity;
 import com.graphaware.nlp.util.ComparablePair;
-import com.graphaware.nlp.util.FixedSizeOrderedList;
+import com.graphaware.nlp.util.TopKCollector;
 import com.graphaware.nlp.util.TypeConverter;
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.core.KeywordAnalyzer;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.StoredField;
 import org.apache.lucene.index.*;
-import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.*;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 import com.graphaware.common.log.LoggerFactory;
 import org.neo4j.logging.Log;
 
 import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.function.LongFunction;
+import java.util.stream.IntStream;
 
 public class Word2VecIndexLookup {
 
     private static final Log LOG = LoggerFactory.getLogger(Word2VecIndexLookup.class);
 
-    private static final List<String> LUCENE_SPECIAL_CHARACTERS =
-            Arrays.asList("?", "*", "~", "\"", "^", "-", "+", "(", ")", "[", "]", "{", "}");
+    private static final int DEFAULT_VECTOR_CACHE_SIZE = 20000;
+    private static final int NEIGHBOURS_BLOCK_SIZE = 4096;
+    private static final float[] NOT_FOUND = new float[0];
 
     private final String storePath;
     private int vectorDimension;
 
+    private final Directory directory;
+    private final SearcherManager searcherManager;
+    private final Word2VecBinaryStore binaryStore;
+    private final Cache<String, float[]> vectorCache;
     private final Map<String, float[]> inMemoryNN = new ConcurrentHashMap<>();
     private final Map<String, List<Pair>> nnCache = new HashMap<>();
+    private volatile Word2VecAnnIndex annIndex;
 
     public Word2VecIndexLookup(String storePath) {
+        this(storePath, DEFAULT_VECTOR_CACHE_SIZE);
+    }
+
+    public Word2VecIndexLookup(String storePath, long vectorCacheSize) {
         this.storePath = storePath;
+        this.vectorCache = CacheBuilder.newBuilder()
+                .maximumSize(vectorCacheSize)
+                .recordStats()
+                .build();
+        Path binaryStorePath = Word2VecBinaryStore.getStorePath(storePath);
+        if (Files.exists(binaryStorePath)) {
+            try {
+                this.binaryStore = Word2VecBinaryStore.open(binaryStorePath);
+            } catch (IOException ex) {
+                throw new RuntimeException("Error while opening model " + binaryStorePath, ex);
+            }
+            this.directory = null;
+            this.searcherManager = null;
+            this.vectorDimension = binaryStore.getDimension();
+        } else {
+            this.binaryStore = null;
+            try {
+                this.directory = FSDirectory.open(Paths.get(storePath));
+                this.searcherManager = new SearcherManager(DirectoryReader.open(directory), null);
+            } catch (IOException ex) {
+                throw new RuntimeException("Error while opening index " + storePath, ex);
+            }
+            this.vectorDimension = readVectorDimension();
+        }
+        openAnnIndex();
+    }
+
+    private int readVectorDimension() {
         try {
-            StoredField binaryVector = (StoredField) getIndexSearcher().doc(0).getField(Word2VecIndexCreator.VECTOR_FIELD);
-            this.vectorDimension = TypeConverter.toFloatArray(binaryVector.binaryValue().bytes).length;
+            IndexSearcher indexSearcher = searcherManager.acquire();
+            try {
+                return getVector(indexSearcher.doc(0)).length;
+            } finally {
+                searcherManager.release(indexSearcher);
+            }
         } catch (IOException e) {
             LOG.error("Couldn't retrieve vector dimension. ", e);
-            this.vectorDimension = -1;
+            return -1;
+        }
+    }
+
+    private void openAnnIndex() {
+        Path annIndexPath = Word2VecAnnIndex.getIndexPath(storePath);
+        if (Files.exists(annIndexPath)) {
+            try {
+                annIndex = Word2VecAnnIndex.open(annIndexPath);
+                LOG.info("Loaded nearest neighbours index " + annIndexPath);
+            } catch (IOException e) {
+                LOG.error("Couldn't load nearest neighbours index " + annIndexPath, e);
+            }
         }
     }
 
     public long countIndex() throws IOException {
-        return getIndexSearcher().collectionStatistics(Word2VecIndexCreator.WORD_FIELD).docCount();
+        if (binaryStore != null) {
+            return binaryStore.size();
+        }
+        IndexSearcher indexSearcher = searcherManager.acquire();
+        try {
+            return indexSearcher.collectionStatistics(Word2VecIndexCreator.WORD_FIELD).docCount();
+        } finally {
+            searcherManager.release(indexSearcher);
+        }
     }
 
     public String getStorePath() {
@@ -71,131 +138,283 @@ public class Word2VecIndexLookup {
     }
 
     public float[] searchIndex(String searchString) {
+        if (binaryStore != null) {
+            // the mapped store is already an in-memory table, the cache would only duplicate the vectors
+            float[] vector = binaryStore.getArray(searchString.replace(" ", "_"));
+            return vector != null ? vector : binaryStore.getArray(searchString.replace(" ", ""));
+        }
+        float[] vector = vectorCache.getIfPresent(searchString);
+        if (vector == null) {
+            vector = lookup(searchString);
+            vectorCache.put(searchString, vector != null ? vector : NOT_FOUND);
+        }
+
+        return vector != NOT_FOUND ? vector : null;
+    }
+
+    private float[] lookup(String searchString) {
         try {
-            Analyzer analyzer = new KeywordAnalyzer();
-            QueryParser queryParser = new QueryParser(Word2VecIndexCreator.WORD_FIELD, analyzer);
-            Query query = queryParser.parse(preprocessSearchString(searchString.replace(" ", "_")));
-            TopDocs searchResult = getIndexSearcher().search(query, 1);
-            LOG.debug("Searching for '" + searchString + "'. Number of hits: " + searchResult.totalHits);
-            if (searchResult.totalHits == 0) {
-                // example: FastText embeddings contain "NewYork" and not "New_York"
-                query = queryParser.parse(preprocessSearchString(searchString.replace(" ", "")));
-                searchResult = getIndexSearcher().search(query, 1);
-            }
-            if (searchResult.totalHits != 1) {
-                LOG.debug("Found too many (or too few) hits for search string " + searchString + ".");
-                return null;
+            IndexSearcher indexSearcher = searcherManager.acquire();
+            try {
+                float[] vector = lookup(indexSearcher, searchString.replace(" ", "_"));
+                if (vector == null) {
+                    // example: FastText embeddings contain "NewYork" and not "New_York"
+                    vector = lookup(indexSearcher, searchString.replace(" ", ""));
+                }
+                return vector;
+            } finally {
+                searcherManager.release(indexSearcher);
             }
-            ScoreDoc hit = searchResult.scoreDocs[0];
-            Document hitDoc = getIndexSearcher().doc(hit.doc);
-            StoredField binaryVector = (StoredField) hitDoc.getField(Word2VecIndexCreator.VECTOR_FIELD);
-            return TypeConverter.toFloatArray(binaryVector.binaryValue().bytes);
-        } catch (ParseException | IOException ex) {
+        } catch (IOException ex) {
             LOG.error("Error while getting word2vec for \"" + searchString + "\". " + ex.getMessage());
         }
         return null;
     }
 
+    private float[] lookup(IndexSearcher indexSearcher, String word) throws IOException {
+        TopDocs searchResult = indexSearcher.search(new TermQuery(new Term(Word2VecIndexCreator.WORD_FIELD, word)), 1);
+        LOG.debug("Searching for '" + word + "'. Number of hits: " + searchResult.totalHits);
+        if (searchResult.totalHits != 1) {
+            return null;
+        }
+
+        return getVector(indexSearcher.doc(searchResult.scoreDocs[0].doc));
+    }
+
     public void loadNN() {
+        if (binaryStore != null) {
+            Iterator<Pair<String, float[]>> entries = binaryStore.entries();
+            while (entries.hasNext()) {
+                Pair<String, float[]> entry = entries.next();
+                inMemoryNN.put(entry.first(), entry.second());
+            }
+            return;
+        }
         try {
-            IndexSearcher indexSearcher = getIndexSearcher();
-            IndexReader indexReader = indexSearcher.getIndexReader();
-            for (int i = 0; i < indexReader.maxDoc(); ++i) {
-                Document hitDoc = indexReader.document(i);
-                String word = hitDoc.getField(Word2VecIndexCreator.WORD_FIELD).stringValue();
-                StoredField binaryVector = (StoredField) hitDoc.getField(Word2VecIndexCreator.VECTOR_FIELD);
-                inMemoryNN.put(word, TypeConverter.toFloatArray(binaryVector.binaryValue().bytes));
+            IndexSearcher indexSearcher = searcherManager.acquire();
+            try {
+                IndexReader indexReader = indexSearcher.getIndexReader();
+                for (int i = 0; i < indexReader.maxDoc(); ++i) {
+                    Document hitDoc = indexReader.document(i);
+                    String word = hitDoc.getField(Word2VecIndexCreator.WORD_FIELD).stringValue();
+                    inMemoryNN.put(word, getVector(hitDoc));
+                }
+            } finally {
+                searcherManager.release(indexSearcher);
             }
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    public synchronized void buildAnnIndex() {
+        Path annIndexPath = Word2VecAnnIndex.getIndexPath(storePath);
+        if (binaryStore != null) {
+            try {
+                replaceAnnIndex(binaryStore.entries(), annIndexPath);
+            } catch (IOException e) {
+                throw new RuntimeException("Error while building nearest neighbours index " + annIndexPath, e);
+            }
+            return;
+        }
+        try {
+            IndexSearcher indexSearcher = searcherManager.acquire();
+            try {
+                IndexReader indexReader = indexSearcher.getIndexReader();
+                Iterator<Pair<String, float[]>> entries = new Iterator<Pair<String, float[]>>() {
+                    private int doc = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return doc < indexReader.maxDoc();
+                    }
+
+                    @Override
+                    public Pair<String, float[]> next() {
+                        try {
+                            Document hitDoc = indexReader.document(doc++);
+                            return new Pair<>(hitDoc.getField(Word2VecIndexCreator.WORD_FIELD).stringValue(), getVector(hitDoc));
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                };
+                replaceAnnIndex(entries, annIndexPath);
+            } finally {
+                searcherManager.release(indexSearcher);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error while building nearest neighbours index " + annIndexPath, e);
+        }
+    }
+
+    private void replaceAnnIndex(Iterator<Pair<String, float[]>> entries, Path annIndexPath) throws IOException {
+        Word2VecAnnIndex previous = annIndex;
+        annIndex = null;
+        if (previous != null) {
+            previous.close();
+        }
+        Word2VecAnnIndex.build(entries, annIndexPath);
+        annIndex = Word2VecAnnIndex.open(annIndexPath);
+    }
+
+    public boolean hasAnnIndex() {
+        return annIndex != null;
+    }
+
     public List<Pair> getNearestNeighbors(String searchString, Integer limit) {
-        IndexSearcher indexSearcher = getIndexSearcher();
+        return getNearestNeighbors(searchString, limit, 0);
+    }
+
+    public List<Pair> getNearestNeighbors(String searchString, Integer limit, int probes) {
+        Word2VecAnnIndex index = annIndex;
+        if (index != null) {
+            float[] vector = inMemoryNN.containsKey(searchString) ? inMemoryNN.get(searchString) : searchIndex(searchString);
+            return vector != null ? index.search(vector, limit, probes) : new ArrayList<>();
+        }
         LOG.info("Searching nearest neighbors for : '" + searchString + "'");
         String key = searchString + "__" + limit.toString();
+        if (nnCache.containsKey(key)) {
+            return nnCache.get(key);
+        }
         if (inMemoryNN.containsKey(searchString)) {
+            return cacheIfNeeded(searchString, getTopNeighbors(inMemoryNN.get(searchString), limit, inMemoryNN), limit);
+        }
+        float[] vector = searchIndex(searchString);
+        if (vector == null) {
+            return new ArrayList<>();
+        }
 
-            if (nnCache.containsKey(key)) {
-                return nnCache.get(key);
-            }
+        return cacheIfNeeded(searchString, getTopXNeighbors(vector, limit), limit);
+    }
 
-            return cacheIfNeeded(searchString, getTopNeighbors(inMemoryNN.get(searchString), limit, inMemoryNN), limit);
+    public void cleanCache() {
+        nnCache.clear();
+        vectorCache.invalidateAll();
+        refresh();
+    }
+
+    /**
+     * Reopens the underlying searcher if the index changed on disk since it was last opened.
+     */
+    public void refresh() {
+        if (searcherManager == null) {
+            return;
         }
         try {
-            Analyzer analyzer = new KeywordAnalyzer();
-            QueryParser queryParser = new QueryParser(Word2VecIndexCreator.WORD_FIELD, analyzer);
-            Query query = queryParser.parse(searchString.replace(" ", "_"));
-            TopDocs searchResult = indexSearcher.search(query, 1);
-            LOG.info("Searching for '" + searchString + "'. Number of hits: " + searchResult.totalHits);
-            if (searchResult.totalHits != 1) {
-                return new ArrayList<>();
+            if (searcherManager.maybeRefresh()) {
+                vectorCache.invalidateAll();
             }
-            ScoreDoc hit = searchResult.scoreDocs[0];
-            Document hitDoc = indexSearcher.doc(hit.doc);
-
-            return cacheIfNeeded(searchString, getTopXNeighbors(getVector(hitDoc), limit), limit);
-        } catch (ParseException | IOException ex) {
-            LOG.error("Error while getting word2vec for " + searchString, ex);
+        } catch (IOException e) {
+            LOG.error("Error while refreshing index " + storePath, e);
         }
+    }
 
-        return new ArrayList<>();
+    public CacheStats getCacheStats() {
+        return vectorCache.stats();
     }
 
-    public void cleanCache() {
-        nnCache.clear();
+    public long getCacheSize() {
+        return vectorCache.size();
+    }
+
+    public void close() {
+        try {
+            if (binaryStore != null) {
+                binaryStore.close();
+            } else {
+                searcherManager.close();
+                directory.close();
+            }
+        } catch (IOException e) {
+            LOG.error("Error while closing index " + storePath, e);
+        }
+        Word2VecAnnIndex index = annIndex;
+        annIndex = null;
+        if (index != null) {
+            try {
+                index.close();
+            } catch (IOException e) {
+                LOG.error("Error while closing nearest neighbours index of " + storePath, e);
+            }
+        }
     }
 
     private List<Pair> getTopXNeighbors(float[] originalVector, Integer limit) {
-        IndexSearcher indexSearcher = getIndexSearcher();
-        IndexReader indexReader = indexSearcher.getIndexReader();
         long now = System.currentTimeMillis();
-        FixedSizeOrderedList coll = new FixedSizeOrderedList(limit);
         CosineSimilarity cosineSimilarity = new CosineSimilarity();
+        if (binaryStore != null) {
+            // blocks of the store are scanned in parallel, each into its own collector
+            int blocks = (binaryStore.size() + NEIGHBOURS_BLOCK_SIZE - 1) / NEIGHBOURS_BLOCK_SIZE;
+            TopKCollector top = IntStream.range(0, blocks).parallel()
+                    .mapToObj(block -> {
+                        TopKCollector local = new TopKCollector(limit);
+                        float[] vector = new float[binaryStore.getDimension()];
+                        int end = Math.min(binaryStore.size(), (block + 1) * NEIGHBOURS_BLOCK_SIZE);
+                        for (int i = block * NEIGHBOURS_BLOCK_SIZE; i < end; i++) {
+                            binaryStore.read(i, vector);
+                            local.offer(i, (float) cosineSimilarity.cosineSimilarity(originalVector, vector));
+                        }
+                        return local;
+                    })
+                    .reduce(TopKCollector::merge)
+                    .orElseGet(() -> new TopKCollector(limit));
+            LOG.debug("Computed nearest neighbors in " + (System.currentTimeMillis() - now));
+            return toPairs(top, i -> binaryStore.getWord((int) i));
+        }
+        TopKCollector top = new TopKCollector(limit);
+        List<String> words = new ArrayList<>();
         try {
-            Query query = new MatchAllDocsQuery();
-            TopDocs searchResult = indexSearcher.search(query, indexReader.numDocs());
-            for (ScoreDoc scoreDoc : searchResult.scoreDocs) {
-                Document hitDoc = indexSearcher.doc(scoreDoc.doc);
-                String word = hitDoc.getField(Word2VecIndexCreator.WORD_FIELD).stringValue();
-                coll.add(new ComparablePair(word, cosineSimilarity.cosineSimilarity(originalVector, getVector(hitDoc))));
+            IndexSearcher indexSearcher = searcherManager.acquire();
+            try {
+                IndexReader indexReader = indexSearcher.getIndexReader();
+                Bits liveDocs = MultiFields.getLiveDocs(indexReader);
+                for (int i = 0; i < indexReader.maxDoc(); ++i) {
+                    if (liveDocs != null && !liveDocs.get(i)) {
+                        continue;
+                    }
+                    Document hitDoc = indexReader.document(i);
+                    if (top.offer(words.size(), (float) cosineSimilarity.cosineSimilarity(originalVector, getVector(hitDoc)))) {
+                        words.add(hitDoc.getField(Word2VecIndexCreator.WORD_FIELD).stringValue());
+                    } else {
+                        words.add(null);
+                    }
+                }
+            } finally {
+                searcherManager.release(indexSearcher);
             }
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
 
         LOG.debug("Computed nearest neighbors in " + (System.currentTimeMillis() - now));
-        return coll;
+        return toPairs(top, i -> words.get((int) i));
     }
 
     private List<Pair> getTopNeighbors(float[] originalVector, Integer limit, Map<String, float[]> vectors) {
-        FixedSizeOrderedList coll = new FixedSizeOrderedList(limit);
         CosineSimilarity cosineSimilarity = new CosineSimilarity();
-        List<Pair> top = vectors.keySet().parallelStream().map(k -> {
-            return new ComparablePair(k, cosineSimilarity.cosineSimilarity(originalVector, vectors.get(k)));
-        }).collect(Collectors.toList());
-        coll.addAll(top);
+        List<String> words = new ArrayList<>(vectors.keySet());
+        TopKCollector top = IntStream.range(0, words.size()).parallel()
+                .collect(() -> new TopKCollector(limit),
+                        (collector, i) -> collector.offer(i, (float) cosineSimilarity.cosineSimilarity(originalVector, vectors.get(words.get(i)))),
+                        TopKCollector::merge);
 
-        return coll;
+        return toPairs(top, i -> words.get((int) i));
     }
 
-    private float[] getVector(Document doc) {
-        StoredField storedField = (StoredField) doc.getField(Word2VecIndexCreator.VECTOR_FIELD);
-
-        return TypeConverter.toFloatArray(storedField.binaryValue().bytes);
+    private static List<Pair> toPairs(TopKCollector top, LongFunction<String> words) {
+        long[] ids = top.sortDescending();
+        List<Pair> result = new ArrayList<>(ids.length);
+        for (int k = 0; k < ids.length; k++) {
+            result.add(new ComparablePair(words.apply(ids[k]), (double) top.getScore(k)));
+        }
+        return result;
     }
 
-    private IndexSearcher getIndexSearcher() {
-        IndexSearcher indexSearcher;
-        try {
-            IndexReader indexReader = DirectoryReader.open(FSDirectory.open(Paths.get(storePath)));
-            indexSearcher = new IndexSearcher(indexReader);
-        } catch (IOException ex) {
-            throw new RuntimeException("Error while creating index", ex);
-        }
+    private float[] getVector(Document doc) {
+        BytesRef bytes = doc.getField(Word2VecIndexCreator.VECTOR_FIELD).binaryValue();
 
-        return indexSearcher;
+        return TypeConverter.toFloatArray(bytes.bytes, bytes.offset, bytes.length, ByteOrder.BIG_ENDIAN);
     }
 
     private List<Pair> cacheIfNeeded(String word, List<Pair> nn, Integer limit) {
@@ -207,16 +426,6 @@ public class Word2VecIndexLookup {
         return nn;
     }
 
-    private String preprocessSearchString(String searchString) {
-        String finalString = searchString;//.replace(" ", "_"); // allows to search for multi-word keywords
-        for (String sym: LUCENE_SPECIAL_CHARACTERS) {
-            finalString = finalString.replace(sym, "\\" + sym);
-        }
-        finalString = finalString.replace("/", "\\/").replace("\\", "\\\\")
-                .replace(":", "\\:").replace("!", "\\!");
-        return finalString;
-    }
-
     public int getVectorDimension() { return this.vectorDimension; }
 
 }
@@ -17,9 +17,13 @@ package com.graphaware.nlp.ml.word2vec;
 
 import org.neo4j.logging.Log;
 
+import java.io.File;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class Word2VecModel {
 //    private static final Log LOG = LoggerFactory.getLogger(Word2VecModel.class);
@@ -31,50 +35,89 @@ public class Word2VecModel {
     private static final Log LOG = com.graphaware.common.log.LoggerFactory.getLogger(Word2VecModel.class);
 
     private final Map<String, Word2VecIndexLookup> models;
-    private String defaultModel;
+    private final Map<String, Word2VecImporter.Progress> loading;
+    private final ExecutorService loader;
+    private volatile String defaultModel;
 
     public Word2VecModel() {
-        models = new HashMap<>();
+        models = new ConcurrentHashMap<>();
+        loading = new ConcurrentHashMap<>();
+        loader = Executors.newSingleThreadExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "nlp-word2vec-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     protected final void init() {
-        List<String> modelsName = Word2VecIndexCreator.inspectDirectoryAndLoad(WORD2VEC_SOURCE_DIRECTORY, WORD2VEC_DEST_DIRECTORY, "en");
-        if (modelsName != null && modelsName.size() > 0) {
-            modelsName.forEach((modelName) -> {
-                LOG.info("Adding model: " + modelName);
-                Word2VecIndexLookup index = new Word2VecIndexLookup(WORD2VEC_DEST_DIRECTORY + modelName);
-                models.put(modelName, index);
-                if (defaultModel == null) {
-                    LOG.info("Setting default model to: " + modelName);
-                    defaultModel = modelName;
-                }
-            });
-        }
+        Word2VecIndexCreator.listSourceFiles(WORD2VEC_SOURCE_DIRECTORY).forEach((modelName, file) -> {
+            Map<String, File> sources = new HashMap<>();
+            sources.put(modelName, file);
+            load(modelName, sources, WORD2VEC_DEST_DIRECTORY, "en");
+        });
     }
 
-    public void createModelFromPaths(String sourcePath, String destPath, String modelName, String language) {
-        List<String> modelsName = Word2VecIndexCreator.inspectDirectoryAndLoad(sourcePath, destPath, language);
+    /**
+     * Imports (if needed) and opens the models in the background: they become available through
+     * {@link #getModel} once loaded, in the meantime {@link #getLoadingModels} reports their progress.
+     */
+    public CompletableFuture<Void> createModelFromPaths(String sourcePath, String destPath, String modelName, String language) {
         LOG.info("Checking models for source : " + sourcePath + " and destination " + destPath);
-        if (modelsName != null) {
-            modelsName.forEach(model -> {
-                Word2VecIndexLookup index = new Word2VecIndexLookup(destPath + model);
-                models.put(modelName, index);
-                if (defaultModel == null) {
-                    defaultModel = modelName;
+        return load(modelName, Word2VecIndexCreator.listSourceFiles(sourcePath), destPath, language);
+    }
+
+    private CompletableFuture<Void> load(String modelName, Map<String, File> sources, String destPath, String language) {
+        long size = 0;
+        for (File file : sources.values()) {
+            size += file.length();
+        }
+        Word2VecImporter.Progress progress = new Word2VecImporter.Progress(size);
+        loading.put(modelName, progress);
+        CompletableFuture<Void> result = CompletableFuture.runAsync(() -> {
+            sources.keySet().forEach((model) -> {
+                String indexPath = destPath + model;
+                if (Word2VecIndexCreator.loadFromFile(sources.get(model).getPath(), indexPath, false, language, progress)) {
+                    LOG.info("Adding model: " + modelName);
+                    putModel(modelName, new Word2VecIndexLookup(indexPath));
+                    if (defaultModel == null) {
+                        LOG.info("Setting default model to: " + modelName);
+                        defaultModel = modelName;
+                    }
                 }
             });
+        }, loader);
+        return result.whenComplete((ignored, ex) -> {
+            if (ex != null) {
+                LOG.error("Error while loading word2vec model " + modelName, ex);
+                progress.fail(ex);
+            } else if (progress.getFailure() == null) {
+                loading.remove(modelName, progress);
+            }
+        });
+    }
+
+    private void putModel(String modelName, Word2VecIndexLookup index) {
+        Word2VecIndexLookup previous = models.put(modelName, index);
+        if (previous != null && previous != index) {
+            previous.close();
         }
     }
 
     public Word2VecIndexLookup getModel(String modelName) {
         if (null == modelName || modelName.equals("") && defaultModel != null) {
-            return models.get(defaultModel);
+            String model = defaultModel;
+            return model != null ? models.get(model) : null;
         }
 
         if (models.containsKey(modelName)) {
             return models.get(modelName);
         }
 
+        Word2VecImporter.Progress progress = loading.get(modelName);
+        if (progress != null) {
+            throw new RuntimeException("Word2vec model " + modelName + " is not available yet (" + progress.getStatus() + ")");
+        }
+
         throw new RuntimeException("Word2vec model not found");
     }
 
@@ -82,16 +125,27 @@ public class Word2VecModel {
         return models;
     }
 
+    public Map<String, Word2VecImporter.Progress> getLoadingModels() {
+        return loading;
+    }
+
     public float[] getWordToVec(String lemma, String modelName) {
         if (models.isEmpty()) {
             return null;
         }
         if (modelName == null || modelName.equals("")) {
-            return models.get(defaultModel).searchIndex(lemma);
+            String model = defaultModel;
+            return model != null && models.containsKey(model) ? models.get(model).searchIndex(lemma) : null;
         } else if (models.containsKey(modelName)) {
             return models.get(modelName).searchIndex(lemma);
         }
         return null;
     }
 
+    public void close() {
+        loader.shutdownNow();
+        models.values().forEach(Word2VecIndexLookup::close);
+        models.clear();
+    }
+
 }
@@ -52,6 +52,11 @@ public class Word2VecProcessor extends AbstractExtension implements NLPExtension
         word2VecModel.init();
     }
 
+    @Override
+    public void shutdown() {
+        word2VecModel.close();
+    }
+
     public int attach(Word2VecRequest request) {
         try {
             Iterator<Node> tagsIterator;
@@ -118,6 +123,14 @@ public class Word2VecProcessor extends AbstractExtension implements NLPExtension
         return word2VecModel.getModel(modelName).getNearestNeighbors(value, limit);
     }
 
+    public List<Pair> getNearestNeighbors(String value, Integer limit, String modelName, int probes) {
+        return word2VecModel.getModel(modelName).getNearestNeighbors(value, limit, probes);
+    }
+
+    public void buildNearestNeighborsIndex(String modelName) {
+        word2VecModel.getModel(modelName).buildAnnIndex();
+    }
+
     public void computeNearestNeighbors(String modelName) {
         word2VecModel.getModel(modelName).loadNN();
     }
@@ -86,6 +86,25 @@ public class NLPModule extends BaseTxDrivenModule<Void> {
         return null;
     }
 
+    @Override
+    public void afterCommit(Void state) {
+        // called on the thread of the transaction, listeners use it to tell transactions apart
+        getNlpManager().getEventDispatcher().notify(NLPEvents.TRANSACTION_AFTER_COMMIT, null);
+    }
+
+    @Override
+    public void afterRollback(Void state) {
+        getNlpManager().getEventDispatcher().notify(NLPEvents.TRANSACTION_AFTER_ROLLBACK, null);
+    }
+
+    @Override
+    public void shutdown() {
+        if (nlpManager != null) {
+            nlpManager.shutdown();
+        }
+        super.shutdown();
+    }
+
     protected void checkMigrations(DynamicConfiguration dynamicConfiguration) {
         MigrationHandler migrationHandler = new MigrationHandler(database, dynamicConfiguration);
         migrationHandler.migrate();
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.persistence;
+
+import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.nlp.NLPManager;
+import com.graphaware.nlp.configuration.DynamicConfiguration;
+import com.graphaware.nlp.persistence.constants.Labels;
+import com.graphaware.nlp.persistence.constants.Properties;
+import com.graphaware.nlp.persistence.constants.Relationships;
+import com.graphaware.nlp.util.TransactionBatches;
+import com.graphaware.tx.event.improved.api.ImprovedTransactionData;
+import org.neo4j.graphdb.*;
+import org.neo4j.logging.Log;
+
+import java.util.*;
+
+/**
+ * Document frequency statistics used by the TF-IDF vector queries. The number of annotated texts
+ * containing a tag is kept in the {@link Properties#DOCUMENT_FREQUENCY} property of the tag and
+ * updated in the transaction that stores, re-annotates or deletes a text, so the queries read it
+ * instead of expanding every sentence of the tag. The document count is read from the label count
+ * store, which is already maintained transactionally by the database.
+ */
+public class DocumentFrequencyStatistics {
+
+    private static final Log LOG = LoggerFactory.getLogger(DocumentFrequencyStatistics.class);
+
+    private final GraphDatabaseService database;
+
+    public DocumentFrequencyStatistics(GraphDatabaseService database) {
+        this.database = database;
+    }
+
+    public long getDocumentCount() {
+        String query = "MATCH (d:`" + configuration().getLabelFor(Labels.AnnotatedText).name() + "`) RETURN count(d) AS documentsCount";
+        try (Result result = database.execute(query)) {
+            return result.hasNext() ? ((Number) result.next().get("documentsCount")).longValue() : 0L;
+        }
+    }
+
+    public long getDocumentFrequency(Node tag) {
+        Object value = tag.getProperty(configuration().getPropertyKeyFor(Properties.DOCUMENT_FREQUENCY), null);
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+    /**
+     * @return the document frequency of the tag with the given id, 0 if the tag does not exist or
+     * has no statistics yet
+     */
+    public long getDocumentFrequency(long tag) {
+        try {
+            return getDocumentFrequency(database.getNodeById(tag));
+        } catch (NotFoundException ex) {
+            return 0L;
+        }
+    }
+
+    /**
+     * @return the ids of the distinct tags of the annotated text, which may also be a snapshot of a
+     * node deleted in the current transaction
+     */
+    public Set<Long> getTagIds(Node annotatedText) {
+        Set<Long> tags = new HashSet<>();
+        RelationshipType hasTag = configuration().getRelationshipFor(Relationships.HAS_TAG);
+        for (Relationship containsSentence : annotatedText.getRelationships(configuration().getRelationshipFor(Relationships.CONTAINS_SENTENCE), Direction.OUTGOING)) {
+            for (Relationship relationship : containsSentence.getEndNode().getRelationships(hasTag, Direction.OUTGOING)) {
+                tags.add(relationship.getEndNodeId());
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * Increments the document frequency of the tags a text gained and decrements the one of the
+     * tags it lost. Must be called within the transaction changing the text; tags are locked in id
+     * order before being read so that concurrent annotations do not lose updates. Tags without the
+     * property were there before the statistics were maintained: they are left to the counting
+     * fallback of the queries until {@link #rebuild(int)} runs, instead of starting from 0.
+     */
+    public void update(Set<Long> previousTags, Set<Long> currentTags) {
+        SortedMap<Long, Integer> changes = new TreeMap<>();
+        currentTags.stream().filter(tag -> !previousTags.contains(tag)).forEach(tag -> changes.put(tag, 1));
+        previousTags.stream().filter(tag -> !currentTags.contains(tag)).forEach(tag -> changes.put(tag, -1));
+        if (changes.isEmpty()) {
+            return;
+        }
+        String key = configuration().getPropertyKeyFor(Properties.DOCUMENT_FREQUENCY);
+        try (Transaction tx = database.beginTx()) {
+            for (Map.Entry<Long, Integer> change : changes.entrySet()) {
+                Node tag;
+                try {
+                    tag = database.getNodeById(change.getKey());
+                } catch (NotFoundException ex) {
+                    continue;
+                }
+                tx.acquireWriteLock(tag);
+                Object value = tag.getProperty(key, null);
+                if (value instanceof Number) {
+                    tag.setProperty(key, Math.max(0L, ((Number) value).longValue() + change.getValue()));
+                }
+            }
+            tx.success();
+        }
+    }
+
+    /**
+     * Decrements the document frequency of the tags of the annotated texts deleted by the
+     * transaction, the tags deleted along with them are skipped.
+     */
+    public void onTransaction(ImprovedTransactionData transactionData) {
+        Label annotatedText = configuration().getLabelFor(Labels.AnnotatedText);
+        for (Node deleted : transactionData.getAllDeletedNodes()) {
+            if (!deleted.hasLabel(annotatedText)) {
+                continue;
+            }
+            Set<Long> tags = getTagIds(deleted);
+            tags.removeIf(tag -> isDeleted(transactionData, tag));
+            update(tags, Collections.emptySet());
+        }
+    }
+
+    private boolean isDeleted(ImprovedTransactionData transactionData, long tag) {
+        try {
+            return transactionData.hasBeenDeleted(database.getNodeById(tag));
+        } catch (NotFoundException ex) {
+            return true;
+        }
+    }
+
+    /**
+     * Recomputes the document frequency of every tag from the graph, for databases annotated
+     * before the statistics were maintained. Values are written through {@link TransactionBatches}:
+     * in the transaction of the caller when there is one, otherwise in batches committed on their
+     * own, in which case texts annotated while the rebuild runs may be counted twice or missed.
+     *
+     * @return the number of tags updated
+     */
+    public long rebuild(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be greater than 0, got " + batchSize);
+        }
+        long start = System.currentTimeMillis();
+        String key = configuration().getPropertyKeyFor(Properties.DOCUMENT_FREQUENCY);
+        long stored = TransactionBatches.write(database, "rebuild()", countDocumentFrequencies().entrySet().iterator(), batchSize,
+                entry -> database.getNodeById(entry.getKey()).setProperty(key, entry.getValue()));
+        LOG.info("Stored document frequencies of " + stored + " tags in " + (System.currentTimeMillis() - start) + "ms");
+
+        return stored;
+    }
+
+    private Map<Long, Long> countDocumentFrequencies() {
+        Map<Long, Long> frequencies = new HashMap<>();
+        try (Transaction tx = database.beginTx()) {
+            database.findNodes(configuration().getLabelFor(Labels.AnnotatedText)).forEachRemaining(node -> {
+                getTagIds(node).forEach(tag -> frequencies.merge(tag, 1L, Long::sum));
+            });
+            database.findNodes(configuration().getLabelFor(Labels.Tag)).forEachRemaining(node -> {
+                frequencies.putIfAbsent(node.getId(), 0L);
+            });
+            tx.success();
+        }
+        return frequencies;
+    }
+
+    private DynamicConfiguration configuration() {
+        return NLPManager.getInstance().getConfiguration();
+    }
+}
@@ -36,6 +36,7 @@ public final class Properties {
     public static final String PHRASE_TYPE = "type";
     public static final String LANGUAGE = "language";
     public static final String TF = "tf";
+    public static final String DOCUMENT_FREQUENCY = "documentFrequency";
     public static final String OCCURRENCE_BEGIN = "startPosition";
     public static final String OCCURRENCE_END = "endPosition";
     public static final String DEPENDENCY_SPECIFIC = "specific";
@@ -16,8 +16,10 @@
 package com.graphaware.nlp.persistence.persisters;
 
 import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.nlp.configuration.SettingsConstants;
 import com.graphaware.nlp.domain.AnnotatedText;
 import com.graphaware.nlp.domain.Sentence;
+import com.graphaware.nlp.persistence.DocumentFrequencyStatistics;
 import com.graphaware.nlp.persistence.PersistenceRegistry;
 import com.graphaware.nlp.persistence.constants.Labels;
 import com.graphaware.nlp.persistence.constants.Properties;
@@ -27,6 +29,8 @@ import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.logging.Log;
 
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class AnnotatedTextPersister extends AbstractPersister implements Persister<AnnotatedText> {
@@ -48,13 +52,22 @@ public class AnnotatedTextPersister extends AbstractPersister implements Persist
         long startTime = -System.currentTimeMillis();
         Node tmpAnnotatedNode = getIfExist(configuration().getLabelFor(Labels.AnnotatedText), Properties.PROPERTY_ID, id);
         final Node annotatedTextNode;
+        DocumentFrequencyStatistics statistics = manager.getDocumentFrequencyStatistics();
+        final Set<Long> previousTags;
         if (tmpAnnotatedNode != null) {
             annotatedTextNode = tmpAnnotatedNode;
+            previousTags = statistics.getTagIds(annotatedTextNode);
         } else {
+            previousTags = Collections.emptySet();
             annotatedTextNode = getOrCreate(annotatedText, id, txId);
 
         }
-        iterateSentencesAndStore(annotatedTextNode, annotatedText, id, txId);
+        if (isBatchedPersistence()) {
+            storeSentencesBatched(annotatedTextNode, annotatedText, id, txId);
+        } else {
+            iterateSentencesAndStore(annotatedTextNode, annotatedText, id, txId);
+        }
+        statistics.update(previousTags, statistics.getTagIds(annotatedTextNode));
         tmpAnnotatedNode = annotatedTextNode;
 
         LOG.info("end storing annotatedText " + id + ". It took: " + (System.currentTimeMillis() + startTime));
@@ -110,6 +123,27 @@ public class AnnotatedTextPersister extends AbstractPersister implements Persist
         });
     }
 
+    private void storeSentencesBatched(Node annotatedTextNode, AnnotatedText annotatedText, String id, String txId) {
+        SentencePersister sentencePersister = (SentencePersister) getPersister(Sentence.class);
+        DocumentWriteContext context = new DocumentWriteContext();
+        annotatedText.getSentences().sort((Sentence o1, Sentence o2) -> o1.compareTo(o2));
+        Node previousSentence = null;
+        for (Sentence sentence : annotatedText.getSentences()) {
+            Node sentenceNode = sentencePersister.persist(sentence, id, txId, context);
+            relateSentenceToAnnotatedText(sentenceNode, annotatedTextNode, previousSentence == null);
+            if (previousSentence != null) {
+                relatePreviousSentenceToNext(previousSentence, sentenceNode);
+            }
+            previousSentence = sentenceNode;
+        }
+        sentencePersister.storeCoreferences(context);
+    }
+
+    private boolean isBatchedPersistence() {
+        Object value = configuration().getSettingValueFor(SettingsConstants.BATCHED_PERSISTENCE);
+        return value == null || Boolean.parseBoolean(value.toString());
+    }
+
     private void relateSentenceToAnnotatedText(Node sentence, Node annotatedText, boolean isFirstSentence) {
         annotatedText.createRelationshipTo(
                 sentence,
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.persistence.persisters;
+
+import com.graphaware.nlp.domain.Sentence;
+import com.graphaware.nlp.domain.TagOccurrence;
+import org.neo4j.graphdb.Node;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Node handles created while persisting a single {@link com.graphaware.nlp.domain.AnnotatedText}, so that
+ * tags, tag occurrences and phrases are resolved from memory instead of being looked up again in the graph.
+ */
+class DocumentWriteContext {
+
+    private final Map<String, Node> tagNodes = new HashMap<>();
+    private final Map<String, Node> phraseNodes = new HashMap<>();
+    private final Map<Integer, Node> sentenceNodes = new HashMap<>();
+    private final Map<Integer, Map<String, Node>> tagOccurrenceNodes = new HashMap<>();
+    private final List<Sentence> sentences = new ArrayList<>();
+
+    Map<String, Node> getTagNodes() {
+        return tagNodes;
+    }
+
+    Node getPhraseNode(String content) {
+        return phraseNodes.get(content);
+    }
+
+    void putPhraseNode(String content, Node node) {
+        phraseNodes.put(content, node);
+    }
+
+    void addSentence(Sentence sentence, Node sentenceNode) {
+        sentences.add(sentence);
+        sentenceNodes.put(sentence.getSentenceNumber(), sentenceNode);
+    }
+
+    List<Sentence> getSentences() {
+        return sentences;
+    }
+
+    Node getSentenceNode(Sentence sentence) {
+        return sentenceNodes.get(sentence.getSentenceNumber());
+    }
+
+    void putTagOccurrenceNode(Sentence sentence, TagOccurrence occurrence, Node node) {
+        tagOccurrenceNodes.computeIfAbsent(sentence.getSentenceNumber(), k -> new HashMap<>())
+                .putIfAbsent(spanKey(occurrence), node);
+    }
+
+    Node getTagOccurrenceNode(Sentence sentence, TagOccurrence occurrence) {
+        Map<String, Node> nodes = tagOccurrenceNodes.get(sentence.getSentenceNumber());
+        return nodes != null ? nodes.get(spanKey(occurrence)) : null;
+    }
+
+    private static String spanKey(TagOccurrence occurrence) {
+        return occurrence.getSpan().first() + "_" + occurrence.getSpan().second();
+    }
+}
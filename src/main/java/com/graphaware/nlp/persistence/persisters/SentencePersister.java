@@ -25,6 +25,7 @@ import com.graphaware.nlp.util.TagUtils;
 import org.neo4j.graphdb.*;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class SentencePersister extends AbstractPersister implements Persister<Sentence> {
@@ -55,6 +56,86 @@ public class SentencePersister extends AbstractPersister implements Persister<Se
         return sentenceNode;
     }
 
+    Node persist(Sentence sentence, String id, String txId, DocumentWriteContext context) {
+        Node existingNode = get(sentence, id);
+        final Node sentenceNode;
+        if (existingNode == null) {
+            sentenceNode = getOrCreate(sentence, id, txId);
+        } else {
+            sentenceNode = existingNode;
+            update(sentenceNode, sentence, id);
+        }
+        context.addSentence(sentence, sentenceNode);
+        TagPersister tagPersister = (TagPersister) getPersister(Tag.class);
+        for (Tag tag : sentence.getTags().values()) {
+            relateSentenceToTag(sentenceNode, tagPersister.getOrCreate(tag, txId, context.getTagNodes()), tag.getMultiplicity());
+        }
+
+        final Map<String, Node> tokenIdsToNodes = new HashMap<>();
+        for (List<TagOccurrence> occurrences : sentence.getTagOccurrences().values()) {
+            for (TagOccurrence tagAtPosition : occurrences) {
+                Node tagNode = tagPersister.getOrCreate(tagAtPosition.getElement(), txId, context.getTagNodes());
+                Node tagOccurrenceNode = createTagOccurrenceNode(tagAtPosition);
+                relateTagOccurrenceToTag(tagOccurrenceNode, tagNode);
+                relateSentenceToTagOccurrence(sentenceNode, tagOccurrenceNode);
+                context.putTagOccurrenceNode(sentence, tagAtPosition, tagOccurrenceNode);
+                tagAtPosition.getPartIds().forEach(tokenId -> tokenIdsToNodes.put(tokenId, tagOccurrenceNode));
+            }
+        }
+
+        sentence.getTypedDependencies().forEach(typedDependency -> {
+            Node sourceNode = tokenIdsToNodes.get(typedDependency.getSource());
+            Node targetNode = tokenIdsToNodes.get(typedDependency.getTarget());
+            if (sourceNode != null && targetNode != null) {
+                relateTypedDependencySourceAndTarget(sourceNode, targetNode, typedDependency);
+            }
+        });
+
+        sentence.getPhraseOccurrences().values().forEach(phraseOccurrenceAtPosition -> {
+            phraseOccurrenceAtPosition.values().forEach(occurrence -> {
+                Node phraseNode = getOrCreatePhrase(occurrence.getElement(), context);
+                relateSentenceToPhrase(sentenceNode, phraseNode);
+                Node phraseOccurrenceNode = createPhraseOccurrence(occurrence);
+                relateSentenceToPhraseOccurrence(sentenceNode, phraseOccurrenceNode);
+                relatePhraseOccurrenceToPhrase(phraseOccurrenceNode, phraseNode);
+            });
+        });
+        assignSentimentLabel(sentence, sentenceNode);
+
+        return sentenceNode;
+    }
+
+    void storeCoreferences(DocumentWriteContext context) {
+        RelationshipType corefType = RelationshipType.withName("COREF");
+        RelationshipType coreferenceType = RelationshipType.withName("COREFERENCE");
+        for (Sentence sentence : context.getSentences()) {
+            sentence.getPhraseOccurrences().values().forEach(phraseOccurrenceAtPosition -> {
+                phraseOccurrenceAtPosition.values().forEach(occurrence -> {
+                    Phrase reference = occurrence.getElement().getReference();
+                    if (reference != null) {
+                        Node phraseNode = context.getPhraseNode(occurrence.getElement().getContent());
+                        Node referenceNode = getPhraseNode(reference, context);
+                        if (phraseNode != null && referenceNode != null && !relationshipExistBetween(phraseNode, referenceNode, coreferenceType)) {
+                            phraseNode.createRelationshipTo(referenceNode, coreferenceType);
+                        }
+                    }
+                });
+            });
+
+            sentence.getTagOccurrences().values().forEach(tagOccurrences -> {
+                tagOccurrences.forEach(tagOccurrence -> {
+                    if (tagOccurrence.hasReference()) {
+                        Node occurrenceFrom = context.getTagOccurrenceNode(sentence, tagOccurrence);
+                        Node occurrenceTo = context.getTagOccurrenceNode(tagOccurrence.getCoreference().getSentence(), tagOccurrence.getCoreference().getTagOccurrence());
+                        if (occurrenceFrom != null && occurrenceTo != null && !relationshipExistBetween(occurrenceFrom, occurrenceTo, corefType)) {
+                            occurrenceFrom.createRelationshipTo(occurrenceTo, corefType);
+                        }
+                    }
+                });
+            });
+        }
+    }
+
     @Override
     public Sentence fromNode(Node node, Object... properties) {
         Map<String, Object> nodeProperties = node.getAllProperties();
@@ -270,6 +351,29 @@ public class SentencePersister extends AbstractPersister implements Persister<Se
         return node;
     }
 
+    private Node getOrCreatePhrase(Phrase phrase, DocumentWriteContext context) {
+        Node node = getPhraseNode(phrase, context);
+        if (node == null) {
+            node = database.createNode(configuration().getLabelFor(Labels.Phrase));
+        }
+        updatePhrase(phrase, node);
+        context.putPhraseNode(phrase.getContent(), node);
+
+        return node;
+    }
+
+    private Node getPhraseNode(Phrase phrase, DocumentWriteContext context) {
+        Node node = context.getPhraseNode(phrase.getContent());
+        if (node == null) {
+            node = getPhraseNode(phrase);
+            if (node != null) {
+                context.putPhraseNode(phrase.getContent(), node);
+            }
+        }
+
+        return node;
+    }
+
     private Node getPhraseNode(Phrase phrase) {
        return database.findNode(configuration().getLabelFor(Labels.Phrase),
                 configuration().getPropertyKeyFor(Properties.CONTENT_VALUE),
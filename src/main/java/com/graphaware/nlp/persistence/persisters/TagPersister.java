@@ -72,6 +72,8 @@ public class TagPersister extends AbstractPersister implements Persister<Tag> {
 
         if (null == node) {
             node = database.createNode(configuration().getLabelFor(Labels.Tag));
+            // maintained from now on by DocumentFrequencyStatistics, which skips tags without the property
+            node.setProperty(configuration().getPropertyKeyFor(Properties.DOCUMENT_FREQUENCY), 0L);
         }
 
         if (shouldBeUpdated(tag, node)) {
@@ -90,6 +92,20 @@ public class TagPersister extends AbstractPersister implements Persister<Tag> {
         return node;
     }
 
+    public Node getOrCreate(Tag tag, String txId, Map<String, Node> knownTags) {
+        Node node = knownTags.get(tag.getId());
+        if (null == node) {
+            node = getOrCreate(tag, tag.getId(), txId);
+            knownTags.put(tag.getId(), node);
+        } else if (shouldBeUpdated(tag, node)) {
+            assignNamedEntityOnTag(node, tag);
+            assignPartOfSpeechOnTag(node, tag);
+            storeExtraProperties(tag, node);
+        }
+
+        return node;
+    }
+
     private boolean shouldBeUpdated(Tag tag, Node tagNode) {
         if (tagNode.hasProperty(configuration().getPropertyKeyFor(Properties.PART_OF_SPEECH))) {
             String[] pos = (String[]) tagNode.getProperty(configuration().getPropertyKeyFor(Properties.PART_OF_SPEECH));
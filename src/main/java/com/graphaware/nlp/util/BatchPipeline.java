@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.util;
+
+import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.nlp.dsl.result.BatchResult;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Processes items on a pool of workers and stores their results from a single writer thread, one transaction per
+ * batch. Both the number of items in flight and the queue of results waiting for the writer are bounded, so memory
+ * stays flat however large the input is. Waits on the writer are done by polling, so a writer that stops abnormally
+ * aborts the run instead of leaving the workers blocked on a full queue.
+ * <p>
+ * An instance is meant for a single {@link #run(Supplier, Worker, BatchWriter)}.
+ */
+public class BatchPipeline<I, T> {
+
+    private static final Log LOG = LoggerFactory.getLogger(BatchPipeline.class);
+
+    private static final long POLL_MILLIS = 100;
+
+    private final GraphDatabaseService database;
+    private final String name;
+    private final int batchSize;
+    private final int concurrency;
+    private final BlockingQueue<Optional<T>> results;
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    public BatchPipeline(GraphDatabaseService database, String name, int batchSize, int concurrency) {
+        if (batchSize <= 0 || concurrency <= 0) {
+            throw new IllegalArgumentException("batchSize and concurrency must be greater than 0");
+        }
+        this.database = database;
+        this.name = name;
+        this.batchSize = batchSize;
+        this.concurrency = concurrency;
+        this.results = new ArrayBlockingQueue<>(batchSize * 2);
+    }
+
+    /**
+     * Computes the result of a single item, outside of any transaction. Returning null counts the item as failed.
+     */
+    public interface Worker<I, T> {
+        T process(I item) throws Exception;
+    }
+
+    /**
+     * Stores a batch of results; called by the writer thread within the transaction of the batch.
+     */
+    public interface BatchWriter<T> {
+        void write(List<T> batch);
+    }
+
+    /**
+     * @param items supplies the items to process; called within a transaction on the calling thread, which stays
+     *              open while the items are iterated
+     */
+    public BatchResult run(Supplier<Iterator<I>> items, Worker<I, T> worker, BatchWriter<T> batchWriter) {
+        long start = System.currentTimeMillis();
+        Semaphore inFlight = new Semaphore(concurrency * 2);
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> writerTask = writer.submit(() -> {
+                storeBatches(batchWriter, start);
+                return null;
+            });
+            try (Transaction tx = database.beginTx()) {
+                Iterator<I> iterator = items.get();
+                while (iterator.hasNext()) {
+                    I item = iterator.next();
+                    while (!inFlight.tryAcquire(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        checkWriter(writerTask);
+                    }
+                    workers.execute(() -> {
+                        try {
+                            T result = worker.process(item);
+                            if (result != null) {
+                                enqueue(Optional.of(result), writerTask);
+                            } else {
+                                failed.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            LOG.error("Error while processing " + item + " in " + name, e);
+                            failed.incrementAndGet();
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                }
+                tx.success();
+            }
+            workers.shutdown();
+            while (!workers.awaitTermination(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkWriter(writerTask);
+            }
+            enqueue(Optional.empty(), writerTask);
+            writerTask.get();
+        } catch (ExecutionException e) {
+            LOG.error("Error while storing the results of " + name, e.getCause());
+            throw new RuntimeException(e.getCause());
+        } catch (Exception e) {
+            LOG.error("Error while running " + name, e);
+            throw new RuntimeException(e);
+        } finally {
+            workers.shutdownNow();
+            writer.shutdownNow();
+        }
+        long time = System.currentTimeMillis() - start;
+        LOG.info(name + " completed: " + processed.get() + " items stored in " + batches.get() + " batches, " + failed.get() + " failed, in " + time + "ms");
+
+        return new BatchResult(processed.get(), failed.get(), batches.get(), time);
+    }
+
+    private void enqueue(Optional<T> result, Future<?> writerTask) throws InterruptedException, ExecutionException {
+        while (!results.offer(result, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            checkWriter(writerTask);
+        }
+    }
+
+    private void checkWriter(Future<?> writerTask) throws InterruptedException, ExecutionException {
+        if (writerTask.isDone()) {
+            writerTask.get();
+            throw new IllegalStateException("The writer of " + name + " stopped before all results were stored");
+        }
+    }
+
+    private void storeBatches(BatchWriter<T> batchWriter, long start) throws InterruptedException {
+        boolean completed = false;
+        while (!completed) {
+            List<Optional<T>> queued = new ArrayList<>();
+            queued.add(results.take());
+            results.drainTo(queued, batchSize - 1);
+            List<T> batch = new ArrayList<>(queued.size());
+            for (Optional<T> result : queued) {
+                if (result.isPresent()) {
+                    batch.add(result.get());
+                } else {
+                    completed = true;
+                }
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            try {
+                try (Transaction tx = database.beginTx()) {
+                    batchWriter.write(batch);
+                    tx.success();
+                }
+                processed.addAndGet(batch.size());
+                batches.incrementAndGet();
+                long time = System.currentTimeMillis() - start;
+                LOG.info(name + ": " + processed.get() + " items stored, " + failed.get() + " failed, "
+                        + String.format("%.2f", processed.get() * 1000.0d / Math.max(1, time)) + " items/s");
+            } catch (Exception e) {
+                LOG.error("Error while storing a batch of " + batch.size() + " results of " + name, e);
+                failed.addAndGet(batch.size());
+            }
+        }
+    }
+}
@@ -19,6 +19,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 
+/**
+ * @deprecated every insertion shifts the list, use {@link TopKCollector} to keep the top k scored ids
+ */
+@Deprecated
 public class FixedSizeOrderedList<T extends Comparable> extends ArrayList<T> {
     
     private final int maxSize;
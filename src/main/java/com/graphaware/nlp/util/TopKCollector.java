@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.util;
+
+/**
+ * Bounded collector of the k highest scored ids, kept in a min-heap over primitive arrays. The lowest retained score
+ * is at the root, so rejecting a candidate that does not beat it costs a single comparison. Collectors filled by
+ * parallel workers are combined with {@link #merge(TopKCollector)}.
+ */
+public final class TopKCollector {
+
+    private static final ThreadLocal<TopKCollector> THREAD_COLLECTOR = new ThreadLocal<>();
+
+    private final long[] ids;
+    private final float[] scores;
+    private int size;
+
+    public TopKCollector(int k) {
+        this.ids = new long[Math.max(0, k)];
+        this.scores = new float[Math.max(0, k)];
+    }
+
+    /**
+     * An empty collector owned by the calling thread, reused between calls; its content must be consumed before
+     * the same thread asks for it again.
+     */
+    public static TopKCollector forCurrentThread(int k) {
+        TopKCollector collector = THREAD_COLLECTOR.get();
+        if (collector == null || collector.capacity() != Math.max(0, k)) {
+            collector = new TopKCollector(k);
+            THREAD_COLLECTOR.set(collector);
+        }
+        collector.clear();
+        return collector;
+    }
+
+    public int capacity() {
+        return ids.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == ids.length;
+    }
+
+    /**
+     * @return the score a candidate has to exceed to be retained once the collector is full
+     */
+    public float threshold() {
+        return isFull() && size > 0 ? scores[0] : Float.NEGATIVE_INFINITY;
+    }
+
+    public boolean offer(long id, float score) {
+        if (size < ids.length) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+            return true;
+        }
+        if (size == 0 || score <= scores[0]) {
+            return false;
+        }
+        ids[0] = id;
+        scores[0] = score;
+        siftDown(0, size);
+        return true;
+    }
+
+    public TopKCollector merge(TopKCollector other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.ids[i], other.scores[i]);
+        }
+        return this;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Sorts the retained entries by descending score and returns their ids; {@link #getScore(int)} then gives
+     * the matching scores. No more entries can be offered until the collector is cleared.
+     */
+    public long[] sortDescending() {
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        long[] sorted = new long[size];
+        System.arraycopy(ids, 0, sorted, 0, size);
+        return sorted;
+    }
+
+    public long getId(int i) {
+        return ids[i];
+    }
+
+    public float getScore(int i) {
+        return scores[i];
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (scores[parent] <= scores[i]) {
+                return;
+            }
+            swap(parent, i);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int end) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < end && scores[left] < scores[smallest]) {
+                smallest = left;
+            }
+            if (right < end && scores[right] < scores[smallest]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.util;
+
+import com.graphaware.common.log.LoggerFactory;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Writes items to the graph in batches. Called without an open transaction, each batch is committed in its own
+ * transaction. Called within one (e.g. from a procedure), the items are written in the transaction of the caller,
+ * as nested transactions join it anyway: they see the nodes it has not committed yet and are rolled back with it.
+ */
+public final class TransactionBatches {
+
+    private static final Log LOG = LoggerFactory.getLogger(TransactionBatches.class);
+
+    private TransactionBatches() {
+    }
+
+    /**
+     * Items whose node no longer exists are skipped. Outside of a transaction, a failing batch is logged and the next
+     * one is attempted; within one, the failure is thrown to the caller.
+     *
+     * @return the number of items written
+     */
+    public static <T> long write(GraphDatabaseService database, String name, Iterator<T> items, int batchSize, Consumer<T> writer) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be greater than 0, got " + batchSize);
+        }
+        if (hasTransaction(database)) {
+            long stored = 0;
+            while (items.hasNext()) {
+                if (write(name, items.next(), writer)) {
+                    stored++;
+                }
+            }
+            return stored;
+        }
+        long stored = 0;
+        List<T> batch = new ArrayList<>(Math.min(batchSize, 10000));
+        while (items.hasNext()) {
+            batch.clear();
+            while (batch.size() < batchSize && items.hasNext()) {
+                batch.add(items.next());
+            }
+            int count = 0;
+            try (Transaction tx = database.beginTx()) {
+                for (T item : batch) {
+                    if (write(name, item, writer)) {
+                        count++;
+                    }
+                }
+                tx.success();
+            } catch (Exception e) {
+                LOG.error(name + " failed on a batch of " + batch.size() + ": " + e.getMessage());
+                continue;
+            }
+            stored += count;
+        }
+        return stored;
+    }
+
+    /**
+     * @return true if a transaction is bound to the calling thread, in which case a new one would only join it
+     */
+    public static boolean hasTransaction(GraphDatabaseService database) {
+        return database instanceof GraphDatabaseAPI
+                && ((GraphDatabaseAPI) database).getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class).hasTransaction();
+    }
+
+    private static <T> boolean write(String name, T item, Consumer<T> writer) {
+        try {
+            writer.accept(item);
+            return true;
+        } catch (NotFoundException e) {
+            LOG.warn(name + ": " + e.getMessage());
+            return false;
+        }
+    }
+}
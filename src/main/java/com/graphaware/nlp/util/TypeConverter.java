@@ -16,6 +16,9 @@
 package com.graphaware.nlp.util;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -24,46 +27,68 @@ import java.util.Set;
 import org.neo4j.logging.Log;
 import com.graphaware.common.log.LoggerFactory;
 
+/**
+ * Conversions between stored property values and Java types. Primitive arrays are converted to and from their binary
+ * form by copying the whole array through a single typed view of the buffer; the default byte order is big-endian,
+ * which is the layout of already stored vectors.
+ */
 public class TypeConverter {
 
     private static final Log LOG = LoggerFactory.getLogger(TypeConverter.class);
 
     public static byte[] toByteArray(double[] doubleArray) {
-        int times = Double.SIZE / Byte.SIZE;
-        byte[] bytes = new byte[doubleArray.length * times];
-        for (int i = 0; i < doubleArray.length; i++) {
-            ByteBuffer.wrap(bytes, i * times, times).putDouble(doubleArray[i]);
-        }
+        return toByteArray(doubleArray, ByteOrder.BIG_ENDIAN);
+    }
+
+    public static byte[] toByteArray(double[] doubleArray, ByteOrder order) {
+        byte[] bytes = new byte[doubleArray.length * Double.BYTES];
+        ByteBuffer.wrap(bytes).order(order).asDoubleBuffer().put(doubleArray);
         return bytes;
     }
 
     public static byte[] toByteArray(float[] floats) {
-        int times = Float.SIZE / Byte.SIZE;
-        byte[] bytes = new byte[floats.length * times];
-        for (int i = 0; i < floats.length; i++) {
-            ByteBuffer.wrap(bytes, i * times, times).putFloat(floats[i]);
-        }
+        return toByteArray(floats, ByteOrder.BIG_ENDIAN);
+    }
+
+    public static byte[] toByteArray(float[] floats, ByteOrder order) {
+        byte[] bytes = new byte[floats.length * Float.BYTES];
+        ByteBuffer.wrap(bytes).order(order).asFloatBuffer().put(floats);
         return bytes;
     }
 
     public static double[] toDoubleArray(byte[] byteArray) {
-        int times = Double.SIZE / Byte.SIZE;
-        double[] doubles = new double[byteArray.length / times];
-        for (int i = 0; i < doubles.length; i++) {
-            doubles[i] = ByteBuffer.wrap(byteArray, i * times, times).getDouble();
-        }
+        return toDoubleArray(byteArray, 0, byteArray.length, ByteOrder.BIG_ENDIAN);
+    }
+
+    public static double[] toDoubleArray(byte[] byteArray, int offset, int length, ByteOrder order) {
+        DoubleBuffer buffer = asDoubleBuffer(byteArray, offset, length, order);
+        double[] doubles = new double[buffer.remaining()];
+        buffer.get(doubles);
         return doubles;
     }
 
     public static float[] toFloatArray(byte[] byteArray) {
-        int times = Float.SIZE / Byte.SIZE;
-        float[] floats = new float[byteArray.length / times];
-        for (int i = 0; i < floats.length; i++) {
-            floats[i] = ByteBuffer.wrap(byteArray, i * times, times).getFloat();
-        }
+        return toFloatArray(byteArray, 0, byteArray.length, ByteOrder.BIG_ENDIAN);
+    }
+
+    public static float[] toFloatArray(byte[] byteArray, int offset, int length, ByteOrder order) {
+        FloatBuffer buffer = asFloatBuffer(byteArray, offset, length, order);
+        float[] floats = new float[buffer.remaining()];
+        buffer.get(floats);
         return floats;
     }
 
+    /**
+     * Read-only views over stored bytes, for callers that only iterate the values and do not need a copy.
+     */
+    public static FloatBuffer asFloatBuffer(byte[] byteArray, int offset, int length, ByteOrder order) {
+        return ByteBuffer.wrap(byteArray, offset, length).slice().asReadOnlyBuffer().order(order).asFloatBuffer();
+    }
+
+    public static DoubleBuffer asDoubleBuffer(byte[] byteArray, int offset, int length, ByteOrder order) {
+        return ByteBuffer.wrap(byteArray, offset, length).slice().asReadOnlyBuffer().order(order).asDoubleBuffer();
+    }
+
     public static String[] convertStringListToArray(List<String> list) {
         return list.toArray(new String[0]);
     }
@@ -31,13 +31,19 @@ public class QueryBasedVectorComputation implements VectorComputation {
 
     private GraphDatabaseService database;
 
+    /**
+     * Reads the document frequency maintained on the tags, the sentences of a tag are only expanded
+     * when the statistics have not been built yet.
+     */
     public final static String DEFAULT_VECTOR_QUERY = "MATCH (doc:AnnotatedText)\n"
             + "WITH count(doc) as documentsCount\n"
             + "MATCH (input:AnnotatedText)-[:CONTAINS_SENTENCE]->(s:Sentence)-[ht:HAS_TAG]->(tag:Tag)\n"
             + "WHERE id(input) = {id}\n"
-            + "MATCH (tag)<-[:HAS_TAG]-(:Sentence)<-[:CONTAINS_SENTENCE]-(document:AnnotatedText)\n"
-            + "WITH tag, ht.tf as tf, count(distinct document) as documentsCountForTag, documentsCount\n"
-            + "RETURN distinct id(tag) as tagId, sum(tf) as tf, (1.0f + 1.0f*documentsCount)/documentsCountForTag as idf";
+            + "WITH tag, sum(ht.tf) as tf, documentsCount\n"
+            + "OPTIONAL MATCH (tag)<-[:HAS_TAG]-(:Sentence)<-[:CONTAINS_SENTENCE]-(document:AnnotatedText)\n"
+            + "WHERE coalesce(tag.documentFrequency, 0) = 0\n"
+            + "WITH tag, tf, documentsCount, count(distinct document) as documentsCountFromGraph\n"
+            + "RETURN id(tag) as tagId, tf, (1.0f + 1.0f*documentsCount)/(case when tag.documentFrequency > 0 then tag.documentFrequency else documentsCountFromGraph end) as idf";
 
     @Override
     public VectorHandler computeSparseVector(long node, Map<String, Object> parameters) throws QueryExecutionException {
@@ -19,7 +19,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -124,28 +123,26 @@ public class SparseVector implements GenericVector {
             return 0f;
         }
         
-        final AtomicReference<Float> sum = new AtomicReference<>(0f);
+        List<Long> otherIndex = otherSparseVector.getIndex();
+        List<Float> otherValues = otherSparseVector.getValues();
+        int otherCardinality = otherSparseVector.getCardinality();
+        float sum = 0.0f;
         int xIndex = 0;
         int yIndex = 0;
-
-        while (true) {
-            if (index.get(xIndex).longValue() == otherSparseVector.getIndex().get(yIndex).longValue()) {
-                float curValue = sum.get();
-                curValue += values.get(xIndex) * otherSparseVector.getValues().get(yIndex);
-                sum.set(curValue);
+        while (xIndex < cardinality && yIndex < otherCardinality) {
+            long x = index.get(xIndex);
+            long y = otherIndex.get(yIndex);
+            if (x == y) {
+                sum += values.get(xIndex) * otherValues.get(yIndex);
                 xIndex++;
                 yIndex++;
-            } else if (index.get(xIndex) > otherSparseVector.getIndex().get(yIndex)) {
+            } else if (x > y) {
                 yIndex++;
             } else {
                 xIndex++;
             }
-            if (xIndex == cardinality
-                    || yIndex == otherSparseVector.getCardinality()) {
-                break;
-            }
         }
-        return sum.get();
+        return sum;
     }
 
     @Override
@@ -75,6 +75,23 @@ public class DynamicConfigurationTest extends AbstractEmbeddedTest {
         }
     }
 
+    @Test
+    public void testPipelineLookupsFollowStoreChanges() {
+        DynamicConfiguration configuration = new DynamicConfiguration(getDatabase());
+        long version = configuration.getVersion();
+        assertNull(configuration.loadPipeline("custom"));
+
+        PipelineSpecification specification = new PipelineSpecification("custom", StubTextProcessor.class.getName());
+        configuration.storeCustomPipeline(specification);
+        assertTrue(configuration.getVersion() > version);
+        assertEquals(specification.getTextProcessor(), configuration.loadPipeline("custom").getTextProcessor());
+
+        version = configuration.getVersion();
+        configuration.removePipeline("custom", StubTextProcessor.class.getName());
+        assertTrue(configuration.getVersion() > version);
+        assertNull(configuration.loadPipeline("custom"));
+    }
+
     @Test
     public void testConfigurationValuesShouldBeLoadedFromPreviousState() throws Exception {
         resetSingleton();
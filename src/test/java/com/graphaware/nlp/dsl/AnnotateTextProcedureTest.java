@@ -10,6 +10,7 @@ import org.junit.Test;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -59,6 +60,20 @@ public class AnnotateTextProcedureTest extends NLPIntegrationTest {
         }));
     }
 
+    @Test
+    public void testBulkAnnotationCountsDocumentsWithoutIdOrTextAsFailed() {
+        clearDb();
+        executeInTransaction("CALL ga.nlp.annotate.bulk({pipeline:'tokenizer', batchSize: 2, concurrency: 2, documents: [{id: 'a', text: 'hello my name is Frank'}, {text: 'I have no id'}, {id: 'c'}]}) YIELD processed, failed RETURN processed, failed", (result -> {
+            assertTrue(result.hasNext());
+            Map<String, Object> row = result.next();
+            assertEquals(1L, row.get("processed"));
+            assertEquals(2L, row.get("failed"));
+        }));
+
+        TestNLPGraph tester = new TestNLPGraph(getDatabase());
+        tester.assertAnnotatedTextNodesCount(1);
+    }
+
     @Test
     public void testExceptionIsThrownWhenLanguageCannotBeDetected() {
         try {
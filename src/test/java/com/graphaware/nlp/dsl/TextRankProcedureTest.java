@@ -7,6 +7,7 @@ import com.graphaware.nlp.util.ImportUtils;
 import com.graphaware.nlp.util.TestNLPGraph;
 import org.junit.Before;
 import org.junit.Test;
+import org.neo4j.graphdb.Transaction;
 
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -104,6 +105,62 @@ public class TextRankProcedureTest extends NLPIntegrationTest {
         }));
     }
 
+    @Test
+    public void testTextRankPostProcessAfterKeywordsWereReplaced() throws Exception {
+        clearDb();
+        createGraph();
+        executeInTransaction("MATCH (n:AnnotatedText) CALL ga.nlp.ml.textRank({annotatedText: n, iterations: 30, damp: 0.85, threshold: 0.0001}) YIELD result RETURN result", (result -> {
+            assertTrue("ga.nlp.ml.textRank() procedure failed.", result.hasNext());
+        }));
+        executeInTransaction("CALL ga.nlp.ml.textRank.postprocess({method: 'subgroups'})", emptyConsumer());
+
+        // same number of keywords as when the term index was built, two of them are new
+        executeInTransaction("MATCH (k:Keyword) WITH k LIMIT 2 DETACH DELETE k "
+                + "CREATE (:Keyword {value: 'orbital relay', numTerms: 2}), (:Keyword {value: 'orbital relay station', numTerms: 3})", emptyConsumer());
+        executeInTransaction("CALL ga.nlp.ml.textRank.postprocess({method: 'subgroups'}) YIELD result RETURN result", (result -> {
+            assertTrue(result.hasNext());
+            assertEquals("SUCCESS", result.next().get("result"));
+        }));
+        executeInTransaction("MATCH (:Keyword {value: 'orbital relay'})-[r:HAS_SUBGROUP]->(:Keyword {value: 'orbital relay station'}) RETURN count(r) AS c", (result -> {
+            assertEquals(1L, result.next().get("c"));
+        }));
+    }
+
+    @Test
+    public void testTextRankPostProcessSeesAndRollsBackWithTheCallerTransaction() throws Exception {
+        clearDb();
+        createGraph();
+        executeInTransaction("MATCH (n:AnnotatedText) CALL ga.nlp.ml.textRank({annotatedText: n, iterations: 30, damp: 0.85, threshold: 0.0001}) YIELD result RETURN result", (result -> {
+            assertTrue("ga.nlp.ml.textRank() procedure failed.", result.hasNext());
+        }));
+
+        // keywords created by the same transaction are post-processed, and the relationships go away with its rollback
+        try (Transaction tx = getDatabase().beginTx()) {
+            getDatabase().execute("CREATE (:Keyword {value: 'orbital relay', numTerms: 2}), (:Keyword {value: 'orbital relay station', numTerms: 3})").close();
+            getDatabase().execute("CALL ga.nlp.ml.textRank.postprocess({method: 'subgroups'}) YIELD result RETURN result").close();
+            assertEquals(1L, getDatabase().execute("MATCH (:Keyword {value: 'orbital relay'})-[r:HAS_SUBGROUP]->(:Keyword {value: 'orbital relay station'}) RETURN count(r) AS c").next().get("c"));
+            tx.failure();
+        }
+        executeInTransaction("MATCH (k:Keyword) WHERE k.value STARTS WITH 'orbital relay' OR (k)-[:HAS_SUBGROUP]->() RETURN count(k) AS c", (result -> {
+            assertEquals(0L, result.next().get("c"));
+        }));
+    }
+
+    @Test
+    public void testTextRankBatchSharesTheNamedEntityPipeline() throws Exception {
+        clearDb();
+        createGraph();
+        executeInTransaction("CALL ga.nlp.ml.textRank.batch({query: 'MATCH (a:AnnotatedText) RETURN a', batchSize: 1, concurrency: 4}) YIELD processed, failed RETURN processed, failed", (result -> {
+            assertTrue(result.hasNext());
+            Map<String, Object> record = result.next();
+            assertTrue(((Number) record.get("processed")).longValue() > 0);
+            assertEquals(0L, ((Number) record.get("failed")).longValue());
+        }));
+        assertEquals(1L, getNLPManager().getTextProcessorsManager().getPipelineSpecifications().stream()
+                .filter(pipeline -> pipeline.getName().equals("CORE.TEXTRANK_PIPELINE_en"))
+                .count());
+    }
+
     private void createGraph() throws Exception {
         String content = new String(Files.readAllBytes(Paths.get(getClass().getClassLoader().getResource("exported.cypher").toURI())));
         List<String> queries = ImportUtils.getImportQueriesFromApocExport(content);
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.pagerank;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PageRankGraphBuilderTest {
+
+    @Test
+    public void testParallelEdgesAreMergedAndNormalised() {
+        PageRankGraph graph = new PageRankGraphBuilder()
+                .addEdge(100L, 200L, 1.0d)
+                .addEdge(100L, 300L, 1.0d)
+                .addEdge(100L, 200L, 2.0d)
+                .addEdge(300L, 100L, 5.0d)
+                .build();
+
+        assertEquals(3, graph.getNodeCount());
+        assertEquals(3, graph.getEdgeCount());
+        assertArrayEquals(new long[]{100L, 200L, 300L}, graph.getNodeIds());
+        assertArrayEquals(new int[]{0, 2, 2, 3}, graph.getOffsets());
+        assertArrayEquals(new int[]{1, 2, 0}, graph.getTargets());
+        assertArrayEquals(new double[]{0.75d, 0.25d, 1.0d}, graph.getWeights(), 0.0001d);
+    }
+
+    @Test
+    public void testSameRanksAsCoOccurrenceGraph() {
+        Random random = new Random(42);
+        PageRankGraphBuilder builder = new PageRankGraphBuilder();
+        Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            long source = random.nextInt(3000) * 7L;
+            long destination = random.nextInt(3000) * 7L;
+            double weight = 1 + random.nextInt(5);
+            builder.addEdge(source, destination, weight);
+            Map<Long, CoOccurrenceItem> coOccurrentTags = coOccurrences.computeIfAbsent(source, k -> new HashMap<>());
+            if (coOccurrentTags.containsKey(destination)) {
+                coOccurrentTags.get(destination).incCountBy(weight);
+            } else {
+                CoOccurrenceItem item = new CoOccurrenceItem(source, destination);
+                item.setCount(weight);
+                coOccurrentTags.put(destination, item);
+            }
+        }
+
+        PageRank pageRank = new PageRank(null);
+        PageRankGraph graph = builder.build();
+        double[] ranks = pageRank.run(graph, 30, 0.85d, 0.0001d);
+        Map<Long, Double> expected = pageRank.run(coOccurrences, 30, 0.85d, 0.0001d);
+
+        assertEquals(expected.size(), graph.getNodeCount());
+        for (int i = 0; i < graph.getNodeCount(); i++) {
+            assertEquals(expected.get(graph.getNodeId(i)), ranks[i], 0.000001d);
+        }
+    }
+}
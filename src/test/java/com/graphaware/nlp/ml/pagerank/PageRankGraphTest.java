@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.pagerank;
+
+import com.graphaware.nlp.dsl.request.PageRankRequest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PageRankGraphTest {
+
+    @Test
+    public void testCompileCoOccurrences() {
+        Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences = new HashMap<>();
+        addCoOccurrence(coOccurrences, 10L, 20L, 1.0d);
+        addCoOccurrence(coOccurrences, 10L, 30L, 3.0d);
+        addCoOccurrence(coOccurrences, 20L, 10L, 2.0d);
+
+        PageRankGraph graph = PageRankGraph.fromCoOccurrences(coOccurrences, Arrays.asList(10L, 20L, 30L));
+        assertEquals(3, graph.getNodeCount());
+        assertEquals(3, graph.getEdgeCount());
+        assertArrayEquals(new int[]{0, 2, 3, 3}, graph.getOffsets());
+
+        double[] weights = graph.getWeights();
+        int[] targets = graph.getTargets();
+        for (int e = 0; e < 2; e++) {
+            if (graph.getNodeId(targets[e]) == 20L) {
+                assertEquals(0.25d, weights[e], 0.0001d);
+            } else {
+                assertEquals(30L, graph.getNodeId(targets[e]));
+                assertEquals(0.75d, weights[e], 0.0001d);
+            }
+        }
+        assertEquals(10L, graph.getNodeId(targets[2]));
+        assertEquals(1.0d, weights[2], 0.0001d);
+    }
+
+    @Test
+    public void testRunOnCompiledGraph() {
+        Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences = new HashMap<>();
+        addCoOccurrence(coOccurrences, 1L, 2L, 1.0d);
+        addCoOccurrence(coOccurrences, 2L, 1L, 1.0d);
+        addCoOccurrence(coOccurrences, 3L, 1L, 1.0d);
+
+        Map<Long, Double> pageRanks = new PageRank(null).run(coOccurrences, 100, 0.85d, 0.000001d);
+        assertEquals(3, pageRanks.size());
+        assertEquals(0.05d, pageRanks.get(3L), 0.0001d);
+        assertTrue(pageRanks.get(1L) > pageRanks.get(2L));
+        assertEquals(1.0d, pageRanks.values().stream().mapToDouble(Double::doubleValue).sum(), 0.0001d);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStoreOnGraphRejectsNonPositiveBatchSize() {
+        new PageRank(null).storeOnGraph(Collections.singletonMap(1L, 0.5d), "pagerank", 0);
+    }
+
+    @Test
+    public void testPageRankRequestRejectsInvalidBatchSize() {
+        PageRankRequest request = new PageRankRequest();
+        for (long batchSize : new long[]{0L, -1L, Integer.MAX_VALUE + 1L}) {
+            try {
+                request.setBatchSize(batchSize);
+                fail("batchSize " + batchSize + " should be rejected");
+            } catch (RuntimeException e) {
+                assertEquals(10000L, request.getBatchSize().longValue());
+            }
+        }
+    }
+
+    private static void addCoOccurrence(Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences, long source, long destination, double weight) {
+        CoOccurrenceItem item = new CoOccurrenceItem(source, destination);
+        item.setCount(weight);
+        coOccurrences.computeIfAbsent(source, k -> new HashMap<>()).put(destination, item);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.queue;
+
+import com.graphaware.nlp.AbstractEmbeddedTest;
+import org.junit.Test;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class SimilarityQueueProcessorTest extends AbstractEmbeddedTest {
+
+    private static final String SIMILARITY_TYPE = "SIMILAR_TO";
+
+    @Test
+    public void testOfferBlocksWhileTheQueueIsFull() throws Exception {
+        List<Long> ids = createNodes(4);
+        SimilarityQueueProcessor processor = new SimilarityQueueProcessor(getDatabase(), 2);
+        processor.offer(entry(ids.get(0), ids.get(3)));
+        processor.offer(entry(ids.get(1), ids.get(3)));
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread producer = offerInBackground(processor, entry(ids.get(2), ids.get(3)), error);
+        waitUntilBlocked(producer);
+        assertTrue(producer.isAlive());
+        assertEquals(3L, processor.getPendingCount());
+
+        processor.start();
+        producer.join(10000);
+        assertFalse(producer.isAlive());
+        assertNull(error.get());
+        assertTrue(processor.flush(10, TimeUnit.SECONDS));
+        assertEquals(3L, processor.getStoredCount());
+        assertEquals(3L, countSimilarities());
+        processor.shutdown(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testFlushWaitsUntilEveryEntryIsStored() throws Exception {
+        List<Long> ids = createNodes(51);
+        SimilarityQueueProcessor processor = new SimilarityQueueProcessor(getDatabase(), 4);
+        processor.start();
+        for (int i = 0; i < 50; i++) {
+            processor.offer(entry(ids.get(i), ids.get(i + 1)));
+        }
+
+        assertTrue(processor.flush(30, TimeUnit.SECONDS));
+        assertEquals(0L, processor.getPendingCount());
+        assertEquals(50L, processor.getStoredCount());
+        assertEquals(0L, processor.getFailedCount());
+        assertEquals(50L, countSimilarities());
+        assertTrue(processor.getBatchSize() >= SimilarityQueueProcessor.MIN_BATCH_SIZE);
+        assertTrue(processor.getBatchSize() <= SimilarityQueueProcessor.MAX_BATCH_SIZE);
+        processor.shutdown(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testShutdownStoresTheQueuedEntries() throws Exception {
+        List<Long> ids = createNodes(4);
+        SimilarityQueueProcessor processor = new SimilarityQueueProcessor(getDatabase(), 10);
+        for (int i = 0; i < 3; i++) {
+            processor.offer(entry(ids.get(i), ids.get(3)));
+        }
+        processor.start();
+        processor.shutdown(30, TimeUnit.SECONDS);
+
+        assertEquals(0L, processor.getPendingCount());
+        assertEquals(3L, processor.getStoredCount());
+        assertEquals(3L, countSimilarities());
+        try {
+            processor.offer(entry(ids.get(0), ids.get(1)));
+            fail("offer should be rejected after shutdown");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testShutdownDropsTheEntriesNoWriterCanStore() throws Exception {
+        List<Long> ids = createNodes(3);
+        SimilarityQueueProcessor processor = new SimilarityQueueProcessor(getDatabase(), 1);
+        processor.offer(entry(ids.get(0), ids.get(2)));
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread producer = offerInBackground(processor, entry(ids.get(1), ids.get(2)), error);
+        waitUntilBlocked(producer);
+        processor.shutdown(1, TimeUnit.SECONDS);
+        producer.join(10000);
+
+        assertFalse(producer.isAlive());
+        assertNull(error.get());
+        assertEquals(0L, processor.getPendingCount());
+        assertEquals(2L, processor.getFailedCount());
+        assertTrue(processor.flush(1, TimeUnit.SECONDS));
+        assertEquals(0L, countSimilarities());
+    }
+
+    private Thread offerInBackground(SimilarityQueueProcessor processor, SimilarityItemProcessEntry entry, AtomicReference<Throwable> error) {
+        Thread producer = new Thread(() -> {
+            try {
+                processor.offer(entry);
+            } catch (Throwable ex) {
+                error.set(ex);
+            }
+        });
+        producer.start();
+        return producer;
+    }
+
+    private void waitUntilBlocked(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Thread.State.WAITING, thread.getState());
+    }
+
+    private SimilarityItemProcessEntry entry(long node, long neighbour) {
+        return new SimilarityItemProcessEntry(node, new ArrayList<>(Collections.singletonList(new SimilarityItem(node, neighbour, 0.5f, SIMILARITY_TYPE))));
+    }
+
+    private List<Long> createNodes(int count) {
+        List<Long> ids = new ArrayList<>();
+        try (Transaction tx = getDatabase().beginTx()) {
+            for (int i = 0; i < count; i++) {
+                ids.add(getDatabase().createNode(Label.label("Document")).getId());
+            }
+            tx.success();
+        }
+        return ids;
+    }
+
+    private long countSimilarities() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            long count = (Long) getDatabase().execute("MATCH ()-[r:" + SIMILARITY_TYPE + "]->() RETURN count(r) AS c").next().get("c");
+            tx.success();
+            return count;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.similarity;
+
+import com.graphaware.nlp.vector.DenseVector;
+import com.graphaware.nlp.vector.SparseVector;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FeatureVectorTest {
+
+    @Test
+    public void testSparseDotProduct() {
+        FeatureVector x = FeatureVector.sparse(new long[]{1L, 3L, 7L, 10L}, new float[]{1.0f, 2.0f, 3.0f, 4.0f});
+        FeatureVector y = FeatureVector.sparse(new long[]{2L, 3L, 10L}, new float[]{5.0f, 6.0f, 0.5f});
+        assertTrue(x.isSparse());
+        assertEquals(14.0f, x.dot(y), 0.0001f);
+        assertEquals(14.0f, y.dot(x), 0.0001f);
+        assertEquals((float) Math.sqrt(30.0d), x.norm(), 0.0001f);
+    }
+
+    @Test
+    public void testFromMapMatchesMapCosine() {
+        Map<Long, Float> xMap = new HashMap<>();
+        xMap.put(42L, 0.5f);
+        xMap.put(7L, 1.5f);
+        xMap.put(13L, 2.0f);
+        Map<Long, Float> yMap = new HashMap<>();
+        yMap.put(13L, 1.0f);
+        yMap.put(42L, 3.0f);
+        yMap.put(99L, 1.0f);
+
+        FeatureVector x = FeatureVector.fromMap(xMap);
+        assertArrayEquals(new long[]{7L, 13L, 42L}, x.getIndexes());
+        CosineSimilarity cosine = new CosineSimilarity();
+        assertEquals(cosine.getSimilarity(xMap, yMap), cosine.getSimilarity(x, FeatureVector.fromMap(yMap)), 0.0001f);
+        assertEquals(0.0f, cosine.getSimilarity(x, FeatureVector.fromMap(new HashMap<>())), 0.0001f);
+    }
+
+    @Test
+    public void testDenseVectors() {
+        FeatureVector x = FeatureVector.dense(new float[]{1.0f, 0.0f, 1.0f});
+        FeatureVector y = FeatureVector.fromList(Arrays.asList(1.0d, 1.0d, 0.0d));
+        assertFalse(x.isSparse());
+        assertEquals(0.5f, new CosineSimilarity().getSimilarity(x, y), 0.0001f);
+    }
+
+    @Test
+    public void testFromGenericVectors() {
+        Map<Long, Float> map = new HashMap<>();
+        map.put(3L, 1.0f);
+        map.put(1L, 2.0f);
+        FeatureVector sparse = FeatureVector.of(SparseVector.fromMap(map));
+        assertArrayEquals(new long[]{1L, 3L}, sparse.getIndexes());
+        assertArrayEquals(new float[]{2.0f, 1.0f}, sparse.getValues(), 0.0001f);
+
+        FeatureVector dense = FeatureVector.of(new DenseVector(new float[]{3.0f, 4.0f}));
+        assertEquals(5.0f, dense.norm(), 0.0001f);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testSparseIndexesMustBeSorted() {
+        FeatureVector.sparse(new long[]{3L, 1L}, new float[]{1.0f, 1.0f});
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.similarity;
+
+import com.graphaware.nlp.persistence.DocumentFrequencyStatistics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IncrementalSimilarityTest {
+
+    @Test
+    public void testDocumentFrequenciesFollowAddAndRemove() {
+        IncrementalSimilarity similarity = new IncrementalSimilarity(10);
+        similarity.add(1L, tf(100L, 2.0f, 101L, 1.0f));
+        similarity.add(2L, tf(100L, 1.0f));
+        assertEquals(2, similarity.getDocumentCount());
+        assertEquals(2, similarity.getDocumentFrequency(100L));
+        assertEquals(1, similarity.getDocumentFrequency(101L));
+
+        similarity.add(1L, tf(102L, 1.0f));
+        assertEquals(2, similarity.getDocumentCount());
+        assertEquals(1, similarity.getDocumentFrequency(100L));
+        assertEquals(0, similarity.getDocumentFrequency(101L));
+        assertEquals(1, similarity.getDocumentFrequency(102L));
+
+        similarity.remove(2L);
+        similarity.remove(3L);
+        assertEquals(1, similarity.getDocumentCount());
+        assertEquals(0, similarity.getDocumentFrequency(100L));
+    }
+
+    @Test
+    public void testScoreOnlyDocumentsSharingTags() {
+        IncrementalSimilarity similarity = new IncrementalSimilarity(10);
+        similarity.add(1L, tf(100L, 1.0f, 101L, 1.0f));
+        similarity.add(2L, tf(100L, 1.0f, 101L, 1.0f));
+        similarity.add(3L, tf(101L, 1.0f, 102L, 3.0f));
+        similarity.add(4L, tf(103L, 1.0f));
+
+        Map<Long, Float> scores = similarity.score(1L);
+        assertEquals(2, scores.size());
+        assertEquals(1.0f, scores.get(2L), 0.0001f);
+        assertFalse(scores.containsKey(4L));
+
+        // N = 4: idf(100) = log10(5/2), idf(101) = log10(5/3), idf(102) = log10(5)
+        double w100 = Math.log10(5.0d / 2), w101 = Math.log10(5.0d / 3), w102 = 3 * Math.log10(5.0d);
+        double expected = w101 * w101 / (Math.sqrt(w100 * w100 + w101 * w101) * Math.sqrt(w101 * w101 + w102 * w102));
+        assertEquals(expected, scores.get(3L), 0.0001d);
+        assertEquals(scores.get(3L), similarity.score(3L).get(1L), 0.0001f);
+    }
+
+    @Test
+    public void testScoreWithStoredDocumentFrequencies() {
+        Map<Long, Long> frequencies = new HashMap<>();
+        frequencies.put(100L, 9L);
+        IncrementalSimilarity similarity = new IncrementalSimilarity(10, new DocumentFrequencyStatistics(null) {
+            @Override
+            public long getDocumentCount() {
+                return 99L;
+            }
+
+            @Override
+            public long getDocumentFrequency(long tag) {
+                return frequencies.getOrDefault(tag, 0L);
+            }
+        });
+        similarity.add(1L, tf(100L, 1.0f, 101L, 1.0f));
+        similarity.add(2L, tf(100L, 1.0f, 102L, 1.0f));
+
+        // N = 99: idf(100) = log10(100/9) from the statistics, idf(101) = idf(102) = log10(100/1) from the postings
+        double w100 = Math.log10(100.0d / 9), w101 = Math.log10(100.0d);
+        double expected = w100 * w100 / (w100 * w100 + w101 * w101);
+        assertEquals(expected, similarity.score(1L).get(2L), 0.0001d);
+    }
+
+    @Test
+    public void testScoreUnknownDocument() {
+        IncrementalSimilarity similarity = new IncrementalSimilarity(10);
+        similarity.add(1L, tf(100L, 1.0f));
+        assertTrue(similarity.score(2L).isEmpty());
+        assertTrue(similarity.score(1L).isEmpty());
+    }
+
+    @Test
+    public void testRollbackRestoresTheStagedDocuments() {
+        IncrementalSimilarity similarity = new IncrementalSimilarity(10);
+        similarity.add(1L, tf(100L, 1.0f));
+        similarity.stage(1L, tf(101L, 1.0f));
+        similarity.stage(2L, tf(100L, 1.0f));
+        similarity.stage(2L, tf(102L, 1.0f));
+        assertEquals(2, similarity.getDocumentCount());
+        assertEquals(1, similarity.getDocumentFrequency(101L));
+
+        similarity.rolledBack();
+        assertEquals(1, similarity.getDocumentCount());
+        assertEquals(1, similarity.getDocumentFrequency(100L));
+        assertEquals(0, similarity.getDocumentFrequency(101L));
+        assertEquals(0, similarity.getDocumentFrequency(102L));
+
+        // nothing left to undo once a transaction committed
+        similarity.stage(3L, tf(100L, 1.0f));
+        similarity.committed();
+        similarity.rolledBack();
+        assertEquals(2, similarity.getDocumentFrequency(100L));
+    }
+
+    @Test
+    public void testDeletedDocumentsAreEvictedOnCommit() throws Exception {
+        IncrementalSimilarity similarity = new IncrementalSimilarity(10);
+        similarity.add(1L, tf(100L, 1.0f));
+        similarity.add(2L, tf(100L, 1.0f));
+        similarity.stageRemoval(2L);
+        assertEquals(2, similarity.getDocumentCount());
+
+        // removals staged by another thread belong to another transaction
+        Thread other = new Thread(similarity::committed);
+        other.start();
+        other.join();
+        assertEquals(2, similarity.getDocumentCount());
+
+        similarity.committed();
+        assertEquals(1, similarity.getDocumentCount());
+        assertTrue(similarity.score(1L).isEmpty());
+
+        similarity.stageRemoval(1L);
+        similarity.rolledBack();
+        similarity.committed();
+        assertEquals(1, similarity.getDocumentCount());
+    }
+
+    @Test
+    public void testConcurrentAddAndScore() throws Exception {
+        IncrementalSimilarity similarity = new IncrementalSimilarity(10);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                long offset = t * 1000L;
+                futures.add(executor.submit(() -> {
+                    for (long i = 0; i < 200; i++) {
+                        similarity.add(offset + i, tf(100L, 1.0f, 200L + i % 10, 2.0f));
+                        for (Float score : similarity.score(offset + i).values()) {
+                            assertTrue(score > 0.0f && score <= 1.0f);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(800, similarity.getDocumentCount());
+        assertEquals(800, similarity.getDocumentFrequency(100L));
+        assertEquals(80, similarity.getDocumentFrequency(205L));
+        assertEquals(799, similarity.score(5L).size());
+    }
+
+    private static Map<Long, Float> tf(Object... tagsAndFrequencies) {
+        Map<Long, Float> tf = new HashMap<>();
+        for (int i = 0; i < tagsAndFrequencies.length; i += 2) {
+            tf.put((Long) tagsAndFrequencies[i], (Float) tagsAndFrequencies[i + 1]);
+        }
+        return tf;
+    }
+}
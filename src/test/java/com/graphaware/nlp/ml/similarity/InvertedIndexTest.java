@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.similarity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.LongStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InvertedIndexTest {
+
+    @Test
+    public void testTopKOnlyReturnsDocumentsSharingFeatures() {
+        Map<Long, Map<Long, Float>> vectors = new HashMap<>();
+        vectors.put(1L, vector(10L, 1.0f, 20L, 1.0f));
+        vectors.put(2L, vector(10L, 1.0f, 20L, 1.0f));
+        vectors.put(3L, vector(20L, 2.0f));
+        vectors.put(4L, vector(30L, 1.0f));
+
+        InvertedIndex index = InvertedIndex.build(vectors);
+        assertEquals(4, index.getDocumentCount());
+        assertEquals(3, index.getFeatureCount());
+
+        List<InvertedIndex.ScoredDocument> neighbours = index.topK(1L, 10, false);
+        assertEquals(2, neighbours.size());
+        assertEquals(2L, neighbours.get(0).getId());
+        assertEquals(1.0f, neighbours.get(0).getScore(), 0.0001f);
+        assertEquals(3L, neighbours.get(1).getId());
+        assertEquals(0.7071f, neighbours.get(1).getScore(), 0.0001f);
+        assertTrue(index.topK(4L, 10, false).isEmpty());
+        assertTrue(index.topK(5L, 10, false).isEmpty());
+    }
+
+    @Test
+    public void testTopKMatchesBruteForceCosine() {
+        Random random = new Random(42);
+        Map<Long, Map<Long, Float>> vectors = new HashMap<>();
+        for (long doc = 0; doc < 300; doc++) {
+            Map<Long, Float> vector = new HashMap<>();
+            int features = 1 + random.nextInt(15);
+            for (int i = 0; i < features; i++) {
+                vector.put((long) random.nextInt(200), 0.1f + random.nextFloat());
+            }
+            vectors.put(doc, vector);
+        }
+        InvertedIndex index = InvertedIndex.build(vectors);
+        CosineSimilarity cosine = new CosineSimilarity();
+        int k = 5;
+        for (long doc = 0; doc < 300; doc++) {
+            List<Float> expected = new ArrayList<>();
+            for (long other = 0; other < 300; other++) {
+                if (other != doc) {
+                    float similarity = cosine.getSimilarity(vectors.get(doc), vectors.get(other));
+                    if (similarity > 0) {
+                        expected.add(similarity);
+                    }
+                }
+            }
+            expected.sort((a, b) -> Float.compare(b, a));
+            for (boolean pruning : new boolean[]{false, true}) {
+                List<InvertedIndex.ScoredDocument> neighbours = index.topK(doc, k, pruning);
+                assertEquals(Math.min(k, expected.size()), neighbours.size());
+                for (int i = 0; i < neighbours.size(); i++) {
+                    assertEquals(expected.get(i), neighbours.get(i).getScore(), 0.0001f);
+                    assertEquals(neighbours.get(i).getScore(), cosine.getSimilarity(vectors.get(doc), vectors.get(neighbours.get(i).getId())), 0.0001f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentTopKMatchesSequentialTopK() {
+        Random random = new Random(7);
+        Map<Long, Map<Long, Float>> vectors = new HashMap<>();
+        for (long doc = 0; doc < 500; doc++) {
+            Map<Long, Float> vector = new HashMap<>();
+            int features = 1 + random.nextInt(10);
+            for (int i = 0; i < features; i++) {
+                vector.put((long) random.nextInt(100), 0.1f + random.nextFloat());
+            }
+            vectors.put(doc, vector);
+        }
+        InvertedIndex index = InvertedIndex.build(vectors);
+        Map<Long, List<Long>> expected = new HashMap<>();
+        for (long doc = 0; doc < 500; doc++) {
+            expected.put(doc, ids(index.topK(doc, 3, true)));
+        }
+        Map<Long, List<Long>> actual = new ConcurrentHashMap<>();
+        LongStream.range(0, 500).parallel().forEach(doc -> actual.put(doc, ids(index.topK(doc, 3, true))));
+        assertEquals(expected, actual);
+    }
+
+    private static List<Long> ids(List<InvertedIndex.ScoredDocument> neighbours) {
+        List<Long> ids = new ArrayList<>();
+        neighbours.forEach(neighbour -> ids.add(neighbour.getId()));
+        return ids;
+    }
+
+    private static Map<Long, Float> vector(Object... entries) {
+        Map<Long, Float> vector = new HashMap<>();
+        for (int i = 0; i < entries.length; i += 2) {
+            vector.put((Long) entries[i], (Float) entries[i + 1]);
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.similarity;
+
+import com.graphaware.nlp.ml.similarity.InvertedIndex.ScoredDocument;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class VectorMatrixTest {
+
+    @Test
+    public void testTopKExcludesSelfAndNonPositiveScores() {
+        VectorMatrix matrix = VectorMatrix.build(new long[]{1L, 2L, 3L, 4L}, Arrays.asList(
+                new float[]{1.0f, 0.0f},
+                new float[]{1.0f, 1.0f},
+                new float[]{-1.0f, 0.0f},
+                new float[0]));
+        assertEquals(4, matrix.getRowCount());
+        assertEquals(2, matrix.getDimension());
+
+        List<List<ScoredDocument>> neighbours = matrix.topK(matrix, 0, 4, 10);
+        assertEquals(1, neighbours.get(0).size());
+        assertEquals(2L, neighbours.get(0).get(0).getId());
+        assertEquals(0.7071f, neighbours.get(0).get(0).getScore(), 0.0001f);
+        assertEquals(1, neighbours.get(1).size());
+        assertEquals(1L, neighbours.get(1).get(0).getId());
+        assertTrue(neighbours.get(2).isEmpty());
+        assertTrue(neighbours.get(3).isEmpty());
+    }
+
+    @Test
+    public void testTopKMatchesPairwiseCosine() {
+        Random random = new Random(7);
+        int n = 600;
+        int dimension = 37;
+        long[] ids = new long[n];
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            ids[i] = 1000L + i;
+            float[] vector = new float[dimension];
+            for (int d = 0; d < dimension; d++) {
+                vector[d] = random.nextFloat() - 0.3f;
+            }
+            vectors.add(vector);
+        }
+        VectorMatrix matrix = VectorMatrix.build(ids, vectors);
+        CosineSimilarity cosine = new CosineSimilarity();
+        int k = 5;
+        List<List<ScoredDocument>> neighbours = matrix.topK(matrix, 100, 120, k);
+        assertEquals(20, neighbours.size());
+        for (int q = 100; q < 120; q++) {
+            List<ScoredDocument> expected = new ArrayList<>();
+            for (int c = 0; c < n; c++) {
+                if (c != q) {
+                    expected.add(new ScoredDocument(ids[c], (float) cosine.getSimilarity(vectors.get(q), vectors.get(c))));
+                }
+            }
+            expected.sort((a, b) -> Float.compare(b.getScore(), a.getScore()));
+            List<ScoredDocument> actual = neighbours.get(q - 100);
+            assertEquals(k, actual.size());
+            for (int i = 0; i < k; i++) {
+                assertEquals(expected.get(i).getId(), actual.get(i).getId());
+                assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 0.0001f);
+            }
+        }
+    }
+
+    @Test
+    public void testQueriesFromAnotherMatrix() {
+        VectorMatrix candidates = VectorMatrix.build(new long[]{1L, 2L}, Arrays.asList(
+                new float[]{1.0f, 0.0f, 0.0f},
+                new float[]{0.0f, 1.0f, 0.0f}));
+        VectorMatrix queries = VectorMatrix.build(new long[]{9L}, Arrays.asList(
+                new float[]{0.0f, 2.0f, 1.0f}));
+        List<ScoredDocument> neighbours = candidates.topK(queries, 0, 1, 1).get(0);
+        assertEquals(1, neighbours.size());
+        assertEquals(2L, neighbours.get(0).getId());
+        assertEquals(2.0f / (float) Math.sqrt(5.0d), neighbours.get(0).getScore(), 0.0001f);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDifferentDimensionsAreRejected() {
+        VectorMatrix.build(new long[]{1L, 2L}, Arrays.asList(new float[]{1.0f, 0.0f}, new float[]{1.0f}));
+    }
+
+    @Test
+    public void testMatrixLargerThanAnArrayIsRejected() {
+        int rows = 70_000;
+        long[] ids = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            ids[i] = i;
+        }
+        try {
+            VectorMatrix.build(ids, Collections.nCopies(rows, new float[40_000]));
+            fail("A matrix of more than Integer.MAX_VALUE values should be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("70000 vectors of dimension 40000"));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.textrank;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class KeyphraseMatcherTest {
+
+    @Test
+    public void testFindsContainedPhrases() {
+        KeyphraseMatcher matcher = new KeyphraseMatcher(Arrays.asList("space", "space station", "station", "international space station", "nation", "space"));
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5}, matcher.findIn("international space station"));
+        assertArrayEquals(new int[]{2}, matcher.findIn("stations"));
+        assertArrayEquals(new int[]{4}, matcher.findIn("nations"));
+        assertArrayEquals(new int[0], matcher.findIn("spac"));
+    }
+
+    @Test
+    public void testMatchesStringContains() {
+        Random random = new Random(3);
+        List<String> phrases = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            StringBuilder phrase = new StringBuilder();
+            int length = 1 + random.nextInt(6);
+            for (int j = 0; j < length; j++) {
+                phrase.append("ab c".charAt(random.nextInt(4)));
+            }
+            phrases.add(phrase.toString());
+        }
+        KeyphraseMatcher matcher = new KeyphraseMatcher(phrases);
+        for (String text : phrases) {
+            int[] expected = new int[phrases.size()];
+            int size = 0;
+            for (int i = 0; i < phrases.size(); i++) {
+                if (text.contains(phrases.get(i))) {
+                    expected[size++] = i;
+                }
+            }
+            assertArrayEquals(Arrays.copyOf(expected, size), matcher.findIn(text));
+        }
+    }
+}
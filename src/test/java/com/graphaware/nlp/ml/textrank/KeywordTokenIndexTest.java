@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.textrank;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KeywordTokenIndexTest {
+
+    @Test
+    public void testSuperPhrasesAndSubGroupsFromTermPostings() {
+        KeywordTokenIndex index = new KeywordTokenIndex(
+                new long[]{10L, 11L, 12L, 13L, 14L, 15L},
+                new String[]{"station", "space station", "international space station", "space station crew", "station space", "spaces station"},
+                new int[]{1, 2, 3, 3, 2, 2});
+
+        assertEquals(1, index.indexOf(11L));
+        assertEquals(-1, index.indexOf(99L));
+        assertArrayEquals(new int[]{2, 3, 4}, index.getContaining(1));
+        assertArrayEquals(new int[]{2, 3}, index.getSuperPhrases(1));
+        assertArrayEquals(new int[]{2, 3}, index.getSubGroups(1));
+        assertArrayEquals(new int[]{1, 2, 4, 5}, index.getSubGroups(0));
+        assertArrayEquals(new int[0], index.getSuperPhrases(2));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.textrank;
+
+import com.graphaware.nlp.ml.pagerank.PageRankGraph;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class SentenceGraphTest {
+
+    @Test
+    public void testInvertedIndexMatchesPairwiseComparison() {
+        Random random = new Random(7);
+        Map<Long, Set<Long>> sentences = new HashMap<>();
+        for (long s = 0; s < 300; s++) {
+            Set<Long> tags = new HashSet<>();
+            int size = 1 + random.nextInt(15);
+            for (int t = 0; t < size; t++) {
+                tags.add((long) random.nextInt(400));
+            }
+            sentences.put(s, tags);
+        }
+
+        assertEquals(edges(SentenceGraph.build(sentences, false, 0)), edges(SentenceGraph.build(sentences, true, 0)));
+    }
+
+    @Test
+    public void testSimilarityWeights() {
+        Map<Long, Set<Long>> sentences = new HashMap<>();
+        sentences.put(1L, new HashSet<>(Arrays.asList(10L, 11L, 12L)));
+        sentences.put(2L, new HashSet<>(Arrays.asList(10L, 11L)));
+        sentences.put(3L, new HashSet<>(Arrays.asList(20L, 21L)));
+
+        Map<String, Double> edges = edges(SentenceGraph.build(sentences, true, 0));
+        assertEquals(2, edges.size());
+        assertEquals(1.0d, edges.get("1->2"), 0.0001d);
+        assertEquals(1.0d, edges.get("2->1"), 0.0001d);
+    }
+
+    @Test
+    public void testMaxEdgesPerSentence() {
+        Map<Long, Set<Long>> sentences = new HashMap<>();
+        sentences.put(1L, new HashSet<>(Arrays.asList(10L, 11L, 12L, 13L)));
+        sentences.put(2L, new HashSet<>(Arrays.asList(10L, 11L, 12L, 14L)));
+        sentences.put(3L, new HashSet<>(Arrays.asList(10L, 11L, 21L, 22L)));
+        sentences.put(4L, new HashSet<>(Arrays.asList(10L, 21L, 22L, 23L)));
+
+        assertEquals(12, edges(SentenceGraph.build(sentences, true, 0)).size());
+        assertEquals(new HashSet<>(Arrays.asList("1->2", "2->1", "3->4", "4->3")),
+                edges(SentenceGraph.build(sentences, true, 1)).keySet());
+    }
+
+    private static Map<String, Double> edges(PageRankGraph graph) {
+        Map<String, Double> edges = new TreeMap<>();
+        for (int i = 0; i < graph.getNodeCount(); i++) {
+            for (int e = graph.getOffsets()[i]; e < graph.getOffsets()[i + 1]; e++) {
+                // weights are normalised per source, compare the raw proportions through rounding
+                edges.put(graph.getNodeId(i) + "->" + graph.getNodeId(graph.getTargets()[e]), Math.round(graph.getWeights()[e] * 1e9) / 1e9);
+            }
+        }
+        return edges;
+    }
+}
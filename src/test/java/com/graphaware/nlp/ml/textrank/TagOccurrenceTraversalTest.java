@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.textrank;
+
+import com.graphaware.nlp.NLPIntegrationTest;
+import com.graphaware.nlp.ml.pagerank.CoOccurrenceItem;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the Core API traversal behind TextRank against the Cypher queries it replaced, on a fixture graph holding
+ * stopwords, short values, forbidden POS tags and named entities, and dependencies with and without admitted POS tags.
+ */
+public class TagOccurrenceTraversalTest extends NLPIntegrationTest {
+
+    private static final String COOCCURRENCE_QUERY
+            = "MATCH (a:AnnotatedText)-[:CONTAINS_SENTENCE]->(s:Sentence)-[:SENTENCE_TAG_OCCURRENCE]->(to:TagOccurrence)\n"
+            + "WHERE id(a) = {id}\n"
+            + "WITH to\n"
+            + "ORDER BY to.startPosition\n"
+            + "MATCH (to)-[:TAG_OCCURRENCE_TAG]->(t:Tag)\n"
+            + "WHERE size(t.value) > 2 AND NOT(toLower(t.value) IN {stopwords}) AND NOT ANY(pos IN to.pos WHERE pos IN {forbiddenPOSs}) AND NOT ANY(l IN labels(t) WHERE l IN {forbiddenNEs})\n"
+            + "WITH collect(t) as tags, collect(to) as tagsPosition\n"
+            + "UNWIND range(0, size(tags) - 2, 1) as i\n"
+            + "RETURN id(tags[i]) as tag1, id(tags[i+1]) as tag2, tags[i].id as tag1_id, tags[i+1].id as tag2_id, "
+            + "tagsPosition[i].startPosition as sourceStartPosition, tagsPosition[i].endPosition as sourceEndPosition, "
+            + "tagsPosition[i+1].startPosition as destinationStartPosition, tagsPosition[i+1].endPosition as destinationEndPosition, tagsPosition[i].pos as pos1, tagsPosition[i+1].pos as pos2";
+
+    private static final String COOCCURRENCE_QUERY_BY_SENTENCE
+            = "MATCH (a:AnnotatedText)-[:CONTAINS_SENTENCE]->(s:Sentence)-[:SENTENCE_TAG_OCCURRENCE]->(to:TagOccurrence)\n"
+            + "WHERE id(a) = {id} \n"
+            + "WITH s, to\n"
+            + "ORDER BY s.sentenceNumber, to.startPosition\n"
+            + "MATCH (to)-[:TAG_OCCURRENCE_TAG]->(t:Tag)\n"
+            + "WHERE size(t.value) > 2 AND NOT(toLower(t.value) IN {stopwords}) AND NOT ANY(pos IN to.pos WHERE pos IN {forbiddenPOSs}) AND NOT ANY(l IN labels(t) WHERE l IN {forbiddenNEs})\n"
+            + "WITH s, collect(t) as tags, collect(to) as tagsPosition\n"
+            + "ORDER BY s.sentenceNumber\n"
+            + "UNWIND range(0, size(tags) - 2, 1) as i\n"
+            + "RETURN s, id(tags[i]) as tag1, id(tags[i+1]) as tag2, tags[i].id as tag1_id, tags[i+1].id as tag2_id, "
+            + "tagsPosition[i].startPosition as sourceStartPosition, tagsPosition[i].endPosition as sourceEndPosition, "
+            + "tagsPosition[i+1].startPosition as destinationStartPosition, tagsPosition[i+1].endPosition as destinationEndPosition, tagsPosition[i].pos as pos1, tagsPosition[i+1].pos as pos2";
+
+    private static final String GET_TAG_QUERY = "MATCH (node:Tag)<-[:TAG_OCCURRENCE_TAG]-(to:TagOccurrence)<-[:SENTENCE_TAG_OCCURRENCE]-(:Sentence)<-[:CONTAINS_SENTENCE]-(a:AnnotatedText)\n"
+            + "WHERE id(a) = {id} AND NOT (toLower(node.value) IN {stopwords})"
+            + "OPTIONAL MATCH (to)<-[:COMPOUND|AMOD]-(to2:TagOccurrence)-[:TAG_OCCURRENCE_TAG]->(t2:Tag)\n"
+            + "WHERE NOT exists(to2.pos) OR size(to2.pos) = 0 OR ANY(p IN to2.pos WHERE p IN {posList}) AND NOT (toLower(t2.value) IN {stopwords})\n"
+            + "RETURN node.id as tag, to.startPosition as sP, to.endPosition as eP, id(node) as tagId, "
+            + "collect(id(t2)) as rel_tags, collect(to2.startPosition) as rel_tos,  collect(to2.endPosition) as rel_toe, labels(node) as labels\n"
+            + "ORDER BY sP asc";
+
+    private static final String FIXTURE = "CREATE (a:AnnotatedText {id: 'doc1'}), (b:AnnotatedText {id: 'doc2'})\n"
+            + "CREATE (a)-[:CONTAINS_SENTENCE]->(s0:Sentence {sentenceNumber: 0}), (a)-[:CONTAINS_SENTENCE]->(s1:Sentence {sentenceNumber: 1}), (b)-[:CONTAINS_SENTENCE]->(s2:Sentence {sentenceNumber: 0})\n"
+            + "CREATE (the:Tag {id: 'the_en', value: 'the'}), (new:Tag {id: 'new_en', value: 'New'}), (space:Tag {id: 'space_en', value: 'space'}),\n"
+            + " (shuttle:Tag {id: 'shuttle_en', value: 'shuttle'}), (operates:Tag {id: 'operates_en', value: 'operates'}), (of:Tag {id: 'of_en', value: 'of'}),\n"
+            + " (flight:Tag {id: 'flight_en', value: 'flight'}), (monday:Tag:NER_Date {id: 'monday_en', value: 'monday'}), (speed:Tag {id: 'speed_en', value: 'speed'}),\n"
+            + " (brake:Tag {id: 'brake_en', value: 'brake'}), (landing:Tag {id: 'landing_en', value: 'landing'}), (gear:Tag {id: 'gear_en', value: 'gear'})\n"
+            + "CREATE (s0)-[:SENTENCE_TAG_OCCURRENCE]->(toThe:TagOccurrence {startPosition: 0, endPosition: 3, pos: ['DT']})-[:TAG_OCCURRENCE_TAG]->(the),\n"
+            + " (s0)-[:SENTENCE_TAG_OCCURRENCE]->(toNew:TagOccurrence {startPosition: 4, endPosition: 7, pos: ['JJ']})-[:TAG_OCCURRENCE_TAG]->(new),\n"
+            + " (s0)-[:SENTENCE_TAG_OCCURRENCE]->(toSpace:TagOccurrence {startPosition: 8, endPosition: 13, pos: ['NN']})-[:TAG_OCCURRENCE_TAG]->(space),\n"
+            + " (s0)-[:SENTENCE_TAG_OCCURRENCE]->(toShuttle:TagOccurrence {startPosition: 14, endPosition: 21, pos: ['NN']})-[:TAG_OCCURRENCE_TAG]->(shuttle),\n"
+            + " (s0)-[:SENTENCE_TAG_OCCURRENCE]->(toOperates:TagOccurrence {startPosition: 22, endPosition: 30, pos: ['VBZ']})-[:TAG_OCCURRENCE_TAG]->(operates),\n"
+            + " (s0)-[:SENTENCE_TAG_OCCURRENCE]->(toOf:TagOccurrence {startPosition: 31, endPosition: 33, pos: ['IN']})-[:TAG_OCCURRENCE_TAG]->(of),\n"
+            + " (s0)-[:SENTENCE_TAG_OCCURRENCE]->(toFlight1:TagOccurrence {startPosition: 34, endPosition: 40, pos: ['NN']})-[:TAG_OCCURRENCE_TAG]->(flight),\n"
+            + " (s1)-[:SENTENCE_TAG_OCCURRENCE]->(toMonday:TagOccurrence {startPosition: 42, endPosition: 48, pos: ['NNP']})-[:TAG_OCCURRENCE_TAG]->(monday),\n"
+            + " (s1)-[:SENTENCE_TAG_OCCURRENCE]->(toFlight2:TagOccurrence {startPosition: 49, endPosition: 55, pos: ['NN']})-[:TAG_OCCURRENCE_TAG]->(flight),\n"
+            + " (s1)-[:SENTENCE_TAG_OCCURRENCE]->(toSpeed:TagOccurrence {startPosition: 56, endPosition: 61, pos: ['NN']})-[:TAG_OCCURRENCE_TAG]->(speed),\n"
+            + " (s1)-[:SENTENCE_TAG_OCCURRENCE]->(toBrake:TagOccurrence {startPosition: 62, endPosition: 67, pos: ['NN']})-[:TAG_OCCURRENCE_TAG]->(brake),\n"
+            + " (s1)-[:SENTENCE_TAG_OCCURRENCE]->(toLanding:TagOccurrence {startPosition: 68, endPosition: 75})-[:TAG_OCCURRENCE_TAG]->(landing),\n"
+            + " (s1)-[:SENTENCE_TAG_OCCURRENCE]->(toGear:TagOccurrence {startPosition: 76, endPosition: 80, pos: ['NN']})-[:TAG_OCCURRENCE_TAG]->(gear),\n"
+            + " (s1)-[:SENTENCE_TAG_OCCURRENCE]->(toSpace2:TagOccurrence {startPosition: 81, endPosition: 86, pos: ['NN']})-[:TAG_OCCURRENCE_TAG]->(space),\n"
+            + " (s1)-[:SENTENCE_TAG_OCCURRENCE]->(toShuttle2:TagOccurrence {startPosition: 87, endPosition: 94, pos: ['NN']})-[:TAG_OCCURRENCE_TAG]->(shuttle),\n"
+            + " (s2)-[:SENTENCE_TAG_OCCURRENCE]->(toFlight3:TagOccurrence {startPosition: 0, endPosition: 6, pos: ['NN']})-[:TAG_OCCURRENCE_TAG]->(flight),\n"
+            + " (s2)-[:SENTENCE_TAG_OCCURRENCE]->(toGear2:TagOccurrence {startPosition: 7, endPosition: 11, pos: ['NN']})-[:TAG_OCCURRENCE_TAG]->(gear)\n"
+            + "CREATE (toSpace)-[:COMPOUND]->(toShuttle), (toNew)-[:AMOD]->(toShuttle), (toOperates)-[:AMOD]->(toBrake),\n"
+            + " (toSpeed)-[:COMPOUND]->(toBrake), (toLanding)-[:COMPOUND]->(toGear), (toFlight3)-[:COMPOUND]->(toGear2)\n"
+            + "RETURN a";
+
+    private static final String STOP_WORDS = "new,landing";
+    private static final List<String> ADMITTED_POS = Arrays.asList("NN", "NNS", "NNP", "JJ");
+    private static final List<String> FORBIDDEN_POS = Arrays.asList("DT", "IN");
+    private static final List<String> FORBIDDEN_NE = Collections.singletonList("NER_Date");
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        createPipeline(pipelineSpecification.getTextProcessor(), pipelineSpecification.getName());
+    }
+
+    @Test
+    public void testCoOccurrencesMatchTheCypherQueryAcrossSentences() {
+        assertSameCoOccurrences(false);
+    }
+
+    @Test
+    public void testCoOccurrencesMatchTheCypherQueryPerSentence() {
+        assertSameCoOccurrences(true);
+    }
+
+    @Test
+    public void testTagAnalysisMatchesTheCypherQuery() {
+        for (boolean respectSentences : new boolean[]{false, true}) {
+            for (boolean removeStopWords : new boolean[]{false, true}) {
+                assertSameTags(respectSentences, removeStopWords);
+            }
+        }
+    }
+
+    private void assertSameCoOccurrences(boolean respectSentences) {
+        Node annotatedText = createFixture();
+        TextRank textRank = builder().respectSentences(respectSentences).build();
+        try (Transaction tx = getDatabase().beginTx()) {
+            Map<String, Object> params = new HashMap<>();
+            params.put("id", annotatedText.getId());
+            params.put("stopwords", stopWords());
+            params.put("forbiddenPOSs", FORBIDDEN_POS);
+            params.put("forbiddenNEs", FORBIDDEN_NE);
+            Map<Long, Map<Long, String>> expected = new HashMap<>();
+            Result result = getDatabase().execute(respectSentences ? COOCCURRENCE_QUERY_BY_SENTENCE : COOCCURRENCE_QUERY, params);
+            while (result.hasNext()) {
+                Map<String, Object> row = result.next();
+                if (!isAdmitted(row.get("pos1")) || !isAdmitted(row.get("pos2")) || row.get("tag1_id") == null || row.get("tag2_id") == null) {
+                    continue;
+                }
+                long tag1 = (Long) row.get("tag1");
+                long tag2 = (Long) row.get("tag2");
+                int start1 = ((Number) row.get("sourceStartPosition")).intValue();
+                int start2 = ((Number) row.get("destinationStartPosition")).intValue();
+                addExpected(expected, tag1, start1, tag2, start2);
+                addExpected(expected, tag2, start2, tag1, start1);
+            }
+
+            Map<Long, Map<Long, CoOccurrenceItem>> actual = textRank.createCooccurrences(Collections.singletonList(annotatedText), "en", false);
+
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, describe(actual));
+            tx.success();
+        }
+    }
+
+    private void assertSameTags(boolean respectSentences, boolean removeStopWords) {
+        Node annotatedText = createFixture();
+        TextRank textRank = builder().respectSentences(respectSentences).removeStopWords(removeStopWords).build();
+        try (Transaction tx = getDatabase().beginTx()) {
+            Map<String, Object> params = new HashMap<>();
+            params.put("id", annotatedText.getId());
+            params.put("posList", ADMITTED_POS);
+            params.put("stopwords", removeStopWords ? stopWords() : new ArrayList<>());
+            List<String> expected = new ArrayList<>();
+            Set<Long> expectedWrongNEs = new HashSet<>();
+            Result result = getDatabase().execute(GET_TAG_QUERY, params);
+            while (result.hasNext()) {
+                Map<String, Object> row = result.next();
+                long tagId = (Long) row.get("tagId");
+                if (((List<String>) row.get("labels")).stream().anyMatch(FORBIDDEN_NE::contains)) {
+                    expectedWrongNEs.add(tagId);
+                    continue;
+                }
+                List<Long> related = (List<Long>) row.get("rel_tags");
+                List<Number> starts = (List<Number>) row.get("rel_tos");
+                List<Number> ends = (List<Number>) row.get("rel_toe");
+                expected.add(describe(tagId, (String) row.get("tag"), ((Number) row.get("sP")).intValue(), ((Number) row.get("eP")).intValue(), related, starts, ends));
+            }
+
+            List<KeywordExtractedItem> occurrences = new ArrayList<>();
+            List<Long> wrongNEs = new ArrayList<>();
+            textRank.detailedTagAnalysis(new TagOccurrenceTraversal().traverse(annotatedText, respectSentences), new HashMap<>(), occurrences, new HashMap<>(), wrongNEs);
+            List<String> actual = new ArrayList<>();
+            for (KeywordExtractedItem item : occurrences) {
+                actual.add(describe(item.getTagId(), item.getValue(), item.getStartPosition(), item.getEndPosition(), item.getRelatedTags(), item.getRelTagStartingPoints(), item.getRelTagEndingPoints()));
+            }
+
+            String message = "respectSentences=" + respectSentences + ", removeStopWords=" + removeStopWords;
+            assertFalse(message, expected.isEmpty());
+            assertEquals(message, expected, actual);
+            assertEquals(message, expectedWrongNEs, new HashSet<>(wrongNEs));
+            tx.success();
+        }
+    }
+
+    private Node createFixture() {
+        clearDb();
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node annotatedText = (Node) getDatabase().execute(FIXTURE).next().get("a");
+            tx.success();
+            return annotatedText;
+        }
+    }
+
+    private TextRank.Builder builder() {
+        return new TextRank.Builder(getDatabase(), getNLPManager().getConfiguration())
+                .setStopwords(STOP_WORDS)
+                .removeStopWords(false)
+                .setAdmittedPOSs(ADMITTED_POS)
+                .setForbiddenPOSs(FORBIDDEN_POS)
+                .setForbiddenNEs(FORBIDDEN_NE);
+    }
+
+    private static List<String> stopWords() {
+        return Arrays.asList(STOP_WORDS.split(","));
+    }
+
+    private static boolean isAdmitted(Object pos) {
+        if (pos == null || ((String[]) pos).length == 0) {
+            return true;
+        }
+        return Arrays.stream((String[]) pos).anyMatch(ADMITTED_POS::contains);
+    }
+
+    private static void addExpected(Map<Long, Map<Long, String>> expected, long source, int sourceStart, long destination, int destinationStart) {
+        expected.computeIfAbsent(source, k -> new HashMap<>())
+                .merge(destination, sourceStart + "-" + destinationStart, (previous, positions) -> previous + " " + positions);
+    }
+
+    private static Map<Long, Map<Long, String>> describe(Map<Long, Map<Long, CoOccurrenceItem>> coOccurrences) {
+        Map<Long, Map<Long, String>> result = new HashMap<>();
+        coOccurrences.forEach((source, destinations) -> destinations.forEach((destination, item) -> {
+            StringJoiner positions = new StringJoiner(" ");
+            item.getStartPositions().forEach(pair -> positions.add(pair.first() + "-" + pair.second()));
+            assertEquals(item.getStartPositions().size(), (int) item.getCount());
+            result.computeIfAbsent(source, k -> new HashMap<>()).put(destination, positions.toString());
+        }));
+        return result;
+    }
+
+    private static String describe(long tagId, String value, int start, int end, List<Long> related, List<Number> starts, List<Number> ends) {
+        List<String> dependents = new ArrayList<>();
+        for (int i = 0; i < related.size(); i++) {
+            dependents.add(related.get(i) + "@" + starts.get(i).intValue() + "-" + ends.get(i).intValue());
+        }
+        Collections.sort(dependents);
+        return tagId + ":" + value + "@" + start + "-" + end + dependents;
+    }
+}
@@ -23,6 +23,7 @@ import java.util.*;
 
 import com.graphaware.nlp.NLPManager;
 import com.graphaware.nlp.configuration.DynamicConfiguration;
+import com.graphaware.nlp.configuration.SettingsConstants;
 import com.graphaware.nlp.stub.StubTextProcessor;
 import com.graphaware.nlp.util.ImportUtils;
 import org.junit.Before;
@@ -179,11 +180,51 @@ public class TextRankTest extends NLPIntegrationTest {
         executeInTransaction("MATCH (n:AnnotatedText) CALL ga.nlp.ml.textRank({annotatedText:n}) YIELD result RETURN count(*)", emptyConsumer());
     }
 
+    @Test
+    public void testNamedEntityTokenisationIsCached() {
+        Node annText = createNamedEntityGraph();
+        StubTextProcessor processor = (StubTextProcessor) manager.getTextProcessorsManager().getDefaultProcessor();
+        try (Transaction tx = getDatabase().beginTx()) {
+            int annotated = processor.getAnnotateTextCount();
+            new TextRank.Builder(getDatabase(), manager.getConfiguration()).build().createCooccurrences(Collections.singletonList(annText), "en", false);
+            assertEquals(annotated + 1, processor.getAnnotateTextCount());
+            new TextRank.Builder(getDatabase(), manager.getConfiguration()).build().createCooccurrences(Collections.singletonList(annText), "en", false);
+            assertEquals("the second expansion of the named entity should come from the cache", annotated + 1, processor.getAnnotateTextCount());
+            tx.success();
+        }
+    }
+
+    @Test
+    public void testNamedEntityTokenisationIsNotCachedWithZeroCacheSize() {
+        Node annText = createNamedEntityGraph();
+        manager.getConfiguration().updateInternalSetting(SettingsConstants.TEXTRANK_NE_CACHE_SIZE, 0);
+        StubTextProcessor processor = (StubTextProcessor) manager.getTextProcessorsManager().getDefaultProcessor();
+        try (Transaction tx = getDatabase().beginTx()) {
+            int annotated = processor.getAnnotateTextCount();
+            new TextRank.Builder(getDatabase(), manager.getConfiguration()).build().createCooccurrences(Collections.singletonList(annText), "en", false);
+            new TextRank.Builder(getDatabase(), manager.getConfiguration()).build().createCooccurrences(Collections.singletonList(annText), "en", false);
+            assertEquals(annotated + 2, processor.getAnnotateTextCount());
+            tx.success();
+        }
+    }
+
     @Test
     public void testCreate() throws Exception {
         createGraph("exported.cypher");
     }
 
+    private Node createNamedEntityGraph() {
+        clearDb();
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node annText = (Node) getDatabase().execute("CREATE (a:AnnotatedText {id: 'ne'})-[:CONTAINS_SENTENCE]->(s:Sentence {sentenceNumber: 0}),\n"
+                    + " (s)-[:SENTENCE_TAG_OCCURRENCE]->(:TagOccurrence {startPosition: 0, endPosition: 13, pos: ['NNP']})-[:TAG_OCCURRENCE_TAG]->(:Tag:NER_Organization {id: 'space shuttle_en', value: 'space shuttle'}),\n"
+                    + " (s)-[:SENTENCE_TAG_OCCURRENCE]->(:TagOccurrence {startPosition: 14, endPosition: 20, pos: ['NN']})-[:TAG_OCCURRENCE_TAG]->(:Tag {id: 'flight_en', value: 'flight'})\n"
+                    + "RETURN a").next().get("a");
+            tx.success();
+            return annText;
+        }
+    }
+
     private void createGraph(String filename) throws Exception {
         // clean database before creating our own graph
         getDatabase().execute("MATCH (n) DETACH DELETE n");
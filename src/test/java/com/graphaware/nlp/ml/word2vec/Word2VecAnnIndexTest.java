@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.word2vec;
+
+import com.graphaware.common.util.Pair;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class Word2VecAnnIndexTest {
+
+    @Test
+    public void testSearchAllClustersIsExact() throws Exception {
+        List<Pair<String, float[]>> entries = randomEntries(2000, 16);
+        Path path = Paths.get(System.getProperty("java.io.tmpdir") + File.separator + "word2VecAnn_" + System.currentTimeMillis() + Word2VecAnnIndex.FILE_EXTENSION);
+        Word2VecAnnIndex.build(entries.iterator(), path);
+        try (Word2VecAnnIndex index = Word2VecAnnIndex.open(path)) {
+            assertEquals(2000, index.size());
+            assertEquals(16, index.getDimension());
+            assertEquals(44, index.getClusterCount());
+
+            float[] query = entries.get(7).second();
+            List<Pair> neighbours = index.search(query, 10, index.getClusterCount());
+            List<String> expected = bruteForce(entries, query, 10);
+            assertEquals(10, neighbours.size());
+            assertEquals("word7", neighbours.get(0).first());
+            assertEquals(1.0d, (double) neighbours.get(0).second(), 0.0001d);
+            for (int i = 0; i < 10; i++) {
+                assertEquals(expected.get(i), neighbours.get(i).first());
+            }
+
+            List<Pair> approximate = index.search(query, 10, 4);
+            assertEquals("word7", approximate.get(0).first());
+            assertTrue(index.search(new float[3], 10, 4).isEmpty());
+        } finally {
+            path.toFile().delete();
+        }
+    }
+
+    private static List<Pair<String, float[]>> randomEntries(int count, int dimension) {
+        Random random = new Random(1);
+        List<Pair<String, float[]>> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            float[] vector = new float[dimension];
+            for (int j = 0; j < dimension; j++) {
+                vector[j] = (float) random.nextGaussian();
+            }
+            entries.add(new Pair<>("word" + i, vector));
+        }
+        return entries;
+    }
+
+    private static List<String> bruteForce(List<Pair<String, float[]>> entries, float[] query, int limit) {
+        List<Pair<String, Double>> scores = new ArrayList<>();
+        for (Pair<String, float[]> entry : entries) {
+            double dot = 0.0d, normX = 0.0d, normY = 0.0d;
+            for (int j = 0; j < query.length; j++) {
+                dot += query[j] * entry.second()[j];
+                normX += query[j] * query[j];
+                normY += entry.second()[j] * entry.second()[j];
+            }
+            scores.add(new Pair<>(entry.first(), dot / Math.sqrt(normX * normY)));
+        }
+        scores.sort((a, b) -> Double.compare(b.second(), a.second()));
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < limit; i++) {
+            result.add(scores.get(i).first());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.word2vec;
+
+import com.graphaware.common.util.Pair;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.FloatBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class Word2VecBinaryStoreTest {
+
+    @Test
+    public void testLookupsReturnStoredVectors() throws Exception {
+        Random random = new Random(3);
+        List<Pair<String, float[]>> entries = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            float[] vector = new float[12];
+            for (int j = 0; j < vector.length; j++) {
+                vector[j] = random.nextFloat() - 0.5f;
+            }
+            entries.add(new Pair<>("word" + i, vector));
+        }
+        entries.add(new Pair<>("caf\u00e9", new float[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12}));
+        entries.add(new Pair<>("word5", new float[12]));
+        entries.add(new Pair<>("short", new float[]{1.0f}));
+
+        Path path = Paths.get(System.getProperty("java.io.tmpdir") + File.separator + "word2VecBinary_" + System.currentTimeMillis() + Word2VecBinaryStore.FILE_EXTENSION);
+        assertEquals(1001, Word2VecBinaryStore.build(entries.iterator(), path));
+        try (Word2VecBinaryStore store = Word2VecBinaryStore.open(path)) {
+            assertEquals(1001, store.size());
+            assertEquals(12, store.getDimension());
+            for (int i = 0; i < 1000; i++) {
+                assertArrayEquals(entries.get(i).second(), store.getArray("word" + i), 0.0f);
+            }
+            assertEquals(1000, store.indexOf("caf\u00e9"));
+            assertEquals("caf\u00e9", store.getWord(1000));
+
+            FloatBuffer vector = store.getVector("caf\u00e9");
+            assertEquals(12, vector.remaining());
+            assertEquals(1.0f, vector.get(0), 0.0f);
+            assertEquals(12.0f, vector.get(11), 0.0f);
+
+            assertEquals(-1, store.indexOf("short"));
+            assertNull(store.getVector("unknown"));
+            assertNull(store.getArray("word1000"));
+
+            Iterator<Pair<String, float[]>> stored = store.entries();
+            int count = 0;
+            while (stored.hasNext()) {
+                Pair<String, float[]> entry = stored.next();
+                assertEquals(store.indexOf(entry.first()), count++);
+            }
+            assertEquals(1001, count);
+        } finally {
+            path.toFile().delete();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.ml.word2vec;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class Word2VecImporterTest {
+
+    @Test
+    public void testImportIsParallelAndSkippedWhenUpToDate() throws Exception {
+        Random random = new Random(11);
+        StringBuilder source = new StringBuilder("1500 8\n");
+        float[][] vectors = new float[1500][8];
+        for (int i = 0; i < 1500; i++) {
+            source.append(i % 3 == 0 ? "/c/en/word" + i : "word" + i);
+            for (int j = 0; j < 8; j++) {
+                vectors[i][j] = Math.round((random.nextFloat() - 0.5f) * 10000) / 10000.0f;
+                source.append(' ').append(vectors[i][j]);
+            }
+            source.append(i % 2 == 0 ? " \r\n" : "\n");
+        }
+        source.append("/c/sv/ord 0.1 0.2 0.3 0.4 0.5 0.6 0.7 0.8\n");
+        source.append("last 1 2 3 4 5 6 7 8");
+
+        String base = System.getProperty("java.io.tmpdir") + File.separator + "word2VecImport_" + System.currentTimeMillis();
+        Path sourceFile = Paths.get(base + ".txt");
+        Path storeFile = Word2VecBinaryStore.getStorePath(base);
+        Files.write(sourceFile, source.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            Word2VecImporter importer = new Word2VecImporter("en", 3, 256);
+            Word2VecImporter.Progress progress = new Word2VecImporter.Progress(Files.size(sourceFile));
+            assertTrue(importer.importModel(sourceFile, storeFile, false, progress));
+            assertEquals(100, progress.getPercent());
+            try (Word2VecBinaryStore store = Word2VecBinaryStore.open(storeFile)) {
+                assertEquals(1501, store.size());
+                assertEquals(8, store.getDimension());
+                assertEquals(Word2VecImporter.checksum(sourceFile), store.getSourceChecksum());
+                for (int i = 0; i < 1500; i++) {
+                    assertEquals(i, store.indexOf("word" + i));
+                    assertArrayEquals(vectors[i], store.getArray("word" + i), 0.0f);
+                }
+                assertEquals(-1, store.indexOf("ord"));
+                assertArrayEquals(new float[]{1, 2, 3, 4, 5, 6, 7, 8}, store.getArray("last"), 0.0f);
+            }
+
+            assertFalse(importer.importModel(sourceFile, storeFile, false, new Word2VecImporter.Progress()));
+            Files.write(sourceFile, "other 1 2\n".getBytes(StandardCharsets.UTF_8));
+            assertTrue(importer.importModel(sourceFile, storeFile, false, new Word2VecImporter.Progress()));
+            try (Word2VecBinaryStore store = Word2VecBinaryStore.open(storeFile)) {
+                assertEquals(1, store.size());
+            }
+        } finally {
+            Files.deleteIfExists(sourceFile);
+            Files.deleteIfExists(storeFile);
+            Files.deleteIfExists(storeFile.resolveSibling(storeFile.getFileName() + ".source"));
+        }
+    }
+
+    @Test
+    public void testChecksumCoversTheWholeFileAndIsCached() throws Exception {
+        String base = System.getProperty("java.io.tmpdir") + File.separator + "word2VecChecksum_" + System.currentTimeMillis();
+        Path sourceFile = Paths.get(base + ".txt");
+        Path storeFile = Word2VecBinaryStore.getStorePath(base);
+        byte[] content = new byte[3 << 20];
+        try {
+            Files.write(sourceFile, content);
+            FileTime modified = Files.getLastModifiedTime(sourceFile);
+            long original = Word2VecImporter.cachedChecksum(sourceFile, storeFile);
+            assertEquals(Word2VecImporter.checksum(sourceFile), original);
+
+            content[content.length / 2] = 1;
+            Files.write(sourceFile, content);
+            assertTrue(original != Word2VecImporter.checksum(sourceFile));
+
+            Files.setLastModifiedTime(sourceFile, modified);
+            assertEquals(original, Word2VecImporter.cachedChecksum(sourceFile, storeFile));
+            Files.setLastModifiedTime(sourceFile, FileTime.fromMillis(modified.toMillis() + 1000));
+            assertEquals(Word2VecImporter.checksum(sourceFile), Word2VecImporter.cachedChecksum(sourceFile, storeFile));
+        } finally {
+            Files.deleteIfExists(sourceFile);
+            Files.deleteIfExists(storeFile.resolveSibling(storeFile.getFileName() + ".source"));
+        }
+    }
+
+    @Test
+    public void testInterruptedBuildIsResumed() throws Exception {
+        Path storeFile = Word2VecBinaryStore.getStorePath(System.getProperty("java.io.tmpdir") + File.separator + "word2VecResume_" + System.currentTimeMillis());
+        try {
+            Word2VecBinaryStore.Writer writer = Word2VecBinaryStore.Writer.create(storeFile, 42);
+            writer.add("first", new float[]{1, 0});
+            writer.add("second", new float[]{0, 1});
+            writer.checkpoint(100);
+            writer.add("lost", new float[]{1, 1});
+            writer.close();
+
+            assertEquals(0, Word2VecBinaryStore.Writer.resume(storeFile, 7).getSourceOffset());
+
+            writer = Word2VecBinaryStore.Writer.create(storeFile, 42);
+            writer.add("first", new float[]{1, 0});
+            writer.add("second", new float[]{0, 1});
+            writer.checkpoint(100);
+            writer.add("lost", new float[]{1, 1});
+            writer.close();
+
+            writer = Word2VecBinaryStore.Writer.resume(storeFile, 42);
+            assertEquals(100, writer.getSourceOffset());
+            assertEquals(2, writer.size());
+            assertFalse(writer.add("first", new float[]{5, 5}));
+            assertTrue(writer.add("third", new float[]{2, 2}));
+            assertEquals(3, writer.finish());
+
+            assertEquals(42, Word2VecBinaryStore.readSourceChecksum(storeFile));
+            try (Word2VecBinaryStore store = Word2VecBinaryStore.open(storeFile)) {
+                assertEquals(-1, store.indexOf("lost"));
+                assertArrayEquals(new float[]{0, 1}, store.getArray("second"), 0.0f);
+                assertArrayEquals(new float[]{2, 2}, store.getArray("third"), 0.0f);
+            }
+            assertFalse(Files.exists(Paths.get(storeFile + ".partial")));
+        } finally {
+            Files.deleteIfExists(storeFile);
+        }
+    }
+}
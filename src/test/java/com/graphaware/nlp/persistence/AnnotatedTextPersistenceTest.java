@@ -1,7 +1,10 @@
 package com.graphaware.nlp.persistence;
 
 import com.graphaware.nlp.NLPIntegrationTest;
+import com.graphaware.nlp.configuration.SettingsConstants;
 import com.graphaware.nlp.domain.AnnotatedText;
+import com.graphaware.nlp.domain.OptimizedCoreference;
+import com.graphaware.nlp.domain.Phrase;
 import com.graphaware.nlp.domain.Sentence;
 import com.graphaware.nlp.domain.Tag;
 import com.graphaware.nlp.processor.TextProcessor;
@@ -10,11 +13,17 @@ import com.graphaware.nlp.util.TestNLPGraph;
 import org.junit.Before;
 import org.junit.Test;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.Transaction;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static org.junit.Assert.*;
 
@@ -112,6 +121,123 @@ public class AnnotatedTextPersistenceTest extends NLPIntegrationTest {
         }));
     }
 
+    @Test
+    public void testDocumentFrequencyIsMaintainedOnTags() {
+        clearDb();
+        AnnotatedText at1 = createAnnotatedTextFor("The reports were late. The reports are here", "reports", "NNS");
+        AnnotatedText at2 = createAnnotatedTextFor("Reading reports takes time", "reports", "NNS");
+        try (Transaction tx = getDatabase().beginTx()) {
+            getNLPManager().getPersister(AnnotatedText.class).persist(at1, "test-a", "1");
+            getNLPManager().getPersister(AnnotatedText.class).persist(at2, "test-b", "2");
+            tx.success();
+        }
+        assertDocumentFrequency("reports", 2L);
+        assertDocumentFrequency("late", 1L);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            getNLPManager().getPersister(AnnotatedText.class).persist(at2, "test-b", "3");
+            tx.success();
+        }
+        assertDocumentFrequency("reports", 2L);
+
+        executeInTransaction("MATCH (a:AnnotatedText {id: 'test-a'})-[:CONTAINS_SENTENCE]->(s:Sentence) DETACH DELETE a, s", emptyConsumer());
+        assertDocumentFrequency("reports", 1L);
+        assertDocumentFrequency("late", 0L);
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(1L, getNLPManager().getDocumentFrequencyStatistics().getDocumentCount());
+            tx.success();
+        }
+    }
+
+    @Test
+    public void testDocumentFrequencyIsNotStartedOnTagsCreatedBeforeIt() {
+        clearDb();
+        try (Transaction tx = getDatabase().beginTx()) {
+            getNLPManager().getPersister(AnnotatedText.class).persist(createAnnotatedTextFor("The reports were late", "reports", "NNS"), "test-a", "1");
+            tx.success();
+        }
+        executeInTransaction("MATCH (n:Tag) REMOVE n.documentFrequency", emptyConsumer());
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            getNLPManager().getPersister(AnnotatedText.class).persist(createAnnotatedTextFor("Reading reports takes time", "reports", "NNS"), "test-b", "2");
+            tx.success();
+        }
+        executeInTransaction("MATCH (n:Tag) WHERE n.value = 'reports' RETURN n.documentFrequency AS df", (result -> {
+            assertTrue(result.hasNext());
+            assertNull(result.next().get("df"));
+        }));
+        assertDocumentFrequency("takes", 1L);
+
+        getNLPManager().getDocumentFrequencyStatistics().rebuild(2);
+        assertDocumentFrequency("reports", 2L);
+        assertDocumentFrequency("late", 1L);
+    }
+
+    @Test
+    public void testBatchedAndLegacyPersistenceCreateTheSameGraph() {
+        Supplier<List<AnnotatedText>> texts = () -> Arrays.asList(
+                createAnnotatedTextFor("The reports were late. The reports are here", "reports", "NNS"),
+                createAnnotatedTextFor("Reading reports takes time. Time is late", "reports", "VBZ"),
+                createAnnotatedTextWithSameTagInSameTextWithDifferentPos());
+        List<String> batched = persistAndDescribeGraph(true, texts.get());
+        List<String> legacy = persistAndDescribeGraph(false, texts.get());
+        assertFalse(batched.isEmpty());
+        assertEquals(legacy, batched);
+    }
+
+    @Test
+    public void testBatchedAndLegacyPersistenceStoreTheSameCoreferences() {
+        List<String> batched = persistAndDescribeGraph(true, Arrays.asList(createAnnotatedTextWithCoreferences()));
+        assertTrue(batched.stream().anyMatch(element -> element.contains("-[COREF ")));
+        assertTrue(batched.stream().anyMatch(element -> element.contains("-[COREFERENCE ")));
+        List<String> legacy = persistAndDescribeGraph(false, Arrays.asList(createAnnotatedTextWithCoreferences()));
+        assertEquals(legacy, batched);
+    }
+
+    private List<String> persistAndDescribeGraph(boolean batchedPersistence, List<AnnotatedText> annotatedTexts) {
+        clearDb();
+        getNLPManager().getConfiguration().updateInternalSetting(SettingsConstants.BATCHED_PERSISTENCE, batchedPersistence);
+        for (int i = 0; i < annotatedTexts.size(); i++) {
+            try (Transaction tx = getDatabase().beginTx()) {
+                getNLPManager().getPersister(AnnotatedText.class).persist(annotatedTexts.get(i), "test-" + i, String.valueOf(i));
+                tx.success();
+            }
+        }
+        List<String> elements = new ArrayList<>();
+        try (Transaction tx = getDatabase().beginTx()) {
+            getDatabase().getAllNodes().forEach(node -> elements.add(describe(node)));
+            getDatabase().getAllRelationships().forEach(relationship -> elements.add(describe(relationship.getStartNode())
+                    + "-[" + relationship.getType().name() + " " + describeProperties(relationship) + "]->"
+                    + describe(relationship.getEndNode())));
+            tx.success();
+        }
+        Collections.sort(elements);
+
+        return elements;
+    }
+
+    private String describe(Node node) {
+        List<String> labels = new ArrayList<>();
+        node.getLabels().forEach(label -> labels.add(label.name()));
+        Collections.sort(labels);
+
+        return "(" + labels + " " + describeProperties(node) + ")";
+    }
+
+    private String describeProperties(PropertyContainer container) {
+        Map<String, String> properties = new TreeMap<>();
+        container.getAllProperties().forEach((key, value) -> properties.put(key, Arrays.deepToString(new Object[]{value})));
+
+        return properties.toString();
+    }
+
+    private void assertDocumentFrequency(String value, long expected) {
+        executeInTransaction("MATCH (n:Tag) WHERE n.value = {value} RETURN n.documentFrequency AS df", Collections.singletonMap("value", value), (result -> {
+            assertTrue(result.hasNext());
+            assertEquals(expected, ((Number) result.next().get("df")).longValue());
+        }));
+    }
+
     private AnnotatedText createAnnotatedTextFor(String text, String expectedTokenForPOS, String expectedPOS) {
         AnnotatedText annotatedText = new AnnotatedText();
         annotatedText.setText(text);
@@ -151,4 +277,32 @@ public class AnnotatedTextPersistenceTest extends NLPIntegrationTest {
         }
         return annotatedText;
     }
+
+    private AnnotatedText createAnnotatedTextWithCoreferences() {
+        AnnotatedText annotatedText = new AnnotatedText();
+        Sentence first = new Sentence("John met Mary in Paris", 0);
+        Sentence second = new Sentence("He liked Paris", 1);
+        addTagOccurrences(first);
+        addTagOccurrences(second);
+        first.addPhraseOccurrence(0, 4, new Phrase("John"));
+        first.addPhraseOccurrence(9, 13, new Phrase("Mary"));
+        Phrase he = new Phrase("He");
+        he.setReference(new Phrase("John"));
+        second.addPhraseOccurrence(0, 2, he);
+        second.getTagOccurrences().get(0).get(0).setCoreference(new OptimizedCoreference(first, first.getTagOccurrences().get(0).get(0)));
+        annotatedText.addSentence(first);
+        annotatedText.addSentence(second);
+
+        return annotatedText;
+    }
+
+    private void addTagOccurrences(Sentence sentence) {
+        int begin = 0;
+        for (String token : sentence.getSentence().split(" ")) {
+            Tag tag = new Tag(token, "en");
+            tag.setPos(Collections.singletonList("NNP"));
+            sentence.addTagOccurrence(begin, begin + token.length(), token, sentence.addTag(tag));
+            begin += token.length() + 1;
+        }
+    }
 }
@@ -16,6 +16,8 @@ public class StubTextProcessor extends AbstractTextProcessor {
 
     private String lastPipelineUsed = "";
 
+    private int annotateTextCount;
+
     private final Map<String, Object> pipelines = new HashMap<>();
 
     @Override
@@ -47,6 +49,7 @@ public class StubTextProcessor extends AbstractTextProcessor {
     @Override
     public AnnotatedText annotateText(String text, PipelineSpecification pipelineSpecification) {
         this.lastPipelineUsed = pipelineSpecification.getName();
+        this.annotateTextCount++;
         AnnotatedText annotatedText = new AnnotatedText();
         String[] sentencesSplit = text.split("\\.");
         int sentenceNumber = 0;
@@ -130,4 +133,8 @@ public class StubTextProcessor extends AbstractTextProcessor {
     public String getLastPipelineUsed() {
         return lastPipelineUsed;
     }
+
+    public int getAnnotateTextCount() {
+        return annotateTextCount;
+    }
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.util;
+
+import com.graphaware.nlp.AbstractEmbeddedTest;
+import com.graphaware.nlp.dsl.result.BatchResult;
+import org.junit.Test;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class BatchPipelineTest extends AbstractEmbeddedTest {
+
+    @Test
+    public void testStoresResultsInBatchesAndCountsFailures() {
+        BatchResult result = new BatchPipeline<Integer, Integer>(getDatabase(), "test", 10, 4)
+                .run(() -> IntStream.range(0, 100).iterator(),
+                        i -> i % 10 == 0 ? null : i,
+                        batch -> batch.forEach(i -> getDatabase().createNode(Label.label("Item")).setProperty("value", i)));
+
+        assertEquals(90, result.processed);
+        assertEquals(10, result.failed);
+        assertTrue(result.batches >= 9);
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(90L, getDatabase().execute("MATCH (n:Item) RETURN count(n) AS c").next().get("c"));
+            tx.success();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testWriterFailureAbortsTheRun() {
+        try {
+            new BatchPipeline<Integer, Integer>(getDatabase(), "test", 1, 2)
+                    .run(() -> IntStream.range(0, 1000).iterator(),
+                            i -> i,
+                            batch -> {
+                                throw new Error("writer crashed");
+                            });
+            fail("The run should fail when its writer stops");
+        } catch (RuntimeException e) {
+            assertEquals("writer crashed", e.getCause().getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchSizeMustBePositive() {
+        new BatchPipeline<Integer, Integer>(getDatabase(), "test", 0, 2);
+    }
+}
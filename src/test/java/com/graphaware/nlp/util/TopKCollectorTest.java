@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class TopKCollectorTest {
+
+    @Test
+    public void testKeepsHighestScoresInDescendingOrder() {
+        TopKCollector collector = new TopKCollector(3);
+        assertEquals(Float.NEGATIVE_INFINITY, collector.threshold(), 0.0f);
+        assertTrue(collector.offer(1L, 0.5f));
+        assertTrue(collector.offer(2L, 0.1f));
+        assertTrue(collector.offer(3L, 0.9f));
+        assertEquals(0.1f, collector.threshold(), 0.0f);
+        assertFalse(collector.offer(4L, 0.1f));
+        assertTrue(collector.offer(5L, 0.7f));
+        assertEquals(0.5f, collector.threshold(), 0.0f);
+
+        assertArrayEquals(new long[]{3L, 5L, 1L}, collector.sortDescending());
+        assertEquals(0.9f, collector.getScore(0), 0.0f);
+        assertEquals(0.5f, collector.getScore(2), 0.0f);
+    }
+
+    @Test
+    public void testMergedParallelResultsMatchSequential() {
+        Random random = new Random(5);
+        float[] scores = new float[100_000];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = random.nextFloat();
+        }
+        TopKCollector sequential = new TopKCollector(50);
+        for (int i = 0; i < scores.length; i++) {
+            sequential.offer(i, scores[i]);
+        }
+        TopKCollector parallel = IntStream.range(0, scores.length).parallel()
+                .collect(() -> new TopKCollector(50), (collector, i) -> collector.offer(i, scores[i]), TopKCollector::merge);
+        assertArrayEquals(sequential.sortDescending(), parallel.sortDescending());
+    }
+
+    @Test
+    public void testThreadCollectorIsClearedOnReuse() {
+        TopKCollector collector = TopKCollector.forCurrentThread(2);
+        collector.offer(1L, 1.0f);
+        assertSame(collector, TopKCollector.forCurrentThread(2));
+        assertEquals(0, collector.size());
+        assertEquals(0, new TopKCollector(0).sortDescending().length);
+        assertFalse(new TopKCollector(0).offer(1L, 1.0f));
+    }
+}
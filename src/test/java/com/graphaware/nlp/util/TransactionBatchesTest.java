@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.util;
+
+import com.graphaware.nlp.AbstractEmbeddedTest;
+import org.junit.Test;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TransactionBatchesTest extends AbstractEmbeddedTest {
+
+    @Test
+    public void testBatchesAreCommittedOutsideOfATransaction() {
+        List<Long> ids = createItems(25);
+        ids.add(Long.MAX_VALUE);
+
+        assertFalse(TransactionBatches.hasTransaction(getDatabase()));
+        long stored = TransactionBatches.write(getDatabase(), "test", ids.iterator(), 10,
+                id -> getDatabase().getNodeById(id).setProperty("value", id));
+
+        assertEquals(25L, stored);
+        assertEquals(25L, countItemsWithValue());
+    }
+
+    @Test
+    public void testItemsAreWrittenInTheTransactionOfTheCaller() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                ids.add(getDatabase().createNode(Label.label("Item")).getId());
+            }
+            assertTrue(TransactionBatches.hasTransaction(getDatabase()));
+            long stored = TransactionBatches.write(getDatabase(), "test", ids.iterator(), 2,
+                    id -> getDatabase().getNodeById(id).setProperty("value", id));
+            assertEquals(5L, stored);
+            tx.failure();
+        }
+
+        assertEquals(0L, countItemsWithValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchSizeMustBePositive() {
+        TransactionBatches.write(getDatabase(), "test", Arrays.asList(1L).iterator(), 0, id -> {
+        });
+    }
+
+    private List<Long> createItems(int count) {
+        List<Long> ids = new ArrayList<>();
+        try (Transaction tx = getDatabase().beginTx()) {
+            for (int i = 0; i < count; i++) {
+                ids.add(getDatabase().createNode(Label.label("Item")).getId());
+            }
+            tx.success();
+        }
+        return ids;
+    }
+
+    private long countItemsWithValue() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            long count = (Long) getDatabase().execute("MATCH (n:Item) WHERE exists(n.value) RETURN count(n) AS c").next().get("c");
+            tx.success();
+            return count;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2013-2018 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class TypeConverterTest {
+
+    @Test
+    public void testBulkConversionsKeepStoredLayout() {
+        float[] floats = new float[]{0.5f, -1.25f, Float.MAX_VALUE, 0.0f, 3.0e-7f};
+        byte[] expected = new byte[floats.length * Float.BYTES];
+        for (int i = 0; i < floats.length; i++) {
+            ByteBuffer.wrap(expected, i * Float.BYTES, Float.BYTES).putFloat(floats[i]);
+        }
+        assertArrayEquals(expected, TypeConverter.toByteArray(floats));
+        assertArrayEquals(floats, TypeConverter.toFloatArray(expected), 0.0f);
+
+        double[] doubles = new double[]{0.5d, -1.25d, Double.MIN_VALUE, 1.0e100d};
+        assertArrayEquals(doubles, TypeConverter.toDoubleArray(TypeConverter.toByteArray(doubles)), 0.0d);
+        assertArrayEquals(doubles, TypeConverter.toDoubleArray(TypeConverter.toByteArray(doubles, ByteOrder.LITTLE_ENDIAN), 0, doubles.length * Double.BYTES, ByteOrder.LITTLE_ENDIAN), 0.0d);
+    }
+
+    @Test
+    public void testFloatBufferViewOverStoredBytes() {
+        byte[] bytes = TypeConverter.toByteArray(new float[]{1.0f, 2.0f, 3.0f, 4.0f}, ByteOrder.LITTLE_ENDIAN);
+        FloatBuffer view = TypeConverter.asFloatBuffer(bytes, Float.BYTES, 2 * Float.BYTES, ByteOrder.LITTLE_ENDIAN);
+        assertEquals(2, view.remaining());
+        assertEquals(2.0f, view.get(0), 0.0f);
+        assertEquals(3.0f, view.get(1), 0.0f);
+        assertTrue(view.isReadOnly());
+        assertArrayEquals(new float[]{2.0f, 3.0f}, TypeConverter.toFloatArray(bytes, Float.BYTES, 2 * Float.BYTES, ByteOrder.LITTLE_ENDIAN), 0.0f);
+    }
+}